@@ -0,0 +1,278 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ProgressDetail;
+import com.spotify.docker.client.messages.ProgressMessage;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Condenses the progress of a pull, push, build or load before handing it to another
+ * {@link ProgressHandler}. Docker sends a message for every few kilobytes transferred in every
+ * layer, which is far more than a terminal or a log needs.
+ *
+ * <p>Messages that report bytes transferred are not passed on. Instead their counts are added
+ * up across layers, and at most {@code maxUpdatesPerSecond} times a second the delegate receives
+ * a single message with the id {@value #TOTAL_ID}, whose progress detail holds the bytes
+ * transferred and expected across all layers, and whose progress text adds the transfer rate and
+ * the estimated time left. All other messages, such as errors, build output and layer status
+ * changes, are passed on as they arrive.</p>
+ *
+ * <p>The current totals can also be read with {@link #snapshot()}.</p>
+ */
+public class AggregatingProgressHandler implements ProgressHandler {
+
+  /**
+   * The id of the messages that carry the aggregate progress.
+   */
+  public static final String TOTAL_ID = "total";
+
+  private final ProgressHandler delegate;
+  private final long intervalNanos;
+  private final LongSupplier nanoTime;
+
+  private final Map<String, Layer> layers = new HashMap<>();
+  private long current;
+  private long total;
+  private long transferred;
+  private long startedAt;
+  private long emittedAt;
+  private boolean started;
+  private boolean pending;
+
+  /**
+   * Create a handler that passes on the aggregate progress at most the given number of times
+   * a second.
+   *
+   * @param delegate            the handler to pass the condensed progress on to
+   * @param maxUpdatesPerSecond how often the delegate may receive the aggregate progress
+   */
+  public AggregatingProgressHandler(final ProgressHandler delegate,
+                                    final int maxUpdatesPerSecond) {
+    this(delegate, maxUpdatesPerSecond, System::nanoTime);
+  }
+
+  AggregatingProgressHandler(final ProgressHandler delegate, final int maxUpdatesPerSecond,
+                             final LongSupplier nanoTime) {
+    checkArgument(maxUpdatesPerSecond > 0, "maxUpdatesPerSecond must be positive");
+    this.delegate = checkNotNull(delegate, "delegate");
+    this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / maxUpdatesPerSecond;
+    this.nanoTime = nanoTime;
+  }
+
+  @Override
+  public synchronized void progress(final ProgressMessage message) throws DockerException {
+    final ProgressDetail detail = message.progressDetail();
+    if (message.error() != null || message.id() == null || detail == null
+        || detail.current() == null) {
+      delegate.progress(message);
+      return;
+    }
+
+    final long now = nanoTime.getAsLong();
+    if (!started) {
+      started = true;
+      startedAt = now;
+      emittedAt = now - intervalNanos;
+    }
+    update(message.id(), detail.current(), detail.total() == null ? 0 : detail.total());
+    pending = true;
+    if (now - emittedAt >= intervalNanos) {
+      emit(message.status(), now);
+    }
+  }
+
+  /**
+   * Pass on the aggregate progress now if it changed since it was last passed on, for instance
+   * when the operation has finished.
+   *
+   * @throws DockerException if the delegate throws
+   */
+  public synchronized void flush() throws DockerException {
+    if (pending) {
+      emit(null, nanoTime.getAsLong());
+    }
+  }
+
+  /**
+   * Returns the progress of all layers so far.
+   *
+   * @return the aggregate progress
+   */
+  public synchronized Snapshot snapshot() {
+    return snapshotAt(nanoTime.getAsLong());
+  }
+
+  private void update(final String id, final long layerCurrent, final long layerTotal) {
+    Layer layer = layers.get(id);
+    if (layer == null) {
+      layer = new Layer();
+      layers.put(id, layer);
+    }
+    // A layer starts over from zero when it moves on from downloading to extracting
+    final long moved = layerCurrent >= layer.current ? layerCurrent - layer.current : layerCurrent;
+    transferred += moved;
+    current += layerCurrent - layer.current;
+    total += layerTotal - layer.total;
+    layer.current = layerCurrent;
+    layer.total = layerTotal;
+  }
+
+  private void emit(final String status, final long now) throws DockerException {
+    emittedAt = now;
+    pending = false;
+    final Snapshot snapshot = snapshotAt(now);
+    delegate.progress(ProgressMessage.builder()
+        .id(TOTAL_ID)
+        .status(status == null ? "Progress" : status)
+        .progress(snapshot.toString())
+        .progressDetail(ProgressDetail.create(snapshot.current, 0L, snapshot.total))
+        .build());
+  }
+
+  private Snapshot snapshotAt(final long now) {
+    final double seconds = (now - startedAt) / 1e9;
+    final long bytesPerSecond = seconds > 0 ? (long) (transferred / seconds) : 0;
+    final long remaining = Math.max(total - current, 0);
+    final long etaSeconds = bytesPerSecond > 0 ? remaining / bytesPerSecond : -1;
+    return new Snapshot(layers.size(), current, total, bytesPerSecond, etaSeconds);
+  }
+
+  private static class Layer {
+    private long current;
+    private long total;
+  }
+
+  /**
+   * The aggregate progress of all layers at one point in time.
+   */
+  public static class Snapshot {
+
+    private final int layers;
+    private final long current;
+    private final long total;
+    private final long bytesPerSecond;
+    private final long etaSeconds;
+
+    Snapshot(final int layers, final long current, final long total, final long bytesPerSecond,
+             final long etaSeconds) {
+      this.layers = layers;
+      this.current = current;
+      this.total = total;
+      this.bytesPerSecond = bytesPerSecond;
+      this.etaSeconds = etaSeconds;
+    }
+
+    /**
+     * Returns the number of layers that have reported progress.
+     *
+     * @return the number of layers
+     */
+    public int layers() {
+      return layers;
+    }
+
+    /**
+     * Returns the bytes done in the current step of each layer, summed over all layers.
+     *
+     * @return the bytes done
+     */
+    public long current() {
+      return current;
+    }
+
+    /**
+     * Returns the bytes expected in the current step of each layer, summed over all layers. Layers
+     * whose size isn't known don't count.
+     *
+     * @return the bytes expected
+     */
+    public long total() {
+      return total;
+    }
+
+    /**
+     * Returns the average number of bytes transferred per second since the first progress.
+     *
+     * @return the transfer rate
+     */
+    public long bytesPerSecond() {
+      return bytesPerSecond;
+    }
+
+    /**
+     * Returns the estimated number of seconds until all layers are done, at the average
+     * transfer rate, or -1 if nothing has been transferred yet.
+     *
+     * @return the estimated time left in seconds
+     */
+    public long etaSeconds() {
+      return etaSeconds;
+    }
+
+    /**
+     * Formats the progress like {@code 45.2 MB/120.1 MB, 5.3 MB/s, 14s left}.
+     */
+    @Override
+    public String toString() {
+      final StringBuilder builder = new StringBuilder()
+          .append(bytes(current)).append('/').append(bytes(total))
+          .append(", ").append(bytes(bytesPerSecond)).append("/s");
+      if (etaSeconds >= 0) {
+        builder.append(", ").append(duration(etaSeconds)).append(" left");
+      }
+      return builder.toString();
+    }
+
+    private static String bytes(final long bytes) {
+      // Decimal units, like the docker CLI
+      if (bytes < 1000) {
+        return bytes + " B";
+      }
+      final String[] units = {"kB", "MB", "GB", "TB"};
+      double value = bytes;
+      int unit = -1;
+      while (value >= 1000 && unit < units.length - 1) {
+        value /= 1000;
+        unit++;
+      }
+      return String.format(Locale.ROOT, "%.1f %s", value, units[unit]);
+    }
+
+    private static String duration(final long seconds) {
+      if (seconds < 60) {
+        return seconds + "s";
+      } else if (seconds < 3600) {
+        return String.format(Locale.ROOT, "%dm%02ds", seconds / 60, seconds % 60);
+      }
+      return String.format(Locale.ROOT, "%dh%02dm", seconds / 3600, seconds % 3600 / 60);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What was written by {@link DockerClient#archiveContainerTo(String, String, java.nio.file.Path)}
+ * or {@link DockerClient#exportContainerTo(String, java.nio.file.Path)}, and how fast.
+ */
+public final class ArchiveExtraction {
+
+  private final long files;
+  private final long directories;
+  private final long links;
+  private final long bytes;
+  private final long elapsedNanos;
+
+  ArchiveExtraction(final long files, final long directories, final long links,
+                    final long bytes, final long elapsedNanos) {
+    this.files = files;
+    this.directories = directories;
+    this.links = links;
+    this.bytes = bytes;
+    this.elapsedNanos = elapsedNanos;
+  }
+
+  /**
+   * Returns the number of regular files that were written.
+   *
+   * @return the number of files
+   */
+  public long files() {
+    return files;
+  }
+
+  /**
+   * Returns the number of directories that were created.
+   *
+   * @return the number of directories
+   */
+  public long directories() {
+    return directories;
+  }
+
+  /**
+   * Returns the number of symbolic and hard links that were created.
+   *
+   * @return the number of links
+   */
+  public long links() {
+    return links;
+  }
+
+  /**
+   * Returns the number of bytes written to files.
+   *
+   * @return the number of bytes
+   */
+  public long bytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns how long it took to read the archive and write all of it.
+   *
+   * @param unit the unit of the result
+   * @return the time taken
+   */
+  public long elapsed(final TimeUnit unit) {
+    return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * Returns the number of bytes written to files per second.
+   *
+   * @return the write rate
+   */
+  public double bytesPerSecond() {
+    return elapsedNanos == 0 ? 0 : bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+                         "%d files, %d directories, %d links, %d bytes in %d ms (%.1f MB/s)",
+                         files, directories, links, bytes, elapsed(TimeUnit.MILLISECONDS),
+                         bytesPerSecond() / (1024 * 1024));
+  }
+}
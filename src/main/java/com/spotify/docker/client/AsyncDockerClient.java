@@ -0,0 +1,505 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.DockerClient.ExecCreateParam;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.DockerClient.ListImagesParam;
+import com.spotify.docker.client.DockerClient.ListNetworksParam;
+import com.spotify.docker.client.DockerClient.ListVolumesParam;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.DockerClient.Signal;
+import com.spotify.docker.client.auth.RegistryAuthSupplier;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerChange;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.ContainerUpdate;
+import com.spotify.docker.client.messages.ExecCreation;
+import com.spotify.docker.client.messages.ExecState;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageHistory;
+import com.spotify.docker.client.messages.ImageInfo;
+import com.spotify.docker.client.messages.Info;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.NetworkConfig;
+import com.spotify.docker.client.messages.NetworkConnection;
+import com.spotify.docker.client.messages.NetworkCreation;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RemovedImage;
+import com.spotify.docker.client.messages.ServiceCreateResponse;
+import com.spotify.docker.client.messages.TopResults;
+import com.spotify.docker.client.messages.Version;
+import com.spotify.docker.client.messages.Volume;
+import com.spotify.docker.client.messages.VolumeList;
+import com.spotify.docker.client.messages.swarm.Config;
+import com.spotify.docker.client.messages.swarm.ConfigCreateResponse;
+import com.spotify.docker.client.messages.swarm.ConfigSpec;
+import com.spotify.docker.client.messages.swarm.Node;
+import com.spotify.docker.client.messages.swarm.NodeInfo;
+import com.spotify.docker.client.messages.swarm.NodeSpec;
+import com.spotify.docker.client.messages.swarm.Secret;
+import com.spotify.docker.client.messages.swarm.SecretCreateResponse;
+import com.spotify.docker.client.messages.swarm.SecretSpec;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.ServiceSpec;
+import com.spotify.docker.client.messages.swarm.Swarm;
+import com.spotify.docker.client.messages.swarm.SwarmInit;
+import com.spotify.docker.client.messages.swarm.SwarmJoin;
+import com.spotify.docker.client.messages.swarm.SwarmSpec;
+import com.spotify.docker.client.messages.swarm.Task;
+import com.spotify.docker.client.messages.swarm.UnlockKey;
+import java.io.Closeable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A non-blocking client for interacting with dockerd. Each method sends its request and returns
+ * immediately; the returned future completes when the daemon has responded.
+ *
+ * <p>Methods mirror their {@link DockerClient} counterparts, and futures complete exceptionally
+ * with the same exceptions that those methods throw (for example a
+ * {@link com.spotify.docker.client.exceptions.ContainerNotFoundException} for a 404 from
+ * {@link #inspectContainer(String)}).
+ *
+ * <p>Only single request/response operations are offered. Streaming operations such as logs,
+ * service logs, events, attach, build, pull and push are only available on
+ * {@link DockerClient}.
+ *
+ * <p>The futures complete on the client's request threads. When their number is capped with
+ * {@link DefaultDockerClient.Builder#asyncThreads(int)}, calls beyond the cap queue until a thread
+ * is free, so a future may take longer to complete than the request itself, and callbacks should
+ * not make blocking calls on the same client.
+ *
+ * @see DefaultDockerClient#async()
+ */
+public interface AsyncDockerClient extends Closeable {
+
+  /**
+   * Non-blocking variant of {@link DockerClient#ping()}.
+   */
+  CompletableFuture<String> ping();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#version()}.
+   */
+  CompletableFuture<Version> version();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#info()}.
+   */
+  CompletableFuture<Info> info();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listContainers(ListContainersParam...)}.
+   */
+  CompletableFuture<List<Container>> listContainers(ListContainersParam... params);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createContainer(ContainerConfig)}.
+   */
+  CompletableFuture<ContainerCreation> createContainer(ContainerConfig config);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createContainer(ContainerConfig, String)}.
+   */
+  CompletableFuture<ContainerCreation> createContainer(ContainerConfig config, String name);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectContainer(String)}.
+   */
+  CompletableFuture<ContainerInfo> inspectContainer(String containerId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectContainerChanges(String)}.
+   */
+  CompletableFuture<List<ContainerChange>> inspectContainerChanges(String containerId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#topContainer(String, String)}.
+   */
+  CompletableFuture<TopResults> topContainer(String containerId, String psArgs);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#startContainer(String)}.
+   */
+  CompletableFuture<Void> startContainer(String containerId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#stopContainer(String, int)}.
+   */
+  CompletableFuture<Void> stopContainer(String containerId, int secondsToWaitBeforeKilling);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#restartContainer(String, int)}.
+   */
+  CompletableFuture<Void> restartContainer(String containerId, int secondsToWaitBeforeRestart);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#pauseContainer(String)}.
+   */
+  CompletableFuture<Void> pauseContainer(String containerId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#unpauseContainer(String)}.
+   */
+  CompletableFuture<Void> unpauseContainer(String containerId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#killContainer(String)}.
+   */
+  CompletableFuture<Void> killContainer(String containerId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#killContainer(String, Signal)}.
+   */
+  CompletableFuture<Void> killContainer(String containerId, Signal signal);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#waitContainer(String)}.
+   */
+  CompletableFuture<ContainerExit> waitContainer(String containerId);
+
+  /**
+   * Wait for many containers to exit. Unlike calling {@link #waitContainer(String)} for each of
+   * them, which keeps a connection open per container until it exits, this follows a single
+   * stream of {@code die} events and inspects each container once, to find the ones that have
+   * already exited.
+   *
+   * <p>The futures complete on the threads that read responses and events, so callers that do
+   * slow work on completion should use the {@code *Async} variants of the future's methods.</p>
+   *
+   * @param containerIds The IDs or names of the containers to wait for.
+   * @return A future for each container, by the ID or name it was given as. A future fails with
+   *         {@link com.spotify.docker.client.exceptions.ContainerNotFoundException} if the
+   *         container doesn't exist.
+   */
+  Map<String, CompletableFuture<ContainerExit>> waitContainers(Collection<String> containerIds);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#removeContainer(String, RemoveContainerParam...)}.
+   */
+  CompletableFuture<Void> removeContainer(String containerId, RemoveContainerParam... params);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#renameContainer(String, String)}.
+   */
+  CompletableFuture<Void> renameContainer(String containerId, String name);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#updateContainer(String, HostConfig)}.
+   */
+  CompletableFuture<ContainerUpdate> updateContainer(String containerId, HostConfig config);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#stats(String)}.
+   */
+  CompletableFuture<ContainerStats> stats(String containerId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#execCreate(String, String[], ExecCreateParam...)}.
+   */
+  CompletableFuture<ExecCreation> execCreate(String containerId, String[] cmd,
+                                             ExecCreateParam... params);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#execInspect(String)}.
+   */
+  CompletableFuture<ExecState> execInspect(String execId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listImages(ListImagesParam...)}.
+   */
+  CompletableFuture<List<Image>> listImages(ListImagesParam... params);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectImage(String)}.
+   */
+  CompletableFuture<ImageInfo> inspectImage(String image);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#history(String)}.
+   */
+  CompletableFuture<List<ImageHistory>> history(String image);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#tag(String, String, boolean)}.
+   */
+  CompletableFuture<Void> tag(String image, String name, boolean force);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#removeImage(String, boolean, boolean)}.
+   */
+  CompletableFuture<List<RemovedImage>> removeImage(String image, boolean force, boolean noPrune);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listNetworks(ListNetworksParam...)}.
+   */
+  CompletableFuture<List<Network>> listNetworks(ListNetworksParam... params);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectNetwork(String)}.
+   */
+  CompletableFuture<Network> inspectNetwork(String networkId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createNetwork(NetworkConfig)}.
+   */
+  CompletableFuture<NetworkCreation> createNetwork(NetworkConfig networkConfig);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#removeNetwork(String)}.
+   */
+  CompletableFuture<Void> removeNetwork(String networkId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#connectToNetwork(String, NetworkConnection)}.
+   */
+  CompletableFuture<Void> connectToNetwork(String networkId, NetworkConnection networkConnection);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#disconnectFromNetwork(String, String, boolean)}.
+   */
+  CompletableFuture<Void> disconnectFromNetwork(String containerId, String networkId,
+                                                boolean force);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listVolumes(ListVolumesParam...)}.
+   */
+  CompletableFuture<VolumeList> listVolumes(ListVolumesParam... params);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createVolume(Volume)}.
+   */
+  CompletableFuture<Volume> createVolume(Volume volume);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectVolume(String)}.
+   */
+  CompletableFuture<Volume> inspectVolume(String volumeName);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#removeVolume(String)}.
+   */
+  CompletableFuture<Void> removeVolume(String volumeName);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectSwarm()}.
+   */
+  CompletableFuture<Swarm> inspectSwarm();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#initSwarm(SwarmInit)}.
+   */
+  CompletableFuture<String> initSwarm(SwarmInit swarmInit);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#joinSwarm(SwarmJoin)}.
+   */
+  CompletableFuture<Void> joinSwarm(SwarmJoin swarmJoin);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#leaveSwarm()}.
+   */
+  CompletableFuture<Void> leaveSwarm();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#leaveSwarm(boolean)}.
+   */
+  CompletableFuture<Void> leaveSwarm(boolean force);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#updateSwarm(Long, SwarmSpec)}.
+   */
+  CompletableFuture<Void> updateSwarm(Long version, SwarmSpec spec);
+
+  /**
+   * Non-blocking variant of
+   * {@link DockerClient#updateSwarm(Long, boolean, boolean, boolean, SwarmSpec)}.
+   */
+  CompletableFuture<Void> updateSwarm(Long version, boolean rotateWorkerToken,
+                                      boolean rotateManagerToken,
+                                      boolean rotateManagerUnlockKey, SwarmSpec spec);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#unlockKey()}.
+   */
+  CompletableFuture<UnlockKey> unlockKey();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#unlock(UnlockKey)}.
+   */
+  CompletableFuture<Void> unlock(UnlockKey unlockKey);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createService(ServiceSpec)}.
+   * The registry auth is taken from the client's {@link RegistryAuthSupplier#authForSwarm()}, which
+   * runs on the calling thread.
+   */
+  CompletableFuture<ServiceCreateResponse> createService(ServiceSpec spec);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createService(ServiceSpec, RegistryAuth)}.
+   */
+  CompletableFuture<ServiceCreateResponse> createService(ServiceSpec spec,
+                                                         RegistryAuth config);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectService(String)}.
+   */
+  CompletableFuture<Service> inspectService(String serviceId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#updateService(String, Long, ServiceSpec)}.
+   * The registry auth is taken from the client's {@link RegistryAuthSupplier#authForSwarm()}, which
+   * runs on the calling thread.
+   */
+  CompletableFuture<Void> updateService(String serviceId, Long version, ServiceSpec spec);
+
+  /**
+   * Non-blocking variant of
+   * {@link DockerClient#updateService(String, Long, ServiceSpec, RegistryAuth)}.
+   */
+  CompletableFuture<Void> updateService(String serviceId, Long version, ServiceSpec spec,
+                                        RegistryAuth config);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listServices()}.
+   */
+  CompletableFuture<List<Service>> listServices();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listServices(Service.Criteria)}.
+   */
+  CompletableFuture<List<Service>> listServices(Service.Criteria criteria);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#removeService(String)}.
+   */
+  CompletableFuture<Void> removeService(String serviceId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectTask(String)}.
+   */
+  CompletableFuture<Task> inspectTask(String taskId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listTasks()}.
+   */
+  CompletableFuture<List<Task>> listTasks();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listTasks(Task.Criteria)}.
+   */
+  CompletableFuture<List<Task>> listTasks(Task.Criteria criteria);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listNodes()}.
+   */
+  CompletableFuture<List<Node>> listNodes();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listNodes(Node.Criteria)}.
+   */
+  CompletableFuture<List<Node>> listNodes(Node.Criteria criteria);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectNode(String)}.
+   */
+  CompletableFuture<NodeInfo> inspectNode(String nodeId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#updateNode(String, Long, NodeSpec)}.
+   */
+  CompletableFuture<Void> updateNode(String nodeId, Long version, NodeSpec nodeSpec);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#deleteNode(String)}.
+   */
+  CompletableFuture<Void> deleteNode(String nodeId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#deleteNode(String, boolean)}.
+   */
+  CompletableFuture<Void> deleteNode(String nodeId, boolean force);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listSecrets()}.
+   */
+  CompletableFuture<List<Secret>> listSecrets();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createSecret(SecretSpec)}.
+   */
+  CompletableFuture<SecretCreateResponse> createSecret(SecretSpec secret);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectSecret(String)}.
+   */
+  CompletableFuture<Secret> inspectSecret(String secretId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#deleteSecret(String)}.
+   */
+  CompletableFuture<Void> deleteSecret(String secretId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listConfigs()}.
+   */
+  CompletableFuture<List<Config>> listConfigs();
+
+  /**
+   * Non-blocking variant of {@link DockerClient#listConfigs(Config.Criteria)}.
+   */
+  CompletableFuture<List<Config>> listConfigs(Config.Criteria criteria);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#createConfig(ConfigSpec)}.
+   */
+  CompletableFuture<ConfigCreateResponse> createConfig(ConfigSpec config);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#inspectConfig(String)}.
+   */
+  CompletableFuture<Config> inspectConfig(String configId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#deleteConfig(String)}.
+   */
+  CompletableFuture<Void> deleteConfig(String configId);
+
+  /**
+   * Non-blocking variant of {@link DockerClient#updateConfig(String, Long, ConfigSpec)}.
+   */
+  CompletableFuture<Void> updateConfig(String configId, Long version, ConfigSpec spec);
+
+  /**
+   * Redefine to not throw checked exceptions.
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,632 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Striped;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.io.output.CloseShieldOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the archives of build contexts on disk so that a directory that is built again does not
+ * have to be read and compressed again.
+ *
+ * <p>Each directory gets its own folder in the cache. It holds the last archive of the
+ * directory, a manifest with the path, size, modification time, mode and content hash of every
+ * entry in it, and the parts of the archive (the segments) that hold the tar header and the
+ * content of each entry. When nothing in the directory changed, a build only walks the directory
+ * to compare it with the manifest and sends the last archive again. When some files changed,
+ * only those are read; the segments of the others are copied as they are. With gzip, every
+ * segment is a separate gzip member, so unchanged files are not compressed again either. This
+ * is also the case with {@link BuildContextCompression#PARALLEL_GZIP}: each segment is
+ * compressed on the calling thread, and the archive is the same as with
+ * {@link BuildContextCompression#GZIP}.</p>
+ *
+ * <p>Files are considered unchanged when their size, modification time and mode are the same as
+ * when they were last archived. Files that were modified shortly before they were archived, and
+ * files that only have a new modification time, are read again and compared by their content
+ * hash. If the content is the same, only their header is written again.</p>
+ *
+ * <p>A directory is archived by one thread at a time. The folder of the directory is also
+ * locked with a file lock, so a cache directory can be shared by several clients, including
+ * clients in other processes, as long as the file system supports file locks.</p>
+ */
+class BuildContextCache {
+
+  private static final Logger log = LoggerFactory.getLogger(BuildContextCache.class);
+
+  private static final int MANIFEST_VERSION = 2;
+
+  /**
+   * How long before an archive was made a file must have last been modified for its segment to
+   * be reused. This covers the two second resolution of the coarsest common file systems.
+   */
+  private static final long MODIFICATION_WINDOW_MILLIS = 2000;
+
+  private static final HashFunction HASH = Hashing.sha256();
+
+  private static final int TAR_RECORD_SIZE = 512;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final byte[] PADDING = new byte[TAR_RECORD_SIZE];
+
+  // Archives of different directories are made concurrently, the same directory one at a time.
+  // File locks are held by the whole JVM, so its threads are kept apart by these locks, which
+  // are shared by all caches since several clients may use the same cache directory.
+  private static final Striped<Lock> FOLDER_LOCKS = Striped.lazyWeakLock(64);
+
+  private final Path cacheDirectory;
+
+
+  private int reusedSegments;
+  private int writtenSegments;
+  private boolean reusedArchive;
+
+  BuildContextCache(final Path cacheDirectory) {
+    this.cacheDirectory = checkNotNull(cacheDirectory, "cacheDirectory");
+  }
+
+  /**
+   * Returns a stream of the archive of the directory, creating or updating it if the directory
+   * changed since it was last archived.
+   *
+   * @param directory   the directory to archive
+   * @param compression how the archive is compressed
+   * @return a stream of the archive
+   * @throws IOException if the archive could not be created
+   */
+  InputStream open(final Path directory, final BuildContextCompression compression)
+      throws IOException {
+    final Path root = directory.toRealPath();
+    final Path folder = cacheDirectory.resolve(
+        HASH.hashString(root.toString(), StandardCharsets.UTF_8).toString().substring(0, 32));
+    final Lock lock = FOLDER_LOCKS.get(folder);
+    lock.lock();
+    try {
+      Files.createDirectories(folder);
+      try (FileChannel lockChannel = FileChannel.open(folder.resolve("lock"), CREATE, WRITE);
+           FileLock ignored = lockChannel.lock()) {
+        return open(root, folder, compression);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private InputStream open(final Path root, final Path folder,
+                           final BuildContextCompression compression) throws IOException {
+    final Path manifestFile = folder.resolve("manifest");
+    final Path archive = folder.resolve("context");
+    final Path segments = folder.resolve("segments");
+    Files.createDirectories(segments);
+
+    final String ignoreHash = hash(root.resolve(".dockerignore"));
+    final Manifest previous = Manifest.read(manifestFile, compression, ignoreHash);
+
+    final long walkStarted = System.currentTimeMillis();
+    final List<Entry> entries = new ArrayList<>();
+    CompressedDirectory.walk(
+        root, CompressedDirectory.parseDockerIgnore(root.resolve(".dockerignore")),
+        (path, relativePath, attrs) -> entries.add(new Entry(path, relativePath, attrs)));
+
+    if (previous != null && previous.isUnchanged(entries) && Files.exists(archive)) {
+      log.debug("Reusing the archive of unchanged directory {}", root);
+      record(0, 0, true);
+      return Files.newInputStream(archive);
+    }
+
+    // The manifest is only written once the new archive is in place, so that a build that fails
+    // half way never leaves a manifest next to an archive that does not match it
+    Files.deleteIfExists(manifestFile);
+
+    int reused = 0;
+    int written = 0;
+    final Path tempArchive = Files.createTempFile(folder, "context-", ".tmp");
+    try {
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tempArchive),
+                                                       BUFFER_SIZE);
+           SegmentWriter writer = new SegmentWriter(compression)) {
+        for (final Entry entry : entries) {
+          final Entry cached = previous == null ? null : previous.reusable(entry);
+          if (cached != null && hasSegments(segments, cached, compression)) {
+            entry.contentHash = cached.contentHash;
+            entry.segment = cached.segment;
+            copySegments(segments, entry, compression, out);
+            reused++;
+            continue;
+          }
+
+          writer.writeHeader(entry, segments, out);
+          if (entry.directory) {
+            written++;
+            continue;
+          }
+          final Entry sameSize = previous == null ? null : previous.sameSize(entry);
+          if (sameSize != null && hasSegments(segments, sameSize, compression)
+              && contentHash(entry.path).equals(sameSize.contentHash)) {
+            entry.contentHash = sameSize.contentHash;
+            Files.copy(segments.resolve(contentSegment(compression, entry.contentHash)), out);
+            reused++;
+          } else {
+            writer.writeContent(entry, segments, out);
+            written++;
+          }
+        }
+        writer.writeEnd(out);
+      }
+      Files.move(tempArchive, archive, REPLACE_EXISTING, ATOMIC_MOVE);
+      new Manifest(compression, ignoreHash, walkStarted, entries).write(manifestFile);
+    } finally {
+      Files.deleteIfExists(tempArchive);
+    }
+    log.debug("Archived {}, reusing {} and writing {} entries", root, reused, written);
+    record(reused, written, false);
+
+    deleteUnused(segments, entries, compression);
+    return Files.newInputStream(archive);
+  }
+
+  private synchronized void record(final int reused, final int written,
+                                   final boolean archiveReused) {
+    this.reusedSegments = reused;
+    this.writtenSegments = written;
+    this.reusedArchive = archiveReused;
+  }
+
+  @VisibleForTesting
+  synchronized int reusedSegments() {
+    return reusedSegments;
+  }
+
+  @VisibleForTesting
+  synchronized int writtenSegments() {
+    return writtenSegments;
+  }
+
+  @VisibleForTesting
+  synchronized boolean reusedArchive() {
+    return reusedArchive;
+  }
+
+  private static String hash(final Path file) throws IOException {
+    try {
+      return HASH.hashBytes(Files.readAllBytes(file)).toString();
+    } catch (NoSuchFileException e) {
+      return "";
+    }
+  }
+
+  private static String contentHash(final Path file) throws IOException {
+    final Hasher hasher = HASH.newHasher();
+    try (InputStream in = Files.newInputStream(file)) {
+      ByteStreams.copy(in, Funnels.asOutputStream(hasher));
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Returns the name of the segment holding the content of files with the given hash, which
+   * files with the same content share.
+   */
+  private static String contentSegment(final BuildContextCompression compression,
+                                       final String contentHash) {
+    return HASH.newHasher()
+        .putString(compression.name(), StandardCharsets.UTF_8)
+        .putString(contentHash, StandardCharsets.UTF_8)
+        .hash().toString();
+  }
+
+  private static boolean hasSegments(final Path segments, final Entry entry,
+                                     final BuildContextCompression compression) {
+    return Files.exists(segments.resolve(entry.segment))
+           && (entry.directory
+               || Files.exists(segments.resolve(contentSegment(compression, entry.contentHash))));
+  }
+
+  private static void copySegments(final Path segments, final Entry entry,
+                                   final BuildContextCompression compression,
+                                   final OutputStream out) throws IOException {
+    Files.copy(segments.resolve(entry.segment), out);
+    if (!entry.directory) {
+      Files.copy(segments.resolve(contentSegment(compression, entry.contentHash)), out);
+    }
+  }
+
+  private static void deleteUnused(final Path segments, final List<Entry> entries,
+                                   final BuildContextCompression compression)
+      throws IOException {
+    final Set<String> used = new HashSet<>();
+    for (final Entry entry : entries) {
+      used.add(entry.segment);
+      if (!entry.directory) {
+        used.add(contentSegment(compression, entry.contentHash));
+      }
+    }
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(segments)) {
+      for (final Path segment : stream) {
+        if (!used.contains(segment.getFileName().toString())) {
+          Files.deleteIfExists(segment);
+        }
+      }
+    }
+  }
+
+  /**
+   * A directory or file in the archive.
+   */
+  private static class Entry {
+
+    private final Path path;
+    private final String name;
+    private final boolean directory;
+    private final long size;
+    private final long modified;
+    private final int mode;
+    private final BasicFileAttributes attrs;
+    private final Path relativePath;
+    private String contentHash = "";
+    private String segment;
+
+    private Entry(final Path path, final Path relativePath, final BasicFileAttributes attrs)
+        throws IOException {
+      this.path = path;
+      this.relativePath = relativePath;
+      this.attrs = attrs;
+      this.name = relativePath.toString();
+      this.directory = attrs.isDirectory();
+      this.size = directory ? 0 : attrs.size();
+      this.modified = attrs.lastModifiedTime().toMillis();
+      this.mode = CompressedDirectory.fileMode(path);
+    }
+
+    private Entry(final String name, final boolean directory, final long size,
+                  final long modified, final int mode, final String contentHash,
+                  final String segment) {
+      this.path = null;
+      this.relativePath = null;
+      this.attrs = null;
+      this.name = name;
+      this.directory = directory;
+      this.size = size;
+      this.modified = modified;
+      this.mode = mode;
+      this.contentHash = contentHash;
+      this.segment = segment;
+    }
+
+    private boolean sameAs(final Entry other) {
+      return name.equals(other.name) && directory == other.directory && size == other.size
+             && modified == other.modified && mode == other.mode;
+    }
+  }
+
+  /**
+   * The entries of the last archive of a directory.
+   */
+  private static class Manifest {
+
+    private final BuildContextCompression compression;
+    private final String ignoreHash;
+    private final long walkStarted;
+    private final List<Entry> entries;
+    private final Map<String, Entry> byName = new HashMap<>();
+
+    private Manifest(final BuildContextCompression compression, final String ignoreHash,
+                     final long walkStarted, final List<Entry> entries) {
+      this.compression = compression;
+      this.ignoreHash = ignoreHash;
+      this.walkStarted = walkStarted;
+      this.entries = entries;
+      for (final Entry entry : entries) {
+        byName.put(entry.name, entry);
+      }
+    }
+
+    /**
+     * Reads the manifest, or returns null if there is none or it was made with other settings.
+     */
+    private static Manifest read(final Path file, final BuildContextCompression compression,
+                                 final String ignoreHash) {
+      try (DataInputStream in = new DataInputStream(
+          new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE))) {
+        if (in.readInt() != MANIFEST_VERSION
+            || !in.readUTF().equals(compression.name())
+            || !in.readUTF().equals(ignoreHash)) {
+          return null;
+        }
+        final long walkStarted = in.readLong();
+        final int count = in.readInt();
+        final List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          entries.add(new Entry(in.readUTF(), in.readBoolean(), in.readLong(), in.readLong(),
+                                in.readInt(), in.readUTF(), in.readUTF()));
+        }
+        return new Manifest(compression, ignoreHash, walkStarted, entries);
+      } catch (NoSuchFileException e) {
+        return null;
+      } catch (IOException e) {
+        log.warn("Ignoring unreadable build context manifest {}", file, e);
+        return null;
+      }
+    }
+
+    private void write(final Path file) throws IOException {
+      final Path temp = Files.createTempFile(file.getParent(), "manifest-", ".tmp");
+      try {
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(temp), BUFFER_SIZE))) {
+          out.writeInt(MANIFEST_VERSION);
+          out.writeUTF(compression.name());
+          out.writeUTF(ignoreHash);
+          out.writeLong(walkStarted);
+          out.writeInt(entries.size());
+          for (final Entry entry : entries) {
+            out.writeUTF(entry.name);
+            out.writeBoolean(entry.directory);
+            out.writeLong(entry.size);
+            out.writeLong(entry.modified);
+            out.writeInt(entry.mode);
+            out.writeUTF(entry.contentHash);
+            out.writeUTF(entry.segment);
+          }
+        }
+        Files.move(temp, file, REPLACE_EXISTING, ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    /**
+     * Returns the cached entry if the given one has not changed since it was archived.
+     */
+    private Entry reusable(final Entry entry) {
+      final Entry cached = byName.get(entry.name);
+      return cached != null && cached.sameAs(entry)
+             && entry.modified < walkStarted - MODIFICATION_WINDOW_MILLIS
+             ? cached : null;
+    }
+
+    /**
+     * Returns the cached file of the same name and size, whose content may not have changed.
+     */
+    private Entry sameSize(final Entry entry) {
+      final Entry cached = byName.get(entry.name);
+      return cached != null && !cached.directory && cached.size == entry.size
+             && !cached.contentHash.isEmpty()
+             ? cached : null;
+    }
+
+    private boolean isUnchanged(final List<Entry> current) {
+      if (current.size() != entries.size()) {
+        return false;
+      }
+      for (int i = 0; i < current.size(); i++) {
+        final Entry entry = current.get(i);
+        if (!entries.get(i).sameAs(entry)
+            || entry.modified >= walkStarted - MODIFICATION_WINDOW_MILLIS) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Writes the segments of entries that are not in the cache, both to the archive and to the
+   * cache.
+   */
+  private static class SegmentWriter implements Closeable {
+
+    private final BuildContextCompression compression;
+    private final Deflater deflater;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    private SegmentWriter(final BuildContextCompression compression) {
+      this.compression = compression;
+      this.deflater = compression == BuildContextCompression.NONE
+                      ? null : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    }
+
+    /**
+     * Writes the tar header of an entry, along with the PAX header that precedes it when the
+     * name is long.
+     */
+    private void writeHeader(final Entry entry, final Path segments, final OutputStream archive)
+        throws IOException {
+      entry.segment = HASH.newHasher()
+          .putString(compression.name(), StandardCharsets.UTF_8)
+          .putString(entry.name, StandardCharsets.UTF_8)
+          .putBoolean(entry.directory)
+          .putLong(entry.size)
+          .putLong(entry.modified)
+          .putInt(entry.mode)
+          .hash().toString();
+      final Path temp = Files.createTempFile(segments, "segment-", ".tmp");
+      try {
+        try (OutputStream segmentOut = new BufferedOutputStream(Files.newOutputStream(temp),
+                                                                BUFFER_SIZE)) {
+          final OutputStream out = open(new TeeOutputStream(archive, segmentOut));
+          // With blocks of a single record the header is written out as soon as it is put. The
+          // content is written separately, so the entry is never closed.
+          final TarArchiveOutputStream tarOut =
+              CompressedDirectory.newTarOutputStream(out, TAR_RECORD_SIZE);
+          CompressedDirectory.putEntry(tarOut, entry.path, entry.relativePath, entry.attrs);
+          finish(out);
+        }
+        Files.move(temp, segments.resolve(entry.segment), REPLACE_EXISTING, ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    /**
+     * Writes the content of a file, padded to a full tar record.
+     */
+    private void writeContent(final Entry entry, final Path segments, final OutputStream archive)
+        throws IOException {
+      final Path temp = Files.createTempFile(segments, "segment-", ".tmp");
+      try {
+        final Hasher content = HASH.newHasher();
+        try (OutputStream segmentOut = new BufferedOutputStream(Files.newOutputStream(temp),
+                                                                BUFFER_SIZE)) {
+          final OutputStream out = open(new TeeOutputStream(archive, segmentOut));
+          long remaining = entry.size;
+          try (InputStream in = Files.newInputStream(entry.path)) {
+            int read = 0;
+            while (remaining > 0 && read != -1) {
+              read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+              if (read > 0) {
+                content.putBytes(buffer, 0, read);
+                out.write(buffer, 0, read);
+                remaining -= read;
+              }
+            }
+            if (remaining > 0 || in.read() != -1) {
+              throw new IOException("File changed size while it was archived: " + entry.path);
+            }
+          }
+          out.write(PADDING, 0, (int) ((TAR_RECORD_SIZE - entry.size % TAR_RECORD_SIZE)
+                                       % TAR_RECORD_SIZE));
+          finish(out);
+        }
+        entry.contentHash = content.hash().toString();
+        Files.move(temp, segments.resolve(contentSegment(compression, entry.contentHash)),
+                   REPLACE_EXISTING, ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    @Override
+    public void close() {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+
+    /**
+     * Writes the end of the archive, which is not cached.
+     */
+    private void writeEnd(final OutputStream archive) throws IOException {
+      final OutputStream out = open(archive);
+      out.write(PADDING);
+      out.write(PADDING);
+      finish(out);
+    }
+
+    private OutputStream open(final OutputStream out) throws IOException {
+      if (deflater == null) {
+        return new CloseShieldOutputStream(out);
+      }
+      deflater.reset();
+      return new GzipMemberOutputStream(out, deflater);
+    }
+
+    private static void finish(final OutputStream out) throws IOException {
+      if (out instanceof GzipMemberOutputStream) {
+        ((GzipMemberOutputStream) out).finish();
+      } else {
+        out.flush();
+      }
+    }
+  }
+
+  /**
+   * Writes one gzip member with a deflater that is reused for the next member.
+   */
+  private static class GzipMemberOutputStream extends DeflaterOutputStream {
+
+    private static final byte[] HEADER = {
+        0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff
+    };
+
+    private final CRC32 crc = new CRC32();
+
+    private GzipMemberOutputStream(final OutputStream out, final Deflater deflater)
+        throws IOException {
+      super(out, deflater, BUFFER_SIZE);
+      out.write(HEADER);
+    }
+
+    @Override
+    public void write(final byte[] buf, final int off, final int len) throws IOException {
+      super.write(buf, off, len);
+      crc.update(buf, off, len);
+    }
+
+    @Override
+    public void finish() throws IOException {
+      super.finish();
+      writeInt((int) crc.getValue());
+      writeInt((int) def.getBytesRead());
+    }
+
+    private void writeInt(final int value) throws IOException {
+      out.write(value & 0xff);
+      out.write((value >> 8) & 0xff);
+      out.write((value >> 16) & 0xff);
+      out.write((value >> 24) & 0xff);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+/**
+ * How build contexts and other directory archives are compressed before they are sent to
+ * Docker.
+ *
+ * @see DefaultDockerClient.Builder#buildContextCompression(BuildContextCompression)
+ */
+public enum BuildContextCompression {
+
+  /**
+   * Compress with gzip on the calling thread, or the thread streaming the context.
+   */
+  GZIP,
+
+  /**
+   * Compress with gzip on all cores. The archive is cut into blocks that are compressed in
+   * parallel and sent as concatenated gzip members, which Docker reads as a single stream. The
+   * result is slightly larger than with {@link #GZIP}. With a
+   * {@link DefaultDockerClient.Builder#buildContextCacheDirectory(java.nio.file.Path) build
+   * context cache}, files are compressed one by one on the calling thread as with {@link #GZIP}.
+   */
+  PARALLEL_GZIP,
+
+  /**
+   * Send an uncompressed tar. Compression only costs time when Docker runs on the same machine,
+   * for example behind a unix socket.
+   */
+  NONE
+}
@@ -0,0 +1,130 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.spotify.docker.client.DockerCredentialHelper.CredentialHelperDelegate;
+import com.spotify.docker.client.messages.DockerCredentialHelperAuth;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A credential helper delegate that remembers what {@code get} and {@code list} returned for a
+ * while, so that repeated lookups do not start a credential helper process each time. Concurrent
+ * lookups of the same credentials wait for a single invocation of the helper. Failures are not
+ * remembered, and {@code store} and {@code erase} drop what was remembered for the credentials
+ * they change.
+ */
+class CachingCredentialHelperDelegate implements CredentialHelperDelegate {
+
+  private final CredentialHelperDelegate delegate;
+  // Keyed by credsStore and registry
+  private final Cache<List<String>, Optional<DockerCredentialHelperAuth>> credentials;
+  // Keyed by credsStore
+  private final Cache<String, Optional<Map<String, String>>> lists;
+
+  CachingCredentialHelperDelegate(final CredentialHelperDelegate delegate, final long ttl,
+                                  final TimeUnit unit, final Ticker ticker) {
+    this.delegate = delegate;
+    this.credentials = CacheBuilder.newBuilder()
+        .expireAfterWrite(ttl, unit)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+    this.lists = CacheBuilder.newBuilder()
+        .expireAfterWrite(ttl, unit)
+        .ticker(ticker)
+        .recordStats()
+        .build();
+  }
+
+  @Override
+  public int store(final String credsStore, final DockerCredentialHelperAuth auth)
+      throws IOException, InterruptedException {
+    try {
+      return delegate.store(credsStore, auth);
+    } finally {
+      credentials.invalidate(Arrays.asList(credsStore, auth.serverUrl()));
+      lists.invalidate(credsStore);
+    }
+  }
+
+  @Override
+  public int erase(final String credsStore, final String registry)
+      throws IOException, InterruptedException {
+    try {
+      return delegate.erase(credsStore, registry);
+    } finally {
+      credentials.invalidate(Arrays.asList(credsStore, registry));
+      lists.invalidate(credsStore);
+    }
+  }
+
+  @Override
+  public DockerCredentialHelperAuth get(final String credsStore, final String registry)
+      throws IOException {
+    return load(credentials, Arrays.asList(credsStore, registry),
+        () -> Optional.ofNullable(delegate.get(credsStore, registry))).orElse(null);
+  }
+
+  @Override
+  public Map<String, String> list(final String credsStore) throws IOException {
+    return load(lists, credsStore,
+        () -> Optional.ofNullable(delegate.list(credsStore))).orElse(null);
+  }
+
+  /**
+   * Returns the combined hit and miss counts of {@code get} and {@code list}.
+   */
+  CacheStats stats() {
+    return credentials.stats().plus(lists.stats());
+  }
+
+  private static <K, V> V load(final Cache<K, V> cache, final K key, final Callable<V> loader)
+      throws IOException {
+    try {
+      return cache.get(key, loader);
+    } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+}
@@ -0,0 +1,686 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.spotify.docker.client.DockerClient.ListContainersParam.allContainers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.spotify.docker.client.EventHub.OverflowPolicy;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerUpdate;
+import com.spotify.docker.client.messages.Event;
+import com.spotify.docker.client.messages.HostConfig;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link DockerClient} that answers {@link #listContainers(ListContainersParam...)} and
+ * {@link #inspectContainer(String)} from memory.
+ *
+ * <p>The containers are loaded once with {@code listContainers(allContainers())} and kept current
+ * with the container events from the daemon: an event marks its container as changed, and the
+ * next read fetches only the changed containers. Containers are inspected on first use and
+ * cached until an event for them arrives. Events name containers by their full ID, so results
+ * are cached under the full ID, and a name or ID prefix a container was inspected by is
+ * remembered until the next event for that container. When the event stream is lost every read
+ * goes to the daemon, and when it reconnects the whole index is reloaded, since events may have
+ * been missed in between.</p>
+ *
+ * <p>Containers changed through this client are refreshed on the next read without waiting for
+ * their events. A read can still miss a change made elsewhere whose event hasn't arrived yet;
+ * {@link Builder#maxStaleness(long, TimeUnit)} bounds how long anything is served from memory.
+ * Listing with parameters the cache can't evaluate locally, such as {@code size}, {@code limit}
+ * or {@code exited}, goes to the daemon.</p>
+ *
+ * <p>Every other call is forwarded to the wrapped client, which is closed along with this
+ * one.</p>
+ */
+public class CachingDockerClient extends ForwardingDockerClient {
+
+  /**
+   * When more containers than this have changed, the next read reloads all of them instead of
+   * asking for the changed ones by ID.
+   */
+  static final int MAX_PARTIAL_REFRESH = 50;
+
+  private static final int EVENT_QUEUE_CAPACITY = 4096;
+
+  // Container events that change neither the list entry nor the inspect result
+  private static final Set<String> READ_ONLY_ACTIONS = ImmutableSet.of(
+      "attach", "detach", "top", "resize", "export", "commit", "copy", "archive-path");
+
+  private static final Pattern FULL_ID = Pattern.compile("[0-9a-f]{64}");
+
+  private static final Comparator<Container> NEWEST_FIRST = Comparator.comparing(
+      Container::created, Comparator.nullsLast(Comparator.<Long>reverseOrder()));
+
+  private final DockerClient delegate;
+  private final long maxStalenessNanos;
+  private final EventHub hub;
+  private final Object refreshLock = new Object();
+
+  private volatile boolean connected;
+
+  // Guarded by this
+  private EventHub.Subscription events;
+  private final Map<String, Container> containers = new HashMap<>();
+  private final Set<String> changed = new HashSet<>();
+  private final Map<String, CachedInfo> infos = new HashMap<>();
+  // Names and ID prefixes containers were inspected by, and the other way around
+  private final Map<String, String> aliases = new HashMap<>();
+  private final Map<String, Set<String>> aliasesById = new HashMap<>();
+  private boolean resync = true;
+  private long syncedAt;
+  // Lets inspections that race with an event avoid caching what they fetched
+  private long epoch;
+  private long resyncEpoch;
+  private final Map<String, Long> invalidatedAt = new HashMap<>();
+  private int inspecting;
+
+  private CachingDockerClient(final Builder builder) {
+    this.delegate = builder.docker;
+    this.maxStalenessNanos = builder.maxStalenessNanos;
+    this.hub = EventHub.builder(delegate)
+        .filters(EventsParam.type(Event.Type.CONTAINER))
+        .reconnectDelay(builder.reconnectDelayMillis, TimeUnit.MILLISECONDS)
+        .connectionListener(new EventHub.ConnectionListener() {
+          @Override
+          public void connected() {
+            synchronized (CachingDockerClient.this) {
+              invalidateAll();
+              connected = true;
+            }
+          }
+
+          @Override
+          public void disconnected() {
+            connected = false;
+          }
+        })
+        .build();
+    synchronized (this) {
+      this.events = subscribe();
+    }
+  }
+
+  public static Builder builder(final DockerClient docker) {
+    return new Builder(docker);
+  }
+
+  @Override
+  protected DockerClient delegate() {
+    return delegate;
+  }
+
+  /**
+   * Returns true if the cache is following the event stream and reads are answered from memory.
+   *
+   * @return true if the cache is in use
+   */
+  public boolean isConnected() {
+    return connected;
+  }
+
+  @Override
+  public List<Container> listContainers(final ListContainersParam... params)
+      throws DockerException, InterruptedException {
+    final Predicate<Container> filter = filter(params);
+    if (filter == null || !connected) {
+      return delegate.listContainers(params);
+    }
+    final List<Container> selected = new ArrayList<>();
+    for (final Container container : containers()) {
+      if (filter.test(container)) {
+        selected.add(container);
+      }
+    }
+    selected.sort(NEWEST_FIRST);
+    return selected;
+  }
+
+  @Override
+  public ContainerInfo inspectContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    if (!connected) {
+      return delegate.inspectContainer(containerId);
+    }
+
+    final long start;
+    synchronized (this) {
+      drainEvents();
+      final CachedInfo cached = infos.get(aliases.getOrDefault(containerId, containerId));
+      if (cached != null && !isStale(cached.fetchedAt)) {
+        return cached.info;
+      }
+      start = epoch;
+      inspecting++;
+    }
+
+    final long fetchedAt = System.nanoTime();
+    ContainerInfo info = null;
+    try {
+      info = delegate.inspectContainer(containerId);
+      return info;
+    } finally {
+      synchronized (this) {
+        inspecting--;
+        final String id = info == null || info.id() == null ? containerId : info.id();
+        if (info != null && resyncEpoch <= start
+            && !invalidatedSince(start, containerId) && !invalidatedSince(start, id)) {
+          infos.put(id, new CachedInfo(info, fetchedAt));
+          if (!containerId.equals(id)) {
+            aliases.put(containerId, id);
+            aliasesById.computeIfAbsent(id, key -> new HashSet<>()).add(containerId);
+          }
+        }
+        if (inspecting == 0) {
+          invalidatedAt.clear();
+        }
+      }
+    }
+  }
+
+  @Override
+  public ContainerCreation createContainer(final ContainerConfig config)
+      throws DockerException, InterruptedException {
+    final ContainerCreation creation = delegate.createContainer(config);
+    invalidate(creation.id());
+    return creation;
+  }
+
+  @Override
+  public ContainerCreation createContainer(final ContainerConfig config, final String name)
+      throws DockerException, InterruptedException {
+    final ContainerCreation creation = delegate.createContainer(config, name);
+    invalidate(creation.id());
+    return creation;
+  }
+
+  @Override
+  public void startContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.startContainer(containerId);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void stopContainer(final String containerId, final int secondsToWaitBeforeKilling)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.stopContainer(containerId, secondsToWaitBeforeKilling);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void restartContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.restartContainer(containerId);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void restartContainer(final String containerId, final int secondsToWaitBeforeRestart)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.restartContainer(containerId, secondsToWaitBeforeRestart);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void killContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.killContainer(containerId);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void killContainer(final String containerId, final Signal signal)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.killContainer(containerId, signal);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void pauseContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.pauseContainer(containerId);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void unpauseContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.unpauseContainer(containerId);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void renameContainer(final String containerId, final String name)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.renameContainer(containerId, name);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public ContainerUpdate updateContainer(final String containerId, final HostConfig config)
+      throws DockerException, InterruptedException {
+    try {
+      return delegate.updateContainer(containerId, config);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void removeContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.removeContainer(containerId);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  public void removeContainer(final String containerId, final RemoveContainerParam... params)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.removeContainer(containerId, params);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  @Override
+  @Deprecated
+  public void removeContainer(final String containerId, final boolean removeVolumes)
+      throws DockerException, InterruptedException {
+    try {
+      delegate.removeContainer(containerId, removeVolumes);
+    } finally {
+      invalidate(containerId);
+    }
+  }
+
+  /**
+   * Stops following the event stream and closes the wrapped client.
+   */
+  @Override
+  public void close() {
+    connected = false;
+    hub.close();
+    delegate.close();
+  }
+
+  /**
+   * Returns the cached containers, first fetching the ones that changed since the last read.
+   */
+  private Collection<Container> containers() throws DockerException, InterruptedException {
+    synchronized (refreshLock) {
+      final boolean full;
+      final List<String> ids;
+      synchronized (this) {
+        drainEvents();
+        if (resync || isStale(syncedAt) || changed.size() > MAX_PARTIAL_REFRESH) {
+          full = true;
+          ids = ImmutableList.of();
+          resync = false;
+        } else if (!changed.isEmpty()) {
+          full = false;
+          ids = new ArrayList<>(changed);
+        } else {
+          return ImmutableList.copyOf(containers.values());
+        }
+        changed.clear();
+      }
+
+      final long fetchedAt = System.nanoTime();
+      final List<Container> fetched;
+      try {
+        fetched = delegate.listContainers(refreshParams(ids));
+      } catch (DockerException | InterruptedException | RuntimeException e) {
+        synchronized (this) {
+          if (full) {
+            resync = true;
+          } else {
+            changed.addAll(ids);
+          }
+        }
+        throw e;
+      }
+
+      synchronized (this) {
+        if (full) {
+          containers.clear();
+          syncedAt = fetchedAt;
+        } else {
+          containers.keySet().removeAll(ids);
+        }
+        for (final Container container : fetched) {
+          if (full || ids.contains(container.id())) {
+            containers.put(container.id(), container);
+          }
+        }
+        return ImmutableList.copyOf(containers.values());
+      }
+    }
+  }
+
+  private static ListContainersParam[] refreshParams(final List<String> ids) {
+    final ListContainersParam[] params = new ListContainersParam[ids.size() + 1];
+    params[0] = allContainers();
+    for (int i = 0; i < ids.size(); i++) {
+      params[i + 1] = ListContainersParam.filter("id", ids.get(i));
+    }
+    return params;
+  }
+
+  private EventHub.Subscription subscribe() {
+    return hub.subscribe(event -> true, EVENT_QUEUE_CAPACITY, OverflowPolicy.CLOSE);
+  }
+
+  private synchronized void drainEvents() {
+    if (events.overflowed()) {
+      // Events were lost, so nothing cached can be trusted
+      events = subscribe();
+      invalidateAll();
+    }
+    Event event;
+    try {
+      while ((event = events.poll(0, TimeUnit.NANOSECONDS)) != null) {
+        apply(event);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void apply(final Event event) {
+    final String action = event.action();
+    final Event.Actor actor = event.actor();
+    if (action == null || actor == null || actor.id() == null) {
+      invalidateAll();
+      return;
+    }
+    if (READ_ONLY_ACTIONS.contains(action) || action.startsWith("exec_")) {
+      return;
+    }
+    invalidate(actor.id());
+  }
+
+  /**
+   * Marks a container as changed. Changes made through this client may name the container by a
+   * name or an ID prefix, so everything that reference may stand for is invalidated.
+   */
+  private synchronized void invalidate(final String containerId) {
+    epoch++;
+    final Set<String> ids = new HashSet<>();
+    ids.add(containerId);
+    final String alias = aliases.get(containerId);
+    if (alias != null) {
+      ids.add(alias);
+    }
+    if (!FULL_ID.matcher(containerId).matches()) {
+      for (final Container container : containers.values()) {
+        if (refersTo(containerId, container.id(), container.names())) {
+          ids.add(container.id());
+        }
+      }
+      for (final CachedInfo cached : infos.values()) {
+        if (refersTo(containerId, cached.info.id(),
+                     Collections.singletonList(cached.info.name()))) {
+          ids.add(cached.info.id());
+        }
+      }
+    }
+
+    for (final String id : ids) {
+      changed.add(id);
+      infos.remove(id);
+      forgetAliases(id);
+      if (inspecting > 0) {
+        invalidatedAt.put(id, epoch);
+      }
+    }
+    aliases.remove(containerId);
+  }
+
+  private static boolean refersTo(final String reference, final String id,
+                                  final List<String> names) {
+    return id != null && id.startsWith(reference)
+           || names != null && names.contains("/" + reference);
+  }
+
+  private void forgetAliases(final String id) {
+    final Set<String> forgotten = aliasesById.remove(id);
+    if (forgotten != null) {
+      aliases.keySet().removeAll(forgotten);
+    }
+  }
+
+  private boolean invalidatedSince(final long start, final String containerId) {
+    final Long invalidated = invalidatedAt.get(containerId);
+    return invalidated != null && invalidated > start;
+  }
+
+  private synchronized void invalidateAll() {
+    resync = true;
+    changed.clear();
+    infos.clear();
+    aliases.clear();
+    aliasesById.clear();
+    epoch++;
+    resyncEpoch = epoch;
+  }
+
+  private boolean isStale(final long fetchedAt) {
+    return maxStalenessNanos > 0 && System.nanoTime() - fetchedAt > maxStalenessNanos;
+  }
+
+  /**
+   * Returns a predicate that selects the containers the daemon would list for the given
+   * parameters, or null if they can't be evaluated locally.
+   */
+  static Predicate<Container> filter(final ListContainersParam... params) {
+    boolean all = false;
+    final Map<String, List<String>> filters = new HashMap<>();
+    for (final ListContainersParam param : params) {
+      if (param instanceof FilterParam) {
+        filters.computeIfAbsent(param.name(), key -> new ArrayList<>()).add(param.value());
+      } else if ("all".equals(param.name())) {
+        all = "1".equals(param.value()) || "true".equals(param.value());
+      } else {
+        return null;
+      }
+    }
+    // The daemon lists stopped containers too when asked for them by status
+    all |= filters.containsKey("status");
+
+    Predicate<Container> predicate = container -> true;
+    if (!all) {
+      predicate = CachingDockerClient::isRunning;
+    }
+    for (final Map.Entry<String, List<String>> entry : filters.entrySet()) {
+      final List<String> values = entry.getValue();
+      switch (entry.getKey()) {
+        case "status":
+          predicate = predicate.and(container -> values.contains(container.state()));
+          break;
+        case "label":
+          predicate = predicate.and(container -> hasLabels(container, values));
+          break;
+        case "id":
+          final List<Pattern> ids = patterns(values);
+          predicate = predicate.and(container -> matchesAny(ids, container.id()));
+          break;
+        case "name":
+          final List<Pattern> names = patterns(values);
+          predicate = predicate.and(container -> container.names() != null
+              && container.names().stream().anyMatch(name -> matchesAny(names, name)));
+          break;
+        default:
+          return null;
+      }
+    }
+    return predicate;
+  }
+
+  private static boolean isRunning(final Container container) {
+    final String state = container.state();
+    if (state == null) {
+      // Daemons before API 1.23 only report the human readable status
+      final String status = container.status();
+      return status != null && (status.startsWith("Up") || status.startsWith("Restarting"));
+    }
+    // Paused and restarting containers are running too
+    return "running".equals(state) || "paused".equals(state) || "restarting".equals(state);
+  }
+
+  private static boolean hasLabels(final Container container, final List<String> labels) {
+    for (final String label : labels) {
+      final int equals = label.indexOf('=');
+      final String key = equals < 0 ? label : label.substring(0, equals);
+      final String value = container.labels() == null ? null : container.labels().get(key);
+      if (value == null || (equals >= 0 && !value.equals(label.substring(equals + 1)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static List<Pattern> patterns(final List<String> values) {
+    final List<Pattern> patterns = new ArrayList<>(values.size());
+    for (final String value : values) {
+      patterns.add(Pattern.compile(value));
+    }
+    return patterns;
+  }
+
+  private static boolean matchesAny(final List<Pattern> patterns, final String value) {
+    for (final Pattern pattern : patterns) {
+      if (pattern.matcher(value).find()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class CachedInfo {
+
+    private final ContainerInfo info;
+    private final long fetchedAt;
+
+    CachedInfo(final ContainerInfo info, final long fetchedAt) {
+      this.info = info;
+      this.fetchedAt = fetchedAt;
+    }
+  }
+
+  public static class Builder {
+
+    private final DockerClient docker;
+    private long maxStalenessNanos;
+    private long reconnectDelayMillis = EventHub.DEFAULT_RECONNECT_DELAY_MILLIS;
+
+    private Builder(final DockerClient docker) {
+      this.docker = checkNotNull(docker, "docker");
+    }
+
+    /**
+     * Set how long a container may be served from memory before it is fetched again, even if
+     * no event said it changed. By default the cache relies on events alone.
+     *
+     * @param maxStaleness the maximum age, or 0 for no limit
+     * @param unit         the unit of the age
+     * @return Builder
+     */
+    public Builder maxStaleness(final long maxStaleness, final TimeUnit unit) {
+      checkArgument(maxStaleness >= 0, "maxStaleness must not be negative");
+      this.maxStalenessNanos = unit.toNanos(maxStaleness);
+      return this;
+    }
+
+    /**
+     * Set how long to wait before reconnecting when the event stream ends or fails.
+     *
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return Builder
+     */
+    public Builder reconnectDelay(final long delay, final TimeUnit unit) {
+      checkArgument(delay >= 0, "delay must not be negative");
+      this.reconnectDelayMillis = unit.toMillis(delay);
+      return this;
+    }
+
+    /**
+     * Create the client and start following the event stream.
+     *
+     * @return the caching client
+     */
+    public CachingDockerClient build() {
+      return new CachingDockerClient(this);
+    }
+  }
+}
@@ -25,11 +25,18 @@ import static org.apache.commons.compress.archivers.tar.TarArchiveOutputStream.B
 import static org.apache.commons.compress.archivers.tar.TarArchiveOutputStream.LONGFILE_POSIX;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableList;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -44,7 +51,11 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.PosixFileAttributes;
 import java.nio.file.attribute.PosixFilePermission;
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -56,7 +67,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * This helper class is used during the docker build command to create a gzip tarball of a directory
- * containing a Dockerfile.
+ * containing a Dockerfile. The tarball can also be compressed on several threads, or not at all,
+ * see {@link BuildContextCompression}.
  */
 class CompressedDirectory implements Closeable {
 
@@ -75,6 +87,11 @@ class CompressedDirectory implements Closeable {
    */
   private static final String POSIX_FILE_VIEW = "posix";
 
+  /**
+   * Size of the buffers between the thread writing a streamed archive and its reader.
+   */
+  private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
   private final Path file;
 
   private CompressedDirectory(Path file) {
@@ -101,22 +118,26 @@ class CompressedDirectory implements Closeable {
    * @throws IOException if the compressed directory could not be created.
    */
   public static CompressedDirectory create(final Path directory) throws IOException {
-    final Path file = Files.createTempFile("docker-client-", ".tar.gz");
-
-    final Path dockerIgnorePath = directory.resolve(".dockerignore");
-    final ImmutableList<DockerIgnorePathMatcher> ignoreMatchers =
-        parseDockerIgnore(dockerIgnorePath);
+    return create(directory, BuildContextCompression.GZIP);
+  }
 
-    try (final OutputStream fileOut = Files.newOutputStream(file);
-         final GzipCompressorOutputStream gzipOut = new GzipCompressorOutputStream(fileOut);
-         final TarArchiveOutputStream tarOut = new TarArchiveOutputStream(gzipOut)) {
-      tarOut.setLongFileMode(LONGFILE_POSIX);
-      tarOut.setBigNumberMode(BIGNUMBER_POSIX);
-      Files.walkFileTree(directory,
-                         EnumSet.of(FileVisitOption.FOLLOW_LINKS),
-                         Integer.MAX_VALUE,
-                         new Visitor(directory, ignoreMatchers, tarOut));
+  /**
+   * This method creates a tarball of the specified directory, compressed as given. Otherwise it
+   * works like {@link #create(Path)}.
+   *
+   * @param directory   the directory to archive
+   * @param compression how to compress the archive
+   * @return a Path object representing the compressed directory
+   * @throws IOException if the compressed directory could not be created.
+   */
+  public static CompressedDirectory create(final Path directory,
+                                           final BuildContextCompression compression)
+      throws IOException {
+    final Path file = Files.createTempFile(
+        "docker-client-", compression == BuildContextCompression.NONE ? ".tar" : ".tar.gz");
 
+    try (final OutputStream fileOut = Files.newOutputStream(file)) {
+      write(directory, fileOut, compression);
     } catch (Throwable t) {
       // If an error occurs, delete temporary file before rethrowing exclude.
       try {
@@ -132,6 +153,129 @@ class CompressedDirectory implements Closeable {
     return new CompressedDirectory(file);
   }
 
+  /**
+   * This method creates a gzip tarball of the specified directory on a background thread and
+   * returns a stream of the archive as it is being written, so that the archive can be uploaded
+   * while it is created. No temporary file is used and only a bounded part of the archive is held
+   * in memory. Errors that occur while creating the archive are rethrown when reading from the
+   * returned stream. Closing the stream stops the background thread.
+   *
+   * @param directory the directory to compress
+   * @return a stream of the gzip tarball
+   * @throws IOException if the stream could not be set up.
+   */
+  public static InputStream stream(final Path directory) throws IOException {
+    return stream(directory, BuildContextCompression.GZIP);
+  }
+
+  /**
+   * This method streams a tarball of the specified directory, compressed as given. Otherwise it
+   * works like {@link #stream(Path)}.
+   *
+   * @param directory   the directory to archive
+   * @param compression how to compress the archive
+   * @return a stream of the tarball
+   * @throws IOException if the stream could not be set up.
+   */
+  public static InputStream stream(final Path directory,
+                                   final BuildContextCompression compression)
+      throws IOException {
+    final PipedInputStream in = new PipedInputStream(STREAM_BUFFER_SIZE);
+    final ArchiveStream archive =
+        new ArchiveStream(directory, compression, in, new PipedOutputStream(in));
+    archive.start();
+    return archive;
+  }
+
+  /**
+   * Writes a tarball of the specified directory to the given stream and closes it.
+   */
+  private static void write(final Path directory, final OutputStream out,
+                            final BuildContextCompression compression) throws IOException {
+    final Path dockerIgnorePath = directory.resolve(".dockerignore");
+    final ImmutableList<DockerIgnorePathMatcher> ignoreMatchers =
+        parseDockerIgnore(dockerIgnorePath);
+
+    try (final OutputStream compressedOut = compress(out, compression);
+         final TarArchiveOutputStream tarOut = newTarOutputStream(compressedOut)) {
+      walk(directory, ignoreMatchers, (path, relativePath, attrs) -> {
+        putEntry(tarOut, path, relativePath, attrs);
+        if (!attrs.isDirectory()) {
+          Files.copy(path, tarOut);
+        }
+        tarOut.closeArchiveEntry();
+      });
+    }
+  }
+
+  static TarArchiveOutputStream newTarOutputStream(final OutputStream out) {
+    return configure(new TarArchiveOutputStream(out));
+  }
+
+  static TarArchiveOutputStream newTarOutputStream(final OutputStream out, final int blockSize) {
+    return configure(new TarArchiveOutputStream(out, blockSize));
+  }
+
+  private static TarArchiveOutputStream configure(final TarArchiveOutputStream tarOut) {
+    tarOut.setLongFileMode(LONGFILE_POSIX);
+    tarOut.setBigNumberMode(BIGNUMBER_POSIX);
+    return tarOut;
+  }
+
+  /**
+   * Calls the visitor for every directory and file below the specified directory that is not
+   * excluded by the given .dockerignore patterns, in the order they go into the archive.
+   */
+  static void walk(final Path directory,
+                   final ImmutableList<DockerIgnorePathMatcher> ignoreMatchers,
+                   final EntryVisitor visitor) throws IOException {
+    Files.walkFileTree(directory,
+                       EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                       Integer.MAX_VALUE,
+                       new Visitor(directory, new DockerIgnoreMatchers(ignoreMatchers), visitor));
+  }
+
+  /**
+   * Starts the archive entry of a directory or file. The caller writes the content of a file and
+   * closes the entry.
+   */
+  static void putEntry(final TarArchiveOutputStream tarOut, final Path path,
+                       final Path relativePath, final BasicFileAttributes attrs)
+      throws IOException {
+    final TarArchiveEntry entry = new TarArchiveEntry(path.toFile());
+    entry.setName(relativePath.toString());
+    entry.setMode(fileMode(path));
+    if (!attrs.isDirectory()) {
+      entry.setSize(attrs.size());
+    }
+    tarOut.putArchiveEntry(entry);
+  }
+
+  static int fileMode(final Path path) throws IOException {
+    return Visitor.getFileMode(path);
+  }
+
+  /**
+   * Receives the directories and files that go into an archive.
+   */
+  interface EntryVisitor {
+
+    void visit(Path path, Path relativePath, BasicFileAttributes attrs) throws IOException;
+  }
+
+  private static OutputStream compress(final OutputStream out,
+                                       final BuildContextCompression compression)
+      throws IOException {
+    switch (compression) {
+      case PARALLEL_GZIP:
+        return new ParallelGzipOutputStream(out);
+      case NONE:
+        return out;
+      default:
+        return new GzipCompressorOutputStream(out);
+    }
+  }
+
   @Override
   public void close() throws IOException {
     Files.delete(file);
@@ -250,19 +394,107 @@ class CompressedDirectory implements Closeable {
     }
   }
 
+  /**
+   * Reads the archive of a directory while it is written by a background thread.
+   */
+  private static class ArchiveStream extends FilterInputStream implements Runnable {
+
+    private final Path directory;
+    private final BuildContextCompression compression;
+    private final OutputStream out;
+    private final Thread producer;
+    private volatile Throwable failure;
+
+    private ArchiveStream(final Path directory, final BuildContextCompression compression,
+                          final PipedInputStream in, final PipedOutputStream out) {
+      super(in);
+      this.directory = directory;
+      this.compression = compression;
+      this.out = new BufferedOutputStream(out, STREAM_BUFFER_SIZE);
+      this.producer = new Thread(this, "docker-client-compress-" + directory.getFileName());
+      this.producer.setDaemon(true);
+    }
+
+    private void start() {
+      producer.start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        write(directory, out, compression);
+      } catch (Throwable t) {
+        failure = t;
+        try {
+          out.close();
+        } catch (IOException e) {
+          t.addSuppressed(e);
+        }
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        final int b = super.read();
+        if (b == -1) {
+          checkProducer();
+        }
+        return b;
+      } catch (IOException e) {
+        checkProducer();
+        throw e;
+      }
+    }
+
+    @Override
+    public int read(final byte[] buf, final int off, final int len) throws IOException {
+      try {
+        final int n = super.read(buf, off, len);
+        if (n == -1) {
+          checkProducer();
+        }
+        return n;
+      } catch (IOException e) {
+        checkProducer();
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      producer.interrupt();
+      super.close();
+    }
+
+    /**
+     * Rethrows the error of the producer, if any. The producer may close the pipe before it has
+     * recorded its failure, so wait for it to finish first.
+     */
+    private void checkProducer() throws IOException {
+      try {
+        producer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while waiting for " + producer.getName());
+      }
+      if (failure != null) {
+        throw new IOException("Failed to create archive of " + directory, failure);
+      }
+    }
+  }
+
   private static class Visitor extends SimpleFileVisitor<Path> {
 
     private final Path root;
-    private final ImmutableList<DockerIgnorePathMatcher> ignoreMatchers;
-    private final TarArchiveOutputStream tarStream;
+    private final DockerIgnoreMatchers ignoreMatchers;
+    private final EntryVisitor visitor;
 
-    private Visitor(final Path root, ImmutableList<DockerIgnorePathMatcher> ignoreMatchers,
-                    final TarArchiveOutputStream tarStream) {
+    private Visitor(final Path root, final DockerIgnoreMatchers ignoreMatchers,
+                    final EntryVisitor visitor) {
       this.root = root;
-      // .dockerignore matchers need to be read from the bottom of the file, 
-      // so the given list should be reversed before using it.
-      this.ignoreMatchers = ignoreMatchers.reverse();
-      this.tarStream = tarStream;
+      this.ignoreMatchers = ignoreMatchers;
+      this.visitor = visitor;
     }
 
     @Override
@@ -274,15 +506,14 @@ class CompressedDirectory implements Closeable {
 
       final Path relativePath = root.relativize(dir);
 
-      if (exclude(ignoreMatchers, relativePath)) {
-        return FileVisitResult.CONTINUE;
+      if (ignoreMatchers.exclude(relativePath)) {
+        // Don't walk ignored trees like .git or node_modules unless an exception can apply
+        return ignoreMatchers.mayIncludeBelow(relativePath)
+               ? FileVisitResult.CONTINUE
+               : FileVisitResult.SKIP_SUBTREE;
       }
 
-      final TarArchiveEntry entry = new TarArchiveEntry(dir.toFile());
-      entry.setName(relativePath.toString());
-      entry.setMode(getFileMode(dir));
-      tarStream.putArchiveEntry(entry);
-      tarStream.closeArchiveEntry();
+      visitor.visit(dir, relativePath, attrs);
       return FileVisitResult.CONTINUE;
     }
 
@@ -291,36 +522,14 @@ class CompressedDirectory implements Closeable {
 
       final Path relativePath = root.relativize(file);
 
-      if (exclude(ignoreMatchers, relativePath)) {
+      if (ignoreMatchers.exclude(relativePath)) {
         return FileVisitResult.CONTINUE;
       }
 
-      final TarArchiveEntry entry = new TarArchiveEntry(file.toFile());
-      entry.setName(relativePath.toString());
-      entry.setMode(getFileMode(file));
-      entry.setSize(attrs.size());
-      tarStream.putArchiveEntry(entry);
-      Files.copy(file, tarStream);
-      tarStream.closeArchiveEntry();
+      visitor.visit(file, relativePath, attrs);
       return FileVisitResult.CONTINUE;
     }
 
-    /**
-     * Checks if any of the given {@link DockerIgnorePathMatcher} matches the given {@code path}.
-     *
-     * @param matchers the {@link DockerIgnorePathMatcher} to use
-     * @param path     the path to match
-     * @return <code>true</code> if the given path should be excluded, <code>false</code> otherwise
-     */
-    private static boolean exclude(ImmutableList<DockerIgnorePathMatcher> matchers, Path path) {
-      for (final DockerIgnorePathMatcher matcher : matchers) {
-        if (matcher.matches(path)) {
-          return matcher.isExclude();
-        }
-      }
-      return false;
-    }
-
     private static int getFileMode(Path file) throws IOException {
       if (isPosixComplantFs()) {
         return getPosixFileMode(file);
@@ -376,6 +585,126 @@ class CompressedDirectory implements Closeable {
 
   }
 
+  /**
+   * The patterns of a .dockerignore file, indexed by the first path element they can match so
+   * that a path is only tested against the patterns that can possibly match it. As in Docker, the
+   * last matching pattern decides whether a path is excluded.
+   */
+  private static class DockerIgnoreMatchers {
+
+    /**
+     * Characters that make a path element a pattern rather than a literal name.
+     */
+    private static final CharMatcher WILDCARDS = CharMatcher.anyOf("*?[\\");
+
+    /**
+     * Patterns whose first path element is a literal name, keyed by that name. Each list is in
+     * reverse file order, so the first match in a list is its last matching pattern.
+     */
+    private final Map<String, List<IndexedMatcher>> byFirstElement = new HashMap<>();
+
+    /**
+     * Patterns whose first path element contains wildcards, in reverse file order.
+     */
+    private final List<IndexedMatcher> wildcards = new ArrayList<>();
+
+    /**
+     * The literal prefixes of the exception ({@code !}) patterns.
+     */
+    private final List<String> exceptionPrefixes = new ArrayList<>();
+
+    private final String separator;
+
+    private DockerIgnoreMatchers(final ImmutableList<DockerIgnorePathMatcher> matchers) {
+      this.separator = matchers.isEmpty() ? "/" : matchers.get(0).separator();
+      for (int i = matchers.size() - 1; i >= 0; i--) {
+        final DockerIgnorePathMatcher matcher = matchers.get(i);
+        final String pattern = matcher.isExclude()
+                               ? matcher.toString() : matcher.toString().substring(1);
+        final IndexedMatcher indexed = new IndexedMatcher(i, matcher);
+
+        final int separatorIndex = pattern.indexOf(separator);
+        final String first = separatorIndex < 0 ? pattern : pattern.substring(0, separatorIndex);
+        if (WILDCARDS.matchesAnyOf(first)) {
+          wildcards.add(indexed);
+        } else {
+          List<IndexedMatcher> list = byFirstElement.get(first);
+          if (list == null) {
+            list = new ArrayList<>();
+            byFirstElement.put(first, list);
+          }
+          list.add(indexed);
+        }
+
+        if (!matcher.isExclude()) {
+          final int wildcardIndex = WILDCARDS.indexIn(pattern);
+          exceptionPrefixes.add(wildcardIndex < 0 ? pattern : pattern.substring(0, wildcardIndex));
+        }
+      }
+    }
+
+    /**
+     * Checks if the last pattern matching the given {@code path} excludes it.
+     *
+     * @param path the path to match, relative to the build context
+     * @return <code>true</code> if the given path should be excluded, <code>false</code> otherwise
+     */
+    boolean exclude(final Path path) {
+      final IndexedMatcher literal = lastMatch(byFirstElement.get(path.getName(0).toString()),
+                                               path);
+      final IndexedMatcher wildcard = lastMatch(wildcards, path);
+      if (literal == null && wildcard == null) {
+        return false;
+      }
+      if (wildcard == null || (literal != null && literal.index > wildcard.index)) {
+        return literal.matcher.isExclude();
+      }
+      return wildcard.matcher.isExclude();
+    }
+
+    /**
+     * Checks if an exception pattern could match anything below the given excluded directory.
+     * Without one, nothing below the directory can end up in the build context and it doesn't
+     * have to be walked. This is conservative: any exception that shares a literal prefix with
+     * the directory keeps it from being skipped.
+     *
+     * @param dir the directory, relative to the build context
+     * @return <code>false</code> if nothing below the directory can be included
+     */
+    boolean mayIncludeBelow(final Path dir) {
+      final String dirPrefix = dir.toString() + separator;
+      for (final String prefix : exceptionPrefixes) {
+        if (prefix.startsWith(dirPrefix) || dirPrefix.startsWith(prefix)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static IndexedMatcher lastMatch(final List<IndexedMatcher> matchers, final Path path) {
+      if (matchers == null) {
+        return null;
+      }
+      for (final IndexedMatcher matcher : matchers) {
+        if (matcher.matcher.matches(path)) {
+          return matcher;
+        }
+      }
+      return null;
+    }
+
+    private static class IndexedMatcher {
+
+      private final int index;
+      private final DockerIgnorePathMatcher matcher;
+
+      private IndexedMatcher(final int index, final DockerIgnorePathMatcher matcher) {
+        this.index = index;
+        this.matcher = matcher;
+      }
+    }
+  }
+
   /**
    * A decorator for the {@link PathMatcher} with a type to determine if it is an exclusion pattern
    * or an exclude to an aforementioned exclusion.
@@ -389,6 +718,8 @@ class CompressedDirectory implements Closeable {
 
     private final boolean exclude;
 
+    private final String separator;
+
     /**
      * Constructor.
      *
@@ -401,6 +732,7 @@ class CompressedDirectory implements Closeable {
                                    final boolean exclude) {
       this.exclude = exclude;
       this.pattern = pattern;
+      this.separator = fileSystem.getSeparator();
       if (exclude) {
         this.matcher = goPathMatcher(fileSystem, pattern);
       } else {
@@ -416,6 +748,10 @@ class CompressedDirectory implements Closeable {
       return this.exclude;
     }
 
+    String separator() {
+      return separator;
+    }
+
     /**
      * @param path the path to match.
      * @return <code>true</code> if the given {@code path} starts with the pattern or matches the
@@ -0,0 +1,71 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.docker.client.messages.ContainerStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Decodes successive {@link ContainerStats} objects from a streaming (stream=1) stats response.
+ * Each sample is parsed as soon as the daemon writes it, without waiting for the response to end.
+ */
+public class ContainerStatsReader implements Closeable {
+
+  private final ObjectMapper objectMapper;
+  private final InputStream stream;
+  private JsonParser parser;
+
+  public ContainerStatsReader(final InputStream stream, final ObjectMapper objectMapper) {
+    this.stream = stream;
+    this.objectMapper = objectMapper;
+  }
+
+  public ContainerStats nextMessage() throws IOException {
+    if (this.parser == null) {
+      this.parser = objectMapper.getFactory().createParser(stream);
+    }
+
+    // If the parser is closed, there are no more samples
+    if (this.parser.isClosed()) {
+      return null;
+    }
+
+    // Read tokens until we get a start object
+    if (parser.nextToken() == null) {
+      return null;
+    }
+
+    return parser.readValueAs(ContainerStats.class);
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The stats stream never ends on its own, so unlike LogReader we cannot drain it. Closing the
+    // entity stream closes the underlying response and releases the connection.
+    stream.close();
+  }
+
+}
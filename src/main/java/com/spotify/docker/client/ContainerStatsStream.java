@@ -0,0 +1,71 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.spotify.docker.client.messages.ContainerStats;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A long-lived subscription to the stats of a single container. Docker writes a new
+ * {@link ContainerStats} sample roughly once a second for as long as the stream is open.
+ * Remember to {@link #close()} the stream when done to release the connection.
+ */
+public class ContainerStatsStream extends AbstractIterator<ContainerStats> implements Closeable {
+
+  private final ContainerStatsReader reader;
+
+  ContainerStatsStream(final InputStream stream, final ObjectMapper objectMapper) {
+    this(new ContainerStatsReader(stream, objectMapper));
+  }
+
+  ContainerStatsStream(final ContainerStatsReader reader) {
+    this.reader = reader;
+  }
+
+  @Override
+  protected ContainerStats computeNext() {
+    final ContainerStats stats;
+    try {
+      stats = reader.nextMessage();
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+    if (stats == null) {
+      return endOfData();
+    }
+    return stats;
+  }
+
+  @Override
+  public void close() {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+}
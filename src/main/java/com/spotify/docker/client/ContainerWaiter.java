@@ -0,0 +1,219 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.EventHub.OverflowPolicy;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerState;
+import com.spotify.docker.client.messages.Event;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Waits for any number of containers to exit with a single {@code die} event subscription,
+ * instead of holding a {@code /containers/{id}/wait} request open for each of them.
+ *
+ * <p>Each container is inspected once when the event stream is connected, which catches the
+ * containers that had already exited, and again whenever the stream reconnects, since a
+ * {@code die} event may have been missed while it was down.</p>
+ */
+class ContainerWaiter implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(ContainerWaiter.class);
+
+  private static final Pattern ID_PREFIX = Pattern.compile("[0-9a-f]+");
+
+  private final AsyncDockerClient async;
+  private final EventHub hub;
+  private final Thread thread;
+  private final Map<String, CompletableFuture<ContainerExit>> pending = new ConcurrentHashMap<>();
+
+  private volatile boolean connected;
+  private volatile boolean closed;
+  private volatile EventHub.Subscription subscription;
+
+  ContainerWaiter(final DockerClient docker, final AsyncDockerClient async) {
+    this.async = async;
+    this.hub = EventHub.builder(docker)
+        .filters(EventsParam.type(Event.Type.CONTAINER), EventsParam.event("die"))
+        .connectionListener(new EventHub.ConnectionListener() {
+          @Override
+          public void connected() {
+            connected = true;
+            check(new ArrayList<>(pending.keySet()));
+          }
+
+          @Override
+          public void disconnected() {
+            connected = false;
+          }
+        })
+        .build();
+    this.subscription = subscribe();
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        ContainerWaiter.this.run();
+      }
+    }, "docker-client-container-waiter");
+    this.thread.setDaemon(true);
+    this.thread.start();
+  }
+
+  /**
+   * Returns a future for each container that completes when the container exits.
+   *
+   * @param containerIds the IDs or names of the containers
+   * @return the futures, by the ID or name they were asked for
+   */
+  Map<String, CompletableFuture<ContainerExit>> waitContainers(
+      final Collection<String> containerIds) {
+    final Map<String, CompletableFuture<ContainerExit>> futures = new LinkedHashMap<>();
+    final List<String> added = new ArrayList<>();
+    for (final String containerId : containerIds) {
+      final CompletableFuture<ContainerExit> future =
+          pending.computeIfAbsent(containerId, key -> {
+            added.add(key);
+            return new CompletableFuture<>();
+          });
+      // Give every caller its own future, so cancelling one doesn't affect other waiters
+      futures.put(containerId, future.thenApply(exit -> exit));
+    }
+    if (closed) {
+      failAll();
+    } else if (connected) {
+      // Otherwise they are checked when the event stream connects
+      check(added);
+    }
+    return futures;
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    hub.close();
+    thread.interrupt();
+    failAll();
+  }
+
+  private EventHub.Subscription subscribe() {
+    return hub.subscribe(event -> true, EventHub.DEFAULT_CAPACITY, OverflowPolicy.CLOSE);
+  }
+
+  private void run() {
+    while (!closed) {
+      final Event event;
+      try {
+        event = subscription.poll(1, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        break;
+      }
+      if (event != null) {
+        died(event);
+      } else if (subscription.overflowed() && !closed) {
+        // Some die events were lost
+        subscription = subscribe();
+        check(new ArrayList<>(pending.keySet()));
+      }
+    }
+  }
+
+  private void died(final Event event) {
+    final Event.Actor actor = event.actor();
+    if (actor == null || actor.id() == null) {
+      return;
+    }
+    final Map<String, String> attributes = actor.attributes();
+    final String name = attributes == null ? null : attributes.get("name");
+    final String exitCode = attributes == null ? null : attributes.get("exitCode");
+
+    for (final String key : pending.keySet()) {
+      final boolean idMatches = actor.id().startsWith(key) && ID_PREFIX.matcher(key).matches();
+      if (idMatches || key.equals(name) || key.equals("/" + name)) {
+        if (exitCode == null) {
+          check(key);
+        } else {
+          try {
+            complete(key, ContainerExit.create(Long.valueOf(exitCode)));
+          } catch (NumberFormatException e) {
+            check(key);
+          }
+        }
+      }
+    }
+  }
+
+  private void check(final Collection<String> containerIds) {
+    for (final String containerId : containerIds) {
+      check(containerId);
+    }
+  }
+
+  private void check(final String containerId) {
+    async.inspectContainer(containerId).whenComplete((info, ex) -> {
+      if (ex != null) {
+        fail(containerId, ex instanceof CompletionException ? ex.getCause() : ex);
+        return;
+      }
+      final ContainerState state = info.state();
+      if (state != null && !Boolean.TRUE.equals(state.running())
+          && !"created".equals(state.status())) {
+        complete(containerId, ContainerExit.create(state.exitCode()));
+      }
+    });
+  }
+
+  private void complete(final String containerId, final ContainerExit exit) {
+    final CompletableFuture<ContainerExit> future = pending.remove(containerId);
+    if (future != null) {
+      future.complete(exit);
+    }
+  }
+
+  private void fail(final String containerId, final Throwable cause) {
+    final CompletableFuture<ContainerExit> future = pending.remove(containerId);
+    if (future != null) {
+      log.debug("Failed to check whether container {} has exited", containerId, cause);
+      future.completeExceptionally(cause);
+    }
+  }
+
+  private void failAll() {
+    for (final String containerId : pending.keySet()) {
+      fail(containerId, new DockerException("The docker client was closed"));
+    }
+  }
+}
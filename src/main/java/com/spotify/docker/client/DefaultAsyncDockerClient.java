@@ -0,0 +1,1239 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.spotify.docker.client.ObjectMapperProvider.objectMapper;
+import static com.spotify.docker.client.VersionCompare.compareVersion;
+import static javax.ws.rs.HttpMethod.DELETE;
+import static javax.ws.rs.HttpMethod.GET;
+import static javax.ws.rs.HttpMethod.POST;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Strings;
+import com.spotify.docker.client.DockerClient.ExecCreateParam;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.DockerClient.ListImagesParam;
+import com.spotify.docker.client.DockerClient.ListNetworksParam;
+import com.spotify.docker.client.DockerClient.ListVolumesParam;
+import com.spotify.docker.client.DockerClient.RemoveContainerParam;
+import com.spotify.docker.client.DockerClient.Signal;
+import com.spotify.docker.client.exceptions.BadParamException;
+import com.spotify.docker.client.exceptions.ConflictException;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
+import com.spotify.docker.client.exceptions.ContainerRenameConflictException;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.ExecCreateConflictException;
+import com.spotify.docker.client.exceptions.ExecNotFoundException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.exceptions.NetworkNotFoundException;
+import com.spotify.docker.client.exceptions.NodeNotFoundException;
+import com.spotify.docker.client.exceptions.NonSwarmNodeException;
+import com.spotify.docker.client.exceptions.NotFoundException;
+import com.spotify.docker.client.exceptions.ServiceNotFoundException;
+import com.spotify.docker.client.exceptions.TaskNotFoundException;
+import com.spotify.docker.client.exceptions.UnsupportedApiVersionException;
+import com.spotify.docker.client.exceptions.VolumeNotFoundException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerChange;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.ContainerUpdate;
+import com.spotify.docker.client.messages.ExecCreation;
+import com.spotify.docker.client.messages.ExecState;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageHistory;
+import com.spotify.docker.client.messages.ImageInfo;
+import com.spotify.docker.client.messages.Info;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.NetworkConfig;
+import com.spotify.docker.client.messages.NetworkConnection;
+import com.spotify.docker.client.messages.NetworkCreation;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RemovedImage;
+import com.spotify.docker.client.messages.ServiceCreateResponse;
+import com.spotify.docker.client.messages.TopResults;
+import com.spotify.docker.client.messages.Version;
+import com.spotify.docker.client.messages.Volume;
+import com.spotify.docker.client.messages.VolumeList;
+import com.spotify.docker.client.messages.swarm.Config;
+import com.spotify.docker.client.messages.swarm.ConfigCreateResponse;
+import com.spotify.docker.client.messages.swarm.ConfigSpec;
+import com.spotify.docker.client.messages.swarm.Node;
+import com.spotify.docker.client.messages.swarm.NodeInfo;
+import com.spotify.docker.client.messages.swarm.NodeSpec;
+import com.spotify.docker.client.messages.swarm.Secret;
+import com.spotify.docker.client.messages.swarm.SecretCreateResponse;
+import com.spotify.docker.client.messages.swarm.SecretSpec;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.ServiceSpec;
+import com.spotify.docker.client.messages.swarm.Swarm;
+import com.spotify.docker.client.messages.swarm.SwarmInit;
+import com.spotify.docker.client.messages.swarm.SwarmJoin;
+import com.spotify.docker.client.messages.swarm.SwarmSpec;
+import com.spotify.docker.client.messages.swarm.Task;
+import com.spotify.docker.client.messages.swarm.UnlockKey;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+
+/**
+ * {@link AsyncDockerClient} backed by the connection pools of a {@link DefaultDockerClient}.
+ */
+class DefaultAsyncDockerClient implements AsyncDockerClient {
+
+  private static final GenericType<List<Container>> CONTAINER_LIST =
+      new GenericType<List<Container>>() {
+      };
+
+  private static final GenericType<List<ContainerChange>> CONTAINER_CHANGE_LIST =
+      new GenericType<List<ContainerChange>>() {
+      };
+
+  private static final GenericType<List<Image>> IMAGE_LIST =
+      new GenericType<List<Image>>() {
+      };
+
+  private static final GenericType<List<ImageHistory>> IMAGE_HISTORY_LIST =
+      new GenericType<List<ImageHistory>>() {
+      };
+
+  private static final GenericType<List<RemovedImage>> REMOVED_IMAGE_LIST =
+      new GenericType<List<RemovedImage>>() {
+      };
+
+  private static final GenericType<List<Network>> NETWORK_LIST =
+      new GenericType<List<Network>>() {
+      };
+
+  private static final GenericType<List<Service>> SERVICE_LIST =
+      new GenericType<List<Service>>() {
+      };
+
+  private static final GenericType<List<Task>> TASK_LIST =
+      new GenericType<List<Task>>() {
+      };
+
+  private static final GenericType<List<Node>> NODE_LIST =
+      new GenericType<List<Node>>() {
+      };
+
+  private static final GenericType<List<Secret>> SECRET_LIST =
+      new GenericType<List<Secret>>() {
+      };
+
+  private static final GenericType<List<Config>> CONFIG_LIST =
+      new GenericType<List<Config>>() {
+      };
+
+  /**
+   * Maps a failed request to the exception surfaced to callers, the way the switch statements in
+   * {@link DefaultDockerClient} do. Return the argument itself to leave it unchanged.
+   */
+  private interface StatusMapper {
+    DockerException map(DockerRequestException ex);
+  }
+
+  private final DefaultDockerClient client;
+
+  // Created on the first waitContainers call, since it keeps an event stream open
+  private ContainerWaiter waiter;
+  private boolean closed;
+
+  DefaultAsyncDockerClient(final DefaultDockerClient client) {
+    this.client = checkNotNull(client, "client");
+  }
+
+  @Override
+  public CompletableFuture<String> ping() {
+    final WebTarget resource = client.getClient().target(client.getUri()).path("_ping");
+    return client.requestAsync(GET, String.class, resource, resource.request());
+  }
+
+  @Override
+  public CompletableFuture<Version> version() {
+    final WebTarget resource = client.resource().path("version");
+    return client.requestAsync(GET, Version.class, resource,
+                               resource.request(APPLICATION_JSON_TYPE))
+        .thenApply(version -> {
+          client.cacheServerApiVersion(version.apiVersion());
+          return version;
+        });
+  }
+
+  @Override
+  public CompletableFuture<Info> info() {
+    final WebTarget resource = client.resource().path("info");
+    return client.requestAsync(GET, Info.class, resource, resource.request(APPLICATION_JSON_TYPE));
+  }
+
+  @Override
+  public CompletableFuture<List<Container>> listContainers(final ListContainersParam... params) {
+    final WebTarget resource;
+    try {
+      resource = client.addParameters(client.resource().path("containers").path("json"), params);
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return mapStatus(client.requestAsync(GET, CONTAINER_LIST, resource,
+                                         resource.request(APPLICATION_JSON_TYPE), null),
+        ex -> ex.status() == 400
+              ? new BadParamException(client.getQueryParamMap(resource), ex)
+              : ex);
+  }
+
+  @Override
+  public CompletableFuture<ContainerCreation> createContainer(final ContainerConfig config) {
+    return createContainer(config, null);
+  }
+
+  @Override
+  public CompletableFuture<ContainerCreation> createContainer(final ContainerConfig config,
+                                                              final String name) {
+    WebTarget resource = client.resource().path("containers").path("create");
+
+    if (name != null) {
+      checkArgument(DefaultDockerClient.CONTAINER_NAME_PATTERN.matcher(name).matches(),
+                    "Invalid container name: \"%s\"", name);
+      resource = resource.queryParam("name", name);
+    }
+
+    return mapStatus(client.requestAsync(POST, ContainerCreation.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE),
+                                         Entity.json(config)),
+        ex -> {
+          switch (ex.status()) {
+            case 404:
+              return new ImageNotFoundException(config.image(), ex);
+            case 406:
+              return new DockerException("Impossible to attach. Container not running.", ex);
+            default:
+              return ex;
+          }
+        });
+  }
+
+  @Override
+  public CompletableFuture<ContainerInfo> inspectContainer(final String containerId) {
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("json");
+    return mapStatus(client.requestAsync(GET, ContainerInfo.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+                     containerNotFound(containerId));
+  }
+
+  @Override
+  public CompletableFuture<List<ContainerChange>> inspectContainerChanges(
+      final String containerId) {
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("changes");
+    return mapStatus(client.requestAsync(GET, CONTAINER_CHANGE_LIST, resource,
+                                         resource.request(APPLICATION_JSON_TYPE), null),
+                     containerNotFound(containerId));
+  }
+
+  @Override
+  public CompletableFuture<TopResults> topContainer(final String containerId,
+                                                    final String psArgs) {
+    WebTarget resource = client.resource().path("containers").path(containerId).path("top");
+    if (!Strings.isNullOrEmpty(psArgs)) {
+      resource = resource.queryParam("ps_args", psArgs);
+    }
+    return mapStatus(client.requestAsync(GET, TopResults.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+                     containerNotFound(containerId));
+  }
+
+  @Override
+  public CompletableFuture<Void> startContainer(final String containerId) {
+    checkNotNull(containerId, "containerId");
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("start");
+    return containerAction(containerId, resource);
+  }
+
+  @Override
+  public CompletableFuture<Void> stopContainer(final String containerId,
+                                               final int secondsToWaitBeforeKilling) {
+    final WebTarget resource = client.noTimeoutResource()
+        .path("containers").path(containerId).path("stop")
+        .queryParam("t", String.valueOf(secondsToWaitBeforeKilling));
+    final CompletableFuture<Void> result = new CompletableFuture<>();
+    client.requestAsync(POST, String.class, resource, resource.request())
+        .whenComplete((ignored, error) -> {
+          final Throwable cause = unwrap(error);
+          if (cause == null) {
+            result.complete(null);
+          } else if (!(cause instanceof DockerRequestException)) {
+            result.completeExceptionally(cause);
+          } else if (((DockerRequestException) cause).status() == 304) {
+            // already stopped, so we're cool
+            result.complete(null);
+          } else {
+            result.completeExceptionally(
+                containerNotFound(containerId).map((DockerRequestException) cause));
+          }
+        });
+    return result;
+  }
+
+  @Override
+  public CompletableFuture<Void> restartContainer(final String containerId,
+                                                  final int secondsToWaitBeforeRestart) {
+    checkNotNull(containerId, "containerId");
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("restart")
+        .queryParam("t", String.valueOf(secondsToWaitBeforeRestart));
+    return containerAction(containerId, resource);
+  }
+
+  @Override
+  public CompletableFuture<Void> pauseContainer(final String containerId) {
+    checkNotNull(containerId, "containerId");
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("pause");
+    return containerAction(containerId, resource);
+  }
+
+  @Override
+  public CompletableFuture<Void> unpauseContainer(final String containerId) {
+    checkNotNull(containerId, "containerId");
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("unpause");
+    return containerAction(containerId, resource);
+  }
+
+  @Override
+  public CompletableFuture<Void> killContainer(final String containerId) {
+    checkNotNull(containerId, "containerId");
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("kill");
+    return containerAction(containerId, resource);
+  }
+
+  @Override
+  public CompletableFuture<Void> killContainer(final String containerId, final Signal signal) {
+    checkNotNull(containerId, "containerId");
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("kill")
+        .queryParam("signal", signal.getName());
+    return containerAction(containerId, resource);
+  }
+
+  @Override
+  public CompletableFuture<ContainerExit> waitContainer(final String containerId) {
+    final WebTarget resource = client.noTimeoutResource()
+        .path("containers").path(containerId).path("wait");
+    return mapStatus(client.requestAsync(POST, ContainerExit.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+                     containerNotFound(containerId));
+  }
+
+  @Override
+  public Map<String, CompletableFuture<ContainerExit>> waitContainers(
+      final Collection<String> containerIds) {
+    checkNotNull(containerIds, "containerIds");
+    return waiter().waitContainers(containerIds);
+  }
+
+  private synchronized ContainerWaiter waiter() {
+    checkState(!closed, "the client is closed");
+    if (waiter == null) {
+      waiter = new ContainerWaiter(client, this);
+    }
+    return waiter;
+  }
+
+  @Override
+  public CompletableFuture<Void> removeContainer(final String containerId,
+                                                 final RemoveContainerParam... params) {
+    WebTarget resource = client.resource().path("containers").path(containerId);
+    for (final RemoveContainerParam param : params) {
+      resource = resource.queryParam(param.name(), param.value());
+    }
+    final WebTarget target = resource;
+    return discard(mapStatus(client.requestAsync(DELETE, String.class, target,
+                                                 target.request(APPLICATION_JSON_TYPE)),
+        ex -> {
+          switch (ex.status()) {
+            case 400:
+              return new BadParamException(client.getQueryParamMap(target), ex);
+            case 404:
+              return new ContainerNotFoundException(containerId, ex);
+            default:
+              return ex;
+          }
+        }));
+  }
+
+  @Override
+  public CompletableFuture<Void> renameContainer(final String containerId, final String name) {
+    if (name == null) {
+      throw new IllegalArgumentException("Cannot rename container to null");
+    }
+    checkArgument(DefaultDockerClient.CONTAINER_NAME_PATTERN.matcher(name).matches(),
+                  "Invalid container name: \"%s\"", name);
+
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("rename")
+        .queryParam("name", name);
+    return discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                                 resource.request()),
+        ex -> {
+          switch (ex.status()) {
+            case 404:
+              return new ContainerNotFoundException(containerId, ex);
+            case 409:
+              return new ContainerRenameConflictException(containerId, name, ex);
+            default:
+              return ex;
+          }
+        }));
+  }
+
+  @Override
+  public CompletableFuture<ContainerUpdate> updateContainer(final String containerId,
+                                                            final HostConfig config) {
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("update");
+    return requireApiVersion("1.22", () ->
+        mapStatus(client.requestAsync(POST, ContainerUpdate.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE),
+                                      Entity.json(config)),
+                  containerNotFound(containerId)));
+  }
+
+  @Override
+  public CompletableFuture<ContainerStats> stats(final String containerId) {
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("stats")
+        .queryParam("stream", "0");
+    return mapStatus(client.requestAsync(GET, ContainerStats.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+                     containerNotFound(containerId));
+  }
+
+  @Override
+  public CompletableFuture<ExecCreation> execCreate(final String containerId, final String[] cmd,
+                                                    final ExecCreateParam... params) {
+    final WebTarget resource = client.resource()
+        .path("containers").path(containerId).path("exec");
+
+    final StringWriter writer = new StringWriter();
+    try {
+      final JsonGenerator generator = objectMapper().getFactory().createGenerator(writer);
+      generator.writeStartObject();
+
+      for (final ExecCreateParam param : params) {
+        if (param.value().equals("true") || param.value().equals("false")) {
+          generator.writeBooleanField(param.name(), Boolean.valueOf(param.value()));
+        } else {
+          generator.writeStringField(param.name(), param.value());
+        }
+      }
+
+      generator.writeArrayFieldStart("Cmd");
+      for (final String s : cmd) {
+        generator.writeString(s);
+      }
+      generator.writeEndArray();
+
+      generator.writeEndObject();
+      generator.close();
+    } catch (IOException e) {
+      return failed(new DockerException(e));
+    }
+
+    return mapStatus(client.requestAsync(POST, ExecCreation.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE),
+                                         Entity.json(writer.toString())),
+        ex -> {
+          switch (ex.status()) {
+            case 404:
+              return new ContainerNotFoundException(containerId, ex);
+            case 409:
+              return new ExecCreateConflictException(containerId, ex);
+            default:
+              return ex;
+          }
+        });
+  }
+
+  @Override
+  public CompletableFuture<ExecState> execInspect(final String execId) {
+    final WebTarget resource = client.resource().path("exec").path(execId).path("json");
+    return mapStatus(client.requestAsync(GET, ExecState.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+        ex -> ex.status() == 404 ? new ExecNotFoundException(execId, ex) : ex);
+  }
+
+  @Override
+  public CompletableFuture<List<Image>> listImages(final ListImagesParam... params) {
+    final WebTarget resource;
+    try {
+      resource = client.addParameters(client.resource().path("images").path("json"), params);
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return client.requestAsync(GET, IMAGE_LIST, resource,
+                               resource.request(APPLICATION_JSON_TYPE), null);
+  }
+
+  @Override
+  public CompletableFuture<ImageInfo> inspectImage(final String image) {
+    final WebTarget resource = client.resource().path("images").path(image).path("json");
+    return mapStatus(client.requestAsync(GET, ImageInfo.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+                     imageNotFound(image));
+  }
+
+  @Override
+  public CompletableFuture<List<ImageHistory>> history(final String image) {
+    final WebTarget resource = client.resource().path("images").path(image).path("history");
+    return mapStatus(client.requestAsync(GET, IMAGE_HISTORY_LIST, resource,
+                                         resource.request(APPLICATION_JSON_TYPE), null),
+                     imageNotFound(image));
+  }
+
+  @Override
+  public CompletableFuture<Void> tag(final String image, final String name, final boolean force) {
+    final ImageRef imageRef = new ImageRef(name);
+
+    WebTarget resource = client.resource().path("images").path(image).path("tag")
+        .queryParam("repo", imageRef.getImage());
+    if (imageRef.getTag() != null) {
+      resource = resource.queryParam("tag", imageRef.getTag());
+    }
+    if (force) {
+      resource = resource.queryParam("force", true);
+    }
+
+    final WebTarget target = resource;
+    return discard(mapStatus(client.requestAsync(POST, String.class, target, target.request()),
+        ex -> {
+          switch (ex.status()) {
+            case 400:
+              return new BadParamException(client.getQueryParamMap(target), ex);
+            case 404:
+              return new ImageNotFoundException(image, ex);
+            case 409:
+              return new ConflictException(ex);
+            default:
+              return ex;
+          }
+        }));
+  }
+
+  @Override
+  public CompletableFuture<List<RemovedImage>> removeImage(final String image,
+                                                           final boolean force,
+                                                           final boolean noPrune) {
+    final WebTarget resource = client.resource().path("images").path(image)
+        .queryParam("force", String.valueOf(force))
+        .queryParam("noprune", String.valueOf(noPrune));
+    return mapStatus(client.requestAsync(DELETE, REMOVED_IMAGE_LIST, resource,
+                                         resource.request(APPLICATION_JSON_TYPE), null),
+        ex -> {
+          switch (ex.status()) {
+            case 404:
+              return new ImageNotFoundException(image, ex);
+            case 409:
+              return new ConflictException(ex);
+            default:
+              return ex;
+          }
+        });
+  }
+
+  @Override
+  public CompletableFuture<List<Network>> listNetworks(final ListNetworksParam... params) {
+    final WebTarget resource;
+    try {
+      resource = client.addParameters(client.resource().path("networks"), params);
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return client.requestAsync(GET, NETWORK_LIST, resource,
+                               resource.request(APPLICATION_JSON_TYPE), null);
+  }
+
+  @Override
+  public CompletableFuture<Network> inspectNetwork(final String networkId) {
+    final WebTarget resource = client.resource().path("networks").path(networkId);
+    return mapStatus(client.requestAsync(GET, Network.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+                     networkNotFound(networkId));
+  }
+
+  @Override
+  public CompletableFuture<NetworkCreation> createNetwork(final NetworkConfig networkConfig) {
+    final WebTarget resource = client.resource().path("networks").path("create");
+    return mapStatus(client.requestAsync(POST, NetworkCreation.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE),
+                                         Entity.json(networkConfig)),
+        ex -> ex.status() == 404 ? new NotFoundException("Plugin not found", ex) : ex);
+  }
+
+  @Override
+  public CompletableFuture<Void> removeNetwork(final String networkId) {
+    final WebTarget resource = client.resource().path("networks").path(networkId);
+    return discard(mapStatus(client.requestAsync(DELETE, String.class, resource,
+                                                 resource.request(APPLICATION_JSON_TYPE)),
+                             networkNotFound(networkId)));
+  }
+
+  @Override
+  public CompletableFuture<Void> connectToNetwork(final String networkId,
+                                                  final NetworkConnection networkConnection) {
+    final WebTarget resource = client.resource()
+        .path("networks").path(networkId).path("connect");
+    return discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                                 resource.request(APPLICATION_JSON_TYPE),
+                                                 Entity.json(networkConnection)),
+        ex -> ex.status() == 404
+             ? new NotFoundException(String.format("Container %s or network %s not found.",
+                                                   networkConnection.containerId(), networkId), ex)
+             : ex));
+  }
+
+  @Override
+  public CompletableFuture<Void> disconnectFromNetwork(final String containerId,
+                                                       final String networkId,
+                                                       final boolean force) {
+    final WebTarget resource = client.resource()
+        .path("networks").path(networkId).path("disconnect");
+
+    final Map<String, Object> request = new HashMap<>();
+    request.put("Container", containerId);
+    request.put("Force", force);
+
+    return discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                                 resource.request(APPLICATION_JSON_TYPE),
+                                                 Entity.json(request)),
+        ex -> ex.status() == 404
+             ? new NotFoundException(String.format("Container %s or network %s not found.",
+                                                   containerId, networkId), ex)
+             : ex));
+  }
+
+  @Override
+  public CompletableFuture<VolumeList> listVolumes(final ListVolumesParam... params) {
+    final WebTarget resource;
+    try {
+      resource = client.addParameters(client.resource().path("volumes"), params);
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return client.requestAsync(GET, VolumeList.class, resource,
+                               resource.request(APPLICATION_JSON_TYPE));
+  }
+
+  @Override
+  public CompletableFuture<Volume> createVolume(final Volume volume) {
+    final WebTarget resource = client.resource().path("volumes").path("create");
+    return client.requestAsync(POST, Volume.class, resource,
+                               resource.request(APPLICATION_JSON_TYPE), Entity.json(volume));
+  }
+
+  @Override
+  public CompletableFuture<Volume> inspectVolume(final String volumeName) {
+    final WebTarget resource = client.resource().path("volumes").path(volumeName);
+    return mapStatus(client.requestAsync(GET, Volume.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE)),
+        ex -> ex.status() == 404 ? new VolumeNotFoundException(volumeName, ex) : ex);
+  }
+
+  @Override
+  public CompletableFuture<Void> removeVolume(final String volumeName) {
+    final WebTarget resource = client.resource().path("volumes").path(volumeName);
+    return discard(mapStatus(client.requestAsync(DELETE, String.class, resource,
+                                                 resource.request(APPLICATION_JSON_TYPE)),
+        ex -> {
+          switch (ex.status()) {
+            case 404:
+              return new VolumeNotFoundException(volumeName, ex);
+            case 409:
+              return new ConflictException("Volume is in use and cannot be removed", ex);
+            default:
+              return ex;
+          }
+        }));
+  }
+
+  @Override
+  public CompletableFuture<Swarm> inspectSwarm() {
+    final WebTarget resource = client.resource().path("swarm");
+    return requireApiVersion("1.24", () ->
+        client.requestAsync(GET, Swarm.class, resource, resource.request(APPLICATION_JSON_TYPE)));
+  }
+
+  @Override
+  public CompletableFuture<String> initSwarm(final SwarmInit swarmInit) {
+    final WebTarget resource = client.resource().path("swarm").path("init");
+    return requireApiVersion("1.24", () ->
+        mapStatus(client.requestAsync(POST, String.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE),
+                                      Entity.json(swarmInit)),
+                  swarmMembership("node is already part of a swarm")));
+  }
+
+  @Override
+  public CompletableFuture<Void> joinSwarm(final SwarmJoin swarmJoin) {
+    final WebTarget resource = client.resource().path("swarm").path("join");
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE),
+                                              Entity.json(swarmJoin)),
+                          swarmMembership("node is already part of a swarm"))));
+  }
+
+  @Override
+  public CompletableFuture<Void> leaveSwarm() {
+    return leaveSwarm(false);
+  }
+
+  @Override
+  public CompletableFuture<Void> leaveSwarm(final boolean force) {
+    final WebTarget resource = client.resource().path("swarm").path("leave")
+        .queryParam("force", force);
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE)),
+                          swarmMembership("node is not part of a swarm"))));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateSwarm(final Long version, final SwarmSpec spec) {
+    return updateSwarm(version, false, false, false, spec);
+  }
+
+  @Override
+  public CompletableFuture<Void> updateSwarm(final Long version,
+                                             final boolean rotateWorkerToken,
+                                             final boolean rotateManagerToken,
+                                             final boolean rotateManagerUnlockKey,
+                                             final SwarmSpec spec) {
+    final WebTarget resource = client.resource().path("swarm").path("update")
+        .queryParam("version", version)
+        .queryParam("rotateWorkerToken", rotateWorkerToken)
+        .queryParam("rotateManagerToken", rotateManagerToken)
+        .queryParam("rotateManagerUnlockKey", rotateManagerUnlockKey);
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE),
+                                              Entity.json(spec)),
+            ex -> ex.status() == 400 ? new DockerException("bad parameter", ex) : ex)));
+  }
+
+  @Override
+  public CompletableFuture<UnlockKey> unlockKey() {
+    final WebTarget resource = client.resource().path("swarm").path("unlockkey");
+    return requireApiVersion("1.24", () ->
+        mapStatus(client.requestAsync(GET, UnlockKey.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE)),
+                  swarmMembership("node is not part of a swarm")));
+  }
+
+  @Override
+  public CompletableFuture<Void> unlock(final UnlockKey unlockKey) {
+    final WebTarget resource = client.resource().path("swarm").path("unlock");
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE),
+                                              Entity.json(unlockKey)),
+                          swarmMembership("node is not part of a swarm"))));
+  }
+
+  @Override
+  public CompletableFuture<ServiceCreateResponse> createService(final ServiceSpec spec) {
+    final RegistryAuth auth;
+    try {
+      auth = client.registryAuthSupplier().authForSwarm();
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return createService(spec, auth);
+  }
+
+  @Override
+  public CompletableFuture<ServiceCreateResponse> createService(final ServiceSpec spec,
+                                                                final RegistryAuth config) {
+    final WebTarget resource = client.resource().path("services").path("create");
+    final Invocation.Builder request;
+    try {
+      request = resource.request(APPLICATION_JSON_TYPE)
+          .header("X-Registry-Auth", client.authHeader(config));
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return requireApiVersion("1.24", () ->
+        mapStatus(client.requestAsync(POST, ServiceCreateResponse.class, resource, request,
+                                      Entity.json(spec)),
+            ex -> {
+              switch (ex.status()) {
+                case 406:
+                  return new DockerException("Server error or node is not part of swarm.", ex);
+                case 409:
+                  return new DockerException("Name conflicts with an existing object.", ex);
+                default:
+                  return ex;
+              }
+            }));
+  }
+
+  @Override
+  public CompletableFuture<Service> inspectService(final String serviceId) {
+    final WebTarget resource = client.resource().path("services").path(serviceId);
+    return requireApiVersion("1.24", () ->
+        mapStatus(client.requestAsync(GET, Service.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE)),
+                  serviceNotFound(serviceId)));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateService(final String serviceId, final Long version,
+                                               final ServiceSpec spec) {
+    final RegistryAuth auth;
+    try {
+      auth = client.registryAuthSupplier().authForSwarm();
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return updateService(serviceId, version, spec, auth);
+  }
+
+  @Override
+  public CompletableFuture<Void> updateService(final String serviceId, final Long version,
+                                               final ServiceSpec spec,
+                                               final RegistryAuth config) {
+    final WebTarget resource = client.resource()
+        .path("services").path(serviceId).path("update")
+        .queryParam("version", version);
+    final Invocation.Builder request;
+    try {
+      request = resource.request(APPLICATION_JSON_TYPE)
+          .header("X-Registry-Auth", client.authHeader(config));
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(POST, String.class, resource, request,
+                                              Entity.json(spec)),
+                          serviceNotFound(serviceId))));
+  }
+
+  @Override
+  public CompletableFuture<List<Service>> listServices() {
+    final WebTarget resource = client.resource().path("services");
+    return requireApiVersion("1.24", () ->
+        client.requestAsync(GET, SERVICE_LIST, resource,
+                            resource.request(APPLICATION_JSON_TYPE), null));
+  }
+
+  @Override
+  public CompletableFuture<List<Service>> listServices(final Service.Criteria criteria) {
+    final WebTarget resource;
+    try {
+      resource = client.resource().path("services").queryParam(
+          "filters", client.urlEncodeFilters(DefaultDockerClient.serviceFilters(criteria)));
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return requireApiVersion("1.24", () ->
+        client.requestAsync(GET, SERVICE_LIST, resource,
+                            resource.request(APPLICATION_JSON_TYPE), null));
+  }
+
+  @Override
+  public CompletableFuture<Void> removeService(final String serviceId) {
+    final WebTarget resource = client.resource().path("services").path(serviceId);
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(DELETE, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE)),
+                          serviceNotFound(serviceId))));
+  }
+
+  @Override
+  public CompletableFuture<Task> inspectTask(final String taskId) {
+    final WebTarget resource = client.resource().path("tasks").path(taskId);
+    return requireApiVersion("1.24", () ->
+        mapStatus(client.requestAsync(GET, Task.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE)),
+            ex -> ex.status() == 404 ? new TaskNotFoundException(taskId, ex) : ex));
+  }
+
+  @Override
+  public CompletableFuture<List<Task>> listTasks() {
+    final WebTarget resource = client.resource().path("tasks");
+    return requireApiVersion("1.24", () ->
+        client.requestAsync(GET, TASK_LIST, resource,
+                            resource.request(APPLICATION_JSON_TYPE), null));
+  }
+
+  @Override
+  public CompletableFuture<List<Task>> listTasks(final Task.Criteria criteria) {
+    final WebTarget resource;
+    try {
+      resource = client.resource().path("tasks").queryParam(
+          "filters", client.urlEncodeFilters(DefaultDockerClient.taskFilters(criteria)));
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return requireApiVersion("1.24", () ->
+        client.requestAsync(GET, TASK_LIST, resource,
+                            resource.request(APPLICATION_JSON_TYPE), null));
+  }
+
+  @Override
+  public CompletableFuture<List<Node>> listNodes() {
+    final WebTarget resource = client.resource().path("nodes");
+    return requireApiVersion("1.24", () ->
+        client.requestAsync(GET, NODE_LIST, resource,
+                            resource.request(APPLICATION_JSON_TYPE), null));
+  }
+
+  @Override
+  public CompletableFuture<List<Node>> listNodes(final Node.Criteria criteria) {
+    final WebTarget resource;
+    try {
+      resource = client.resource().path("nodes").queryParam(
+          "filters", client.urlEncodeFilters(DefaultDockerClient.nodeFilters(criteria)));
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return requireApiVersion("1.24", () ->
+        client.requestAsync(GET, NODE_LIST, resource,
+                            resource.request(APPLICATION_JSON_TYPE), null));
+  }
+
+  @Override
+  public CompletableFuture<NodeInfo> inspectNode(final String nodeId) {
+    final WebTarget resource = client.resource().path("nodes").path(nodeId);
+    return requireApiVersion("1.24", () ->
+        mapStatus(client.requestAsync(GET, NodeInfo.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE)),
+                  nodeNotFound(nodeId, "Node " + nodeId + " is not in a swarm")));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateNode(final String nodeId, final Long version,
+                                            final NodeSpec nodeSpec) {
+    final WebTarget resource = client.resource()
+        .path("nodes").path(nodeId).path("update")
+        .queryParam("version", version);
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE),
+                                              Entity.json(nodeSpec)),
+                          nodeNotFound(nodeId, "Node " + nodeId + " is not a swarm node"))));
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteNode(final String nodeId) {
+    return deleteNode(nodeId, false);
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteNode(final String nodeId, final boolean force) {
+    final WebTarget resource = client.resource().path("nodes").path(nodeId)
+        .queryParam("force", String.valueOf(force));
+    return requireApiVersion("1.24", () ->
+        discard(mapStatus(client.requestAsync(DELETE, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE)),
+                          nodeNotFound(nodeId, "Node " + nodeId + " is not a swarm node"))));
+  }
+
+  @Override
+  public CompletableFuture<List<Secret>> listSecrets() {
+    final WebTarget resource = client.resource().path("secrets");
+    return requireApiVersion("1.25", () ->
+        client.requestAsync(GET, SECRET_LIST, resource,
+                            resource.request(APPLICATION_JSON_TYPE), null));
+  }
+
+  @Override
+  public CompletableFuture<SecretCreateResponse> createSecret(final SecretSpec secret) {
+    final WebTarget resource = client.resource().path("secrets").path("create");
+    return requireApiVersion("1.25", () ->
+        mapStatus(client.requestAsync(POST, SecretCreateResponse.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE),
+                                      Entity.json(secret)),
+            ex -> {
+              switch (ex.status()) {
+                case 406:
+                  return new NonSwarmNodeException("Server not part of swarm.", ex);
+                case 409:
+                  return new ConflictException("Name conflicts with an existing object.", ex);
+                default:
+                  return ex;
+              }
+            }));
+  }
+
+  @Override
+  public CompletableFuture<Secret> inspectSecret(final String secretId) {
+    final WebTarget resource = client.resource().path("secrets").path(secretId);
+    return requireApiVersion("1.25", () ->
+        mapStatus(client.requestAsync(GET, Secret.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE)),
+            ex -> {
+              switch (ex.status()) {
+                case 404:
+                  return new NotFoundException("Secret " + secretId + " not found.", ex);
+                case 406:
+                  return new NonSwarmNodeException("Server not part of swarm.", ex);
+                default:
+                  return ex;
+              }
+            }));
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteSecret(final String secretId) {
+    final WebTarget resource = client.resource().path("secrets").path(secretId);
+    return requireApiVersion("1.25", () ->
+        discard(mapStatus(client.requestAsync(DELETE, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE)),
+            ex -> ex.status() == 404
+                  ? new NotFoundException("Secret " + secretId + " not found.", ex)
+                  : ex)));
+  }
+
+  @Override
+  public CompletableFuture<List<Config>> listConfigs() {
+    final WebTarget resource = client.resource().path("configs");
+    return requireApiVersion("1.30", () ->
+        mapStatus(client.requestAsync(GET, CONFIG_LIST, resource,
+                                      resource.request(APPLICATION_JSON_TYPE), null),
+                  configNotFound(null, "node is not part of a swarm")));
+  }
+
+  @Override
+  public CompletableFuture<List<Config>> listConfigs(final Config.Criteria criteria) {
+    final WebTarget resource;
+    try {
+      resource = client.resource().path("configs").queryParam(
+          "filters", client.urlEncodeFilters(DefaultDockerClient.configFilters(criteria)));
+    } catch (DockerException e) {
+      return failed(e);
+    }
+    return requireApiVersion("1.30", () ->
+        mapStatus(client.requestAsync(GET, CONFIG_LIST, resource,
+                                      resource.request(APPLICATION_JSON_TYPE), null),
+                  configNotFound(null, "node is not part of a swarm")));
+  }
+
+  @Override
+  public CompletableFuture<ConfigCreateResponse> createConfig(final ConfigSpec config) {
+    final WebTarget resource = client.resource().path("configs").path("create");
+    return requireApiVersion("1.30", () ->
+        mapStatus(client.requestAsync(POST, ConfigCreateResponse.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE),
+                                      Entity.json(config)),
+            ex -> {
+              switch (ex.status()) {
+                case 503:
+                  return new NonSwarmNodeException("Server not part of swarm.", ex);
+                case 409:
+                  return new ConflictException("Name conflicts with an existing object.", ex);
+                default:
+                  return ex;
+              }
+            }));
+  }
+
+  @Override
+  public CompletableFuture<Config> inspectConfig(final String configId) {
+    final WebTarget resource = client.resource().path("configs").path(configId);
+    return requireApiVersion("1.30", () ->
+        mapStatus(client.requestAsync(GET, Config.class, resource,
+                                      resource.request(APPLICATION_JSON_TYPE)),
+                  configNotFound(configId, "Config not part of swarm.")));
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteConfig(final String configId) {
+    final WebTarget resource = client.resource().path("configs").path(configId);
+    return requireApiVersion("1.30", () ->
+        discard(mapStatus(client.requestAsync(DELETE, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE)),
+                          configNotFound(configId, "Config not part of a swarm."))));
+  }
+
+  @Override
+  public CompletableFuture<Void> updateConfig(final String configId, final Long version,
+                                              final ConfigSpec spec) {
+    final WebTarget resource = client.resource()
+        .path("configs").path(configId).path("update")
+        .queryParam("version", version);
+    return requireApiVersion("1.30", () ->
+        discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                              resource.request(APPLICATION_JSON_TYPE),
+                                              Entity.json(spec)),
+                          configNotFound(configId, "Config not part of a swarm."))));
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      if (waiter != null) {
+        waiter.close();
+      }
+    }
+    client.close();
+  }
+
+  private CompletableFuture<Void> containerAction(final String containerId,
+                                                  final WebTarget resource) {
+    return discard(mapStatus(client.requestAsync(POST, String.class, resource,
+                                                 resource.request()),
+                             containerNotFound(containerId)));
+  }
+
+  private static StatusMapper containerNotFound(final String containerId) {
+    return ex -> ex.status() == 404 ? new ContainerNotFoundException(containerId, ex) : ex;
+  }
+
+  private static StatusMapper imageNotFound(final String image) {
+    return ex -> ex.status() == 404 ? new ImageNotFoundException(image, ex) : ex;
+  }
+
+  private static StatusMapper networkNotFound(final String networkId) {
+    return ex -> ex.status() == 404 ? new NetworkNotFoundException(networkId, ex) : ex;
+  }
+
+  private static StatusMapper serviceNotFound(final String serviceId) {
+    return ex -> ex.status() == 404 ? new ServiceNotFoundException(serviceId, ex) : ex;
+  }
+
+  private static StatusMapper nodeNotFound(final String nodeId, final String nonSwarmMessage) {
+    return ex -> {
+      switch (ex.status()) {
+        case 404:
+          return new NodeNotFoundException(nodeId, ex);
+        case 503:
+          return new NonSwarmNodeException(nonSwarmMessage, ex);
+        default:
+          return ex;
+      }
+    };
+  }
+
+  private static StatusMapper configNotFound(final String configId,
+                                             final String nonSwarmMessage) {
+    return ex -> {
+      switch (ex.status()) {
+        case 404:
+          return configId == null
+                 ? ex : new NotFoundException("Config " + configId + " not found.", ex);
+        case 503:
+          return new NonSwarmNodeException(nonSwarmMessage, ex);
+        default:
+          return ex;
+      }
+    };
+  }
+
+  private static StatusMapper swarmMembership(final String unavailableMessage) {
+    return ex -> {
+      switch (ex.status()) {
+        case 400:
+          return new DockerException("bad parameter", ex);
+        case 500:
+          return new DockerException("server error", ex);
+        case 503:
+          return new DockerException(unavailableMessage, ex);
+        default:
+          return ex;
+      }
+    };
+  }
+
+  private static <T> CompletableFuture<T> mapStatus(final CompletableFuture<T> future,
+                                                    final StatusMapper mapper) {
+    final CompletableFuture<T> result = new CompletableFuture<>();
+    future.whenComplete((value, error) -> {
+      final Throwable cause = unwrap(error);
+      if (cause == null) {
+        result.complete(value);
+      } else if (cause instanceof DockerRequestException) {
+        result.completeExceptionally(mapper.map((DockerRequestException) cause));
+      } else {
+        result.completeExceptionally(cause);
+      }
+    });
+    return result;
+  }
+
+  private <T> CompletableFuture<T> requireApiVersion(final String minimumVersion,
+                                                     final Supplier<CompletableFuture<T>> request) {
+    return serverApiVersion().thenCompose(apiVersion -> {
+      if (compareVersion(apiVersion, minimumVersion) < 0) {
+        return failed(new UnsupportedApiVersionException(apiVersion));
+      }
+      return request.get();
+    });
+  }
+
+  private CompletableFuture<String> serverApiVersion() {
+    final String cached = client.cachedServerApiVersion();
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    return version().thenApply(Version::apiVersion);
+  }
+
+  private static CompletableFuture<Void> discard(final CompletableFuture<?> future) {
+    return future.thenApply(ignored -> null);
+  }
+
+  private static <T> CompletableFuture<T> failed(final Throwable throwable) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    future.completeExceptionally(throwable);
+    return future;
+  }
+
+  private static Throwable unwrap(final Throwable throwable) {
+    if (throwable instanceof CompletionException && throwable.getCause() != null) {
+      return throwable.getCause();
+    }
+    return throwable;
+  }
+}
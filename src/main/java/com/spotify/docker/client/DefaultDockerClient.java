@@ -37,6 +37,7 @@ import static javax.ws.rs.HttpMethod.DELETE;
 import static javax.ws.rs.HttpMethod.GET;
 import static javax.ws.rs.HttpMethod.POST;
 import static javax.ws.rs.HttpMethod.PUT;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM;
 import static javax.ws.rs.core.MediaType.APPLICATION_OCTET_STREAM_TYPE;
@@ -57,6 +58,8 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.CharStreams;
 import com.google.common.net.HostAndPort;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.DirectHttpEngine.PathTemplate;
 import com.spotify.docker.client.auth.ConfigFileRegistryAuthSupplier;
 import com.spotify.docker.client.auth.FixedRegistryAuthSupplier;
 import com.spotify.docker.client.auth.RegistryAuthSupplier;
@@ -91,6 +94,7 @@ import com.spotify.docker.client.messages.ContainerStats;
 import com.spotify.docker.client.messages.ContainerUpdate;
 import com.spotify.docker.client.messages.Distribution;
 import com.spotify.docker.client.messages.ExecCreation;
+import com.spotify.docker.client.messages.ExecResult;
 import com.spotify.docker.client.messages.ExecState;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.Image;
@@ -132,6 +136,7 @@ import com.spotify.docker.client.npipe.NpipeConnectionSocketFactory;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -141,13 +146,13 @@ import java.io.UnsupportedEncodingException;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URLEncoder;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -156,10 +161,15 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.ws.rs.ProcessingException;
@@ -168,19 +178,24 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.Invocation;
+import javax.ws.rs.client.InvocationCallback;
 import javax.ws.rs.client.ResponseProcessingException;
 import javax.ws.rs.client.WebTarget;
 import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MultivaluedHashMap;
 import javax.ws.rs.core.MultivaluedMap;
 import javax.ws.rs.core.Response;
 
-import org.apache.commons.codec.binary.Base64;
 import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
 import org.apache.http.config.Registry;
 import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.ConnectTimeoutException;
@@ -191,6 +206,7 @@ import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.glassfish.hk2.api.MultiException;
 import org.glassfish.jersey.apache.connector.ApacheClientProperties;
 import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
@@ -203,6 +219,51 @@ import org.slf4j.LoggerFactory;
 
 public class DefaultDockerClient implements DockerClient, Closeable {
 
+  /**
+   * Forwards progress messages to another handler and captures something from them. When that
+   * handler is a {@link StreamingProgressHandler} this one is too, and asks for the fields of the
+   * handler plus the ones it captures, so that wrapping it doesn't turn off streaming.
+   */
+  private abstract static class CapturingProgressHandler implements StreamingProgressHandler {
+
+    private final ProgressHandler delegate;
+    private final Field[] captured;
+
+    private CapturingProgressHandler(final ProgressHandler delegate, final Field... captured) {
+      this.delegate = delegate;
+      this.captured = captured;
+    }
+
+    @Override
+    public Set<Field> fields() {
+      if (!(delegate instanceof StreamingProgressHandler)) {
+        return EnumSet.allOf(Field.class);
+      }
+      final Set<Field> fields = EnumSet.noneOf(Field.class);
+      fields.addAll(((StreamingProgressHandler) delegate).fields());
+      Collections.addAll(fields, captured);
+      return fields;
+    }
+
+    @Override
+    public void onProgress(final ProgressEvent event) throws DockerException {
+      if (delegate instanceof StreamingProgressHandler) {
+        ((StreamingProgressHandler) delegate).onProgress(event);
+      } else {
+        delegate.progress(event.toMessage());
+      }
+      capture(event);
+    }
+
+    @Override
+    public void progress(final ProgressMessage message) throws DockerException {
+      delegate.progress(message);
+      capture(ProgressEvent.of(message));
+    }
+
+    abstract void capture(ProgressEvent event);
+  }
+
   /**
    * Hack: this {@link ProgressHandler} is meant to capture the image ID (or image digest in Docker
    * 1.10+) of an image being created. Weirdly enough, Docker returns the ID or digest of a newly
@@ -213,19 +274,17 @@ public class DefaultDockerClient implements DockerClient, Closeable {
    * support the <code>tag</code> parameter. By retrieving the ID/digest, the image can be tagged
    * with its image name, given its ID/digest.
    */
-  private static class CreateProgressHandler implements ProgressHandler {
+  private static class CreateProgressHandler extends CapturingProgressHandler {
 
     // The length of the image hash
     private static final int EXPECTED_CHARACTER_NUM1 = 64;
     // The length of the image digest
     private static final int EXPECTED_CHARACTER_NUM2 = 71;
 
-    private final ProgressHandler delegate;
-
     private String imageId;
 
     private CreateProgressHandler(ProgressHandler delegate) {
-      this.delegate = delegate;
+      super(delegate, Field.STATUS);
     }
 
     private String getImageId() {
@@ -235,12 +294,11 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
 
     @Override
-    public void progress(ProgressMessage message) throws DockerException {
-      delegate.progress(message);
-      final String status = message.status();
+    void capture(ProgressEvent event) {
+      final String status = event.status();
       if (status != null && (status.length() == EXPECTED_CHARACTER_NUM1
                              || status.length() == EXPECTED_CHARACTER_NUM2)) {
-        imageId = message.status();
+        imageId = status;
       }
     }
 
@@ -252,18 +310,16 @@ public class DefaultDockerClient implements DockerClient, Closeable {
    * created image in the stream of a progress message.
    *
    */
-  private static class LoadProgressHandler implements ProgressHandler {
+  private static class LoadProgressHandler extends CapturingProgressHandler {
 
     // The length of the image hash
     private static final Pattern IMAGE_STREAM_PATTERN =
         Pattern.compile("Loaded image: (?<image>.+)\n");
 
-    private final ProgressHandler delegate;
-
     private Set<String> imageNames;
 
     private LoadProgressHandler(ProgressHandler delegate) {
-      this.delegate = delegate;
+      super(delegate, Field.STREAM);
       this.imageNames = new HashSet<>();
     }
 
@@ -272,9 +328,8 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
 
     @Override
-    public void progress(ProgressMessage message) throws DockerException {
-      delegate.progress(message);
-      final String stream = message.stream();
+    void capture(ProgressEvent event) {
+      final String stream = event.stream();
       if (stream != null) {
         Matcher streamMatcher = IMAGE_STREAM_PATTERN.matcher(stream);
         if (streamMatcher.matches()) {
@@ -291,30 +346,32 @@ public class DefaultDockerClient implements DockerClient, Closeable {
    * Hack: this {@link ProgressHandler} is meant to capture the image ID
    * of an image being built.
    */
-  private static class BuildProgressHandler implements ProgressHandler {
-
-    private final ProgressHandler delegate;
+  private static class BuildProgressHandler extends CapturingProgressHandler {
 
     private String imageId;
+    private String auxId;
 
     private BuildProgressHandler(ProgressHandler delegate) {
-      this.delegate = delegate;
+      super(delegate, Field.STREAM, Field.AUX_ID);
     }
 
     private String getImageId() {
-      Preconditions.checkState(imageId != null,
+      // Quiet builds don't print "Successfully built", but newer daemons send the id as aux.ID
+      final String id = imageId == null ? auxId : imageId;
+      Preconditions.checkState(id != null,
                                "Could not acquire image ID or digest following build");
-      return imageId;
+      return id;
     }
 
     @Override
-    public void progress(ProgressMessage message) throws DockerException {
-      delegate.progress(message);
-      
-      final String id = message.buildImageId();
+    void capture(ProgressEvent event) {
+      final String id = ProgressMessage.buildImageId(event.stream());
       if (id != null) {
         imageId = id;
       }
+      if (event.auxId() != null) {
+        auxId = event.auxId();
+      }
     }
 
   }
@@ -331,13 +388,14 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   private static final long DEFAULT_READ_TIMEOUT_MILLIS = SECONDS.toMillis(30);
   private static final int DEFAULT_CONNECTION_POOL_SIZE = 100;
 
+  private static final long TAIL_THREAD_KEEP_ALIVE_SECONDS = 60;
+
   private final ClientConfig defaultConfig = new ClientConfig(
       ObjectMapperProvider.class,
       JacksonFeature.class,
-      LogsResponseReader.class,
       ProgressResponseReader.class);
 
-  private static final Pattern CONTAINER_NAME_PATTERN =
+  static final Pattern CONTAINER_NAME_PATTERN =
           Pattern.compile("^[a-zA-Z0-9][a-zA-Z0-9_.-]+$");
 
   private static final GenericType<List<Container>> CONTAINER_LIST =
@@ -384,6 +442,15 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   private static final GenericType<List<Secret>> SECRET_LIST = new GenericType<List<Secret>>() { };
 
+  private static final PathTemplate PING_PATH = PathTemplate.unversioned("/_ping");
+  private static final PathTemplate CONTAINER_JSON_PATH =
+      PathTemplate.versioned("/containers/{}/json");
+  private static final PathTemplate CONTAINER_ACTION_PATH =
+      PathTemplate.versioned("/containers/{}/{}");
+  private static final PathTemplate CONTAINER_STOP_PATH =
+      PathTemplate.versioned("/containers/{}/stop?t={}");
+  private static final PathTemplate IMAGE_JSON_PATH = PathTemplate.versioned("/images/{}/json");
+
   private final Client client;
   private final Client noTimeoutClient;
 
@@ -393,6 +460,26 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   private final Map<String, Object> headers;
 
+  // Send the calls that HttpEngine.DIRECT takes out of Jersey; null when everything uses Jersey
+  private final DirectHttpEngine directEngine;
+  private final DirectHttpEngine noTimeoutDirectEngine;
+
+  private final RegistryAuthHeaders registryAuthHeaders =
+      new RegistryAuthHeaders(ObjectMapperProvider.objectMapper());
+
+  private final boolean execPreflightCheck;
+  private final boolean streamBuildContext;
+  private final BuildContextCompression buildContextCompression;
+  private final BuildContextCache buildContextCache;
+
+  // Reads the progress of pulls, pushes, builds and loads; null to read on the calling thread
+  private final ThreadPoolExecutor tailExecutor;
+  private final AtomicInteger activeTails = new AtomicInteger();
+  private final AtomicInteger queuedTails = new AtomicInteger();
+
+  // API version reported by the daemon, negotiated lazily and reused for all version gates.
+  private volatile String serverApiVersion;
+
   Client getClient() {
     return client;
   }
@@ -401,6 +488,10 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     return noTimeoutClient;
   }
 
+  URI getUri() {
+    return uri;
+  }
+
   /**
    * Create a new client with default configuration.
    *
@@ -438,6 +529,12 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     final URI originalUri = checkNotNull(builder.uri, "uri");
     checkNotNull(originalUri.getScheme(), "url has null scheme");
     this.apiVersion = builder.apiVersion();
+    this.execPreflightCheck = builder.execPreflightCheck;
+    this.streamBuildContext = builder.streamBuildContext;
+    this.buildContextCompression = builder.buildContextCompression;
+    this.buildContextCache = builder.buildContextCacheDirectory == null
+                             ? null : new BuildContextCache(builder.buildContextCacheDirectory);
+    this.tailExecutor = tailExecutor(builder);
 
     if ((builder.dockerCertificatesStore != null) && !originalUri.getScheme().equals("https")) {
       throw new IllegalArgumentException(
@@ -462,6 +559,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
         .build();
 
     final ClientConfig config = updateProxy(defaultConfig, builder)
+        .register(new LogsResponseReader(builder.reuseLogBuffers))
         .connectorProvider(new ApacheConnectorProvider())
         .property(ApacheClientProperties.CONNECTION_MANAGER, cm)
         .property(ApacheClientProperties.REQUEST_CONFIG, requestConfig);
@@ -476,6 +574,12 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       config.property(ClientProperties.REQUEST_ENTITY_PROCESSING, builder.requestEntityProcessing);
     }
 
+    // Every request, blocking or not, runs on Jersey's async executor, which is unbounded unless
+    // a cap was asked for
+    if (builder.asyncThreads != null && builder.asyncThreads > 0) {
+      config.property(ClientProperties.ASYNC_THREADPOOL_SIZE, builder.asyncThreads);
+    }
+
     this.client = ClientBuilder.newBuilder()
         .withConfig(config)
         .build();
@@ -493,6 +597,20 @@ public class DefaultDockerClient implements DockerClient, Closeable {
         .build();
 
     this.headers = new HashMap<>(builder.headers());
+
+    if (builder.httpEngine == HttpEngine.DIRECT) {
+      this.directEngine = directEngine(client);
+      this.noTimeoutDirectEngine = directEngine(noTimeoutClient);
+    } else {
+      this.directEngine = null;
+      this.noTimeoutDirectEngine = null;
+    }
+  }
+
+  private DirectHttpEngine directEngine(final Client client) {
+    return new DirectHttpEngine(
+        (CloseableHttpClient) ApacheConnectorProvider.getHttpClient(client), uri, apiVersion,
+        headers, objectMapper(), () -> cacheServerApiVersion(null));
   }
 
   private ClientConfig updateProxy(ClientConfig config, Builder builder) {
@@ -582,14 +700,66 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     return registryBuilder.build();
   }
 
+  private static ThreadPoolExecutor tailExecutor(final Builder builder) {
+    final int threads = builder.tailThreads == null
+                        ? builder.connectionPoolSize : builder.tailThreads;
+    if (threads == 0) {
+      return null;
+    }
+    final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        threads, threads, TAIL_THREAD_KEEP_ALIVE_SECONDS, SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactoryBuilder().setNameFormat("docker-client-tail-%d").setDaemon(true).build());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   @Override
   public void close() {
+    if (tailExecutor != null) {
+      for (final Runnable queued : tailExecutor.shutdownNow()) {
+        ((Future<?>) queued).cancel(false);
+      }
+    }
     client.close();
     noTimeoutClient.close();
   }
 
+  /**
+   * Returns the number of progress streams, of pulls, pushes, builds and loads, that are being
+   * read.
+   *
+   * @return the number of active progress streams
+   */
+  public int activeTails() {
+    return activeTails.get();
+  }
+
+  /**
+   * Returns the number of progress streams waiting for a free thread to read them. See
+   * {@link Builder#tailThreads(int)}.
+   *
+   * @return the number of queued progress streams
+   */
+  public int queuedTails() {
+    return queuedTails.get();
+  }
+
+  /**
+   * Returns a non-blocking view of this client. The view shares this client's connection pools
+   * and configuration, and closing either one closes both.
+   *
+   * @return An {@link AsyncDockerClient} backed by this client.
+   */
+  public AsyncDockerClient async() {
+    return new DefaultAsyncDockerClient(this);
+  }
+
   @Override
   public String ping() throws DockerException, InterruptedException {
+    if (directEngine != null) {
+      return directEngine.getText(PING_PATH);
+    }
     final WebTarget resource = client.target(uri).path("_ping");
     return request(GET, String.class, resource, resource.request());
   }
@@ -597,7 +767,56 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public Version version() throws DockerException, InterruptedException {
     final WebTarget resource = resource().path("version");
-    return request(GET, Version.class, resource, resource.request(APPLICATION_JSON_TYPE));
+    final Version version =
+        request(GET, Version.class, resource, resource.request(APPLICATION_JSON_TYPE));
+    serverApiVersion = version.apiVersion();
+    return version;
+  }
+
+  /**
+   * Get the API version of the daemon this client talks to. The version is fetched from the
+   * daemon on first use and cached, so version checks don't cost an extra round trip per call.
+   * The cached value is dropped when the connection to the daemon fails, so that a different
+   * daemon answering on the same address is picked up.
+   *
+   * @return The API version of the daemon.
+   * @throws DockerException      if a server error occurred (500)
+   * @throws InterruptedException If the thread is interrupted
+   */
+  public String serverApiVersion() throws DockerException, InterruptedException {
+    final String cached = serverApiVersion;
+    if (cached != null) {
+      return cached;
+    }
+    return version().apiVersion();
+  }
+
+  /**
+   * Discard the cached daemon API version and fetch it again.
+   *
+   * @return The API version of the daemon.
+   * @throws DockerException      if a server error occurred (500)
+   * @throws InterruptedException If the thread is interrupted
+   * @see #serverApiVersion()
+   */
+  public String refreshServerApiVersion() throws DockerException, InterruptedException {
+    serverApiVersion = null;
+    return version().apiVersion();
+  }
+
+  /**
+   * Returns the cached daemon API version, or null if it has not been negotiated yet.
+   */
+  String cachedServerApiVersion() {
+    return serverApiVersion;
+  }
+
+  RegistryAuthSupplier registryAuthSupplier() {
+    return registryAuthSupplier;
+  }
+
+  void cacheServerApiVersion(final String apiVersion) {
+    serverApiVersion = apiVersion;
   }
 
   @Override
@@ -634,7 +853,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
-  private WebTarget addParameters(WebTarget resource, final Param... params)
+  WebTarget addParameters(WebTarget resource, final Param... params)
       throws DockerException {
     final Map<String, List<String>> filters = newHashMap();
     for (final Param param : params) {
@@ -661,7 +880,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     return resource;
   }
 
-  private Map<String, String> getQueryParamMap(final WebTarget resource) {
+  Map<String, String> getQueryParamMap(final WebTarget resource) {
     final String queryParams = resource.getUri().getQuery();
     final Map<String, String> paramsMap = Maps.newHashMap();
     if (queryParams != null) {
@@ -697,7 +916,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
    * @return String
    * @throws DockerException if there's an IOException
    */
-  private String urlEncodeFilters(final Map<String, List<String>> filters) throws DockerException {
+  String urlEncodeFilters(final Map<String, List<String>> filters) throws DockerException {
     try {
       final String unencodedFilters = objectMapper().writeValueAsString(filters);
       if (!unencodedFilters.isEmpty()) {
@@ -772,6 +991,11 @@ public class DefaultDockerClient implements DockerClient, Closeable {
                                final MultivaluedMap<String, String> queryParameters)
           throws DockerException, InterruptedException {
     try {
+      if (directEngine != null && queryParameters.isEmpty()) {
+        directEngine.post(CONTAINER_ACTION_PATH, containerId, action);
+        return;
+      }
+
       WebTarget resource = resource()
               .path("containers").path(containerId).path(action);
 
@@ -851,6 +1075,11 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   public void stopContainer(final String containerId, final int secondsToWaitBeforeKilling)
       throws DockerException, InterruptedException {
     try {
+      if (noTimeoutDirectEngine != null) {
+        noTimeoutDirectEngine.post(CONTAINER_STOP_PATH, containerId,
+                                   String.valueOf(secondsToWaitBeforeKilling));
+        return;
+      }
       final WebTarget resource = noTimeoutResource()
           .path("containers").path(containerId).path("stop")
           .queryParam("t", String.valueOf(secondsToWaitBeforeKilling));
@@ -940,12 +1169,19 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  @Override
+  public ArchiveExtraction exportContainerTo(final String containerId, final Path destination)
+      throws DockerException, InterruptedException, IOException {
+    try (final InputStream archive = exportContainer(containerId)) {
+      return TarExtractor.extract(archive, destination, TarExtractor.DEFAULT_WRITER_THREADS);
+    }
+  }
 
   @Override
   @Deprecated
   public InputStream copyContainer(String containerId, String path)
       throws DockerException, InterruptedException {
-    final String apiVersion = version().apiVersion();
+    final String apiVersion = serverApiVersion();
     final int versionComparison = compareVersion(apiVersion, "1.24");
 
     // Version above 1.24
@@ -977,7 +1213,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public InputStream archiveContainer(String containerId, String path)
       throws DockerException, InterruptedException {
-    final String apiVersion = version().apiVersion();
+    final String apiVersion = serverApiVersion();
     final int versionComparison = compareVersion(apiVersion, "1.20");
 
     // Version below 1.20
@@ -1002,6 +1238,15 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  @Override
+  public ArchiveExtraction archiveContainerTo(final String containerId, final String path,
+                                              final Path destination)
+      throws DockerException, InterruptedException, IOException {
+    try (final InputStream archive = archiveContainer(containerId, path)) {
+      return TarExtractor.extract(archive, destination, TarExtractor.DEFAULT_WRITER_THREADS);
+    }
+  }
+
   @Override
   public TopResults topContainer(final String containerId)
       throws DockerException, InterruptedException {
@@ -1030,9 +1275,8 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public void copyToContainer(final Path directory, String containerId, String path)
       throws DockerException, InterruptedException, IOException {
-    try (final CompressedDirectory compressedDirectory = CompressedDirectory.create(directory);
-         final InputStream fileStream = Files.newInputStream(compressedDirectory.file())) {
-      copyToContainer(fileStream, containerId, path);
+    try (final InputStream tarStream = compressDirectory(directory)) {
+      copyToContainer(tarStream, containerId, path);
     }
   }
 
@@ -1051,17 +1295,44 @@ public class DefaultDockerClient implements DockerClient, Closeable {
               resource.request(APPLICATION_OCTET_STREAM_TYPE),
               Entity.entity(tarStream, "application/tar"));
     } catch (DockerRequestException e) {
-      switch (e.status()) {
-        case 400:
-          throw new BadParamException(getQueryParamMap(resource), e);
-        case 403:
-          throw new PermissionException("Volume or container rootfs is marked as read-only.", e);
-        case 404:
-          throw new NotFoundException(
-              String.format("Either container %s or path %s not found.", containerId, path), e);
-        default:
-          throw e;
-      }
+      throw copyToContainerException(e, resource, containerId, path);
+    }
+  }
+
+  @Override
+  public void copyArchiveToContainer(final Path tarFile, final String containerId,
+                                     final String path)
+      throws DockerException, InterruptedException, IOException {
+    final WebTarget resource = resource()
+        .path("containers")
+        .path(containerId)
+        .path("archive")
+        .queryParam("noOverwriteDirNonDir", true)
+        .queryParam("path", path);
+
+    try (final CloseableHttpResponse response =
+             requestWithFile(PUT, client, resource, tarFile, "application/tar",
+                             APPLICATION_OCTET_STREAM)) {
+      EntityUtils.consume(response.getEntity());
+    } catch (DockerRequestException e) {
+      throw copyToContainerException(e, resource, containerId, path);
+    }
+  }
+
+  private DockerException copyToContainerException(final DockerRequestException ex,
+                                                   final WebTarget resource,
+                                                   final String containerId,
+                                                   final String path) {
+    switch (ex.status()) {
+      case 400:
+        return new BadParamException(getQueryParamMap(resource), ex);
+      case 403:
+        return new PermissionException("Volume or container rootfs is marked as read-only.", ex);
+      case 404:
+        return new NotFoundException(
+            String.format("Either container %s or path %s not found.", containerId, path), ex);
+      default:
+        return ex;
     }
   }
 
@@ -1086,6 +1357,9 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   public ContainerInfo inspectContainer(final String containerId)
       throws DockerException, InterruptedException {
     try {
+      if (directEngine != null) {
+        return directEngine.get(ContainerInfo.class, CONTAINER_JSON_PATH, containerId);
+      }
       final WebTarget resource = resource().path("containers").path(containerId).path("json");
       return request(GET, ContainerInfo.class, resource, resource.request(APPLICATION_JSON_TYPE));
     } catch (DockerRequestException e) {
@@ -1242,6 +1516,25 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  @Override
+  public Set<String> load(final Path imageTarball)
+      throws DockerException, InterruptedException, IOException {
+    return load(imageTarball, new LoggingLoadHandler());
+  }
+
+  @Override
+  public Set<String> load(final Path imageTarball, final ProgressHandler handler)
+      throws DockerException, InterruptedException, IOException {
+    final WebTarget resource = resource()
+            .path("images")
+            .path("load")
+            .queryParam("quiet", "false");
+
+    final LoadProgressHandler loadProgressHandler = new LoadProgressHandler(handler);
+    tailFileRequest(POST, resource, imageTarball, loadProgressHandler);
+    return loadProgressHandler.getImageNames();
+  }
+
   @Override
   public void create(final String image, final InputStream imagePayload)
       throws DockerException, InterruptedException {
@@ -1270,6 +1563,24 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  @Override
+  public void create(final String image, final Path imageTarball)
+      throws DockerException, InterruptedException, IOException {
+    create(image, imageTarball, new LoggingPullHandler("image file"));
+  }
+
+  @Override
+  public void create(final String image, final Path imageTarball, final ProgressHandler handler)
+      throws DockerException, InterruptedException, IOException {
+    final WebTarget resource = resource().path("images").path("create")
+        .queryParam("fromSrc", "-")
+        .queryParam("tag", image);
+
+    final CreateProgressHandler createProgressHandler = new CreateProgressHandler(handler);
+    tailFileRequest(POST, resource, imageTarball, createProgressHandler);
+    tag(createProgressHandler.getImageId(), image, true);
+  }
+
   @Override
   public InputStream save(final String... images)
       throws DockerException, IOException, InterruptedException {
@@ -1489,22 +1800,61 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
     final BuildProgressHandler buildHandler = new BuildProgressHandler(handler);
 
-    try (final CompressedDirectory compressedDirectory = CompressedDirectory.create(directory);
-         final InputStream fileStream = Files.newInputStream(compressedDirectory.file())) {
-        
+    try (final InputStream tarStream = compressDirectory(directory)) {
       requestAndTail(POST, buildHandler, resource,
                      resource.request(APPLICATION_JSON_TYPE)
                          .header("X-Registry-Config",
                                  authRegistryHeader(registryConfigs)),
-                     Entity.entity(fileStream, "application/tar"));
+                     Entity.entity(tarStream, "application/tar"));
 
       return buildHandler.getImageId();
     }
   }
 
+  /**
+   * Returns a tarball of the directory, either read from the build context cache, streamed while
+   * it is created or read from a temporary file that is deleted when the stream is closed.
+   */
+  private InputStream compressDirectory(final Path directory) throws IOException {
+    if (buildContextCache != null) {
+      return buildContextCache.open(directory, buildContextCompression);
+    }
+    if (streamBuildContext) {
+      return CompressedDirectory.stream(directory, buildContextCompression);
+    }
+
+    final CompressedDirectory compressedDirectory =
+        CompressedDirectory.create(directory, buildContextCompression);
+    try {
+      return new FilterInputStream(Files.newInputStream(compressedDirectory.file())) {
+        private boolean closed;
+
+        @Override
+        public void close() throws IOException {
+          // The connector closes the entity stream once it is sent, and so do we
+          if (closed) {
+            return;
+          }
+          closed = true;
+          try {
+            super.close();
+          } finally {
+            compressedDirectory.close();
+          }
+        }
+      };
+    } catch (IOException e) {
+      compressedDirectory.close();
+      throw e;
+    }
+  }
+
   @Override
   public ImageInfo inspectImage(final String image) throws DockerException, InterruptedException {
     try {
+      if (directEngine != null) {
+        return directEngine.get(ImageInfo.class, IMAGE_JSON_PATH, image);
+      }
       final WebTarget resource = resource().path("images").path(image).path("json");
       return request(GET, ImageInfo.class, resource, resource.request(APPLICATION_JSON_TYPE));
     } catch (DockerRequestException e) {
@@ -1647,11 +1997,20 @@ public class DefaultDockerClient implements DockerClient, Closeable {
                                  final String[] cmd,
                                  final ExecCreateParam... params)
       throws DockerException, InterruptedException {
-    final ContainerInfo containerInfo = inspectContainer(containerId);
-    if (!containerInfo.state().running()) {
-      throw new IllegalStateException("Container " + containerId + " is not running.");
+    if (execPreflightCheck) {
+      final ContainerInfo containerInfo = inspectContainer(containerId);
+      if (!containerInfo.state().running()) {
+        throw new IllegalStateException("Container " + containerId + " is not running.");
+      }
     }
 
+    return createExec(containerId, cmd, params);
+  }
+
+  private ExecCreation createExec(final String containerId,
+                                  final String[] cmd,
+                                  final ExecCreateParam... params)
+      throws DockerException, InterruptedException {
     final WebTarget resource = resource().path("containers").path(containerId).path("exec");
 
     final StringWriter writer = new StringWriter();
@@ -1694,6 +2053,42 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  @Override
+  public ExecResult execRun(final String containerId,
+                            final String[] cmd,
+                            final ExecCreateParam... params)
+      throws DockerException, InterruptedException {
+    final List<ExecCreateParam> createParams = Lists.newArrayList(params);
+    if (!hasParam(createParams, "AttachStdout")) {
+      createParams.add(ExecCreateParam.attachStdout());
+    }
+    if (!hasParam(createParams, "AttachStderr")) {
+      createParams.add(ExecCreateParam.attachStderr());
+    }
+
+    // The daemon rejects execs in containers that aren't running with a 409, so there is no
+    // need to inspect the container first.
+    final ExecCreation execCreation = createExec(
+        containerId, cmd, createParams.toArray(new ExecCreateParam[createParams.size()]));
+
+    final String output;
+    try (final LogStream stream = execStart(execCreation.id())) {
+      output = stream.readFully();
+    }
+
+    final ExecState state = execInspect(execCreation.id());
+    return ExecResult.create(output, state.exitCode());
+  }
+
+  private static boolean hasParam(final List<? extends Param> params, final String name) {
+    for (final Param param : params) {
+      if (param.name().equals(name)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
 
   @Override
   public LogStream execStart(final String execId, final ExecStartParameter... params)
@@ -1986,6 +2381,12 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   public List<Service> listServices(final Service.Criteria criteria)
       throws DockerException, InterruptedException {
     assertApiVersionIsAbove("1.24");
+    WebTarget resource = resource().path("services");
+    resource = resource.queryParam("filters", urlEncodeFilters(serviceFilters(criteria)));
+    return request(GET, SERVICE_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+  }
+
+  static Map<String, List<String>> serviceFilters(final Service.Criteria criteria) {
     final Map<String, List<String>> filters = new HashMap<>();
 
     if (criteria.serviceId() != null) {
@@ -2007,10 +2408,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     if (!labels.isEmpty()) {
       filters.put("label", labels);
     }
-
-    WebTarget resource = resource().path("services");
-    resource = resource.queryParam("filters", urlEncodeFilters(filters));
-    return request(GET, SERVICE_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+    return filters;
   }
 
   @Override
@@ -2071,6 +2469,12 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   public List<Task> listTasks(final Task.Criteria criteria)
       throws DockerException, InterruptedException {
     assertApiVersionIsAbove("1.24");
+    WebTarget resource = resource().path("tasks");
+    resource = resource.queryParam("filters", urlEncodeFilters(taskFilters(criteria)));
+    return request(GET, TASK_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+  }
+
+  static Map<String, List<String>> taskFilters(final Task.Criteria criteria) {
     final Map<String, List<String>> filters = new HashMap<>();
 
     if (criteria.taskId() != null) {
@@ -2091,10 +2495,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     if (criteria.desiredState() != null) {
       filters.put("desired-state", Collections.singletonList(criteria.desiredState()));
     }
-
-    WebTarget resource = resource().path("tasks");
-    resource = resource.queryParam("filters", urlEncodeFilters(filters));
-    return request(GET, TASK_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+    return filters;
   }
 
   @Override
@@ -2120,20 +2521,8 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       throws DockerException, InterruptedException {
     assertApiVersionIsAbove("1.30");
 
-    final Map<String, List<String>> filters = new HashMap<>();
-
-    if (criteria.configId() != null) {
-      filters.put("id", Collections.singletonList(criteria.configId()));
-    }
-    if (criteria.label() != null) {
-      filters.put("label", Collections.singletonList(criteria.label()));
-    }
-    if (criteria.name() != null) {
-      filters.put("name", Collections.singletonList(criteria.name()));
-    }
-
     final WebTarget resource = resource().path("configs")
-        .queryParam("filters", urlEncodeFilters(filters));
+        .queryParam("filters", urlEncodeFilters(configFilters(criteria)));
 
     try {
       return request(GET, CONFIG_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
@@ -2147,6 +2536,21 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  static Map<String, List<String>> configFilters(final Config.Criteria criteria) {
+    final Map<String, List<String>> filters = new HashMap<>();
+
+    if (criteria.configId() != null) {
+      filters.put("id", Collections.singletonList(criteria.configId()));
+    }
+    if (criteria.label() != null) {
+      filters.put("label", Collections.singletonList(criteria.label()));
+    }
+    if (criteria.name() != null) {
+      filters.put("name", Collections.singletonList(criteria.name()));
+    }
+    return filters;
+  }
+
   @Override
   public ConfigCreateResponse createConfig(final ConfigSpec config)
       throws DockerException, InterruptedException {
@@ -2245,6 +2649,12 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   @Override
   public List<Node> listNodes(Node.Criteria criteria) throws DockerException, InterruptedException {
     assertApiVersionIsAbove("1.24");
+    WebTarget resource = resource().path("nodes");
+    resource = resource.queryParam("filters", urlEncodeFilters(nodeFilters(criteria)));
+    return request(GET, NODE_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+  }
+
+  static Map<String, List<String>> nodeFilters(final Node.Criteria criteria) {
     final Map<String, List<String>> filters = new HashMap<>();
 
     if (criteria.nodeId() != null) {
@@ -2262,10 +2672,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     if (criteria.nodeRole() != null) {
       filters.put("role", Collections.singletonList(criteria.nodeRole()));
     }
-
-    WebTarget resource = resource().path("nodes");
-    resource = resource.queryParam("filters", urlEncodeFilters(filters));
-    return request(GET, NODE_LIST, resource, resource.request(APPLICATION_JSON_TYPE));
+    return filters;
   }
 
   @Override
@@ -2403,6 +2810,27 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  @Override
+  public ContainerStatsStream statsStream(final String containerId)
+      throws DockerException, InterruptedException {
+    final WebTarget resource = noTimeoutResource()
+        .path("containers").path(containerId).path("stats")
+        .queryParam("stream", "1");
+
+    try {
+      final InputStream stream = request(GET, InputStream.class, resource,
+                                         resource.request(APPLICATION_JSON_TYPE));
+      return new ContainerStatsStream(stream, objectMapper());
+    } catch (DockerRequestException e) {
+      switch (e.status()) {
+        case 404:
+          throw new ContainerNotFoundException(containerId, e);
+        default:
+          throw e;
+      }
+    }
+  }
+
   @Override
   public void resizeTty(final String containerId, final Integer height, final Integer width)
       throws DockerException, InterruptedException {
@@ -2677,7 +3105,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
-  private WebTarget resource() {
+  WebTarget resource() {
     final WebTarget target = client.target(uri);
     if (!isNullOrEmpty(apiVersion)) {
       return target.path(apiVersion);
@@ -2685,7 +3113,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     return target;
   }
 
-  private WebTarget noTimeoutResource() {
+  WebTarget noTimeoutResource() {
     final WebTarget target = noTimeoutClient.target(uri);
     if (!isNullOrEmpty(apiVersion)) {
       return target.path(apiVersion);
@@ -2735,6 +3163,71 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
+  /**
+   * Sends a request without blocking the calling thread. The returned future completes on one of
+   * Jersey's async worker threads, and failures are mapped to the same exceptions that
+   * {@link #propagate(String, WebTarget, Exception)} throws for blocking requests.
+   */
+  <T> CompletableFuture<T> requestAsync(final String method, final GenericType<T> type,
+                                        final WebTarget resource,
+                                        final Invocation.Builder request,
+                                        final Entity<?> entity) {
+    final CompletableFuture<T> future = new CompletableFuture<>();
+    final InvocationCallback<Response> callback = new InvocationCallback<Response>() {
+      @Override
+      public void completed(final Response response) {
+        try {
+          if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+            final String message = message(response);
+            response.close();
+            future.completeExceptionally(new DockerRequestException(
+                method, resource.getUri(), response.getStatus(), message, null));
+          } else {
+            // Jersey closes the response once a non-streaming entity has been read
+            future.complete(response.readEntity(type));
+          }
+        } catch (ProcessingException e) {
+          response.close();
+          future.completeExceptionally(propagated(method, resource, e));
+        }
+      }
+
+      @Override
+      public void failed(final Throwable throwable) {
+        future.completeExceptionally(propagated(method, resource, throwable));
+      }
+    };
+
+    if (entity == null) {
+      headers(request).async().method(method, callback);
+    } else {
+      headers(request).async().method(method, entity, callback);
+    }
+    return future;
+  }
+
+  <T> CompletableFuture<T> requestAsync(final String method, final Class<T> clazz,
+                                        final WebTarget resource,
+                                        final Invocation.Builder request,
+                                        final Entity<?> entity) {
+    return requestAsync(method, new GenericType<T>(clazz), resource, request, entity);
+  }
+
+  <T> CompletableFuture<T> requestAsync(final String method, final Class<T> clazz,
+                                        final WebTarget resource,
+                                        final Invocation.Builder request) {
+    return requestAsync(method, clazz, resource, request, null);
+  }
+
+  private Exception propagated(final String method, final WebTarget resource,
+                               final Throwable throwable) {
+    try {
+      throw propagate(method, resource, new ExecutionException(throwable));
+    } catch (DockerException | InterruptedException | RuntimeException e) {
+      return e;
+    }
+  }
+
   private static class ResponseTailReader implements Callable<Void> {
     private final ProgressStream stream;
     private final ProgressHandler handler;
@@ -2759,12 +3252,38 @@ public class DefaultDockerClient implements DockerClient, Closeable {
   private void tailResponse(final String method, final Response response,
                             final ProgressHandler handler, final WebTarget resource)
         throws DockerException, InterruptedException {
-    final ExecutorService executor = Executors.newSingleThreadExecutor();
     try {
-      final ProgressStream stream = response.readEntity(ProgressStream.class);
-      final Future<?> future = executor.submit(
-              new ResponseTailReader(stream, handler, method, resource));
-      future.get();
+      tailStream(method, response.readEntity(ProgressStream.class), handler, resource);
+    } finally {
+      try {
+        response.close();
+      } catch (ProcessingException e) {
+        // ignore, thrown by jnr-unixsocket when httpcomponent try to read after close
+        // the socket is closed before this exception
+      }
+    }
+  }
+
+  /**
+   * Reads a progress stream on the tail executor, or on the calling thread without one. The
+   * caller closes the response the stream is read from, which also stops a reader that is still
+   * blocked on it after this thread was interrupted.
+   */
+  private void tailStream(final String method, final ProgressStream stream,
+                          final ProgressHandler handler, final WebTarget resource)
+      throws DockerException, InterruptedException {
+    try {
+      if (tailExecutor == null) {
+        // The stream checks for interrupts between messages
+        activeTails.incrementAndGet();
+        try {
+          stream.tail(handler, method, resource.getUri());
+        } finally {
+          activeTails.decrementAndGet();
+        }
+      } else {
+        tail(new ResponseTailReader(stream, handler, method, resource));
+      }
     } catch (ExecutionException e) {
       final Throwable cause = e.getCause();
       if (cause instanceof DockerException) {
@@ -2772,15 +3291,106 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       } else {
         throw new DockerException(cause);
       }
+    } catch (CancellationException | RejectedExecutionException e) {
+      throw new DockerException("The client was closed while reading the response", e);
+    }
+  }
+
+  private void tail(final ResponseTailReader reader)
+      throws ExecutionException, InterruptedException {
+    // Whoever flips this first either reads the stream or takes it off the queue
+    final AtomicBoolean started = new AtomicBoolean();
+    queuedTails.incrementAndGet();
+    final Future<Void> future;
+    try {
+      future = tailExecutor.submit(new Callable<Void>() {
+        @Override
+        public Void call() throws Exception {
+          if (!started.compareAndSet(false, true)) {
+            return null;
+          }
+          queuedTails.decrementAndGet();
+          activeTails.incrementAndGet();
+          try {
+            return reader.call();
+          } finally {
+            activeTails.decrementAndGet();
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      queuedTails.decrementAndGet();
+      throw e;
+    }
+
+    try {
+      future.get();
     } finally {
-      executor.shutdownNow();
+      // Stops the reader if this thread was interrupted
+      future.cancel(true);
+      if (started.compareAndSet(false, true)) {
+        queuedTails.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * Sends a file as the body of a request on the HTTP client underneath the given Jersey client.
+   * Jersey's connector sends every streamed entity in chunks; this way the request has the
+   * length of the file instead, and the file is written straight to the connection.
+   *
+   * @return the response, which the caller must close, if its status is successful
+   * @throws DockerRequestException if the response status is not successful
+   */
+  private CloseableHttpResponse requestWithFile(final String method, final Client client,
+                                                final WebTarget resource, final Path file,
+                                                final String contentType, final String accept)
+      throws DockerException, InterruptedException, IOException {
+    final URI uri = resource.getUri();
+    final HttpEntityEnclosingRequestBase request = PUT.equals(method)
+                                                   ? new HttpPut(uri) : new HttpPost(uri);
+    request.setHeader(HttpHeaders.ACCEPT, accept);
+    for (final Map.Entry<String, Object> entry : headers.entrySet()) {
+      request.setHeader(entry.getKey(), String.valueOf(entry.getValue()));
+    }
+    request.setEntity(new FileChannelEntity(file, contentType));
+
+    final CloseableHttpResponse response;
+    try {
+      response = ((CloseableHttpClient) ApacheConnectorProvider.getHttpClient(client))
+          .execute(request);
+    } catch (SocketTimeoutException | ConnectTimeoutException e) {
+      throw new DockerTimeoutException(method, uri, e);
+    } catch (InterruptedIOException e) {
+      throw new InterruptedException("Interrupted: " + method + " " + resource);
+    } catch (IOException e) {
+      throw new DockerException(e);
+    }
+
+    final int status = response.getStatusLine().getStatusCode();
+    if (status < 200 || status >= 300) {
       try {
+        final String message = response.getEntity() == null
+                               ? null : EntityUtils.toString(response.getEntity(), UTF_8);
+        throw new DockerRequestException(method, uri, status, message, null);
+      } finally {
         response.close();
-      } catch (ProcessingException e) {
-        // ignore, thrown by jnr-unixsocket when httpcomponent try to read after close
-        // the socket is closed before this exception
       }
     }
+    return response;
+  }
+
+  private void tailFileRequest(final String method, final WebTarget resource, final Path file,
+                               final ProgressHandler handler)
+      throws DockerException, InterruptedException, IOException {
+    try (final CloseableHttpResponse response =
+             requestWithFile(method, client, resource, file, APPLICATION_OCTET_STREAM,
+                             APPLICATION_JSON);
+         // Like Jersey's entity streams, the parser must not close the stream it reads
+         final ProgressStream stream = new ProgressStream(
+             new CloseShieldInputStream(response.getEntity().getContent()))) {
+      tailStream(method, stream, handler, resource);
+    }
   }
 
   private void requestAndTail(final String method, final ProgressHandler handler,
@@ -2845,6 +3455,8 @@ public class DefaultDockerClient implements DockerClient, Closeable {
                || (cause instanceof InterruptedException)) {
       throw new InterruptedException("Interrupted: " + method + " " + resource);
     } else {
+      // The daemon could not be reached; it may be a different one once we reconnect.
+      serverApiVersion = null;
       throw new DockerException(ex);
     }
   }
@@ -2864,16 +3476,14 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     }
   }
 
-  private String authHeader(final RegistryAuth registryAuth) throws DockerException {
+  String authHeader(final RegistryAuth registryAuth) throws DockerException {
     // the docker daemon requires that the X-Registry-Auth header is specified
     // with a non-empty string even if your registry doesn't use authentication
     if (registryAuth == null) {
       return "null";
     }
     try {
-      return Base64.encodeBase64String(ObjectMapperProvider
-                                       .objectMapper()
-                                       .writeValueAsBytes(registryAuth));
+      return registryAuthHeaders.authHeader(registryAuth);
     } catch (JsonProcessingException ex) {
       throw new DockerException("Could not encode X-Registry-Auth header", ex);
     }
@@ -2885,21 +3495,21 @@ public class DefaultDockerClient implements DockerClient, Closeable {
       return null;
     }
     try {
-      String authRegistryJson =
-          ObjectMapperProvider.objectMapper().writeValueAsString(registryConfigs.configs());
-
-      final String apiVersion = version().apiVersion();
+      final String apiVersion = serverApiVersion();
       final int versionComparison = compareVersion(apiVersion, "1.19");
 
-      // Version below 1.19
+      final String wrapper;
       if (versionComparison < 0) {
-        authRegistryJson = "{\"configs\":" + authRegistryJson + "}";
+        // Version below 1.19
+        wrapper = "configs";
       } else if (versionComparison == 0) {
         // Version equal 1.19
-        authRegistryJson = "{\"auths\":" + authRegistryJson + "}";
+        wrapper = "auths";
+      } else {
+        wrapper = null;
       }
 
-      return Base64.encodeBase64String(authRegistryJson.getBytes(StandardCharsets.UTF_8));
+      return registryAuthHeaders.configHeader(registryConfigs, wrapper);
     } catch (JsonProcessingException | InterruptedException ex) {
       throw new DockerException("Could not encode X-Registry-Config header", ex);
     }
@@ -2907,7 +3517,7 @@ public class DefaultDockerClient implements DockerClient, Closeable {
 
   private void assertApiVersionIsAbove(String minimumVersion)
       throws DockerException, InterruptedException {
-    final String apiVersion = version().apiVersion();
+    final String apiVersion = serverApiVersion();
     final int versionComparison = compareVersion(apiVersion, minimumVersion);
 
     // Version above minimumVersion
@@ -2986,6 +3596,14 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     private RegistryAuthSupplier registryAuthSupplier;
     private Map<String, Object> headers = new HashMap<>();
     private RequestEntityProcessing requestEntityProcessing;
+    private boolean execPreflightCheck = true;
+    private boolean streamBuildContext;
+    private BuildContextCompression buildContextCompression = BuildContextCompression.GZIP;
+    private Path buildContextCacheDirectory;
+    private boolean reuseLogBuffers;
+    private Integer tailThreads;
+    private Integer asyncThreads;
+    private HttpEngine httpEngine = HttpEngine.JERSEY;
 
     public URI uri() {
       return uri;
@@ -3168,7 +3786,174 @@ public class DefaultDockerClient implements DockerClient, Closeable {
     public Map<String, Object> headers() {
       return headers;
     }
+
+    public boolean execPreflightCheck() {
+      return execPreflightCheck;
+    }
+
+    /**
+     * Whether {@link DefaultDockerClient#execCreate} should inspect the container and throw an
+     * {@link IllegalStateException} if it is not running before creating the exec instance.
+     * Enabled by default. When disabled, execCreate makes a single request and a container that
+     * isn't running is reported by the daemon as an {@link ExecCreateConflictException}.
+     *
+     * @param execPreflightCheck tells if the container state should be checked before an exec
+     * @return Builder
+     */
+    public Builder execPreflightCheck(final boolean execPreflightCheck) {
+      this.execPreflightCheck = execPreflightCheck;
+      return this;
+    }
+
+    public boolean streamBuildContext() {
+      return streamBuildContext;
+    }
+
+    /**
+     * Stream build contexts to Docker while they are being compressed, instead of first writing
+     * them to a temporary file. This applies to {@link DefaultDockerClient#build} and
+     * {@link DefaultDockerClient#copyToContainer(Path, String, String)}. The archive is created
+     * on a background thread and only a bounded part of it is held in memory, unless the request
+     * entity processing is set to {@link RequestEntityProcessing#BUFFERED}.
+     *
+     * @param streamBuildContext tells if build contexts should be streamed
+     * @return Builder
+     */
+    public Builder streamBuildContext(final boolean streamBuildContext) {
+      this.streamBuildContext = streamBuildContext;
+      return this;
+    }
+
+    public BuildContextCompression buildContextCompression() {
+      return buildContextCompression;
+    }
+
+    /**
+     * Set how build contexts are compressed, which also applies to
+     * {@link DefaultDockerClient#copyToContainer(Path, String, String)}. The default is
+     * {@link BuildContextCompression#GZIP}. Use {@link BuildContextCompression#PARALLEL_GZIP}
+     * for large contexts sent to a remote daemon, and {@link BuildContextCompression#NONE} for a
+     * daemon on the same machine.
+     *
+     * @param buildContextCompression how build contexts are compressed
+     * @return Builder
+     */
+    public Builder buildContextCompression(final BuildContextCompression buildContextCompression) {
+      this.buildContextCompression = checkNotNull(buildContextCompression,
+                                                  "buildContextCompression");
+      return this;
+    }
+
+    public Path buildContextCacheDirectory() {
+      return buildContextCacheDirectory;
+    }
+
+    /**
+     * Keep the archives of build contexts in the given directory, so that building a directory
+     * again only reads and compresses the files that changed since it was last built. When
+     * nothing changed, the previous archive is sent after a walk of the directory. This also
+     * applies to {@link DefaultDockerClient#copyToContainer(Path, String, String)}. Cached
+     * archives are not streamed, regardless of {@link #streamBuildContext(boolean)}. Disabled by
+     * default. The directory should not be shared with other clients.
+     *
+     * <p>Each file is compressed separately, on the calling thread, so that it can be reused on
+     * its own. {@link BuildContextCompression#PARALLEL_GZIP} therefore compresses like
+     * {@link BuildContextCompression#GZIP} when the cache is enabled.</p>
+     *
+     * @param buildContextCacheDirectory where to keep build context archives, or null to disable
+     * @return Builder
+     */
+    public Builder buildContextCacheDirectory(final Path buildContextCacheDirectory) {
+      this.buildContextCacheDirectory = buildContextCacheDirectory;
+      return this;
+    }
+
+    public boolean reuseLogBuffers() {
+      return reuseLogBuffers;
+    }
+
+    /**
+     * Read log streams, such as those returned by {@link DefaultDockerClient#logs} and
+     * {@link DefaultDockerClient#execStart}, into a single reused buffer instead of allocating a
+     * new buffer for every frame. When enabled, a {@link LogMessage} returned by a
+     * {@link LogStream} is only valid until the next call to {@code hasNext()} or {@code next()};
+     * use {@link LogMessage#copy()} to keep a message around. {@link LogStream#readFully()} and
+     * {@link LogStream#attach} are not affected.
+     *
+     * @param reuseLogBuffers tells if log streams should reuse their buffers
+     * @return Builder
+     */
+    public Builder reuseLogBuffers(final boolean reuseLogBuffers) {
+      this.reuseLogBuffers = reuseLogBuffers;
+      return this;
+    }
     
+    public Integer tailThreads() {
+      return tailThreads;
+    }
+
+    /**
+     * Set how many threads read the progress of {@code pull}, {@code push}, {@code build},
+     * {@code create} and {@code load} calls. The threads are shared by all calls, so that a burst
+     * of image operations doesn't start a thread for each one, and stop when they are idle.
+     * Calls beyond this many wait for a thread, which {@link DefaultDockerClient#queuedTails()}
+     * reports. Defaults to the {@link #connectionPoolSize(int) connection pool size}.
+     *
+     * <p>With 0, progress is read on the calling thread. An interrupted call then stops at the
+     * next progress message rather than right away.</p>
+     *
+     * @param tailThreads the number of threads, or 0 to read on the calling thread
+     * @return Builder
+     */
+    public Builder tailThreads(final int tailThreads) {
+      checkArgument(tailThreads >= 0, "tailThreads must not be negative");
+      this.tailThreads = tailThreads;
+      return this;
+    }
+
+    public Integer asyncThreads() {
+      return asyncThreads;
+    }
+
+    /**
+     * Cap how many threads send requests for each of the two underlying HTTP clients, one with
+     * and one without a read timeout. By default there is no cap and a thread is started for
+     * every request in flight, as Jersey does. A cap stops a burst of
+     * {@link DefaultDockerClient#async()} calls from starting a thread per call; the
+     * {@link #connectionPoolSize(int) connection pool size} is a sensible value.
+     *
+     * <p>The cap applies to the blocking methods too, so it has some costs. Requests beyond it
+     * queue for a thread without any timeout, rather than fail after the connection request
+     * timeout. Long calls without a read timeout, such as
+     * {@link DockerClient#waitContainer(String)} or a build, can hold every thread. And a
+     * blocking call made from a callback of an {@link AsyncDockerClient} future runs on one of
+     * these threads and waits for another, which deadlocks once all of them do so.</p>
+     *
+     * @param asyncThreads the number of threads, or 0 for no cap
+     * @return Builder
+     */
+    public Builder asyncThreads(final int asyncThreads) {
+      checkArgument(asyncThreads >= 0, "asyncThreads must not be negative");
+      this.asyncThreads = asyncThreads;
+      return this;
+    }
+
+    public HttpEngine httpEngine() {
+      return httpEngine;
+    }
+
+    /**
+     * Set how requests are sent to Docker. Defaults to {@link HttpEngine#JERSEY}; with
+     * {@link HttpEngine#DIRECT} the most frequent small calls bypass Jersey.
+     *
+     * @param httpEngine the engine to send requests with
+     * @return Builder
+     */
+    public Builder httpEngine(final HttpEngine httpEngine) {
+      this.httpEngine = checkNotNull(httpEngine, "httpEngine");
+      return this;
+    }
+
     /**
      * Allows setting transfer encoding. CHUNKED does not send the content-length header 
      * while BUFFERED does.
@@ -36,8 +36,8 @@ class DefaultLogStream extends AbstractIterator<LogMessage> implements LogStream
 
   private final LogReader reader;
 
-  private DefaultLogStream(final InputStream stream) {
-    this(new LogReader(stream));
+  private DefaultLogStream(final InputStream stream, final boolean reuseBuffers) {
+    this(new LogReader(stream, reuseBuffers));
   }
 
   @VisibleForTesting
@@ -46,7 +46,11 @@ class DefaultLogStream extends AbstractIterator<LogMessage> implements LogStream
   }
 
   static DefaultLogStream create(final InputStream stream) {
-    return new DefaultLogStream(stream);
+    return create(stream, false);
+  }
+
+  static DefaultLogStream create(final InputStream stream, final boolean reuseBuffers) {
+    return new DefaultLogStream(stream, reuseBuffers);
   }
 
   @Override
@@ -95,7 +99,8 @@ class DefaultLogStream extends AbstractIterator<LogMessage> implements LogStream
 
       while (this.hasNext()) {
         final LogMessage message = this.next();
-        final ByteBuffer content = message.content();
+        // The content isn't handed out, so there is no need for a read-only view
+        final ByteBuffer content = message.content;
 
         switch (message.stream()) {
           case STDOUT:
@@ -121,7 +126,8 @@ class DefaultLogStream extends AbstractIterator<LogMessage> implements LogStream
       final ByteBuffer buffer, final OutputStream outputStream) throws IOException {
 
     if (buffer.hasArray()) {
-      outputStream.write(buffer.array(), buffer.position(), buffer.remaining());
+      outputStream.write(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                         buffer.remaining());
     } else {
       // cannot access underlying byte array, need to copy into a temporary array
       while (buffer.hasRemaining()) {
@@ -0,0 +1,232 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Strings.isNullOrEmpty;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.escape.Escaper;
+import com.google.common.net.PercentEscaper;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.DockerTimeoutException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicHeader;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Sends requests straight to the Apache HttpClient underneath a Jersey client, for the calls
+ * that {@link HttpEngine#DIRECT} takes out of Jersey. Paths are expanded from precompiled
+ * {@link PathTemplate}s and JSON responses are read from the response stream with the shared
+ * ObjectMapper. Failures are mapped to the same exceptions that DefaultDockerClient throws for
+ * requests sent through Jersey.
+ */
+class DirectHttpEngine {
+
+  private static final Header ACCEPT_JSON =
+      new BasicHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON);
+
+  private final CloseableHttpClient httpClient;
+  private final String base;
+  private final String versionedBase;
+  private final Header[] headers;
+  private final ObjectMapper objectMapper;
+  private final Runnable unreachable;
+
+  /**
+   * Creates an engine.
+   *
+   * @param httpClient   the HTTP client of the Jersey client whose pool and timeouts to use
+   * @param uri          the URI of Docker
+   * @param apiVersion   the API version to prefix versioned paths with, or null for none
+   * @param headers      the headers to add to every request
+   * @param objectMapper the mapper to read JSON responses with
+   * @param unreachable  run when Docker could not be reached
+   */
+  DirectHttpEngine(final CloseableHttpClient httpClient, final URI uri, final String apiVersion,
+                   final Map<String, Object> headers, final ObjectMapper objectMapper,
+                   final Runnable unreachable) {
+    this.httpClient = httpClient;
+    final String uriString = uri.toString();
+    this.base = uriString.endsWith("/")
+                ? uriString.substring(0, uriString.length() - 1) : uriString;
+    this.versionedBase = isNullOrEmpty(apiVersion)
+                         ? base : base + "/" + PathTemplate.ESCAPER.escape(apiVersion);
+    this.headers = new Header[headers.size()];
+    int index = 0;
+    for (final Map.Entry<String, Object> entry : headers.entrySet()) {
+      this.headers[index++] = new BasicHeader(entry.getKey(), String.valueOf(entry.getValue()));
+    }
+    this.objectMapper = objectMapper;
+    this.unreachable = unreachable;
+  }
+
+  /**
+   * Sends a GET request and reads its JSON response.
+   */
+  <T> T get(final Class<T> type, final PathTemplate path, final String... args)
+      throws DockerException, InterruptedException {
+    final HttpGet request = new HttpGet(uri(path, args));
+    request.addHeader(ACCEPT_JSON);
+    return execute(request, entity -> {
+      if (entity == null) {
+        return null;
+      }
+      try (final InputStream stream = entity.getContent()) {
+        return objectMapper.readValue(stream, type);
+      }
+    });
+  }
+
+  /**
+   * Sends a GET request and reads its response as text.
+   */
+  String getText(final PathTemplate path, final String... args)
+      throws DockerException, InterruptedException {
+    return execute(new HttpGet(uri(path, args)),
+        entity -> entity == null ? "" : EntityUtils.toString(entity, UTF_8));
+  }
+
+  /**
+   * Sends a POST request without a body and discards its response.
+   */
+  void post(final PathTemplate path, final String... args)
+      throws DockerException, InterruptedException {
+    final HttpPost request = new HttpPost(uri(path, args));
+    request.addHeader(ACCEPT_JSON);
+    execute(request, entity -> null);
+  }
+
+  URI uri(final PathTemplate path, final String... args) {
+    return URI.create(path.expand(path.versioned ? versionedBase : base, args));
+  }
+
+  private <T> T execute(final HttpRequestBase request, final EntityReader<T> reader)
+      throws DockerException, InterruptedException {
+    final String method = request.getMethod();
+    final URI uri = request.getURI();
+    for (final Header header : headers) {
+      request.setHeader(header);
+    }
+
+    try (final CloseableHttpResponse response = httpClient.execute(request)) {
+      final int status = response.getStatusLine().getStatusCode();
+      final HttpEntity entity = response.getEntity();
+      if (status < 200 || status >= 300) {
+        final String message = entity == null ? null : EntityUtils.toString(entity, UTF_8);
+        throw new DockerRequestException(method, uri, status, message, null);
+      }
+      try {
+        return reader.read(entity);
+      } finally {
+        // Reading to the end hands the connection back to the pool instead of closing it
+        EntityUtils.consume(entity);
+      }
+    } catch (SocketTimeoutException | ConnectTimeoutException e) {
+      throw new DockerTimeoutException(method, uri, e);
+    } catch (InterruptedIOException e) {
+      throw new InterruptedException("Interrupted: " + method + " " + uri);
+    } catch (IOException e) {
+      unreachable.run();
+      throw new DockerException(e);
+    }
+  }
+
+  private interface EntityReader<T> {
+
+    T read(HttpEntity entity) throws IOException;
+  }
+
+  /**
+   * A request path with {@code {}} placeholders, split into its literal parts once so that
+   * expanding it only appends strings. Arguments are percent-encoded like Jersey encodes
+   * {@code WebTarget.path()}, which leaves slashes alone, so an image name such as
+   * {@code library/busybox} spans several segments just as it does through Jersey.
+   */
+  static final class PathTemplate {
+
+    private static final Escaper ESCAPER = new PercentEscaper("-._~!$&'()*+,;=:@/", false);
+
+    private final String[] literals;
+    private final boolean versioned;
+    private final int length;
+
+    private PathTemplate(final String template, final boolean versioned) {
+      checkArgument(template.startsWith("/"), "template must start with /: %s", template);
+      final List<String> parts = new ArrayList<>();
+      int start = 0;
+      int placeholder = template.indexOf("{}");
+      while (placeholder >= 0) {
+        parts.add(template.substring(start, placeholder));
+        start = placeholder + 2;
+        placeholder = template.indexOf("{}", start);
+      }
+      parts.add(template.substring(start));
+      this.literals = parts.toArray(new String[parts.size()]);
+      this.versioned = versioned;
+      this.length = template.length();
+    }
+
+    /**
+     * Compiles a path below the API version, such as {@code /containers/{}/json}.
+     */
+    static PathTemplate versioned(final String template) {
+      return new PathTemplate(template, true);
+    }
+
+    /**
+     * Compiles a path that is not below the API version, such as {@code /_ping}.
+     */
+    static PathTemplate unversioned(final String template) {
+      return new PathTemplate(template, false);
+    }
+
+    String expand(final String base, final String... args) {
+      checkArgument(args.length == literals.length - 1,
+          "expected %s arguments but got %s", literals.length - 1, args.length);
+      final StringBuilder builder = new StringBuilder(base.length() + length + 64);
+      builder.append(base).append(literals[0]);
+      for (int i = 0; i < args.length; i++) {
+        builder.append(ESCAPER.escape(args[i])).append(literals[i + 1]);
+      }
+      return builder.toString();
+    }
+  }
+}
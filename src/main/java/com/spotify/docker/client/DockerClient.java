@@ -50,6 +50,7 @@ import com.spotify.docker.client.messages.ContainerUpdate;
 import com.spotify.docker.client.messages.Distribution;
 import com.spotify.docker.client.messages.Event;
 import com.spotify.docker.client.messages.ExecCreation;
+import com.spotify.docker.client.messages.ExecResult;
 import com.spotify.docker.client.messages.ExecState;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.Image;
@@ -321,6 +322,34 @@ public interface DockerClient extends Closeable {
   Set<String> load(InputStream imagePayload, ProgressHandler handler)
           throws DockerException, InterruptedException;
 
+  /**
+   * Load a set of images and tags from a tarball file. The file is sent with its length rather
+   * than in chunks, and without going through an intermediate stream.
+   *
+   * @param imageTarball the image's .tar file
+   * @return a set of all loaded images
+   * @throws DockerException      if a server error occurred (500).
+   * @throws InterruptedException if the thread is interrupted.
+   * @throws IOException          if the file could not be read.
+   */
+  Set<String> load(Path imageTarball) throws DockerException, InterruptedException, IOException;
+
+  /**
+   * Load a set of images and tags from a tarball file, using a custom ProgressMessageHandler. The
+   * file is sent with its length rather than in chunks, and without going through an
+   * intermediate stream.
+   *
+   * @param imageTarball the image's .tar file
+   * @param handler      The handler to use for processing each progress message received from
+   *                     Docker.
+   * @return a set of all loaded images
+   * @throws DockerException      if a server error occurred (500).
+   * @throws InterruptedException if the thread is interrupted.
+   * @throws IOException          if the file could not be read.
+   */
+  Set<String> load(Path imageTarball, ProgressHandler handler)
+          throws DockerException, InterruptedException, IOException;
+
   /**
    * Creates a single image from a tarball. This method also tags the image
    * with the given image name upon loading completion.
@@ -349,6 +378,34 @@ public interface DockerClient extends Closeable {
   void create(String image, InputStream imagePayload, ProgressHandler handler)
           throws DockerException, InterruptedException;
 
+  /**
+   * Creates a single image from a tarball file. This method also tags the image with the given
+   * image name upon loading completion. The file is sent with its length rather than in chunks.
+   *
+   * @param image        the name to assign to the image.
+   * @param imageTarball the image's .tar file
+   * @throws DockerException      if a server error occurred (500).
+   * @throws InterruptedException if the thread is interrupted.
+   * @throws IOException          if the file could not be read.
+   */
+  void create(String image, Path imageTarball)
+          throws DockerException, InterruptedException, IOException;
+
+  /**
+   * Creates a single image from a tarball file. This method also tags the image with the given
+   * image name upon loading completion. The file is sent with its length rather than in chunks.
+   *
+   * @param image        the name to assign to the image.
+   * @param imageTarball the image's .tar file
+   * @param handler      The handler to use for processing each progress message received from
+   *                     Docker.
+   * @throws DockerException      if a server error occurred (500).
+   * @throws InterruptedException if the thread is interrupted.
+   * @throws IOException          if the file could not be read.
+   */
+  void create(String image, Path imageTarball, ProgressHandler handler)
+          throws DockerException, InterruptedException, IOException;
+
   /**
    * Get a tarball containing all images and metadata for the repository specified.
    * @param images the name(s) of one or more images to save. If a specific name and tag
@@ -1298,6 +1355,22 @@ public interface DockerClient extends Closeable {
    */
   InputStream exportContainer(String containerId) throws DockerException, InterruptedException;
 
+  /**
+   * Export a docker container and extract its file system into a directory on the host. Files are
+   * written by a small pool of threads while the archive is still being received.
+   *
+   * @param containerId The id of the container to export.
+   * @param destination The directory to extract into, created if it does not exist.
+   * @return The number of files, directories and bytes extracted, and the throughput.
+   * @throws ContainerNotFoundException
+   *                              if container is not found (404)
+   * @throws DockerException      if a server error occurred (500)
+   * @throws InterruptedException If the thread is interrupted
+   * @throws IOException          If the archive could not be extracted
+   */
+  ArchiveExtraction exportContainerTo(String containerId, Path destination)
+      throws DockerException, InterruptedException, IOException;
+
   /**
    * Copies some files out of a container. (removed on API version 1.24)
    *
@@ -1348,6 +1421,26 @@ public interface DockerClient extends Closeable {
   InputStream archiveContainer(String containerId, String path)
       throws DockerException, InterruptedException;
 
+  /**
+   * Copies an archive out of a container and extracts it into a directory on the host. Files are
+   * written by a small pool of threads while the archive is still being received. (API version
+   * 1.20+)
+   *
+   * @param containerId The id of the container to copy files from.
+   * @param path        The path inside of the container to copy. See
+   *                    {@link #archiveContainer(String, String)} for how it is laid out.
+   * @param destination The directory to extract into, created if it does not exist.
+   * @return The number of files, directories and bytes extracted, and the throughput.
+   * @throws ContainerNotFoundException
+   *                              if container is not found (404)
+   * @throws DockerException      if a server error occurred (500)
+   * @throws InterruptedException If the thread is interrupted
+   * @throws IOException          If the archive could not be extracted
+   * @since 1.20
+   */
+  ArchiveExtraction archiveContainerTo(String containerId, String path, Path destination)
+      throws DockerException, InterruptedException, IOException;
+
   /**
    * Copies some files from host to container. (API version 1.20+)
    *
@@ -1371,6 +1464,27 @@ public interface DockerClient extends Closeable {
   void copyToContainer(final InputStream tarStream, String containerId, String path)
           throws DockerException, InterruptedException, IOException;
 
+  /**
+   * Extracts a tar file, which may be compressed with gzip, bzip2 or xz, into a container. The
+   * file is sent with its length rather than in chunks. (API version 1.20+)
+   *
+   * @param tarFile     The tar file to extract.
+   * @param containerId The id of the container to sent files.
+   * @param path        The path inside of the container to put files.
+   * @throws BadParamException
+   *                            if one or more params were bad (400)
+   * @throws PermissionException
+   *                      if the volume or container root file system is marked "read only"
+   * @throws NotFoundException
+   *                              if the container or path is not found (404)
+   * @throws DockerException      If a server error occurred (500)
+   * @throws InterruptedException If the thread is interrupted
+   * @throws IOException          If the file could not be read
+   * @since 1.20
+   */
+  void copyArchiveToContainer(Path tarFile, String containerId, String path)
+      throws DockerException, InterruptedException, IOException;
+
   /**
    * Inspect changes on a container's filesystem.
    *
@@ -1427,6 +1541,25 @@ public interface DockerClient extends Closeable {
   ExecCreation execCreate(String containerId, String[] cmd, ExecCreateParam... params)
       throws DockerException, InterruptedException;
 
+  /**
+   * Runs a command in a running container and waits for it to finish. This creates, starts and
+   * inspects an exec instance, and does not check the container state beforehand. Stdout and
+   * stderr are attached unless specified otherwise in the params.
+   *
+   * @param containerId The id of the container
+   * @param cmd         shell command
+   * @param params      Exec params
+   * @return the output and exit code of the command
+   * @throws ContainerNotFoundException
+   *                              if container is not found (404)
+   * @throws com.spotify.docker.client.exceptions.ExecCreateConflictException
+   *                              if container is not running (409)
+   * @throws DockerException      if a server error occurred (500)
+   * @throws InterruptedException If the thread is interrupted
+   */
+  ExecResult execRun(String containerId, String[] cmd, ExecCreateParam... params)
+      throws DockerException, InterruptedException;
+
   /**
    * Starts a previously set up exec instance id. If detach is true, this API returns after starting
    * the exec command. Otherwise, this API sets up an interactive session with the exec command.
@@ -1764,6 +1897,21 @@ public interface DockerClient extends Closeable {
    */
   ContainerStats stats(String containerId) throws DockerException, InterruptedException;
 
+  /**
+   * Subscribes to streaming stats (stream=1) for the container with the specified id. A single
+   * connection is held open and successive samples are decoded as the daemon writes them, so no
+   * reconnect is needed between samples. The stream must be closed to release the connection.
+   *
+   * @param containerId The id of the container to retrieve stats for.
+   * @return A stream of container stats
+   * @throws ContainerNotFoundException
+   *                              if container is not found (404)
+   * @throws DockerException      if a server error occurred (500)
+   * @throws InterruptedException If the thread is interrupted
+   */
+  ContainerStatsStream statsStream(String containerId)
+      throws DockerException, InterruptedException;
+
   /**
    * Resize container TTY
    * This API is valid only if <code>tty</code> was specified as
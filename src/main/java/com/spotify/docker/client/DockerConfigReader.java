@@ -24,21 +24,36 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableCollection;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.spotify.docker.client.messages.DockerCredentialHelperAuth;
 import com.spotify.docker.client.messages.RegistryAuth;
 import com.spotify.docker.client.messages.RegistryConfigs;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -47,6 +62,19 @@ public class DockerConfigReader {
 
   private static final ObjectMapper MAPPER = ObjectMapperProvider.objectMapper();
 
+  private static final ExecutorService CREDENTIAL_HELPERS = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setNameFormat("docker-credential-helper-%d")
+          .setDaemon(true)
+          .build());
+
+  /**
+   * A config file modified less than this long before it was read may still change without its
+   * modification time changing, so it is read again until it is older than that.
+   */
+  private static final long RACY_MILLIS = 2000;
+
+  private final ConcurrentMap<Path, ParsedConfig> parsedConfigs = new ConcurrentHashMap<>();
 
   /**
    * Parse the contents of the config file and generate all possible
@@ -115,12 +143,19 @@ public class DockerConfigReader {
   public RegistryConfigs authForAllRegistries(final Path configPath) throws IOException {
     checkNotNull(configPath);
 
-    final DockerConfig config = MAPPER.readValue(configPath.toFile(), DockerConfig.class);
+    final ParsedConfig parsed = parse(configPath);
+    final DockerConfig config = parsed.config;
     if (config == null) {
       return RegistryConfigs.empty();
     }
+    if (parsed.allRegistries != null) {
+      return parsed.allRegistries;
+    }
 
-    final RegistryConfigs.Builder registryConfigsBuilder = RegistryConfigs.builder();
+    // Registries in the order they are added; those that need a credential helper map to null
+    // until all helpers have been asked
+    final Map<String, RegistryAuth> registryAuths = new LinkedHashMap<>();
+    final Map<String, String> helperLookups = new LinkedHashMap<>();
 
     final Map<String, String> credHelpers = config.credHelpers();
     final boolean hasCredHelpers = credHelpers != null && !credHelpers.isEmpty();
@@ -137,8 +172,8 @@ public class DockerConfigReader {
         final String aCredsStore = credHelpersEntry.getValue();
         if (!addedRegistries.contains(registry)) {
           addedRegistries.add(registry);
-          registryConfigsBuilder.addConfig(registry,
-              authWithCredentialHelper(aCredsStore, registry));
+          registryAuths.put(registry, null);
+          helperLookups.put(registry, aCredsStore);
         }
       }
     }
@@ -162,15 +197,14 @@ public class DockerConfigReader {
         if (registryAuth == null || registryAuth.equals(empty)) {
           // We have an empty object. Can we use credsStore?
           if (hasCredsStore) {
-            registryConfigsBuilder.addConfig(registry,
-                authWithCredentialHelper(credsStore, registry));
+            registryAuths.put(registry, null);
+            helperLookups.put(registry, credsStore);
           } // no else clause. If we can't fall back to credsStore, we can't auth.
         } else {
           // The auth object isn't empty.
           // We need to add the registry to its properties, then
           // add it to the RegistryConfigs
-          registryConfigsBuilder.addConfig(registry,
-              registryAuth.toBuilder().serverAddress(registry).build());
+          registryAuths.put(registry, registryAuth.toBuilder().serverAddress(registry).build());
         }
       }
     }
@@ -182,14 +216,25 @@ public class DockerConfigReader {
     // If we can map it to one, we'll return it.
     if (!(hasAuths || hasCredHelpers || hasCredsStore)) {
       try {
-        return MAPPER.readValue(configPath.toFile(), RegistryConfigs.class);
+        parsed.allRegistries = MAPPER.readValue(configPath.toFile(), RegistryConfigs.class);
+        return parsed.allRegistries;
       } catch (IOException ignored) {
         // Looks like that failed to parse.
         // Eat the exception, fall through, and return empty object.
       }
     }
 
-    return registryConfigsBuilder.build();
+    registryAuths.putAll(authWithCredentialHelpers(helperLookups));
+    final RegistryConfigs.Builder registryConfigsBuilder = RegistryConfigs.builder();
+    for (final Map.Entry<String, RegistryAuth> registryAuth : registryAuths.entrySet()) {
+      registryConfigsBuilder.addConfig(registryAuth.getKey(), registryAuth.getValue());
+    }
+    final RegistryConfigs registryConfigs = registryConfigsBuilder.build();
+    if (!(hasCredHelpers || hasCredsStore)) {
+      // Nothing came from a credential helper, so this stays valid until the file changes
+      parsed.allRegistries = registryConfigs;
+    }
+    return registryConfigs;
   }
 
   /**
@@ -204,52 +249,95 @@ public class DockerConfigReader {
     checkNotNull(configPath);
     checkNotNull(registry);
 
-    final DockerConfig config = MAPPER.readValue(configPath.toFile(), DockerConfig.class);
+    final ParsedConfig parsed = parse(configPath);
+    final DockerConfig config = parsed.config;
     if (config == null) {
       return RegistryAuth.builder().build();
     }
 
-    final RegistryAuth registryAuth = authForRegistry(config, registry);
-    if (registryAuth != null) {
-      return registryAuth;
+    final Optional<RegistryAuth> resolved = parsed.registries.get(registry);
+    if (resolved != null) {
+      if (resolved.isPresent()) {
+        return resolved.get();
+      }
+      throw notInConfig(configPath, registry);
     }
+
     // If the given server address didn't have a protocol try adding a protocol to the address.
     // This handles cases where older versions of Docker included the protocol when writing
     // auth tokens to config.json.
+    final List<String> candidates = new ArrayList<>();
+    candidates.add(registry);
     try {
       final URI serverAddressUri = new URI(registry);
       if (serverAddressUri.getScheme() == null) {
-        for (String proto : Arrays.asList("https://", "http://")) {
-          final RegistryAuth protoRegistryAuth = authForRegistry(config, proto + registry);
-          if (protoRegistryAuth != null) {
-            return protoRegistryAuth;
-          }
-        }
+        candidates.add("https://" + registry);
+        candidates.add("http://" + registry);
       }
     } catch (URISyntaxException e) {
-      // Nothing to do, just let this fall through below
+      // Nothing to do, just try the address as it is
     }
 
-    throw new IllegalArgumentException(
-        "registry \"" + registry + "\" does not appear in config file at " + configPath);
+    boolean usedCredentialHelper = false;
+    for (final String candidate : candidates) {
+      // If the registry shows up in "auths", return it
+      final Map<String, RegistryAuth> auths = config.auths();
+      if (auths != null && auths.get(candidate) != null) {
+        final RegistryAuth registryAuth =
+            auths.get(candidate).toBuilder().serverAddress(candidate).build();
+        if (!usedCredentialHelper) {
+          parsed.registries.put(registry, Optional.of(registryAuth));
+        }
+        return registryAuth;
+      }
+
+      // Else, we use a credential helper.
+      final String credsStore = getCredentialStore(config, candidate);
+      if (credsStore != null) {
+        usedCredentialHelper = true;
+        final RegistryAuth registryAuth = authWithCredentialHelper(credsStore, candidate);
+        if (registryAuth != null) {
+          return registryAuth;
+        }
+      }
+    }
+
+    if (!usedCredentialHelper) {
+      parsed.registries.put(registry, Optional.empty());
+    }
+    throw notInConfig(configPath, registry);
   }
 
-  private RegistryAuth authForRegistry(final DockerConfig config, final String registry)
-      throws IOException {
+  private static IllegalArgumentException notInConfig(final Path configPath,
+                                                      final String registry) {
+    return new IllegalArgumentException(
+        "registry \"" + registry + "\" does not appear in config file at " + configPath);
+  }
 
-    // If the registry shows up in "auths", return it
-    final Map<String, RegistryAuth> auths = config.auths();
-    if (auths != null && auths.get(registry) != null) {
-      return auths.get(registry).toBuilder().serverAddress(registry).build();
+  /**
+   * Returns the parsed config file, which is only read again once its modification time, size or
+   * identity changes. Results that do not depend on a credential helper are kept along with it.
+   */
+  private ParsedConfig parse(final Path configPath) throws IOException {
+    final BasicFileAttributes attributes;
+    try {
+      attributes = Files.readAttributes(configPath, BasicFileAttributes.class);
+    } catch (IOException e) {
+      // Let the read below fail the way it always did
+      parsedConfigs.remove(configPath);
+      return new ParsedConfig(MAPPER.readValue(configPath.toFile(), DockerConfig.class), null, 0);
     }
 
-    // Else, we use a credential helper.
-    final String credsStore = getCredentialStore(config, registry);
-    if (credsStore != null) {
-      return authWithCredentialHelper(credsStore, registry);
+    final ParsedConfig cached = parsedConfigs.get(configPath);
+    if (cached != null && cached.isCurrent(attributes)) {
+      return cached;
     }
 
-    return null;
+    final long readMillis = System.currentTimeMillis();
+    final DockerConfig config = MAPPER.readValue(configPath.toFile(), DockerConfig.class);
+    final ParsedConfig parsed = new ParsedConfig(config, attributes, readMillis);
+    parsedConfigs.put(configPath, parsed);
+    return parsed;
   }
 
   public Path defaultConfigPath() {
@@ -288,6 +376,47 @@ public class DockerConfigReader {
     return dockerCredentialHelperAuth == null ? null : dockerCredentialHelperAuth.toRegistryAuth();
   }
 
+  /**
+   * Obtain auth for several registries using credential helpers. When there is more than one
+   * registry, the helpers are executed in parallel.
+   * @param lookups The name of the credential helper to use for each registry
+   * @return The auth for each registry, which is null if the helper had none
+   * @throws IOException If a credential helper could not be executed
+   */
+  private Map<String, RegistryAuth> authWithCredentialHelpers(final Map<String, String> lookups)
+      throws IOException {
+    final Map<String, RegistryAuth> registryAuths = new HashMap<>();
+    if (lookups.size() <= 1) {
+      for (final Map.Entry<String, String> lookup : lookups.entrySet()) {
+        registryAuths.put(lookup.getKey(),
+            authWithCredentialHelper(lookup.getValue(), lookup.getKey()));
+      }
+      return registryAuths;
+    }
+
+    final Map<String, Future<RegistryAuth>> futures = new HashMap<>();
+    for (final Map.Entry<String, String> lookup : lookups.entrySet()) {
+      futures.put(lookup.getKey(), CREDENTIAL_HELPERS.submit(
+          () -> authWithCredentialHelper(lookup.getValue(), lookup.getKey())));
+    }
+    try {
+      for (final Map.Entry<String, Future<RegistryAuth>> future : futures.entrySet()) {
+        registryAuths.put(future.getKey(), future.getValue().get());
+      }
+      return registryAuths;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for credential helpers");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    } finally {
+      for (final Future<RegistryAuth> future : futures.values()) {
+        future.cancel(true);
+      }
+    }
+  }
+
   private String getCredentialStore(final DockerConfig config, final String registry) {
     checkNotNull(config, "Docker config cannot be null");
     checkNotNull(registry, "registry cannot be null");
@@ -299,4 +428,30 @@ public class DockerConfigReader {
         ? credHelpers.get(registry)
         : config.credsStore();
   }
+
+  private static class ParsedConfig {
+
+    private final DockerConfig config;
+    private final BasicFileAttributes attributes;
+    private final long readMillis;
+
+    // Registry lookups and the build auth that did not need a credential helper
+    private final ConcurrentMap<String, Optional<RegistryAuth>> registries =
+        new ConcurrentHashMap<>();
+    private volatile RegistryConfigs allRegistries;
+
+    private ParsedConfig(final DockerConfig config, final BasicFileAttributes attributes,
+                         final long readMillis) {
+      this.config = config;
+      this.attributes = attributes;
+      this.readMillis = readMillis;
+    }
+
+    private boolean isCurrent(final BasicFileAttributes current) {
+      return readMillis - attributes.lastModifiedTime().toMillis() >= RACY_MILLIS
+             && attributes.lastModifiedTime().equals(current.lastModifiedTime())
+             && attributes.size() == current.size()
+             && Objects.equals(attributes.fileKey(), current.fileKey());
+    }
+  }
 }
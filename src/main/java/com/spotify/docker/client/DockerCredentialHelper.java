@@ -20,10 +20,15 @@
 
 package com.spotify.docker.client;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheStats;
 import com.spotify.docker.client.messages.DockerCredentialHelperAuth;
 import java.io.IOException;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class interacts with a docker credential helper.
@@ -47,6 +52,9 @@ import java.util.Map;
  * instance. By default this instance executes a command on the system. However, the delegate
  * is modifiable with {@link #setCredentialHelperDelegate(CredentialHelperDelegate)} and
  * {@link #restoreSystemCredentialHelperDelegate()} to facilitate testing.</p>
+ *
+ * <p>Every lookup executes the credential helper again unless a cache is enabled with
+ * {@link #setCacheTtl(long, TimeUnit)}.</p>
  */
 public class DockerCredentialHelper {
 
@@ -66,17 +74,58 @@ public class DockerCredentialHelper {
     Map<String, String> list(String credsStore) throws IOException;
   }
 
-  private static CredentialHelperDelegate credentialHelperDelegate =
+  private static CredentialHelperDelegate uncachedDelegate =
       new SystemCredentialHelperDelegate();
+  private static long cacheTtlNanos;
+
+  private static volatile CredentialHelperDelegate credentialHelperDelegate = uncachedDelegate;
 
   @VisibleForTesting
-  static void setCredentialHelperDelegate(final CredentialHelperDelegate delegate) {
-    credentialHelperDelegate = delegate;
+  static synchronized void setCredentialHelperDelegate(final CredentialHelperDelegate delegate) {
+    uncachedDelegate = delegate;
+    credentialHelperDelegate = withCache(delegate);
   }
 
   @VisibleForTesting
-  static void restoreSystemCredentialHelperDelegate() {
-    credentialHelperDelegate = new SystemCredentialHelperDelegate();
+  static synchronized void restoreSystemCredentialHelperDelegate() {
+    setCredentialHelperDelegate(new SystemCredentialHelperDelegate());
+  }
+
+  /**
+   * Remember the results of {@link #get(String, String)} and {@link #list(String)} for a while,
+   * so that repeated lookups for the same credentials do not execute the credential helper each
+   * time. Concurrent lookups for the same credentials share one execution. Storing or erasing
+   * credentials through this class forgets what was remembered for them, but changes made by
+   * other processes, such as {@code docker login}, are only seen once the time has passed.
+   * Caching is disabled by default.
+   *
+   * @param ttl  How long to remember credentials, or zero to disable caching
+   * @param unit The unit of ttl
+   */
+  public static synchronized void setCacheTtl(final long ttl, final TimeUnit unit) {
+    checkArgument(ttl >= 0, "ttl must not be negative");
+    cacheTtlNanos = unit.toNanos(ttl);
+    credentialHelperDelegate = withCache(uncachedDelegate);
+  }
+
+  /**
+   * Returns how often credentials were found in the cache enabled by
+   * {@link #setCacheTtl(long, TimeUnit)}, and how often the credential helper had to be executed.
+   *
+   * @return The cache statistics since caching was last configured
+   */
+  public static CacheStats cacheStats() {
+    final CredentialHelperDelegate delegate = credentialHelperDelegate;
+    return delegate instanceof CachingCredentialHelperDelegate
+           ? ((CachingCredentialHelperDelegate) delegate).stats()
+           : new CacheStats(0, 0, 0, 0, 0, 0);
+  }
+
+  private static CredentialHelperDelegate withCache(final CredentialHelperDelegate delegate) {
+    return cacheTtlNanos == 0
+           ? delegate
+           : new CachingCredentialHelperDelegate(delegate, cacheTtlNanos, TimeUnit.NANOSECONDS,
+                                                 Ticker.systemTicker());
   }
 
   /**
@@ -0,0 +1,484 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.messages.Event;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares a single {@link DockerClient#events(EventsParam...)} stream between many in-process
+ * subscribers. Every event is decoded once and handed to each {@link Subscription} whose
+ * predicate accepts it. Each subscription buffers its events in a bounded queue, and an
+ * {@link OverflowPolicy} decides what happens when a subscriber falls behind, so that a slow
+ * subscriber never holds up the others.
+ *
+ * <p>The hub reconnects when the event stream ends or fails. It then asks for the events since
+ * the last one it has seen and skips the ones it already dispatched, so subscribers see few or
+ * no gaps and no duplicates when the daemon reports nanosecond event times.</p>
+ *
+ * <pre>
+ * try (EventHub hub = EventHub.builder(docker).filters(EventsParam.type(CONTAINER)).build();
+ *      EventHub.Subscription dies = hub.subscribe(event -&gt; "die".equals(event.action()))) {
+ *   for (Event event : dies) {
+ *     ...
+ *   }
+ * }
+ * </pre>
+ */
+public class EventHub implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(EventHub.class);
+
+  public static final int DEFAULT_CAPACITY = 1024;
+  public static final long DEFAULT_RECONNECT_DELAY_MILLIS = 1000;
+
+  /**
+   * What to do with an event for a subscription whose queue is full.
+   */
+  public enum OverflowPolicy {
+    /**
+     * Discard the oldest queued event to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * Discard the new event.
+     */
+    DROP_NEWEST,
+    /**
+     * Close the subscription. Its queued events can still be read, after which iteration ends and
+     * {@link Subscription#overflowed()} returns true. Use this when a subscriber must not miss an
+     * event, and resynchronize with the daemon when it happens.
+     */
+    CLOSE
+  }
+
+  /**
+   * Notified when the hub connects to the event stream and when it loses it. The callbacks run
+   * on the thread reading the event stream and should be fast.
+   */
+  public interface ConnectionListener {
+
+    /**
+     * The event stream was opened. Events that happen from now on will be dispatched, so state
+     * derived from the daemon can be reloaded without missing any change.
+     */
+    void connected();
+
+    /**
+     * The event stream ended or failed. Events may be missed until the next
+     * {@link #connected()}.
+     */
+    void disconnected();
+  }
+
+  private final DockerClient docker;
+  private final EventsParam[] filters;
+  private final long reconnectDelayMillis;
+  private final ConnectionListener listener;
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final Thread thread;
+
+  private volatile boolean closed;
+  private volatile EventStream stream;
+
+  // Only accessed by the hub thread
+  private Long lastTime;
+  private Long lastTimeNano;
+
+  private EventHub(final Builder builder) {
+    this.docker = builder.docker;
+    this.filters = builder.filters;
+    this.reconnectDelayMillis = builder.reconnectDelayMillis;
+    this.listener = builder.listener;
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        EventHub.this.run();
+      }
+    }, "docker-client-event-hub");
+    this.thread.setDaemon(true);
+  }
+
+  public static Builder builder(final DockerClient docker) {
+    return new Builder(docker);
+  }
+
+  /**
+   * Subscribe to the events accepted by the predicate, with a queue of {@link #DEFAULT_CAPACITY}
+   * events that drops the oldest event when it is full.
+   *
+   * @param predicate which events to receive
+   * @return the subscription
+   */
+  public Subscription subscribe(final Predicate<? super Event> predicate) {
+    return subscribe(predicate, DEFAULT_CAPACITY, OverflowPolicy.DROP_OLDEST);
+  }
+
+  /**
+   * Subscribe to the events accepted by the predicate. The predicate is evaluated on the thread
+   * reading the event stream and should be fast.
+   *
+   * @param predicate      which events to receive
+   * @param capacity       the maximum number of events to queue for the subscriber
+   * @param overflowPolicy what to do with an event when the queue is full
+   * @return the subscription
+   */
+  public Subscription subscribe(final Predicate<? super Event> predicate, final int capacity,
+                                final OverflowPolicy overflowPolicy) {
+    checkNotNull(predicate, "predicate");
+    checkArgument(capacity > 0, "capacity must be positive");
+    checkNotNull(overflowPolicy, "overflowPolicy");
+    final Subscription subscription = new Subscription(this, predicate, capacity, overflowPolicy);
+    subscriptions.add(subscription);
+    if (closed) {
+      subscription.close();
+    }
+    return subscription;
+  }
+
+  /**
+   * Returns the number of open subscriptions.
+   *
+   * @return the number of subscriptions
+   */
+  public int subscriptions() {
+    return subscriptions.size();
+  }
+
+  /**
+   * Closes the event stream and all subscriptions.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    thread.interrupt();
+    closeStream();
+    for (final Subscription subscription : subscriptions) {
+      subscription.close();
+    }
+  }
+
+  private void start() {
+    thread.start();
+  }
+
+  private void run() {
+    while (!closed) {
+      boolean connected = false;
+      try {
+        stream = docker.events(params());
+        if (closed) {
+          // close() may have run before the stream was published
+          closeStream();
+          break;
+        }
+        log.debug("Connected to the docker event stream");
+        connected = true;
+        notifyListener(true);
+        while (stream.hasNext()) {
+          dispatch(stream.next());
+        }
+        log.debug("The docker event stream ended");
+      } catch (InterruptedException e) {
+        break;
+      } catch (Exception e) {
+        if (!closed) {
+          log.warn("Docker event stream failed, reconnecting in {} ms", reconnectDelayMillis, e);
+        }
+      } finally {
+        closeStream();
+        if (connected) {
+          notifyListener(false);
+        }
+      }
+
+      try {
+        Thread.sleep(reconnectDelayMillis);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+  }
+
+  private void notifyListener(final boolean connected) {
+    if (listener == null) {
+      return;
+    }
+    try {
+      if (connected) {
+        listener.connected();
+      } else {
+        listener.disconnected();
+      }
+    } catch (RuntimeException e) {
+      log.warn("Event hub connection listener failed", e);
+    }
+  }
+
+  private EventsParam[] params() {
+    if (lastTime == null) {
+      return filters;
+    }
+    final EventsParam[] params = Arrays.copyOf(filters, filters.length + 1);
+    params[filters.length] = EventsParam.since(lastTime);
+    return params;
+  }
+
+  void dispatch(final Event event) {
+    final Long timeNano = event.timeNano();
+    if (timeNano != null) {
+      if (lastTimeNano != null && timeNano <= lastTimeNano) {
+        // Seen before we reconnected
+        return;
+      }
+      lastTimeNano = timeNano;
+    }
+    if (event.time() != null) {
+      lastTime = TimeUnit.MILLISECONDS.toSeconds(event.time().getTime());
+    }
+
+    for (final Subscription subscription : subscriptions) {
+      try {
+        if (subscription.predicate.test(event)) {
+          subscription.offer(event);
+        }
+      } catch (RuntimeException e) {
+        log.warn("Event subscription predicate failed, closing the subscription", e);
+        subscription.close();
+      }
+    }
+  }
+
+  private void closeStream() {
+    final EventStream current = stream;
+    if (current != null) {
+      stream = null;
+      try {
+        current.close();
+      } catch (RuntimeException e) {
+        log.debug("Failed to close the docker event stream", e);
+      }
+    }
+  }
+
+  /**
+   * The events for one subscriber of an {@link EventHub}. Iterating blocks until the next event
+   * is available and ends when the subscription or the hub is closed. Events can also be polled
+   * with a timeout.
+   */
+  public static class Subscription extends AbstractIterator<Event> implements Closeable {
+
+    private final EventHub hub;
+    private final Predicate<? super Event> predicate;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ArrayDeque<Event> queue;
+    private long dropped;
+    private boolean overflowed;
+    private boolean closed;
+
+    Subscription(final EventHub hub, final Predicate<? super Event> predicate,
+                 final int capacity, final OverflowPolicy overflowPolicy) {
+      this.hub = hub;
+      this.predicate = predicate;
+      this.capacity = capacity;
+      this.overflowPolicy = overflowPolicy;
+      this.queue = new ArrayDeque<>(Math.min(capacity, DEFAULT_CAPACITY));
+    }
+
+    synchronized void offer(final Event event) {
+      if (closed) {
+        return;
+      }
+      if (queue.size() >= capacity) {
+        dropped++;
+        switch (overflowPolicy) {
+          case DROP_OLDEST:
+            queue.poll();
+            break;
+          case DROP_NEWEST:
+            return;
+          case CLOSE:
+          default:
+            overflowed = true;
+            close();
+            return;
+        }
+      }
+      queue.add(event);
+      notifyAll();
+    }
+
+    /**
+     * Retrieves the next event, waiting up to the given time for one to arrive.
+     *
+     * @param timeout how long to wait
+     * @param unit    the unit of the timeout
+     * @return the next event, or null if none arrived in time or the subscription is closed and
+     *         all its events have been read
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized Event poll(final long timeout, final TimeUnit unit)
+        throws InterruptedException {
+      long remaining = unit.toNanos(timeout);
+      final long deadline = System.nanoTime() + remaining;
+      while (queue.isEmpty() && !closed && remaining > 0) {
+        TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        remaining = deadline - System.nanoTime();
+      }
+      return queue.poll();
+    }
+
+    @Override
+    protected synchronized Event computeNext() {
+      try {
+        while (queue.isEmpty() && !closed) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw Throwables.propagate(e);
+      }
+      final Event event = queue.poll();
+      return event == null ? endOfData() : event;
+    }
+
+    /**
+     * Returns the number of events that were discarded because the queue was full.
+     *
+     * @return the number of dropped events
+     */
+    public synchronized long dropped() {
+      return dropped;
+    }
+
+    /**
+     * Returns true if this subscription was closed because its queue overflowed with
+     * {@link OverflowPolicy#CLOSE}.
+     *
+     * @return true if the subscription overflowed
+     */
+    public synchronized boolean overflowed() {
+      return overflowed;
+    }
+
+    public synchronized boolean isClosed() {
+      return closed;
+    }
+
+    /**
+     * Stops receiving events. Events that are already queued can still be read.
+     */
+    @Override
+    public void close() {
+      synchronized (this) {
+        closed = true;
+        notifyAll();
+      }
+      if (hub != null) {
+        hub.subscriptions.remove(this);
+      }
+    }
+  }
+
+  public static class Builder {
+
+    private final DockerClient docker;
+    private EventsParam[] filters = new EventsParam[0];
+    private long reconnectDelayMillis = DEFAULT_RECONNECT_DELAY_MILLIS;
+    private ConnectionListener listener;
+
+    private Builder(final DockerClient docker) {
+      this.docker = checkNotNull(docker, "docker");
+    }
+
+    /**
+     * Only receive the events matching these parameters from the daemon. The hub manages the
+     * {@code since} and {@code until} parameters itself, so they can't be used here.
+     *
+     * @param filters the parameters for the event stream
+     * @return Builder
+     */
+    public Builder filters(final EventsParam... filters) {
+      final List<EventsParam> params = new ArrayList<>();
+      for (final EventsParam filter : filters) {
+        checkArgument(!"since".equals(filter.name()) && !"until".equals(filter.name()),
+                      "since and until can't be used with an EventHub");
+        params.add(filter);
+      }
+      this.filters = params.toArray(new EventsParam[params.size()]);
+      return this;
+    }
+
+    /**
+     * Set how long to wait before reconnecting when the event stream ends or fails.
+     *
+     * @param delay the delay
+     * @param unit  the unit of the delay
+     * @return Builder
+     */
+    public Builder reconnectDelay(final long delay, final TimeUnit unit) {
+      checkArgument(delay >= 0, "delay must not be negative");
+      this.reconnectDelayMillis = unit.toMillis(delay);
+      return this;
+    }
+
+    /**
+     * Set a listener to be told when the event stream is connected and disconnected.
+     *
+     * @param listener the listener
+     * @return Builder
+     */
+    public Builder connectionListener(final ConnectionListener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    /**
+     * Create the hub and connect to the event stream.
+     *
+     * @return the started hub
+     */
+    public EventHub build() {
+      final EventHub hub = new EventHub(this);
+      hub.start();
+      return hub;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.http.entity.AbstractHttpEntity;
+
+/**
+ * A request entity that sends a file with its length, so that the request needs no chunked
+ * encoding. The file is read from a {@link FileChannel} into a single buffer that is written
+ * straight to the connection.
+ */
+class FileChannelEntity extends AbstractHttpEntity {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path file;
+  private final long length;
+
+  /**
+   * Creates an entity of the current content of the file. If the file grows before it is sent,
+   * only its current length is sent.
+   *
+   * @param file        the file to send
+   * @param contentType the content type of the file
+   * @throws IOException if the file does not exist or cannot be read
+   */
+  FileChannelEntity(final Path file, final String contentType) throws IOException {
+    this.file = file;
+    this.length = Files.size(file);
+    setContentType(contentType);
+  }
+
+  @Override
+  public boolean isRepeatable() {
+    return true;
+  }
+
+  @Override
+  public long getContentLength() {
+    return length;
+  }
+
+  @Override
+  public InputStream getContent() throws IOException {
+    return Files.newInputStream(file);
+  }
+
+  @Override
+  public void writeTo(final OutputStream out) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(BUFFER_SIZE, length));
+      long remaining = length;
+      while (remaining > 0) {
+        buffer.clear();
+        if (remaining < buffer.capacity()) {
+          buffer.limit((int) remaining);
+        }
+        final int read = channel.read(buffer);
+        if (read < 0) {
+          throw new EOFException(file + " was truncated while it was sent");
+        }
+        out.write(buffer.array(), 0, read);
+        remaining -= read;
+      }
+    }
+    out.flush();
+  }
+
+  @Override
+  public boolean isStreaming() {
+    return false;
+  }
+}
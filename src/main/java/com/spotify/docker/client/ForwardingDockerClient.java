@@ -0,0 +1,884 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerChange;
+import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerCreation;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerInfo;
+import com.spotify.docker.client.messages.ContainerStats;
+import com.spotify.docker.client.messages.ContainerUpdate;
+import com.spotify.docker.client.messages.Distribution;
+import com.spotify.docker.client.messages.ExecCreation;
+import com.spotify.docker.client.messages.ExecResult;
+import com.spotify.docker.client.messages.ExecState;
+import com.spotify.docker.client.messages.HostConfig;
+import com.spotify.docker.client.messages.Image;
+import com.spotify.docker.client.messages.ImageHistory;
+import com.spotify.docker.client.messages.ImageInfo;
+import com.spotify.docker.client.messages.ImageSearchResult;
+import com.spotify.docker.client.messages.Info;
+import com.spotify.docker.client.messages.Network;
+import com.spotify.docker.client.messages.NetworkConfig;
+import com.spotify.docker.client.messages.NetworkConnection;
+import com.spotify.docker.client.messages.NetworkCreation;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RemovedImage;
+import com.spotify.docker.client.messages.ServiceCreateResponse;
+import com.spotify.docker.client.messages.TopResults;
+import com.spotify.docker.client.messages.Version;
+import com.spotify.docker.client.messages.Volume;
+import com.spotify.docker.client.messages.VolumeList;
+import com.spotify.docker.client.messages.swarm.Config;
+import com.spotify.docker.client.messages.swarm.ConfigCreateResponse;
+import com.spotify.docker.client.messages.swarm.ConfigSpec;
+import com.spotify.docker.client.messages.swarm.Node;
+import com.spotify.docker.client.messages.swarm.NodeInfo;
+import com.spotify.docker.client.messages.swarm.NodeSpec;
+import com.spotify.docker.client.messages.swarm.Secret;
+import com.spotify.docker.client.messages.swarm.SecretCreateResponse;
+import com.spotify.docker.client.messages.swarm.SecretSpec;
+import com.spotify.docker.client.messages.swarm.Service;
+import com.spotify.docker.client.messages.swarm.ServiceSpec;
+import com.spotify.docker.client.messages.swarm.Swarm;
+import com.spotify.docker.client.messages.swarm.SwarmInit;
+import com.spotify.docker.client.messages.swarm.SwarmJoin;
+import com.spotify.docker.client.messages.swarm.SwarmSpec;
+import com.spotify.docker.client.messages.swarm.Task;
+import com.spotify.docker.client.messages.swarm.UnlockKey;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A {@link DockerClient} that forwards every call to another client. Subclasses override the
+ * methods whose behavior they want to change, in the manner of Guava's forwarding collections.
+ */
+@SuppressWarnings("JavadocMethod")
+public abstract class ForwardingDockerClient implements DockerClient {
+
+  /**
+   * Returns the client that calls are forwarded to.
+   *
+   * @return the delegate client
+   */
+  protected abstract DockerClient delegate();
+
+  @Override
+  public String ping() throws DockerException, InterruptedException {
+    return delegate().ping();
+  }
+
+  @Override
+  public Version version() throws DockerException, InterruptedException {
+    return delegate().version();
+  }
+
+  @Override
+  public int auth(final RegistryAuth registryAuth) throws DockerException, InterruptedException {
+    return delegate().auth(registryAuth);
+  }
+
+  @Override
+  public Info info() throws DockerException, InterruptedException {
+    return delegate().info();
+  }
+
+  @Override
+  public List<Container> listContainers(final ListContainersParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().listContainers(params);
+  }
+
+  @Override
+  public List<Image> listImages(final ListImagesParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().listImages(params);
+  }
+
+  @Override
+  public ContainerInfo inspectContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    return delegate().inspectContainer(containerId);
+  }
+
+  @Override
+  public ContainerCreation commitContainer(final String containerId, final String repo,
+                                           final String tag, final ContainerConfig config,
+                                           final String comment, final String author)
+      throws DockerException, InterruptedException {
+    return delegate().commitContainer(containerId, repo, tag, config, comment, author);
+  }
+
+  @Override
+  public ImageInfo inspectImage(final String image) throws DockerException, InterruptedException {
+    return delegate().inspectImage(image);
+  }
+
+  @Override
+  public List<RemovedImage> removeImage(final String image)
+      throws DockerException, InterruptedException {
+    return delegate().removeImage(image);
+  }
+
+  @Override
+  public List<RemovedImage> removeImage(final String image, final boolean force,
+                                        final boolean noPrune)
+      throws DockerException, InterruptedException {
+    return delegate().removeImage(image, force, noPrune);
+  }
+
+  @Override
+  public List<ImageSearchResult> searchImages(final String term)
+      throws DockerException, InterruptedException {
+    return delegate().searchImages(term);
+  }
+
+  @Override
+  @Deprecated
+  public void load(final String image, final InputStream imagePayload)
+      throws DockerException, InterruptedException {
+    delegate().load(image, imagePayload);
+  }
+
+  @Override
+  @Deprecated
+  public void load(final String image, final InputStream imagePayload,
+                   final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    delegate().load(image, imagePayload, handler);
+  }
+
+  @Override
+  public Set<String> load(final InputStream imagePayload)
+      throws DockerException, InterruptedException {
+    return delegate().load(imagePayload);
+  }
+
+  @Override
+  public Set<String> load(final InputStream imagePayload, final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    return delegate().load(imagePayload, handler);
+  }
+
+  @Override
+  public Set<String> load(final Path imageTarball)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().load(imageTarball);
+  }
+
+  @Override
+  public Set<String> load(final Path imageTarball, final ProgressHandler handler)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().load(imageTarball, handler);
+  }
+
+  @Override
+  public void create(final String image, final InputStream imagePayload)
+      throws DockerException, InterruptedException {
+    delegate().create(image, imagePayload);
+  }
+
+  @Override
+  public void create(final String image, final InputStream imagePayload,
+                     final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    delegate().create(image, imagePayload, handler);
+  }
+
+  @Override
+  public void create(final String image, final Path imageTarball)
+      throws DockerException, InterruptedException, IOException {
+    delegate().create(image, imageTarball);
+  }
+
+  @Override
+  public void create(final String image, final Path imageTarball, final ProgressHandler handler)
+      throws DockerException, InterruptedException, IOException {
+    delegate().create(image, imageTarball, handler);
+  }
+
+  @Override
+  public InputStream save(final String... images)
+      throws DockerException, IOException, InterruptedException {
+    return delegate().save(images);
+  }
+
+  @Override
+  public InputStream saveMultiple(final String... images)
+      throws DockerException, IOException, InterruptedException {
+    return delegate().saveMultiple(images);
+  }
+
+  @Override
+  public TopResults topContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    return delegate().topContainer(containerId);
+  }
+
+  @Override
+  public TopResults topContainer(final String containerId, final String psArgs)
+      throws DockerException, InterruptedException {
+    return delegate().topContainer(containerId, psArgs);
+  }
+
+  @Override
+  public void pull(final String image) throws DockerException, InterruptedException {
+    delegate().pull(image);
+  }
+
+  @Override
+  public void pull(final String image, final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    delegate().pull(image, handler);
+  }
+
+  @Override
+  public void pull(final String image, final RegistryAuth registryAuth)
+      throws DockerException, InterruptedException {
+    delegate().pull(image, registryAuth);
+  }
+
+  @Override
+  public void pull(final String image, final RegistryAuth registryAuth,
+                   final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    delegate().pull(image, registryAuth, handler);
+  }
+
+  @Override
+  public void push(final String image) throws DockerException, InterruptedException {
+    delegate().push(image);
+  }
+
+  @Override
+  public void push(final String image, final ProgressHandler handler)
+      throws DockerException, InterruptedException {
+    delegate().push(image, handler);
+  }
+
+  @Override
+  public void push(final String image, final RegistryAuth registryAuth)
+      throws DockerException, InterruptedException {
+    delegate().push(image, registryAuth);
+  }
+
+  @Override
+  public void push(final String image, final ProgressHandler handler,
+                   final RegistryAuth registryAuth)
+      throws DockerException, InterruptedException {
+    delegate().push(image, handler, registryAuth);
+  }
+
+  @Override
+  public void tag(final String image, final String name)
+      throws DockerException, InterruptedException {
+    delegate().tag(image, name);
+  }
+
+  @Override
+  public void tag(final String image, final String name, final boolean force)
+      throws DockerException, InterruptedException {
+    delegate().tag(image, name, force);
+  }
+
+  @Override
+  public String build(final Path directory, final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().build(directory, params);
+  }
+
+  @Override
+  public String build(final Path directory, final String name, final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().build(directory, name, params);
+  }
+
+  @Override
+  public String build(final Path directory, final ProgressHandler handler,
+                      final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().build(directory, handler, params);
+  }
+
+  @Override
+  public String build(final Path directory, final String name, final ProgressHandler handler,
+                      final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().build(directory, name, handler, params);
+  }
+
+  @Override
+  public String build(final Path directory, final String name, final String dockerfile,
+                      final ProgressHandler handler, final BuildParam... params)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().build(directory, name, dockerfile, handler, params);
+  }
+
+  @Override
+  public List<ImageHistory> history(final String image)
+      throws InterruptedException, DockerException {
+    return delegate().history(image);
+  }
+
+  @Override
+  public ContainerCreation createContainer(final ContainerConfig config)
+      throws DockerException, InterruptedException {
+    return delegate().createContainer(config);
+  }
+
+  @Override
+  public ContainerCreation createContainer(final ContainerConfig config, final String name)
+      throws DockerException, InterruptedException {
+    return delegate().createContainer(config, name);
+  }
+
+  @Override
+  public void renameContainer(final String containerId, final String name)
+      throws DockerException, InterruptedException {
+    delegate().renameContainer(containerId, name);
+  }
+
+  @Override
+  public ContainerUpdate updateContainer(final String containerId, final HostConfig config)
+      throws DockerException, InterruptedException {
+    return delegate().updateContainer(containerId, config);
+  }
+
+  @Override
+  public void startContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    delegate().startContainer(containerId);
+  }
+
+  @Override
+  public void stopContainer(final String containerId, final int secondsToWaitBeforeKilling)
+      throws DockerException, InterruptedException {
+    delegate().stopContainer(containerId, secondsToWaitBeforeKilling);
+  }
+
+  @Override
+  public void pauseContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    delegate().pauseContainer(containerId);
+  }
+
+  @Override
+  public void unpauseContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    delegate().unpauseContainer(containerId);
+  }
+
+  @Override
+  public void restartContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    delegate().restartContainer(containerId);
+  }
+
+  @Override
+  public void restartContainer(final String containerId, final int secondsToWaitBeforeRestart)
+      throws DockerException, InterruptedException {
+    delegate().restartContainer(containerId, secondsToWaitBeforeRestart);
+  }
+
+  @Override
+  public ContainerExit waitContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    return delegate().waitContainer(containerId);
+  }
+
+  @Override
+  public void killContainer(final String containerId) throws DockerException, InterruptedException {
+    delegate().killContainer(containerId);
+  }
+
+  @Override
+  public void killContainer(final String containerId, final Signal signal)
+      throws DockerException, InterruptedException {
+    delegate().killContainer(containerId, signal);
+  }
+
+  @Override
+  public Distribution getDistribution(final String imageName)
+      throws DockerException, InterruptedException {
+    return delegate().getDistribution(imageName);
+  }
+
+  @Override
+  public void removeContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    delegate().removeContainer(containerId);
+  }
+
+  @Override
+  public void removeContainer(final String containerId, final RemoveContainerParam... params)
+      throws DockerException, InterruptedException {
+    delegate().removeContainer(containerId, params);
+  }
+
+  @Override
+  @Deprecated
+  public void removeContainer(final String containerId, final boolean removeVolumes)
+      throws DockerException, InterruptedException {
+    delegate().removeContainer(containerId, removeVolumes);
+  }
+
+  @Override
+  public InputStream exportContainer(final String containerId)
+      throws DockerException, InterruptedException {
+    return delegate().exportContainer(containerId);
+  }
+
+  @Override
+  public ArchiveExtraction exportContainerTo(final String containerId, final Path destination)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().exportContainerTo(containerId, destination);
+  }
+
+  @Override
+  @Deprecated
+  public InputStream copyContainer(final String containerId, final String path)
+      throws DockerException, InterruptedException {
+    return delegate().copyContainer(containerId, path);
+  }
+
+  @Override
+  public InputStream archiveContainer(final String containerId, final String path)
+      throws DockerException, InterruptedException {
+    return delegate().archiveContainer(containerId, path);
+  }
+
+  @Override
+  public ArchiveExtraction archiveContainerTo(final String containerId, final String path,
+                                              final Path destination)
+      throws DockerException, InterruptedException, IOException {
+    return delegate().archiveContainerTo(containerId, path, destination);
+  }
+
+  @Override
+  public void copyToContainer(final Path directory, final String containerId, final String path)
+      throws DockerException, InterruptedException, IOException {
+    delegate().copyToContainer(directory, containerId, path);
+  }
+
+  @Override
+  public void copyToContainer(final InputStream tarStream, final String containerId,
+                              final String path)
+      throws DockerException, InterruptedException, IOException {
+    delegate().copyToContainer(tarStream, containerId, path);
+  }
+
+  @Override
+  public void copyArchiveToContainer(final Path tarFile, final String containerId,
+                                     final String path)
+      throws DockerException, InterruptedException, IOException {
+    delegate().copyArchiveToContainer(tarFile, containerId, path);
+  }
+
+  @Override
+  public List<ContainerChange> inspectContainerChanges(final String containerId)
+      throws DockerException, InterruptedException {
+    return delegate().inspectContainerChanges(containerId);
+  }
+
+  @Override
+  public LogStream logs(final String containerId, final LogsParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().logs(containerId, params);
+  }
+
+  @Override
+  public EventStream events(final EventsParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().events(params);
+  }
+
+  @Override
+  public ExecCreation execCreate(final String containerId, final String[] cmd,
+                                 final ExecCreateParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().execCreate(containerId, cmd, params);
+  }
+
+  @Override
+  public ExecResult execRun(final String containerId, final String[] cmd,
+                            final ExecCreateParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().execRun(containerId, cmd, params);
+  }
+
+  @Override
+  public LogStream execStart(final String execId, final ExecStartParameter... params)
+      throws DockerException, InterruptedException {
+    return delegate().execStart(execId, params);
+  }
+
+  @Override
+  public Swarm inspectSwarm() throws DockerException, InterruptedException {
+    return delegate().inspectSwarm();
+  }
+
+  @Override
+  public String initSwarm(final SwarmInit swarmInit) throws DockerException, InterruptedException {
+    return delegate().initSwarm(swarmInit);
+  }
+
+  @Override
+  public void joinSwarm(final SwarmJoin swarmJoin) throws DockerException, InterruptedException {
+    delegate().joinSwarm(swarmJoin);
+  }
+
+  @Override
+  public void leaveSwarm() throws DockerException, InterruptedException {
+    delegate().leaveSwarm();
+  }
+
+  @Override
+  public void leaveSwarm(final boolean force) throws DockerException, InterruptedException {
+    delegate().leaveSwarm(force);
+  }
+
+  @Override
+  public void updateSwarm(final Long version, final boolean rotateWorkerToken,
+                          final boolean rotateManagerToken, final boolean rotateManagerUnlockKey,
+                          final SwarmSpec spec)
+      throws DockerException, InterruptedException {
+    delegate().updateSwarm(version, rotateWorkerToken, rotateManagerToken, rotateManagerUnlockKey,
+                           spec);
+  }
+
+  @Override
+  public void updateSwarm(final Long version, final boolean rotateWorkerToken,
+                          final boolean rotateManagerToken, final SwarmSpec spec)
+      throws DockerException, InterruptedException {
+    delegate().updateSwarm(version, rotateWorkerToken, rotateManagerToken, spec);
+  }
+
+  @Override
+  public void updateSwarm(final Long version, final boolean rotateWorkerToken, final SwarmSpec spec)
+      throws DockerException, InterruptedException {
+    delegate().updateSwarm(version, rotateWorkerToken, spec);
+  }
+
+  @Override
+  public void updateSwarm(final Long version, final SwarmSpec spec)
+      throws DockerException, InterruptedException {
+    delegate().updateSwarm(version, spec);
+  }
+
+  @Override
+  public UnlockKey unlockKey() throws DockerException, InterruptedException {
+    return delegate().unlockKey();
+  }
+
+  @Override
+  public void unlock(final UnlockKey unlockKey) throws DockerException, InterruptedException {
+    delegate().unlock(unlockKey);
+  }
+
+  @Override
+  public ServiceCreateResponse createService(final ServiceSpec spec)
+      throws DockerException, InterruptedException {
+    return delegate().createService(spec);
+  }
+
+  @Override
+  public ServiceCreateResponse createService(final ServiceSpec spec,
+                                             final RegistryAuth registryAuth)
+      throws DockerException, InterruptedException {
+    return delegate().createService(spec, registryAuth);
+  }
+
+  @Override
+  public Service inspectService(final String serviceId)
+      throws DockerException, InterruptedException {
+    return delegate().inspectService(serviceId);
+  }
+
+  @Override
+  public void updateService(final String serviceId, final Long version, final ServiceSpec spec)
+      throws DockerException, InterruptedException {
+    delegate().updateService(serviceId, version, spec);
+  }
+
+  @Override
+  public void updateService(final String serviceId, final Long version, final ServiceSpec spec,
+                            final RegistryAuth registryAuth)
+      throws DockerException, InterruptedException {
+    delegate().updateService(serviceId, version, spec, registryAuth);
+  }
+
+  @Override
+  public List<Service> listServices() throws DockerException, InterruptedException {
+    return delegate().listServices();
+  }
+
+  @Override
+  public List<Service> listServices(final Service.Criteria criteria)
+      throws DockerException, InterruptedException {
+    return delegate().listServices(criteria);
+  }
+
+  @Override
+  public void removeService(final String serviceId) throws DockerException, InterruptedException {
+    delegate().removeService(serviceId);
+  }
+
+  @Override
+  public LogStream serviceLogs(final String serviceId, final LogsParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().serviceLogs(serviceId, params);
+  }
+
+  @Override
+  public Task inspectTask(final String taskId) throws DockerException, InterruptedException {
+    return delegate().inspectTask(taskId);
+  }
+
+  @Override
+  public List<Task> listTasks() throws DockerException, InterruptedException {
+    return delegate().listTasks();
+  }
+
+  @Override
+  public List<Task> listTasks(final Task.Criteria criteria)
+      throws DockerException, InterruptedException {
+    return delegate().listTasks(criteria);
+  }
+
+  @Override
+  public void execResizeTty(final String execId, final Integer height, final Integer width)
+      throws DockerException, InterruptedException {
+    delegate().execResizeTty(execId, height, width);
+  }
+
+  @Override
+  public ExecState execInspect(final String execId) throws DockerException, InterruptedException {
+    return delegate().execInspect(execId);
+  }
+
+  @Override
+  public ContainerStats stats(final String containerId)
+      throws DockerException, InterruptedException {
+    return delegate().stats(containerId);
+  }
+
+  @Override
+  public ContainerStatsStream statsStream(final String containerId)
+      throws DockerException, InterruptedException {
+    return delegate().statsStream(containerId);
+  }
+
+  @Override
+  public void resizeTty(final String containerId, final Integer height, final Integer width)
+      throws DockerException, InterruptedException {
+    delegate().resizeTty(containerId, height, width);
+  }
+
+  @Override
+  public List<Network> listNetworks(final ListNetworksParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().listNetworks(params);
+  }
+
+  @Override
+  public Network inspectNetwork(final String networkId)
+      throws DockerException, InterruptedException {
+    return delegate().inspectNetwork(networkId);
+  }
+
+  @Override
+  public NetworkCreation createNetwork(final NetworkConfig networkConfig)
+      throws DockerException, InterruptedException {
+    return delegate().createNetwork(networkConfig);
+  }
+
+  @Override
+  public void removeNetwork(final String networkId) throws DockerException, InterruptedException {
+    delegate().removeNetwork(networkId);
+  }
+
+  @Override
+  public void connectToNetwork(final String containerId, final String networkId)
+      throws DockerException, InterruptedException {
+    delegate().connectToNetwork(containerId, networkId);
+  }
+
+  @Override
+  public void connectToNetwork(final String networkId, final NetworkConnection networkConnection)
+      throws DockerException, InterruptedException {
+    delegate().connectToNetwork(networkId, networkConnection);
+  }
+
+  @Override
+  public void disconnectFromNetwork(final String containerId, final String networkId)
+      throws DockerException, InterruptedException {
+    delegate().disconnectFromNetwork(containerId, networkId);
+  }
+
+  @Override
+  public void disconnectFromNetwork(final String containerId, final String networkId,
+                                    final boolean force)
+      throws DockerException, InterruptedException {
+    delegate().disconnectFromNetwork(containerId, networkId, force);
+  }
+
+  @Override
+  public void close() {
+    delegate().close();
+  }
+
+  @Override
+  public LogStream attachContainer(final String containerId, final AttachParameter... params)
+      throws DockerException, InterruptedException {
+    return delegate().attachContainer(containerId, params);
+  }
+
+  @Override
+  public String getHost() {
+    return delegate().getHost();
+  }
+
+  @Override
+  public Volume createVolume() throws DockerException, InterruptedException {
+    return delegate().createVolume();
+  }
+
+  @Override
+  public Volume createVolume(final Volume volume) throws DockerException, InterruptedException {
+    return delegate().createVolume(volume);
+  }
+
+  @Override
+  public Volume inspectVolume(final String volumeName)
+      throws DockerException, InterruptedException {
+    return delegate().inspectVolume(volumeName);
+  }
+
+  @Override
+  public void removeVolume(final Volume volume) throws DockerException, InterruptedException {
+    delegate().removeVolume(volume);
+  }
+
+  @Override
+  public void removeVolume(final String volumeName) throws DockerException, InterruptedException {
+    delegate().removeVolume(volumeName);
+  }
+
+  @Override
+  public VolumeList listVolumes(final ListVolumesParam... params)
+      throws DockerException, InterruptedException {
+    return delegate().listVolumes(params);
+  }
+
+  @Override
+  public List<Secret> listSecrets() throws DockerException, InterruptedException {
+    return delegate().listSecrets();
+  }
+
+  @Override
+  public SecretCreateResponse createSecret(final SecretSpec secret)
+      throws DockerException, InterruptedException {
+    return delegate().createSecret(secret);
+  }
+
+  @Override
+  public Secret inspectSecret(final String secretId) throws DockerException, InterruptedException {
+    return delegate().inspectSecret(secretId);
+  }
+
+  @Override
+  public void deleteSecret(final String secretId) throws DockerException, InterruptedException {
+    delegate().deleteSecret(secretId);
+  }
+
+  @Override
+  public List<Config> listConfigs() throws DockerException, InterruptedException {
+    return delegate().listConfigs();
+  }
+
+  @Override
+  public List<Config> listConfigs(final Config.Criteria criteria)
+      throws DockerException, InterruptedException {
+    return delegate().listConfigs(criteria);
+  }
+
+  @Override
+  public ConfigCreateResponse createConfig(final ConfigSpec config)
+      throws DockerException, InterruptedException {
+    return delegate().createConfig(config);
+  }
+
+  @Override
+  public Config inspectConfig(final String configId) throws DockerException, InterruptedException {
+    return delegate().inspectConfig(configId);
+  }
+
+  @Override
+  public void deleteConfig(final String configId) throws DockerException, InterruptedException {
+    delegate().deleteConfig(configId);
+  }
+
+  @Override
+  public void updateConfig(final String configId, final Long version, final ConfigSpec nodeSpec)
+      throws DockerException, InterruptedException {
+    delegate().updateConfig(configId, version, nodeSpec);
+  }
+
+  @Override
+  public List<Node> listNodes() throws DockerException, InterruptedException {
+    return delegate().listNodes();
+  }
+
+  @Override
+  public List<Node> listNodes(final Node.Criteria criteria)
+      throws DockerException, InterruptedException {
+    return delegate().listNodes(criteria);
+  }
+
+  @Override
+  public NodeInfo inspectNode(final String nodeId) throws DockerException, InterruptedException {
+    return delegate().inspectNode(nodeId);
+  }
+
+  @Override
+  public void updateNode(final String nodeId, final Long version, final NodeSpec nodeSpec)
+      throws DockerException, InterruptedException {
+    delegate().updateNode(nodeId, version, nodeSpec);
+  }
+
+  @Override
+  public void deleteNode(final String nodeId) throws DockerException, InterruptedException {
+    delegate().deleteNode(nodeId);
+  }
+
+  @Override
+  public void deleteNode(final String nodeId, final boolean force)
+      throws DockerException, InterruptedException {
+    delegate().deleteNode(nodeId, force);
+  }
+}
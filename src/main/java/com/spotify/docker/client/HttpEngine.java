@@ -0,0 +1,47 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+/**
+ * How {@link DefaultDockerClient} sends its requests to Docker.
+ *
+ * @see DefaultDockerClient.Builder#httpEngine(HttpEngine)
+ */
+public enum HttpEngine {
+
+  /**
+   * Send every request through Jersey.
+   */
+  JERSEY,
+
+  /**
+   * Send the most frequent small requests, {@code ping}, {@code inspectContainer},
+   * {@code inspectImage}, {@code stopContainer}, and {@code startContainer} and the other
+   * container actions without parameters, straight to the pooled Apache HttpClient underneath
+   * Jersey, and read their responses with the shared ObjectMapper. This skips building a Jersey
+   * request and looking up its readers, which can cost more than Docker's own work when it runs
+   * on the same machine. All other requests still go through Jersey.
+   *
+   * <p>These requests are sent on the calling thread. An interrupted call therefore only returns
+   * once its response arrives or the read timeout expires.</p>
+   */
+  DIRECT
+}
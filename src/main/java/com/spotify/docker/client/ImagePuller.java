@@ -0,0 +1,377 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.ProgressMessage;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pulls images in the background on behalf of many callers.
+ *
+ * <ul>
+ * <li>Callers asking for an image that is already being pulled share that pull instead of
+ * starting another one.</li>
+ * <li>At most {@link Builder#pullsPerRegistry(int)} images are pulled from each registry at a
+ * time; the others wait their turn.</li>
+ * <li>With {@link Builder#skipPresent(boolean)}, images that the daemon already has are not
+ * pulled again.</li>
+ * </ul>
+ *
+ * <pre>
+ * try (ImagePuller puller = ImagePuller.builder(docker).pullsPerRegistry(2).build()) {
+ *   Map&lt;String, CompletableFuture&lt;Void&gt;&gt; pulls = puller.pullAll(images, handler);
+ *   CompletableFuture.allOf(pulls.values().toArray(new CompletableFuture[0])).join();
+ * }
+ * </pre>
+ */
+public class ImagePuller implements Closeable {
+
+  public static final int DEFAULT_PULLS_PER_REGISTRY = 2;
+
+  private final DockerClient docker;
+  private final int pullsPerRegistry;
+  private final boolean skipPresent;
+  private final ExecutorService executor;
+
+  // Guarded by this
+  private final Map<String, Pull> pulls = new HashMap<>();
+  private final Map<String, RegistryQueue> registries = new HashMap<>();
+  private boolean closed;
+
+  private ImagePuller(final Builder builder) {
+    this.docker = builder.docker;
+    this.pullsPerRegistry = builder.pullsPerRegistry;
+    this.skipPresent = builder.skipPresent;
+    // Never runs more than pullsPerRegistry threads per registry
+    this.executor = Executors.newCachedThreadPool(
+        new ThreadFactoryBuilder().setNameFormat("docker-client-pull-%d").setDaemon(true).build());
+  }
+
+  public static Builder builder(final DockerClient docker) {
+    return new Builder(docker);
+  }
+
+  /**
+   * Pull an image, or join a pull of the same image that is already in progress.
+   *
+   * @param image the image to pull
+   * @return a future that completes when the image has been pulled
+   */
+  public CompletableFuture<Void> pullAsync(final String image) {
+    return pullAsync(image, null);
+  }
+
+  /**
+   * Pull an image, or join a pull of the same image that is already in progress. The handler
+   * receives the progress messages from the time it joined. If it throws, only this caller's
+   * future fails; the pull carries on for the others.
+   *
+   * @param image   the image to pull
+   * @param handler receives the progress of the pull, or null
+   * @return a future that completes when the image has been pulled, and fails with the
+   *         {@link DockerException} the pull failed with
+   */
+  public CompletableFuture<Void> pullAsync(final String image, final ProgressHandler handler) {
+    checkNotNull(image, "image");
+    final ImageRef ref = new ImageRef(image);
+    final String key = key(ref);
+    synchronized (this) {
+      checkState(!closed, "the image puller is closed");
+      Pull pull = pulls.get(key);
+      if (pull == null) {
+        pull = new Pull(image, registryKey(ref));
+        pulls.put(key, pull);
+        registry(pull.registry).add(pull);
+      }
+      return pull.join(handler);
+    }
+  }
+
+  /**
+   * Pull all the images, sharing pulls that are already in progress. The handler receives the
+   * progress messages of all the pulls, one at a time, and so needs no synchronization of its
+   * own.
+   *
+   * @param images  the images to pull
+   * @param handler receives the progress of all the pulls, or null
+   * @return a future for each image, in the order given
+   */
+  public Map<String, CompletableFuture<Void>> pullAll(final Collection<String> images,
+                                                      final ProgressHandler handler) {
+    final ProgressHandler serialized = handler == null ? null : new ProgressHandler() {
+      @Override
+      public synchronized void progress(final ProgressMessage message) throws DockerException {
+        handler.progress(message);
+      }
+    };
+    final Map<String, CompletableFuture<Void>> futures = new LinkedHashMap<>();
+    for (final String image : images) {
+      if (!futures.containsKey(image)) {
+        futures.put(image, pullAsync(image, serialized));
+      }
+    }
+    return futures;
+  }
+
+  /**
+   * Returns the number of images being pulled or waiting to be pulled.
+   *
+   * @return the number of pulls in progress
+   */
+  public synchronized int pullsInProgress() {
+    return pulls.size();
+  }
+
+  /**
+   * Stops all pulls. Their futures fail.
+   */
+  @Override
+  public void close() {
+    final List<Pull> waiting = new ArrayList<>();
+    synchronized (this) {
+      closed = true;
+      for (final RegistryQueue registry : registries.values()) {
+        waiting.addAll(registry.waiting);
+        registry.waiting.clear();
+      }
+      pulls.values().removeAll(waiting);
+    }
+    // Interrupts the running pulls, which then fail their futures
+    executor.shutdownNow();
+    for (final Pull pull : waiting) {
+      pull.complete(new DockerException("The image puller was closed"));
+    }
+  }
+
+  /**
+   * Images asked for in a different form, such as {@code busybox} and
+   * {@code docker.io/library/busybox}, are pulled just once.
+   */
+  private static String key(final ImageRef ref) {
+    String name = ref.getImage();
+    for (final String prefix : new String[] {"docker.io/", "index.docker.io/"}) {
+      if (name.startsWith(prefix)) {
+        name = name.substring(prefix.length());
+      }
+    }
+    if (name.indexOf('/') < 0) {
+      name = "library/" + name;
+    }
+    // Without a tag the daemon pulls every tag of the image
+    return ref.getTag() == null ? name : name + ":" + ref.getTag();
+  }
+
+  /**
+   * Docker Hub goes by several names, which share one queue.
+   */
+  private static String registryKey(final ImageRef ref) {
+    final String registry = ref.getRegistryName();
+    return registry.equals("index.docker.io") || registry.equals("registry-1.docker.io")
+           ? "docker.io" : registry;
+  }
+
+  private RegistryQueue registry(final String registry) {
+    RegistryQueue queue = registries.get(registry);
+    if (queue == null) {
+      queue = new RegistryQueue();
+      registries.put(registry, queue);
+    }
+    return queue;
+  }
+
+  private void run(final Pull pull) {
+    Exception failure = null;
+    try {
+      if (!skipPresent || !isPresent(pull.image)) {
+        docker.pull(pull.image, pull);
+      }
+    } catch (Exception e) {
+      // Including InterruptedException, when the puller is closed
+      failure = e;
+    }
+
+    synchronized (this) {
+      pulls.values().remove(pull);
+      final RegistryQueue registry = registries.get(pull.registry);
+      registry.running--;
+      if (!closed) {
+        registry.next();
+      }
+    }
+    pull.complete(failure);
+  }
+
+  private boolean isPresent(final String image) throws DockerException, InterruptedException {
+    try {
+      docker.inspectImage(image);
+      return true;
+    } catch (ImageNotFoundException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The pulls from one registry. Guarded by the puller.
+   */
+  private class RegistryQueue {
+
+    private final Queue<Pull> waiting = new ArrayDeque<>();
+    private int running;
+
+    void add(final Pull pull) {
+      waiting.add(pull);
+      next();
+    }
+
+    void next() {
+      while (running < pullsPerRegistry && !waiting.isEmpty()) {
+        final Pull pull = waiting.poll();
+        running++;
+        executor.execute(() -> run(pull));
+      }
+    }
+  }
+
+  /**
+   * One pull of an image, shared by every caller that asked for it while it was in progress.
+   */
+  private static class Pull implements ProgressHandler {
+
+    private final String image;
+    private final String registry;
+
+    // Guarded by this
+    private final List<Waiter> waiters = new ArrayList<>();
+
+    Pull(final String image, final String registry) {
+      this.image = image;
+      this.registry = registry;
+    }
+
+    synchronized CompletableFuture<Void> join(final ProgressHandler handler) {
+      final Waiter waiter = new Waiter(handler);
+      waiters.add(waiter);
+      return waiter.future;
+    }
+
+    @Override
+    public void progress(final ProgressMessage message) {
+      final List<Waiter> current;
+      synchronized (this) {
+        current = new ArrayList<>(waiters);
+      }
+      for (final Waiter waiter : current) {
+        if (waiter.handler == null || waiter.future.isDone()) {
+          continue;
+        }
+        try {
+          waiter.handler.progress(message);
+        } catch (DockerException | RuntimeException e) {
+          waiter.future.completeExceptionally(e);
+        }
+      }
+    }
+
+    void complete(final Exception failure) {
+      final List<Waiter> current;
+      synchronized (this) {
+        current = new ArrayList<>(waiters);
+        waiters.clear();
+      }
+      for (final Waiter waiter : current) {
+        if (failure == null) {
+          waiter.future.complete(null);
+        } else {
+          waiter.future.completeExceptionally(failure);
+        }
+      }
+    }
+  }
+
+  private static class Waiter {
+
+    private final ProgressHandler handler;
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    Waiter(final ProgressHandler handler) {
+      this.handler = handler;
+    }
+  }
+
+  public static class Builder {
+
+    private final DockerClient docker;
+    private int pullsPerRegistry = DEFAULT_PULLS_PER_REGISTRY;
+    private boolean skipPresent;
+
+    private Builder(final DockerClient docker) {
+      this.docker = checkNotNull(docker, "docker");
+    }
+
+    /**
+     * Set how many images may be pulled from the same registry at a time.
+     *
+     * @param pullsPerRegistry the maximum number of concurrent pulls per registry
+     * @return Builder
+     */
+    public Builder pullsPerRegistry(final int pullsPerRegistry) {
+      checkArgument(pullsPerRegistry > 0, "pullsPerRegistry must be positive");
+      this.pullsPerRegistry = pullsPerRegistry;
+      return this;
+    }
+
+    /**
+     * Don't pull images that the daemon already has, as reported by
+     * {@link DockerClient#inspectImage(String)}. Note that this also skips images whose tag,
+     * such as {@code latest}, may since have moved to a newer image in the registry.
+     *
+     * @param skipPresent whether to skip images that are present
+     * @return Builder
+     */
+    public Builder skipPresent(final boolean skipPresent) {
+      this.skipPresent = skipPresent;
+      return this;
+    }
+
+    public ImagePuller build() {
+      return new ImagePuller(this);
+    }
+  }
+}
@@ -0,0 +1,523 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ProtocolFamily;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A socket connected to a unix domain socket through the JDK's own SocketChannel, which
+ * supports unix domain sockets from Java 16 on. The channel and its address are created through
+ * reflection so that this class compiles for older versions of Java; {@link #isSupported()}
+ * tells if the running JDK has them.
+ *
+ * <p>The JDK has no {@link Socket} view of a unix domain channel, while Apache HttpClient needs
+ * one, so this class is that view. The channel is non-blocking and a read waits on a selector,
+ * which is how {@link #setSoTimeout(int)} is honoured: Apache HttpClient relies on it both for
+ * read timeouts and to check pooled connections for staleness. An interrupted read throws
+ * {@link InterruptedIOException} rather than closing the connection.</p>
+ */
+class JdkUnixSocket extends Socket {
+
+  private static final Method OPEN_CHANNEL;
+  private static final Method ADDRESS_OF;
+  private static final ProtocolFamily UNIX;
+
+  static {
+    Method openChannel = null;
+    Method addressOf = null;
+    ProtocolFamily unix = null;
+    try {
+      unix = StandardProtocolFamily.valueOf("UNIX");
+      openChannel = SocketChannel.class.getMethod("open", ProtocolFamily.class);
+      addressOf = Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", Path.class);
+    } catch (IllegalArgumentException | ReflectiveOperationException e) {
+      // Older than Java 16
+      openChannel = null;
+      addressOf = null;
+    }
+    OPEN_CHANNEL = openChannel;
+    ADDRESS_OF = addressOf;
+    UNIX = unix;
+  }
+
+  private final SocketChannel channel;
+  private final Selector readSelector;
+  // Only needed when the socket buffer is full, so opened on first use
+  private volatile Selector writeSelector;
+
+  private final InputStream inputStream = new ChannelInputStream();
+  private final OutputStream outputStream = new ChannelOutputStream();
+
+  private volatile Path path;
+  private volatile int soTimeout;
+  private volatile boolean inputShutdown;
+  private volatile boolean outputShutdown;
+
+  JdkUnixSocket() throws IOException {
+    if (!isSupported()) {
+      throw new UnsupportedOperationException("This JDK has no unix domain socket channels");
+    }
+    this.channel = (SocketChannel) invoke(OPEN_CHANNEL, null, UNIX);
+    try {
+      channel.configureBlocking(false);
+      this.readSelector = Selector.open();
+      channel.register(readSelector, SelectionKey.OP_READ);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns whether the running JDK supports unix domain socket channels.
+   */
+  static boolean isSupported() {
+    return OPEN_CHANNEL != null;
+  }
+
+  /**
+   * Connects to the unix domain socket at the given path.
+   *
+   * @param path    the path of the socket file
+   * @param timeout the connect timeout in milliseconds, or 0 to wait as long as it takes
+   * @throws SocketTimeoutException if the connection was not accepted in time
+   */
+  void connect(final Path path, final int timeout) throws IOException {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout may not be negative: " + timeout);
+    }
+    final SocketAddress address = (SocketAddress) invoke(ADDRESS_OF, null, path);
+    this.path = path;
+    if (!channel.connect(address)) {
+      synchronized (outputStream) {
+        await(writeSelector(SelectionKey.OP_CONNECT), timeout, "Connect timed out");
+        channel.finishConnect();
+      }
+    }
+  }
+
+  @Override
+  public void connect(final SocketAddress endpoint) throws IOException {
+    throw new SocketException("Use connect(Path, int) to connect to a unix domain socket");
+  }
+
+  @Override
+  public void connect(final SocketAddress endpoint, final int timeout) throws IOException {
+    throw new SocketException("Use connect(Path, int) to connect to a unix domain socket");
+  }
+
+  @Override
+  public void bind(final SocketAddress bindpoint) throws IOException {
+    throw new SocketException("Bind is not supported");
+  }
+
+  @Override
+  public InetAddress getInetAddress() {
+    return null;
+  }
+
+  @Override
+  public InetAddress getLocalAddress() {
+    return null;
+  }
+
+  @Override
+  public int getPort() {
+    return -1;
+  }
+
+  @Override
+  public int getLocalPort() {
+    return -1;
+  }
+
+  @Override
+  public SocketAddress getRemoteSocketAddress() {
+    try {
+      return channel.getRemoteAddress();
+    } catch (IOException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public SocketAddress getLocalSocketAddress() {
+    return null;
+  }
+
+  @Override
+  public SocketChannel getChannel() {
+    // The channel is non-blocking, which callers of this method would not expect
+    return null;
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    checkOpen();
+    if (inputShutdown) {
+      throw new SocketException("Socket input is shutdown");
+    }
+    return inputStream;
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    checkOpen();
+    if (outputShutdown) {
+      throw new SocketException("Socket output is shutdown");
+    }
+    return outputStream;
+  }
+
+  @Override
+  public void sendUrgentData(final int data) throws IOException {
+    throw new SocketException("Urgent data not supported");
+  }
+
+  @Override
+  public void setSoTimeout(final int timeout) throws SocketException {
+    if (timeout < 0) {
+      throw new IllegalArgumentException("Timeout may not be negative: " + timeout);
+    }
+    this.soTimeout = timeout;
+  }
+
+  @Override
+  public int getSoTimeout() {
+    return soTimeout;
+  }
+
+  @Override
+  public void setTcpNoDelay(final boolean on) {
+    // not a TCP socket
+  }
+
+  @Override
+  public boolean getTcpNoDelay() {
+    return true;
+  }
+
+  @Override
+  public void setSoLinger(final boolean on, final int linger) {
+    // just ignore
+  }
+
+  @Override
+  public int getSoLinger() {
+    return -1;
+  }
+
+  @Override
+  public void setSendBufferSize(final int size) throws SocketException {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Send buffer size must be positive: " + size);
+    }
+    setChannelOption(StandardSocketOptions.SO_SNDBUF, size);
+  }
+
+  @Override
+  public int getSendBufferSize() throws SocketException {
+    return channelOption(StandardSocketOptions.SO_SNDBUF);
+  }
+
+  @Override
+  public void setReceiveBufferSize(final int size) throws SocketException {
+    if (size <= 0) {
+      throw new IllegalArgumentException("Receive buffer size must be positive: " + size);
+    }
+    setChannelOption(StandardSocketOptions.SO_RCVBUF, size);
+  }
+
+  @Override
+  public int getReceiveBufferSize() throws SocketException {
+    return channelOption(StandardSocketOptions.SO_RCVBUF);
+  }
+
+  @Override
+  public void setKeepAlive(final boolean on) {
+    // just ignore
+  }
+
+  @Override
+  public boolean getKeepAlive() {
+    return true;
+  }
+
+  @Override
+  public void setTrafficClass(final int tc) {
+    // just ignore
+  }
+
+  @Override
+  public int getTrafficClass() {
+    return 0;
+  }
+
+  @Override
+  public void setReuseAddress(final boolean on) {
+    // just ignore
+  }
+
+  @Override
+  public boolean getReuseAddress() {
+    return false;
+  }
+
+  private <T> void setChannelOption(final SocketOption<T> option, final T value)
+      throws SocketException {
+    try {
+      channel.setOption(option, value);
+    } catch (IOException e) {
+      throw socketException(e);
+    }
+  }
+
+  private <T> T channelOption(final SocketOption<T> option) throws SocketException {
+    try {
+      return channel.getOption(option);
+    } catch (IOException e) {
+      throw socketException(e);
+    }
+  }
+
+  private static SocketException socketException(final IOException cause) {
+    if (cause instanceof SocketException) {
+      return (SocketException) cause;
+    }
+    final SocketException exception = new SocketException(
+        cause instanceof ClosedChannelException ? "Socket is closed" : cause.getMessage());
+    exception.initCause(cause);
+    return exception;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      channel.close();
+    } finally {
+      // Wakes up reads and writes that are waiting
+      readSelector.close();
+      final Selector selector = writeSelector;
+      if (selector != null) {
+        selector.close();
+      }
+    }
+  }
+
+  @Override
+  public void shutdownInput() throws IOException {
+    channel.shutdownInput();
+    inputShutdown = true;
+  }
+
+  @Override
+  public void shutdownOutput() throws IOException {
+    channel.shutdownOutput();
+    outputShutdown = true;
+  }
+
+  @Override
+  public String toString() {
+    final Path connected = path;
+    return connected == null ? "JdkUnixSocket[unconnected]" : "JdkUnixSocket[" + connected + "]";
+  }
+
+  @Override
+  public boolean isConnected() {
+    return channel.isConnected();
+  }
+
+  @Override
+  public boolean isBound() {
+    return channel.isConnected();
+  }
+
+  @Override
+  public boolean isClosed() {
+    return !channel.isOpen();
+  }
+
+  @Override
+  public boolean isInputShutdown() {
+    return inputShutdown;
+  }
+
+  @Override
+  public boolean isOutputShutdown() {
+    return outputShutdown;
+  }
+
+  private void checkOpen() throws SocketException {
+    if (!channel.isOpen()) {
+      throw new SocketException("Socket is closed");
+    }
+  }
+
+  /**
+   * Returns the selector to wait for writes and connects with. Callers hold the lock of the
+   * output stream.
+   */
+  private Selector writeSelector(final int ops) throws IOException {
+    Selector selector = writeSelector;
+    if (selector == null) {
+      selector = Selector.open();
+      writeSelector = selector;
+      if (!channel.isOpen()) {
+        // Closed while the selector was opened, so close() may not have seen it
+        selector.close();
+        throw new SocketException("Socket is closed");
+      }
+      channel.register(selector, ops);
+    } else {
+      channel.keyFor(selector).interestOps(ops);
+    }
+    return selector;
+  }
+
+  /**
+   * Waits until the channel is ready for the operations the selector waits for.
+   *
+   * @param timeout the timeout in milliseconds, or 0 to wait as long as it takes
+   */
+  private void await(final Selector selector, final int timeout, final String timeoutMessage)
+      throws IOException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+    try {
+      while (true) {
+        long waitMillis = 0;
+        if (timeout > 0) {
+          final long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            throw new SocketTimeoutException(timeoutMessage);
+          }
+          waitMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining));
+        }
+        final int ready = selector.select(waitMillis);
+        selector.selectedKeys().clear();
+        if (ready > 0) {
+          return;
+        }
+        checkOpen();
+        if (Thread.currentThread().isInterrupted()) {
+          throw new InterruptedIOException("Interrupted while waiting for " + this);
+        }
+      }
+    } catch (ClosedSelectorException e) {
+      throw new SocketException("Socket is closed");
+    }
+  }
+
+  private static Object invoke(final Method method, final Object target, final Object... args)
+      throws IOException {
+    try {
+      return method.invoke(target, args);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      } else if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private class ChannelInputStream extends InputStream {
+
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+
+    @Override
+    public int read() throws IOException {
+      single.clear();
+      return read(single) < 0 ? -1 : single.get(0) & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      return read(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    private synchronized int read(final ByteBuffer buffer) throws IOException {
+      int read = channel.read(buffer);
+      while (read == 0) {
+        await(readSelector, soTimeout, "Read timed out");
+        read = channel.read(buffer);
+      }
+      return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+      JdkUnixSocket.this.close();
+    }
+  }
+
+  private class ChannelOutputStream extends OutputStream {
+
+    @Override
+    public void write(final int value) throws IOException {
+      write(new byte[] {(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+      final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+      synchronized (this) {
+        while (buffer.hasRemaining()) {
+          if (channel.write(buffer) == 0) {
+            await(writeSelector(SelectionKey.OP_WRITE), 0, "Write timed out");
+          }
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      JdkUnixSocket.this.close();
+    }
+  }
+}
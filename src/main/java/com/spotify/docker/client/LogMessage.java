@@ -24,10 +24,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.nio.ByteBuffer;
 
+/**
+ * A frame of the stdout or stderr output of a container.
+ *
+ * <p>Messages read by a {@link LogReader} that reuses its buffers are only valid until the next
+ * message is read, as the same instance and buffer are used for every message. Use {@link #copy()}
+ * to hold on to such a message.</p>
+ */
 public class LogMessage {
 
-  final Stream stream;
-  final ByteBuffer content;
+  // Not final so that a LogReader reusing its buffers can reuse the message as well
+  Stream stream;
+  ByteBuffer content;
 
   public LogMessage(final int streamId, final ByteBuffer content) {
     this(Stream.of(streamId), content);
@@ -46,6 +54,18 @@ public class LogMessage {
     return content.asReadOnlyBuffer();
   }
 
+  /**
+   * Returns a copy of this message that does not share its content with the reader it came from.
+   *
+   * @return a copy of this message
+   */
+  public LogMessage copy() {
+    final ByteBuffer copy = ByteBuffer.allocate(content.remaining());
+    copy.put(content.duplicate());
+    copy.flip();
+    return new LogMessage(stream, copy);
+  }
+
   public enum Stream {
     STDIN(0),
     STDOUT(1),
@@ -37,11 +37,39 @@ public class LogReader implements Closeable {
   public static final int HEADER_SIZE = 8;
   public static final int FRAME_SIZE_OFFSET = 4;
 
+  private static final int INITIAL_FRAME_BUFFER_SIZE = 8 * 1024;
+
+  private final boolean reuseBuffers;
+
+  // Only used when reusing buffers
+  private final byte[] header = new byte[HEADER_SIZE];
+  private byte[] frame;
+  private ByteBuffer frameBuffer;
+  private LogMessage message;
+
   public LogReader(final InputStream stream) {
+    this(stream, false);
+  }
+
+  /**
+   * Create a reader of the multiplexed log stream of a container.
+   *
+   * @param stream       the stream to read from
+   * @param reuseBuffers if true, every message is read into the same buffer and the same
+   *                     {@link LogMessage} instance is returned for every message. A message is
+   *                     then only valid until the next call to {@link #nextMessage()}; use
+   *                     {@link LogMessage#copy()} to keep it around.
+   */
+  public LogReader(final InputStream stream, final boolean reuseBuffers) {
     this.stream = stream;
+    this.reuseBuffers = reuseBuffers;
   }
 
   public LogMessage nextMessage() throws IOException {
+    if (reuseBuffers) {
+      return nextReusedMessage();
+    }
+
     stream.mark(HEADER_SIZE);
 
     // Read header
@@ -70,6 +98,55 @@ public class LogReader implements Closeable {
     return new LogMessage(streamId, ByteBuffer.wrap(frame));
   }
 
+  private LogMessage nextReusedMessage() throws IOException {
+    final int n = ByteStreams.read(stream, header, 0, HEADER_SIZE);
+    if (n == 0) {
+      return null;
+    }
+
+    // Header format is : {STREAM_TYPE, 0, 0, 0, SIZE1, SIZE2, SIZE3, SIZE4}
+    final int streamId = header[0];
+    if (n == HEADER_SIZE && streamId >= 0 && streamId <= 2
+        && header[1] == 0 && header[2] == 0 && header[3] == 0) {
+      final int frameSize = ((header[4] & 0xff) << 24) | ((header[5] & 0xff) << 16)
+                            | ((header[6] & 0xff) << 8) | (header[7] & 0xff);
+      if (frameSize < 0) {
+        throw new IOException("Invalid log frame size: " + (frameSize & 0xffffffffL));
+      }
+      ensureCapacity(frameSize);
+      ByteStreams.readFully(stream, frame, 0, frameSize);
+      return reusedMessage(Stream.of(streamId), frameSize);
+    }
+
+    // Not a multiplexed stream (tty), the bytes read so far are content as well
+    final int available = stream.available();
+    ensureCapacity(n + available);
+    System.arraycopy(header, 0, frame, 0, n);
+    ByteStreams.readFully(stream, frame, n, available);
+    return reusedMessage(Stream.STDOUT, n + available);
+  }
+
+  private void ensureCapacity(final int size) {
+    if (frame != null && frame.length >= size) {
+      return;
+    }
+    final int capacity = frame == null ? INITIAL_FRAME_BUFFER_SIZE : frame.length * 2;
+    frame = new byte[Math.max(size, capacity)];
+    frameBuffer = ByteBuffer.wrap(frame);
+  }
+
+  private LogMessage reusedMessage(final Stream streamType, final int size) {
+    frameBuffer.clear();
+    frameBuffer.limit(size);
+    if (message == null) {
+      message = new LogMessage(streamType, frameBuffer);
+    } else {
+      message.stream = streamType;
+      message.content = frameBuffer;
+    }
+    return message;
+  }
+
   @Override
   public void close() throws IOException {
     // Jersey will close the stream and release the connection after we read all the data.
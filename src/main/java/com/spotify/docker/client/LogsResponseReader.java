@@ -32,6 +32,22 @@ import javax.ws.rs.ext.MessageBodyReader;
 
 public class LogsResponseReader implements MessageBodyReader<LogStream> {
 
+  private final boolean reuseBuffers;
+
+  public LogsResponseReader() {
+    this(false);
+  }
+
+  /**
+   * Create a reader for log streams.
+   *
+   * @param reuseBuffers if the log streams should reuse their buffers, see
+   *                     {@link LogReader#LogReader(InputStream, boolean)}
+   */
+  public LogsResponseReader(final boolean reuseBuffers) {
+    this.reuseBuffers = reuseBuffers;
+  }
+
   @Override
   public boolean isReadable(final Class<?> type, final Type genericType,
                             final Annotation[] annotations,
@@ -46,6 +62,6 @@ public class LogsResponseReader implements MessageBodyReader<LogStream> {
                             final MultivaluedMap<String, String> httpHeaders,
                             final InputStream entityStream)
       throws IOException, WebApplicationException {
-    return DefaultLogStream.create(entityStream);
+    return DefaultLogStream.create(entityStream, reuseBuffers);
   }
 }
@@ -0,0 +1,170 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses a stream with gzip on several threads. The data is cut into blocks that are
+ * compressed independently on a {@link ForkJoinPool}, and each block is written as a complete
+ * gzip member. Readers that follow the gzip specification, such as Docker's, read the
+ * concatenated members as one stream.
+ *
+ * <p>Blocks are written in order. At most twice as many blocks as the pool has threads are
+ * compressed or waiting to be written at a time, which bounds the memory used.</p>
+ */
+class ParallelGzipOutputStream extends FilterOutputStream {
+
+  static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+
+  private final ForkJoinPool pool;
+  private final int blockSize;
+  private final int maxPending;
+  private final Queue<Future<byte[]>> pending = new ArrayDeque<>();
+
+  private byte[] block;
+  private int count;
+  private boolean submitted;
+  private boolean closed;
+
+  ParallelGzipOutputStream(final OutputStream out) {
+    this(out, ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE);
+  }
+
+  ParallelGzipOutputStream(final OutputStream out, final ForkJoinPool pool, final int blockSize) {
+    super(out);
+    checkArgument(blockSize > 0, "blockSize must be positive");
+    this.pool = pool;
+    this.blockSize = blockSize;
+    this.maxPending = 2 * pool.getParallelism();
+    this.block = new byte[blockSize];
+  }
+
+  @Override
+  public void write(final int value) throws IOException {
+    if (count == blockSize) {
+      submit();
+    }
+    block[count++] = (byte) value;
+  }
+
+  @Override
+  public void write(final byte[] buf, int off, int len) throws IOException {
+    while (len > 0) {
+      if (count == blockSize) {
+        submit();
+      }
+      final int n = Math.min(len, blockSize - count);
+      System.arraycopy(buf, off, block, count, n);
+      count += n;
+      off += n;
+      len -= n;
+    }
+  }
+
+  /**
+   * Writes the blocks that are done compressing. The block that is being filled is not
+   * compressed until it is full or the stream is closed.
+   */
+  @Override
+  public void flush() throws IOException {
+    while (!pending.isEmpty() && pending.peek().isDone()) {
+      writeNext();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      // An empty stream is still written as a gzip member
+      if (count > 0 || !submitted) {
+        submit();
+      }
+      while (!pending.isEmpty()) {
+        writeNext();
+      }
+    } catch (IOException | RuntimeException e) {
+      for (final Future<byte[]> future : pending) {
+        future.cancel(true);
+      }
+      try {
+        out.close();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+    out.close();
+  }
+
+  private void submit() throws IOException {
+    final byte[] data = block;
+    final int length = count;
+    pending.add(pool.submit(() -> compress(data, length)));
+    submitted = true;
+    block = new byte[blockSize];
+    count = 0;
+    while (pending.size() > maxPending) {
+      writeNext();
+    }
+  }
+
+  private void writeNext() throws IOException {
+    final byte[] compressed;
+    try {
+      compressed = pending.peek().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing");
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      throw cause instanceof IOException
+            ? (IOException) cause : new IOException("Failed to compress block", cause);
+    }
+    pending.remove();
+    out.write(compressed);
+  }
+
+  private static byte[] compress(final byte[] data, final int length) throws IOException {
+    final ByteArrayOutputStream compressed = new ByteArrayOutputStream(length / 2 + 64);
+    try (final GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+      gzip.write(data, 0, length);
+    }
+    return compressed.toByteArray();
+  }
+}
@@ -0,0 +1,223 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.messages.ProgressDetail;
+import com.spotify.docker.client.messages.ProgressMessage;
+
+/**
+ * A progress message as read by a {@link StreamingProgressHandler}. Only the fields the handler
+ * asked for are read from the stream; the others are left unset.
+ *
+ * <p>A stream reuses a single instance for all of its messages, so an event must not be kept
+ * once {@link StreamingProgressHandler#onProgress(ProgressEvent)} has returned. Call
+ * {@link #toMessage()} to keep a copy.</p>
+ */
+public final class ProgressEvent {
+
+  /**
+   * The value of the byte counts that were not part of the message.
+   */
+  public static final long UNKNOWN = -1;
+
+  private String id;
+  private String status;
+  private String stream;
+  private String error;
+  private String progress;
+  private String auxId;
+  private boolean hasProgressDetail;
+  private long current;
+  private long start;
+  private long total;
+
+  ProgressEvent() {
+    reset();
+  }
+
+  /**
+   * Returns an event holding the fields of a message that was already read.
+   *
+   * @param message the message to copy
+   * @return the event
+   */
+  static ProgressEvent of(final ProgressMessage message) {
+    final ProgressEvent event = new ProgressEvent();
+    event.id = message.id();
+    event.status = message.status();
+    event.stream = message.stream();
+    event.error = message.error();
+    event.progress = message.progress();
+    final ProgressDetail detail = message.progressDetail();
+    if (detail != null) {
+      event.hasProgressDetail = true;
+      event.current = orUnknown(detail.current());
+      event.start = orUnknown(detail.start());
+      event.total = orUnknown(detail.total());
+    }
+    return event;
+  }
+
+  private static long orUnknown(final Long value) {
+    return value == null ? UNKNOWN : value;
+  }
+
+  private static Long orNull(final long value) {
+    return value == UNKNOWN ? null : value;
+  }
+
+  void reset() {
+    id = null;
+    status = null;
+    stream = null;
+    error = null;
+    progress = null;
+    auxId = null;
+    hasProgressDetail = false;
+    current = UNKNOWN;
+    start = UNKNOWN;
+    total = UNKNOWN;
+  }
+
+  public String id() {
+    return id;
+  }
+
+  void id(final String id) {
+    this.id = id;
+  }
+
+  public String status() {
+    return status;
+  }
+
+  void status(final String status) {
+    this.status = status;
+  }
+
+  public String stream() {
+    return stream;
+  }
+
+  void stream(final String stream) {
+    this.stream = stream;
+  }
+
+  public String error() {
+    return error;
+  }
+
+  void error(final String error) {
+    this.error = error;
+  }
+
+  public String progress() {
+    return progress;
+  }
+
+  void progress(final String progress) {
+    this.progress = progress;
+  }
+
+  /**
+   * Returns the {@code ID} of the {@code aux} object, which holds the id of the image built by
+   * Docker 17.05 and later.
+   *
+   * @return the id, or null if the message has no aux object
+   */
+  public String auxId() {
+    return auxId;
+  }
+
+  void auxId(final String auxId) {
+    this.auxId = auxId;
+  }
+
+  /**
+   * Returns whether the message had a {@code progressDetail} object, even an empty one.
+   *
+   * @return true if there was a progress detail
+   */
+  public boolean hasProgressDetail() {
+    return hasProgressDetail;
+  }
+
+  void hasProgressDetail(final boolean hasProgressDetail) {
+    this.hasProgressDetail = hasProgressDetail;
+  }
+
+  /**
+   * Returns the bytes transferred so far in this layer.
+   *
+   * @return the byte count, or {@link #UNKNOWN}
+   */
+  public long current() {
+    return current;
+  }
+
+  void current(final long current) {
+    this.current = current;
+  }
+
+  public long start() {
+    return start;
+  }
+
+  void start(final long start) {
+    this.start = start;
+  }
+
+  /**
+   * Returns the size of this layer in bytes.
+   *
+   * @return the byte count, or {@link #UNKNOWN}
+   */
+  public long total() {
+    return total;
+  }
+
+  void total(final long total) {
+    this.total = total;
+  }
+
+  /**
+   * Copies the fields that were read into a {@link ProgressMessage}.
+   *
+   * @return the message
+   */
+  public ProgressMessage toMessage() {
+    return ProgressMessage.builder()
+        .id(id)
+        .status(status)
+        .stream(stream)
+        .error(error)
+        .progress(progress)
+        .progressDetail(hasProgressDetail
+                        ? ProgressDetail.create(orNull(current), orNull(start), orNull(total))
+                        : null)
+        .build();
+  }
+
+  @Override
+  public String toString() {
+    return toMessage().toString();
+  }
+}
@@ -25,7 +25,8 @@ import static com.google.common.io.ByteStreams.nullOutputStream;
 import static com.spotify.docker.client.ObjectMapperProvider.objectMapper;
 
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.core.JsonToken;
+import com.spotify.docker.client.StreamingProgressHandler.Field;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.exceptions.DockerTimeoutException;
 import com.spotify.docker.client.messages.ProgressMessage;
@@ -35,41 +36,49 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.util.EnumSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
-
+/**
+ * Reads the progress messages of a pull, push, build or load. Messages are read token by token,
+ * and only the fields that were asked for are decoded.
+ */
 class ProgressStream implements Closeable {
 
+  private static final Set<Field> ALL_FIELDS = EnumSet.allOf(Field.class);
+
   private final InputStream stream;
-  private final MappingIterator<ProgressMessage> iterator;
+  private final JsonParser parser;
+  private final ProgressEvent next = new ProgressEvent();
+  private boolean hasNext;
 
   ProgressStream(final InputStream stream) throws IOException {
     this.stream = stream;
-    final JsonParser parser = objectMapper().getFactory().createParser(stream);
-    iterator = objectMapper().readValues(parser, ProgressMessage.class);
+    this.parser = objectMapper().getFactory().createParser(stream);
   }
 
   public boolean hasNextMessage(final String method, final URI uri) throws DockerException {
-    try {
-      return iterator.hasNextValue();
-    } catch (SocketTimeoutException e) {
-      throw new DockerTimeoutException(method, uri, e);
-    } catch (IOException e) {
-      throw new DockerException(e);
+    if (!hasNext) {
+      hasNext = read(next, ALL_FIELDS, method, uri);
     }
+    return hasNext;
   }
 
   public ProgressMessage nextMessage(final String method, final URI uri) throws DockerException {
-    try {
-      return iterator.nextValue();
-    } catch (SocketTimeoutException e) {
-      throw new DockerTimeoutException(method, uri, e);
-    } catch (IOException e) {
-      throw new DockerException(e);
+    if (!hasNextMessage(method, uri)) {
+      throw new NoSuchElementException();
     }
+    hasNext = false;
+    return next.toMessage();
   }
 
   public void tail(ProgressHandler handler, final String method, final URI uri)
       throws DockerException, InterruptedException {
+    if (handler instanceof StreamingProgressHandler && !hasNext) {
+      tail((StreamingProgressHandler) handler, method, uri);
+      return;
+    }
     while (hasNextMessage(method, uri)) {
       if (Thread.interrupted()) {
         throw new InterruptedException();
@@ -78,6 +87,140 @@ class ProgressStream implements Closeable {
     }
   }
 
+  private void tail(final StreamingProgressHandler handler, final String method, final URI uri)
+      throws DockerException, InterruptedException {
+    final Set<Field> fields = EnumSet.noneOf(Field.class);
+    fields.addAll(handler.fields());
+    final ProgressEvent event = new ProgressEvent();
+    while (read(event, fields, method, uri)) {
+      if (Thread.interrupted()) {
+        throw new InterruptedException();
+      }
+      handler.onProgress(event);
+    }
+  }
+
+  private boolean read(final ProgressEvent event, final Set<Field> fields,
+                       final String method, final URI uri) throws DockerException {
+    try {
+      return read(event, fields);
+    } catch (SocketTimeoutException e) {
+      throw new DockerTimeoutException(method, uri, e);
+    } catch (IOException e) {
+      throw new DockerException(e);
+    }
+  }
+
+  /**
+   * Reads the next message into the event. Values of fields that were not asked for are skipped
+   * without being decoded.
+   */
+  private boolean read(final ProgressEvent event, final Set<Field> fields) throws IOException {
+    JsonToken token;
+    // Docker only sends objects, skip anything else rather than failing the whole operation
+    while ((token = parser.nextToken()) != JsonToken.START_OBJECT) {
+      if (token == null) {
+        return false;
+      }
+      parser.skipChildren();
+    }
+
+    event.reset();
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String name = parser.getCurrentName();
+      parser.nextToken();
+      switch (name) {
+        case "id":
+          event.id(fields.contains(Field.ID) ? text() : skip());
+          break;
+        case "status":
+          event.status(fields.contains(Field.STATUS) ? text() : skip());
+          break;
+        case "stream":
+          event.stream(fields.contains(Field.STREAM) ? text() : skip());
+          break;
+        case "error":
+          event.error(fields.contains(Field.ERROR) ? text() : skip());
+          break;
+        case "progress":
+          event.progress(fields.contains(Field.PROGRESS) ? text() : skip());
+          break;
+        case "progressDetail":
+          readProgressDetail(event, fields);
+          break;
+        case "aux":
+          readAux(event, fields);
+          break;
+        default:
+          parser.skipChildren();
+      }
+    }
+    return true;
+  }
+
+  private void readProgressDetail(final ProgressEvent event, final Set<Field> fields)
+      throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return;
+    }
+    event.hasProgressDetail(true);
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String name = parser.getCurrentName();
+      parser.nextToken();
+      if ("current".equals(name) && fields.contains(Field.CURRENT)) {
+        event.current(number());
+      } else if ("start".equals(name) && fields.contains(Field.START)) {
+        event.start(number());
+      } else if ("total".equals(name) && fields.contains(Field.TOTAL)) {
+        event.total(number());
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private void readAux(final ProgressEvent event, final Set<Field> fields) throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT || !fields.contains(Field.AUX_ID)) {
+      parser.skipChildren();
+      return;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String name = parser.getCurrentName();
+      parser.nextToken();
+      if ("ID".equals(name)) {
+        event.auxId(text());
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private String text() throws IOException {
+    final JsonToken token = parser.getCurrentToken();
+    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return null;
+    }
+    return parser.getValueAsString();
+  }
+
+  private String skip() throws IOException {
+    parser.skipChildren();
+    return null;
+  }
+
+  private long number() throws IOException {
+    final JsonToken token = parser.getCurrentToken();
+    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return ProgressEvent.UNKNOWN;
+    }
+    return token == JsonToken.VALUE_NULL
+           ? ProgressEvent.UNKNOWN
+           : parser.getValueAsLong(ProgressEvent.UNKNOWN);
+  }
+
   @Override
   public void close() throws IOException {
     // Jersey will close the stream and release the connection after we read all the data.
@@ -0,0 +1,127 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RegistryConfigs;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Encodes the X-Registry-Auth and X-Registry-Config headers, remembering the encoded values so
+ * that repeated operations with the same credentials do not serialize them again.
+ *
+ * <p>Each value is remembered under a slot: the server address and username for a RegistryAuth,
+ * the set of servers for RegistryConfigs. A slot holds the encoding of the last credentials seen
+ * for it, so rotated credentials replace the old ones instead of piling up. Credentials are
+ * first compared by identity, which is enough when a RegistryAuthSupplier hands out the same
+ * instance again, and otherwise by equality. The number of slots is bounded.</p>
+ */
+class RegistryAuthHeaders {
+
+  private static final int MAXIMUM_SLOTS = 64;
+
+  private final ObjectMapper objectMapper;
+
+  private final Cache<List<String>, Encoded<RegistryAuth>> authHeaders =
+      CacheBuilder.newBuilder().maximumSize(MAXIMUM_SLOTS).build();
+  private final Cache<List<Object>, Encoded<RegistryConfigs>> configHeaders =
+      CacheBuilder.newBuilder().maximumSize(MAXIMUM_SLOTS).build();
+
+  // The RegistryConfigs for a build can hold dozens of entries, so skip the equality check and
+  // the slot lookup when the same instance is used again
+  private volatile Encoded<RegistryConfigs> lastConfigHeader;
+
+  RegistryAuthHeaders(final ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
+
+  /**
+   * Returns the X-Registry-Auth header for the given credentials.
+   */
+  String authHeader(final RegistryAuth registryAuth) throws JsonProcessingException {
+    final List<String> slot = Arrays.asList(registryAuth.serverAddress(), registryAuth.username());
+    final Encoded<RegistryAuth> cached = authHeaders.getIfPresent(slot);
+    if (cached != null && cached.matches(registryAuth, null)) {
+      return cached.header;
+    }
+
+    final String header = Base64.encodeBase64String(objectMapper.writeValueAsBytes(registryAuth));
+    authHeaders.put(slot, new Encoded<>(registryAuth, null, header));
+    return header;
+  }
+
+  /**
+   * Returns the X-Registry-Config header for the given credentials.
+   *
+   * @param registryConfigs The credentials for each registry
+   * @param wrapper         The key the daemon expects the credentials under, or null if it
+   *                        expects them at the top level
+   */
+  String configHeader(final RegistryConfigs registryConfigs, final String wrapper)
+      throws JsonProcessingException {
+    final Encoded<RegistryConfigs> last = lastConfigHeader;
+    if (last != null && last.value == registryConfigs && Objects.equals(last.wrapper, wrapper)) {
+      return last.header;
+    }
+
+    final List<Object> slot = Arrays.asList(registryConfigs.configs().keySet(), wrapper);
+    final Encoded<RegistryConfigs> cached = configHeaders.getIfPresent(slot);
+    if (cached != null && cached.matches(registryConfigs, wrapper)) {
+      lastConfigHeader = cached;
+      return cached.header;
+    }
+
+    String json = objectMapper.writeValueAsString(registryConfigs.configs());
+    if (wrapper != null) {
+      json = "{\"" + wrapper + "\":" + json + "}";
+    }
+    final Encoded<RegistryConfigs> encoded = new Encoded<>(
+        registryConfigs, wrapper, Base64.encodeBase64String(json.getBytes(StandardCharsets.UTF_8)));
+    configHeaders.put(slot, encoded);
+    lastConfigHeader = encoded;
+    return encoded.header;
+  }
+
+  private static class Encoded<T> {
+
+    private final T value;
+    private final String wrapper;
+    private final String header;
+
+    private Encoded(final T value, final String wrapper, final String header) {
+      this.value = value;
+      this.wrapper = wrapper;
+      this.header = header;
+    }
+
+    private boolean matches(final T other, final String otherWrapper) {
+      return (value == other || value.equals(other)) && Objects.equals(wrapper, otherWrapper);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ProgressMessage;
+
+import java.util.Set;
+
+/**
+ * A {@link ProgressHandler} that reads progress messages field by field instead of having each
+ * one bound to a {@link ProgressMessage}. The fields that are not in {@link #fields()} are
+ * skipped in the stream without being decoded, which saves a great deal of garbage on pulls and
+ * builds that send thousands of messages.
+ *
+ * <p>Messages are read this way when the handler is passed directly to the {@code pull},
+ * {@code push}, {@code build}, {@code load} and {@code create} methods of
+ * {@link DockerClient}. Anywhere else, for example when it is wrapped by another handler, it
+ * receives the fields of each {@link ProgressMessage} through
+ * {@link #progress(ProgressMessage)}.</p>
+ */
+public interface StreamingProgressHandler extends ProgressHandler {
+
+  /**
+   * The fields of a progress message that a handler can ask for.
+   */
+  enum Field {
+    ID,
+    STATUS,
+    STREAM,
+    ERROR,
+    PROGRESS,
+    // progressDetail.current
+    CURRENT,
+    // progressDetail.start
+    START,
+    // progressDetail.total
+    TOTAL,
+    // aux.ID
+    AUX_ID
+  }
+
+  /**
+   * Returns the fields this handler reads. It is called once per stream.
+   *
+   * @return the fields to read
+   */
+  Set<Field> fields();
+
+  /**
+   * This method will be called for each progress message received from Docker. The event is
+   * reused for the next message once this method returns.
+   *
+   * @param event the message to process
+   * @throws DockerException if a server error occurred (500)
+   */
+  void onProgress(ProgressEvent event) throws DockerException;
+
+  @Override
+  default void progress(final ProgressMessage message) throws DockerException {
+    onProgress(ProgressEvent.of(message));
+  }
+}
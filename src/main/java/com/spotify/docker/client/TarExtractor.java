@@ -0,0 +1,387 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+
+/**
+ * Extracts a tar stream into a directory. The stream is decoded on the calling thread, which
+ * hands the content of each file in buffers to a small pool of writer threads. The writes to a
+ * file happen in order on one thread at a time, while different files are written in parallel.
+ * A fixed number of buffers is shared by all files, so the reader waits when the writers fall
+ * behind and memory use is bounded.
+ *
+ * <p>Entries that would end up outside of the destination, either by their name or through a
+ * symbolic link extracted earlier, are rejected. Modes and modification times of files and
+ * directories are restored; devices and FIFOs are skipped.</p>
+ */
+class TarExtractor {
+
+  static final int DEFAULT_WRITER_THREADS =
+      Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+  private static final int BUFFER_SIZE = 256 * 1024;
+  private static final int BUFFERS_PER_THREAD = 4;
+  private static final long BUFFER_POLL_MILLIS = 100;
+
+  private static final boolean POSIX =
+      FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+  private final Path root;
+  private final ExecutorService writers;
+  private final BlockingQueue<ByteBuffer> buffers;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+  private final Set<FileChannel> openChannels = ConcurrentHashMap.newKeySet();
+
+  private final Set<Path> createdDirectories = new HashSet<>();
+  private final Set<Path> symbolicLinks = new HashSet<>();
+  private final Map<Path, CompletableFuture<Void>> files = new HashMap<>();
+  private final List<TarArchiveEntry> directoryEntries = new ArrayList<>();
+  private final List<Path> directoryPaths = new ArrayList<>();
+  private long directories;
+  private long links;
+  private long bytes;
+
+  private TarExtractor(final Path destination, final ExecutorService writers, final int threads) {
+    this.root = destination.toAbsolutePath().normalize();
+    this.writers = writers;
+    this.buffers = new ArrayBlockingQueue<>(threads * BUFFERS_PER_THREAD);
+    for (int i = 0; i < threads * BUFFERS_PER_THREAD; i++) {
+      buffers.add(ByteBuffer.allocate(BUFFER_SIZE));
+    }
+  }
+
+  /**
+   * Extracts a tar stream into a directory, which is created if it does not exist.
+   *
+   * @param tarStream   the archive, which is read to its end but not closed
+   * @param destination the directory to extract into
+   * @param threads     the number of threads that write files
+   * @return what was extracted
+   * @throws IOException          if the archive could not be read or a file not be written
+   * @throws InterruptedException if the thread is interrupted
+   */
+  static ArchiveExtraction extract(final InputStream tarStream, final Path destination,
+                                   final int threads)
+      throws IOException, InterruptedException {
+    final long started = System.nanoTime();
+    final ExecutorService writers = Executors.newFixedThreadPool(
+        threads, new ThreadFactoryBuilder()
+            .setNameFormat("docker-client-extract-%d")
+            .setDaemon(true)
+            .build());
+    final TarExtractor extractor = new TarExtractor(destination, writers, threads);
+    try {
+      extractor.extract(tarStream);
+    } finally {
+      writers.shutdownNow();
+      extractor.closeChannels();
+    }
+    return new ArchiveExtraction(extractor.files.size(), extractor.directories, extractor.links,
+                                 extractor.bytes, System.nanoTime() - started);
+  }
+
+  private void extract(final InputStream tarStream) throws IOException, InterruptedException {
+    Files.createDirectories(root);
+    createdDirectories.add(root);
+
+    final TarArchiveInputStream tar = new TarArchiveInputStream(tarStream);
+    TarArchiveEntry entry;
+    while ((entry = tar.getNextTarEntry()) != null) {
+      checkFailure();
+      final Path path = resolve(entry.getName());
+      if (entry.isDirectory()) {
+        createDirectories(path);
+        directoryEntries.add(entry);
+        directoryPaths.add(path);
+        directories++;
+      } else if (entry.isSymbolicLink()) {
+        createDirectories(path.getParent());
+        replace(path);
+        Files.deleteIfExists(path);
+        Files.createSymbolicLink(path, Paths.get(entry.getLinkName()));
+        symbolicLinks.add(path);
+        links++;
+      } else if (entry.isLink()) {
+        final Path target = resolve(entry.getLinkName());
+        await(files.get(target));
+        createDirectories(path.getParent());
+        replace(path);
+        Files.deleteIfExists(path);
+        Files.createLink(path, target);
+        links++;
+      } else if (entry.isFile()) {
+        createDirectories(path.getParent());
+        if (replace(path)) {
+          Files.delete(path);
+        }
+        files.put(path, write(tar, entry, path));
+      }
+    }
+
+    await(CompletableFuture.allOf(files.values().toArray(new CompletableFuture<?>[0])));
+
+    // Restore directories last, deepest first, as writing their content changes them
+    for (int i = directoryEntries.size() - 1; i >= 0; i--) {
+      restoreAttributes(directoryPaths.get(i), directoryEntries.get(i));
+    }
+  }
+
+  /**
+   * Reads the content of a file entry into buffers and queues them to be written.
+   */
+  private CompletableFuture<Void> write(final TarArchiveInputStream tar,
+                                        final TarArchiveEntry entry, final Path path)
+      throws IOException, InterruptedException {
+    final FileWriter writer = new FileWriter(path, entry);
+    CompletableFuture<Void> tail = CompletableFuture.runAsync(writer::open, writers);
+
+    long position = 0;
+    while (true) {
+      final ByteBuffer buffer = takeBuffer();
+      buffer.clear();
+      int read;
+      while (buffer.hasRemaining()
+             && (read = tar.read(buffer.array(), buffer.position(), buffer.remaining())) > 0) {
+        buffer.position(buffer.position() + read);
+      }
+      buffer.flip();
+      if (!buffer.hasRemaining()) {
+        buffers.add(buffer);
+        break;
+      }
+      final long offset = position;
+      position += buffer.remaining();
+      tail = tail.<Void>handleAsync((ignored, error) -> {
+        try {
+          if (error != null) {
+            throw error instanceof CompletionException
+                  ? (CompletionException) error : new CompletionException(error);
+          }
+          writer.write(buffer, offset);
+          return null;
+        } finally {
+          buffers.add(buffer);
+        }
+      }, writers);
+    }
+    bytes += position;
+
+    return tail
+        .<Void>handleAsync((ignored, error) -> {
+          writer.close(error == null);
+          if (error != null) {
+            throw error instanceof CompletionException
+                  ? (CompletionException) error : new CompletionException(error);
+          }
+          return null;
+        }, writers)
+        .whenComplete((ignored, error) -> {
+          if (error != null) {
+            failure.compareAndSet(null, error.getCause() != null ? error.getCause() : error);
+          }
+        });
+  }
+
+  /**
+   * Prepares for an entry that replaces an earlier entry of the same name, which tar archives
+   * may hold: waits until an earlier file has been written, so that the two are not written at
+   * the same time and the later one wins, and forgets an earlier symbolic link.
+   *
+   * @return whether the path is a symbolic link extracted earlier, which the caller must delete
+   */
+  private boolean replace(final Path path) throws IOException, InterruptedException {
+    await(files.remove(path));
+    return symbolicLinks.remove(path);
+  }
+
+  private ByteBuffer takeBuffer() throws IOException, InterruptedException {
+    while (true) {
+      final ByteBuffer buffer = buffers.poll(BUFFER_POLL_MILLIS, TimeUnit.MILLISECONDS);
+      if (buffer != null) {
+        return buffer;
+      }
+      checkFailure();
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    final Throwable cause = failure.get();
+    if (cause != null) {
+      throw cause instanceof IOException
+            ? (IOException) cause : new IOException("Failed to write file", cause);
+    }
+  }
+
+  private void await(final CompletableFuture<?> future)
+      throws IOException, InterruptedException {
+    if (future == null) {
+      return;
+    }
+    try {
+      future.get();
+    } catch (ExecutionException e) {
+      checkFailure();
+      throw new IOException("Failed to write file", e.getCause());
+    }
+  }
+
+  /**
+   * Resolves the name of an entry in the destination, rejecting names that lead out of it.
+   */
+  private Path resolve(final String name) throws IOException {
+    final Path path = root.resolve(name).normalize();
+    if (!path.startsWith(root)) {
+      throw new IOException("Archive entry " + name + " is outside of " + root);
+    }
+    for (Path parent = path.getParent(); parent != null && !parent.equals(root);
+         parent = parent.getParent()) {
+      if (symbolicLinks.contains(parent)) {
+        throw new IOException("Archive entry " + name + " is below the symbolic link " + parent);
+      }
+    }
+    return path;
+  }
+
+  private void createDirectories(final Path directory) throws IOException {
+    if (createdDirectories.add(directory)) {
+      Files.createDirectories(directory);
+    }
+  }
+
+  private void closeChannels() {
+    for (final FileChannel channel : openChannels) {
+      try {
+        channel.close();
+      } catch (IOException ignored) {
+        // The extraction failed already
+      }
+    }
+  }
+
+  private static void restoreAttributes(final Path path, final TarArchiveEntry entry)
+      throws IOException {
+    if (POSIX) {
+      Files.setPosixFilePermissions(path, permissions(entry.getMode()));
+    }
+    Files.setLastModifiedTime(path, FileTime.fromMillis(entry.getModTime().getTime()));
+  }
+
+  private static Set<PosixFilePermission> permissions(final int mode) {
+    final Set<PosixFilePermission> permissions = EnumSet.noneOf(PosixFilePermission.class);
+    // PosixFilePermission is declared from OWNER_READ (0400) down to OTHERS_EXECUTE (0001)
+    final PosixFilePermission[] values = PosixFilePermission.values();
+    for (int i = 0; i < values.length; i++) {
+      if ((mode & (1 << (values.length - 1 - i))) != 0) {
+        permissions.add(values[i]);
+      }
+    }
+    return permissions;
+  }
+
+  /**
+   * Writes one file. Its methods are called one at a time, in order, by the writer threads.
+   */
+  private class FileWriter {
+
+    private final Path path;
+    private final TarArchiveEntry entry;
+    private FileChannel channel;
+
+    private FileWriter(final Path path, final TarArchiveEntry entry) {
+      this.path = path;
+      this.entry = entry;
+    }
+
+    private void open() {
+      try {
+        channel = FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE,
+                                   LinkOption.NOFOLLOW_LINKS);
+        openChannels.add(channel);
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }
+
+    private void write(final ByteBuffer buffer, final long position) {
+      try {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+          offset += channel.write(buffer, offset);
+        }
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }
+
+    private void close(final boolean restore) {
+      if (channel == null) {
+        return;
+      }
+      try {
+        openChannels.remove(channel);
+        channel.close();
+        if (restore) {
+          restoreAttributes(path, entry);
+        }
+      } catch (IOException e) {
+        throw new CompletionException(e);
+      }
+    }
+  }
+
+}
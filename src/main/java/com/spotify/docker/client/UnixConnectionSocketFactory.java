@@ -40,14 +40,45 @@ import org.apache.http.protocol.HttpContext;
 
 /**
  * Provides a ConnectionSocketFactory for connecting Apache HTTP clients to Unix sockets.
+ *
+ * <p>On Java 16 and later the sockets are the JDK's own unix domain socket channels, see
+ * {@link JdkUnixSocket}. On older versions they are jnr-unixsocket sockets, which go through a
+ * native library. Setting the system property {@value #JDK_SOCKETS_PROPERTY} to {@code false}, or
+ * passing {@code false} to {@link #UnixConnectionSocketFactory(URI, boolean)}, keeps
+ * jnr-unixsocket on every version.</p>
  */
 @Contract(threading = ThreadingBehavior.IMMUTABLE_CONDITIONAL)
 public class UnixConnectionSocketFactory implements ConnectionSocketFactory {
 
-  private File socketFile;
+  /**
+   * System property that, when set to {@code false}, disables the JDK's unix domain socket
+   * channels in favour of jnr-unixsocket.
+   */
+  public static final String JDK_SOCKETS_PROPERTY = "docker.client.unixsocket.jdk";
+
+  private final File socketFile;
+  private final boolean jdkSockets;
 
   public UnixConnectionSocketFactory(final URI socketUri) {
+    this(socketUri, JdkUnixSocket.isSupported()
+                    && Boolean.parseBoolean(System.getProperty(JDK_SOCKETS_PROPERTY, "true")));
+  }
+
+  /**
+   * Creates a factory of JDK or jnr-unixsocket sockets.
+   *
+   * @param socketUri  the URI of the socket
+   * @param jdkSockets tells if the JDK's unix domain socket channels should be used, which
+   *                   requires Java 16 or later
+   * @throws IllegalArgumentException if {@code jdkSockets} is set on a JDK without unix domain
+   *                                  socket channels
+   */
+  public UnixConnectionSocketFactory(final URI socketUri, final boolean jdkSockets) {
     super();
+    if (jdkSockets && !JdkUnixSocket.isSupported()) {
+      throw new IllegalArgumentException("This JDK has no unix domain socket channels");
+    }
+    this.jdkSockets = jdkSockets;
 
     final String filename = socketUri.toString()
         .replaceAll("^unix:///", "unix://localhost/")
@@ -65,7 +96,10 @@ public class UnixConnectionSocketFactory implements ConnectionSocketFactory {
   }
 
   @Override
-  public UnixSocket createSocket(final HttpContext context) throws IOException {
+  public Socket createSocket(final HttpContext context) throws IOException {
+    if (jdkSockets) {
+      return new JdkUnixSocket();
+    }
     return UnixSocketChannel.open().socket();
   }
 
@@ -76,13 +110,17 @@ public class UnixConnectionSocketFactory implements ConnectionSocketFactory {
                               final InetSocketAddress remoteAddress,
                               final InetSocketAddress localAddress,
                               final HttpContext context) throws IOException {
-    if (!(socket instanceof UnixSocket)) {
+    if (!(socket instanceof UnixSocket) && !(socket instanceof JdkUnixSocket)) {
       throw new AssertionError("Unexpected socket: " + socket);
     }
 
     socket.setSoTimeout(connectTimeout);
     try {
-      socket.getChannel().connect(new UnixSocketAddress(socketFile));
+      if (socket instanceof JdkUnixSocket) {
+        ((JdkUnixSocket) socket).connect(socketFile.toPath(), connectTimeout);
+      } else {
+        socket.getChannel().connect(new UnixSocketAddress(socketFile));
+      }
     } catch (SocketTimeoutException e) {
       throw new ConnectTimeoutException(e, null, remoteAddress.getAddress());
     }
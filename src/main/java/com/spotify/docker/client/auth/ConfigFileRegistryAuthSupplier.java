@@ -33,8 +33,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * RegistryAuthSupplier that returns data from the docker-cli config file. The config file is
- * re-read on each method call, to handle cases where a process is updating the file out-of-band
- * during the lifecycle of a DockerClient instance.
+ * re-read whenever its modification time or size changes, to handle cases where a process is
+ * updating the file out-of-band during the lifecycle of a DockerClient instance. Until then the
+ * parsed file and the auth resolved from it are reused by the {@link DockerConfigReader}.
  */
 public class ConfigFileRegistryAuthSupplier implements RegistryAuthSupplier {
 
@@ -0,0 +1,183 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client.auth;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.spotify.docker.client.ImageRef;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RegistryConfigs;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A RegistryAuthSupplier that combines authentication info from multiple RegistryAuthSupplier
+ * instances like {@link MultiRegistryAuthSupplier}, but does not ask them one after another every
+ * time.
+ *
+ * <p>For {@link #authFor(String)} it remembers which supplier answered for the registry of an
+ * image, and asks only that supplier for further images on the same registry. The suppliers are
+ * probed in order again once it stops answering. So an earlier supplier in the list that starts to
+ * answer for a registry after a later one has been remembered for it is not asked until then.</p>
+ *
+ * <p>For {@link #authForBuild()} all suppliers are asked at the same time, and their answers are
+ * merged with earlier suppliers in the list taking precedence. Suppliers that have not answered
+ * by the deadline are left out of the result.</p>
+ */
+public class RoutingRegistryAuthSupplier implements RegistryAuthSupplier {
+
+  private static final Logger log = LoggerFactory.getLogger(RoutingRegistryAuthSupplier.class);
+
+  private static final long DEFAULT_BUILD_DEADLINE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setNameFormat("docker-auth-supplier-%d")
+          .setDaemon(true)
+          .build());
+
+  private final List<RegistryAuthSupplier> suppliers;
+  private final ExecutorService executor;
+  private final long buildDeadlineNanos;
+  private final ConcurrentMap<String, RegistryAuthSupplier> routes = new ConcurrentHashMap<>();
+
+  public RoutingRegistryAuthSupplier(final List<RegistryAuthSupplier> suppliers) {
+    this(suppliers, DEFAULT_EXECUTOR, DEFAULT_BUILD_DEADLINE_MILLIS, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates a RoutingRegistryAuthSupplier.
+   *
+   * @param suppliers     The suppliers to combine, in order of precedence
+   * @param executor      Runs the calls to {@link RegistryAuthSupplier#authForBuild()}
+   * @param buildDeadline How long {@link #authForBuild()} waits for the suppliers
+   * @param unit          The unit of buildDeadline
+   */
+  public RoutingRegistryAuthSupplier(final List<RegistryAuthSupplier> suppliers,
+                                     final ExecutorService executor,
+                                     final long buildDeadline, final TimeUnit unit) {
+    this.suppliers = ImmutableList.copyOf(suppliers);
+    this.executor = executor;
+    this.buildDeadlineNanos = unit.toNanos(buildDeadline);
+  }
+
+  @Override
+  public RegistryAuth authFor(final String imageName) throws DockerException {
+    final String registry = new ImageRef(imageName).getRegistryName();
+
+    final RegistryAuthSupplier known = routes.get(registry);
+    if (known != null) {
+      final RegistryAuth auth = known.authFor(imageName);
+      if (auth != null) {
+        return auth;
+      }
+      routes.remove(registry, known);
+    }
+
+    for (RegistryAuthSupplier supplier : suppliers) {
+      if (supplier == known) {
+        continue;
+      }
+      final RegistryAuth auth = supplier.authFor(imageName);
+      if (auth != null) {
+        routes.put(registry, supplier);
+        return auth;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public RegistryAuth authForSwarm() throws DockerException {
+    for (RegistryAuthSupplier supplier : suppliers) {
+      final RegistryAuth auth = supplier.authForSwarm();
+      if (auth != null) {
+        return auth;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public RegistryConfigs authForBuild() throws DockerException {
+    final long deadline = System.nanoTime() + buildDeadlineNanos;
+
+    final List<Future<RegistryConfigs>> futures = new ArrayList<>(suppliers.size());
+    for (final RegistryAuthSupplier supplier : suppliers) {
+      futures.add(executor.submit(supplier::authForBuild));
+    }
+
+    final Map<String, RegistryAuth> allConfigs = new HashMap<>();
+    try {
+      // iterate through suppliers in reverse so that the earlier suppliers in the list
+      // have precedence
+      for (final Future<RegistryConfigs> future : Lists.reverse(futures)) {
+        final RegistryConfigs configs = await(future, deadline);
+        if (configs != null && configs.configs() != null) {
+          allConfigs.putAll(configs.configs());
+        }
+      }
+    } finally {
+      for (final Future<RegistryConfigs> future : futures) {
+        future.cancel(true);
+      }
+    }
+    return RegistryConfigs.create(allConfigs);
+  }
+
+  @VisibleForTesting
+  RegistryAuthSupplier routeFor(final String registry) {
+    return routes.get(registry);
+  }
+
+  private static RegistryConfigs await(final Future<RegistryConfigs> future, final long deadline)
+      throws DockerException {
+    try {
+      return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      log.warn("RegistryAuthSupplier did not answer in time, "
+               + "configuration for building image will not contain its RegistryAuths");
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DockerException(e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), DockerException.class);
+      throw new DockerException(e.getCause());
+    }
+  }
+}
@@ -27,10 +27,12 @@ import com.google.auth.oauth2.UserCredentials;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.spotify.docker.client.auth.RegistryAuthSupplier;
 import com.spotify.docker.client.exceptions.DockerException;
 import com.spotify.docker.client.messages.RegistryAuth;
 import com.spotify.docker.client.messages.RegistryConfigs;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Clock;
@@ -39,6 +41,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,12 +64,16 @@ import org.slf4j.LoggerFactory;
  * Application Default Credentials</a>.</p>
  * <p>
  * The scopes used to fetch an access token and the minimum expiry time can be configured via the
- * Builder before calling {@link Builder#build()}.</p>
+ * Builder before calling {@link Builder#build()}. The Builder can also enable refreshing the
+ * access token in the background before it expires, see {@link Builder#withRefreshAhead(long,
+ * TimeUnit)}; such an instance should be closed when it is no longer used.</p>
  */
-public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
+public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier, Closeable {
 
   private static final Logger log = LoggerFactory.getLogger(ContainerRegistryAuthSupplier.class);
 
+  private static final long REFRESH_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
   // the list returned by `gcloud docker -a`
   // this may change in the future, and we can't know all values - but should cover most use cases
   private static final Set<String> GCR_REGISTRIES = ImmutableSet.of(
@@ -131,6 +141,8 @@ public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
 
     private long minimumExpiryMillis = TimeUnit.MINUTES.toMillis(1);
 
+    private long refreshAheadMillis;
+
     public Builder(final GoogleCredentials credentials) {
       this.credentials = credentials;
     }
@@ -158,6 +170,18 @@ public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
       return this;
     }
 
+    /**
+     * Refreshes AccessTokens on a background thread once they expire within the given time, so
+     * that callers do not wait for the refresh. The current AccessToken is then returned without
+     * locking, and is only refreshed by the caller when it expires within the minimum expiry
+     * time, for instance because the background refresh failed. This should be longer than the
+     * minimum expiry time. Disabled by default.
+     */
+    public Builder withRefreshAhead(long duration, TimeUnit timeUnit) {
+      this.refreshAheadMillis = TimeUnit.MILLISECONDS.convert(duration, timeUnit);
+      return this;
+    }
+
     public ContainerRegistryAuthSupplier build() {
       final GoogleCredentials credentials = this.credentials.createScoped(scopes);
 
@@ -174,7 +198,17 @@ public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
       final Clock clock = Clock.systemDefaultZone();
       final DefaultCredentialRefresher refresher = new DefaultCredentialRefresher();
 
-      return new ContainerRegistryAuthSupplier(credentials, clock, minimumExpiryMillis, refresher);
+      if (refreshAheadMillis <= 0) {
+        return new ContainerRegistryAuthSupplier(credentials, clock, minimumExpiryMillis,
+            refresher);
+      }
+      final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder()
+              .setNameFormat("gcr-token-refresher-%d")
+              .setDaemon(true)
+              .build());
+      return new ContainerRegistryAuthSupplier(credentials, clock, minimumExpiryMillis,
+          refresher, refreshAheadMillis, executor);
     }
   }
 
@@ -201,6 +235,13 @@ public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
   private final long minimumExpiryMillis;
   private final CredentialRefresher credentialRefresher;
 
+  // only used when refreshing ahead
+  private final long refreshAheadMillis;
+  private final ScheduledExecutorService executor;
+  private volatile AccessToken currentAccessToken;
+  // guarded by credentials
+  private ScheduledFuture<?> scheduledRefresh;
+
   @VisibleForTesting
   ContainerRegistryAuthSupplier(
       final GoogleCredentials credentials,
@@ -208,10 +249,24 @@ public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
       final long minimumExpiryMillis,
       final CredentialRefresher credentialRefresher) {
 
+    this(credentials, clock, minimumExpiryMillis, credentialRefresher, 0, null);
+  }
+
+  @VisibleForTesting
+  ContainerRegistryAuthSupplier(
+      final GoogleCredentials credentials,
+      final Clock clock,
+      final long minimumExpiryMillis,
+      final CredentialRefresher credentialRefresher,
+      final long refreshAheadMillis,
+      final ScheduledExecutorService executor) {
+
     this.credentials = credentials;
     this.clock = clock;
     this.minimumExpiryMillis = minimumExpiryMillis;
     this.credentialRefresher = credentialRefresher;
+    this.refreshAheadMillis = refreshAheadMillis;
+    this.executor = executor;
   }
 
   /**
@@ -219,22 +274,38 @@ public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
    * minimumExpiryMillis.
    */
   private AccessToken getAccessToken() throws IOException {
+    if (executor != null) {
+      // the background refresh keeps this current, so usually there is nothing to wait for
+      final AccessToken accessToken = currentAccessToken;
+      if (accessToken != null && !needsRefresh(accessToken)) {
+        return accessToken;
+      }
+    }
+
     // synchronize attempts to refresh the accessToken
     synchronized (credentials) {
       if (needsRefresh(credentials.getAccessToken())) {
         credentialRefresher.refresh(credentials);
       }
+      if (executor != null) {
+        currentAccessToken = credentials.getAccessToken();
+        scheduleRefresh(currentAccessToken);
+      }
     }
     return credentials.getAccessToken();
   }
 
   private boolean needsRefresh(final AccessToken accessToken) {
+    return expiresWithin(accessToken, minimumExpiryMillis);
+  }
+
+  private boolean expiresWithin(final AccessToken accessToken, final long millis) {
     if (accessToken == null) {
       // has not yet been fetched
       return true;
     }
 
-    final Date expirationTime = credentials.getAccessToken().getExpirationTime();
+    final Date expirationTime = accessToken.getExpirationTime();
 
     // Don't refresh if expiration time hasn't been provided.
     if (expirationTime == null) {
@@ -244,7 +315,59 @@ public class ContainerRegistryAuthSupplier implements RegistryAuthSupplier {
     // refresh the token if it expires "soon"
     final long expiresIn = expirationTime.getTime() - clock.millis();
 
-    return expiresIn <= minimumExpiryMillis;
+    return expiresIn <= millis;
+  }
+
+  /**
+   * Schedules a background refresh for when the accessToken expires within the
+   * refreshAheadMillis, unless one is scheduled already. Must be called holding the lock on
+   * credentials.
+   */
+  private void scheduleRefresh(final AccessToken accessToken) {
+    if (scheduledRefresh != null || executor.isShutdown()
+        || accessToken == null || accessToken.getExpirationTime() == null) {
+      return;
+    }
+    final long delay = Math.max(0, accessToken.getExpirationTime().getTime()
+                                   - refreshAheadMillis - clock.millis());
+    scheduleRefresh(delay);
+  }
+
+  private void scheduleRefresh(final long delayMillis) {
+    try {
+      scheduledRefresh =
+          executor.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // closed concurrently, tokens are refreshed by the callers from now on
+      log.debug("not scheduling refresh of access token", e);
+    }
+  }
+
+  private void refreshInBackground() {
+    synchronized (credentials) {
+      scheduledRefresh = null;
+      try {
+        if (expiresWithin(credentials.getAccessToken(), refreshAheadMillis)) {
+          credentialRefresher.refresh(credentials);
+        }
+        currentAccessToken = credentials.getAccessToken();
+        scheduleRefresh(currentAccessToken);
+      } catch (IOException | RuntimeException e) {
+        log.warn("unable to refresh access token for Google Container Registry in the "
+                 + "background, retrying in {} ms", REFRESH_RETRY_MILLIS, e);
+        scheduleRefresh(REFRESH_RETRY_MILLIS);
+      }
+    }
+  }
+
+  /**
+   * Stops refreshing access tokens in the background, if that was enabled.
+   */
+  @Override
+  public void close() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
   }
 
   @Override
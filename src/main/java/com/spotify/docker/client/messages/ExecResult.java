@@ -0,0 +1,51 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client.messages;
+
+import com.google.auto.value.AutoValue;
+import javax.annotation.Nullable;
+
+/**
+ * The result of running a command in a container with
+ * {@link com.spotify.docker.client.DockerClient#execRun}.
+ */
+@AutoValue
+public abstract class ExecResult {
+
+  /**
+   * The combined output of the command.
+   *
+   * @return the output
+   */
+  public abstract String output();
+
+  /**
+   * The exit code of the command, or null if the daemon did not report one.
+   *
+   * @return the exit code
+   */
+  @Nullable
+  public abstract Long exitCode();
+
+  public static ExecResult create(final String output, final Long exitCode) {
+    return new AutoValue_ExecResult(output, exitCode);
+  }
+}
@@ -47,7 +47,7 @@ public abstract class ProgressDetail {
   public abstract Long total();
 
   @JsonCreator
-  static ProgressDetail create(
+  public static ProgressDetail create(
       @JsonProperty("current") final Long current,
       @JsonProperty("start") final Long start,
       @JsonProperty("total") final Long total) {
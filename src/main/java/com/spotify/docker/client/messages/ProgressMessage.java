@@ -114,8 +114,18 @@ public abstract class ProgressMessage {
    * @return The image id if this is a build success message, otherwise null.
    */
   public String buildImageId() {
+    return buildImageId(stream());
+  }
+
+  /**
+   * Returns the image id if the stream of a progress message is a build success message like
+   * "Successfully built 2d6e00052167", otherwise null.
+   *
+   * @param stream The stream field of a progress message, which may be null.
+   * @return The image id if this is a build success message, otherwise null.
+   */
+  public static String buildImageId(final String stream) {
     // stream messages end with new line, so call trim to remove it
-    final String stream = stream();
     return stream != null && stream.startsWith("Successfully built")
            ? stream.substring(stream.lastIndexOf(' ') + 1).trim()
            : null;
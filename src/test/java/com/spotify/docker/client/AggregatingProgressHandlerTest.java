@@ -0,0 +1,147 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.spotify.docker.client.messages.ProgressDetail;
+import com.spotify.docker.client.messages.ProgressMessage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class AggregatingProgressHandlerTest {
+
+  private final AtomicLong clock = new AtomicLong();
+  private final List<ProgressMessage> received = new ArrayList<>();
+  private final AggregatingProgressHandler handler =
+      new AggregatingProgressHandler(received::add, 2, clock::get);
+
+  @Test
+  public void testThrottlesLayerProgress() throws Exception {
+    for (int i = 1; i <= 100; i++) {
+      handler.progress(downloading("layer1", i * 10, 1000));
+      advance(10);
+    }
+
+    // At the first message, then every 500 ms
+    assertThat(ids(received), contains("total", "total"));
+    assertThat(received.get(0).progressDetail().current(), is(10L));
+    assertThat(received.get(1).progressDetail().current(), is(510L));
+
+    handler.flush();
+    assertThat(received, hasSize(3));
+    assertThat(received.get(2).progressDetail().current(), is(1000L));
+    handler.flush();
+    assertThat(received, hasSize(3));
+  }
+
+  @Test
+  public void testAggregatesLayers() throws Exception {
+    handler.progress(downloading("layer1", 0, 1000));
+    handler.progress(downloading("layer2", 0, 3000));
+    advance(2000);
+    handler.progress(downloading("layer1", 1000, 1000));
+    handler.progress(downloading("layer2", 1000, 3000));
+
+    final AggregatingProgressHandler.Snapshot snapshot = handler.snapshot();
+    assertThat(snapshot.layers(), is(2));
+    assertThat(snapshot.current(), is(2000L));
+    assertThat(snapshot.total(), is(4000L));
+    assertThat(snapshot.bytesPerSecond(), is(1000L));
+    assertThat(snapshot.etaSeconds(), is(2L));
+    assertThat(snapshot.toString(), is("2.0 kB/4.0 kB, 1.0 kB/s, 2s left"));
+  }
+
+  @Test
+  public void testLayerStartingOver() throws Exception {
+    handler.progress(downloading("layer1", 1000, 1000));
+    advance(1000);
+    handler.progress(message("layer1", "Extracting", 250L, 1000L));
+
+    final AggregatingProgressHandler.Snapshot snapshot = handler.snapshot();
+    assertThat(snapshot.current(), is(250L));
+    assertThat(snapshot.total(), is(1000L));
+    assertThat(snapshot.bytesPerSecond(), is(1250L));
+  }
+
+  @Test
+  public void testOtherMessagesPassThrough() throws Exception {
+    final ProgressMessage status = ProgressMessage.builder().status("Pulling from busybox").build();
+    final ProgressMessage layerStatus = message("layer1", "Pull complete", null, null);
+    final ProgressMessage error = ProgressMessage.builder().error("not found").build();
+    final ProgressMessage stream = ProgressMessage.builder().stream("Step 1/2 : FROM x\n").build();
+
+    for (final ProgressMessage message : new ProgressMessage[] {
+        status, layerStatus, error, stream}) {
+      handler.progress(message);
+    }
+
+    assertThat(received, hasSize(4));
+    assertThat(received.get(0), is(sameInstance(status)));
+    assertThat(received.get(1), is(sameInstance(layerStatus)));
+    assertThat(received.get(2), is(sameInstance(error)));
+    assertThat(received.get(3), is(sameInstance(stream)));
+  }
+
+  @Test
+  public void testFormatting() throws Exception {
+    final AggregatingProgressHandler.Snapshot snapshot =
+        new AggregatingProgressHandler.Snapshot(3, 45_200_000, 120_100_000, 5_300_000, 14);
+    assertThat(snapshot.toString(), is("45.2 MB/120.1 MB, 5.3 MB/s, 14s left"));
+
+    final AggregatingProgressHandler.Snapshot slow =
+        new AggregatingProgressHandler.Snapshot(1, 0, 2_000_000_000L, 0, -1);
+    assertThat(slow.toString(), is("0 B/2.0 GB, 0 B/s"));
+  }
+
+  private void advance(final long millis) {
+    clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+  }
+
+  private static ProgressMessage downloading(final String id, final long current,
+                                             final long total) {
+    return message(id, "Downloading", current, total);
+  }
+
+  private static ProgressMessage message(final String id, final String status, final Long current,
+                                         final Long total) {
+    return ProgressMessage.builder()
+        .id(id)
+        .status(status)
+        .progressDetail(ProgressDetail.create(current, null, total))
+        .build();
+  }
+
+  private static List<String> ids(final List<ProgressMessage> messages) {
+    final List<String> ids = new ArrayList<>();
+    for (final ProgressMessage message : messages) {
+      ids.add(message.id());
+    }
+    return ids;
+  }
+}
@@ -0,0 +1,260 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BuildContextCacheTest {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Path context;
+  private BuildContextCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    context = folder.newFolder("context").toPath();
+    cache = new BuildContextCache(folder.newFolder("cache").toPath());
+
+    write(".dockerignore", "*.log\n");
+    write("Dockerfile", "FROM scratch\nCOPY . /\n");
+    Files.createDirectories(context.resolve("src"));
+    write("src/a.txt", "a");
+    write("src/b.txt", "b");
+    write("build.log", "ignored");
+    age(2);
+  }
+
+  @Test
+  public void testArchivesDirectory() throws Exception {
+    final Map<String, String> expected = new LinkedHashMap<>();
+    expected.put(".dockerignore", "*.log\n");
+    expected.put("Dockerfile", "FROM scratch\nCOPY . /\n");
+    expected.put("src/", "");
+    expected.put("src/a.txt", "a");
+    expected.put("src/b.txt", "b");
+
+    for (final BuildContextCompression compression : BuildContextCompression.values()) {
+      assertThat(compression.name(), read(compression), is(expected));
+      assertThat(cache.writtenSegments(), is(5));
+    }
+  }
+
+  @Test
+  public void testMatchesCompressedDirectory() throws Exception {
+    final byte[] cached;
+    try (InputStream in = cache.open(context, BuildContextCompression.NONE)) {
+      cached = ByteStreams.toByteArray(in);
+    }
+    final byte[] archived;
+    try (InputStream in = CompressedDirectory.stream(context, BuildContextCompression.NONE)) {
+      archived = ByteStreams.toByteArray(in);
+    }
+
+    // The same entries, but without padding the end to a full block
+    assertThat(Arrays.copyOf(archived, cached.length), is(cached));
+    assertThat(Arrays.copyOfRange(archived, cached.length, archived.length),
+               is(new byte[archived.length - cached.length]));
+  }
+
+  @Test
+  public void testReusesArchiveOfUnchangedDirectory() throws Exception {
+    final Map<String, String> first = read(BuildContextCompression.GZIP);
+    assertThat(cache.reusedArchive(), is(false));
+
+    assertThat(read(BuildContextCompression.GZIP), is(first));
+    assertThat(cache.reusedArchive(), is(true));
+    assertThat(cache.writtenSegments(), is(0));
+  }
+
+  @Test
+  public void testRewritesOnlyChangedFiles() throws Exception {
+    read(BuildContextCompression.GZIP);
+
+    write("src/b.txt", "changed");
+    write("src/c.txt", "new");
+    Files.delete(context.resolve("src/a.txt"));
+    age(1);
+
+    final Map<String, String> archive = read(BuildContextCompression.GZIP);
+    assertThat(archive.get("src/b.txt"), is("changed"));
+    assertThat(archive.get("src/c.txt"), is("new"));
+    assertThat(archive.containsKey("src/a.txt"), is(false));
+    // The directory's modification time changed with its files
+    assertThat(cache.writtenSegments(), is(3));
+    assertThat(cache.reusedSegments(), is(2));
+  }
+
+  @Test
+  public void testReusesContentOfTouchedFiles() throws Exception {
+    final Map<String, String> first = read(BuildContextCompression.GZIP);
+
+    final Path file = context.resolve("src/a.txt");
+    final FileTime touched = FileTime.fromMillis(
+        Files.getLastModifiedTime(file).toMillis() + TimeUnit.SECONDS.toMillis(30));
+    Files.setLastModifiedTime(file, touched);
+
+    assertThat(read(BuildContextCompression.GZIP), is(first));
+    assertThat(cache.reusedArchive(), is(false));
+    assertThat(cache.writtenSegments(), is(0));
+    assertThat(cache.reusedSegments(), is(5));
+
+    // Only the header was written again, with the new modification time
+    try (TarArchiveInputStream tarIn = new TarArchiveInputStream(new GzipCompressorInputStream(
+        cache.open(context, BuildContextCompression.GZIP), true))) {
+      TarArchiveEntry entry;
+      while ((entry = tarIn.getNextTarEntry()) != null) {
+        if (entry.getName().equals("src/a.txt")) {
+          assertThat(entry.getModTime().getTime() / 1000, is(touched.toMillis() / 1000));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRereadsRecentlyModifiedFiles() throws Exception {
+    final Path file = context.resolve("src/a.txt");
+    write("src/a.txt", "x");
+    final FileTime modified = Files.getLastModifiedTime(file);
+    read(BuildContextCompression.NONE);
+
+    // Same size and, as on a coarse clock, the same modification time
+    write("src/a.txt", "y");
+    Files.setLastModifiedTime(file, modified);
+
+    assertThat(read(BuildContextCompression.NONE).get("src/a.txt"), is("y"));
+    assertThat(cache.reusedArchive(), is(false));
+  }
+
+  @Test
+  public void testRebuildsWhenCompressionChanges() throws Exception {
+    read(BuildContextCompression.GZIP);
+    read(BuildContextCompression.NONE);
+    assertThat(cache.reusedArchive(), is(false));
+    assertThat(cache.writtenSegments(), is(5));
+  }
+
+  @Test
+  public void testFailedRebuildLeavesNoManifest() throws Exception {
+    read(BuildContextCompression.NONE);
+    final Path archive;
+    try (Stream<Path> paths = Files.walk(folder.getRoot().toPath().resolve("cache"))) {
+      archive = paths.filter(path -> path.getFileName().toString().equals("context"))
+          .findFirst().get();
+    }
+    // The new archive cannot replace a directory that is not empty
+    Files.delete(archive);
+    Files.createDirectories(archive.resolve("blocked"));
+
+    write("src/a.txt", "changed");
+    try {
+      read(BuildContextCompression.NONE);
+      fail("Expected the archive not to be replaced");
+    } catch (IOException expected) {
+      assertThat(Files.exists(archive.resolveSibling("manifest")), is(false));
+    }
+  }
+
+  @Test
+  public void testSharesCacheDirectoryBetweenCaches() throws Exception {
+    final BuildContextCache other =
+        new BuildContextCache(folder.getRoot().toPath().resolve("cache"));
+    final ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      final List<Future<byte[]>> archives = new ArrayList<>();
+      for (int i = 0; i < 8; i++) {
+        final BuildContextCache shared = i % 2 == 0 ? cache : other;
+        archives.add(executor.submit(() -> {
+          try (InputStream in = shared.open(context, BuildContextCompression.NONE)) {
+            return ByteStreams.toByteArray(in);
+          }
+        }));
+      }
+      for (final Future<byte[]> archive : archives) {
+        assertThat(archive.get(), is(archives.get(0).get()));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private void write(final String name, final String content) throws IOException {
+    Files.write(context.resolve(name), content.getBytes(UTF_8));
+  }
+
+  /**
+   * Moves modification times out of the window in which files are always read again.
+   */
+  private void age(final int minutesAgo) throws IOException {
+    final FileTime past = FileTime.fromMillis(
+        System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(minutesAgo));
+    try (Stream<Path> paths = Files.walk(context)) {
+      for (final Path path : (Iterable<Path>) paths::iterator) {
+        if (Files.getLastModifiedTime(path).compareTo(past) > 0) {
+          Files.setLastModifiedTime(path, past);
+        }
+      }
+    }
+  }
+
+  private Map<String, String> read(final BuildContextCompression compression)
+      throws IOException {
+    final Map<String, String> entries = new LinkedHashMap<>();
+    try (InputStream in = cache.open(context, compression);
+         TarArchiveInputStream tarIn = new TarArchiveInputStream(
+             compression == BuildContextCompression.NONE
+             ? in : new GzipCompressorInputStream(in, true))) {
+      TarArchiveEntry entry;
+      while ((entry = tarIn.getNextTarEntry()) != null) {
+        entries.put(entry.getName(), new String(ByteStreams.toByteArray(tarIn), UTF_8));
+      }
+    }
+    return entries;
+  }
+}
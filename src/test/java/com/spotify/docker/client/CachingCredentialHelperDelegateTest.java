@@ -0,0 +1,157 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.DockerCredentialHelper.CredentialHelperDelegate;
+import com.spotify.docker.client.messages.DockerCredentialHelperAuth;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class CachingCredentialHelperDelegateTest {
+
+  private static final DockerCredentialHelperAuth AUTH =
+      DockerCredentialHelperAuth.create("taako", "lupe", "https://adventure.zone");
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker = new Ticker() {
+    @Override
+    public long read() {
+      return nanos.get();
+    }
+  };
+
+  private final CredentialHelperDelegate delegate = mock(CredentialHelperDelegate.class);
+  private final CachingCredentialHelperDelegate cache =
+      new CachingCredentialHelperDelegate(delegate, 1, TimeUnit.MINUTES, ticker);
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testRemembersCredentialsUntilTheyExpire() throws Exception {
+    when(delegate.get("magic-missile", "https://adventure.zone")).thenReturn(AUTH);
+    when(delegate.get("magic-missile", "https://beyond.zone")).thenReturn(null);
+
+    assertThat(cache.get("magic-missile", "https://adventure.zone"), is(AUTH));
+    assertThat(cache.get("magic-missile", "https://adventure.zone"), is(AUTH));
+    assertThat(cache.get("magic-missile", "https://beyond.zone"), is(nullValue()));
+    assertThat(cache.get("magic-missile", "https://beyond.zone"), is(nullValue()));
+    verify(delegate, times(1)).get("magic-missile", "https://adventure.zone");
+    verify(delegate, times(1)).get("magic-missile", "https://beyond.zone");
+    assertThat(cache.stats().hitCount(), is(2L));
+    assertThat(cache.stats().missCount(), is(2L));
+
+    nanos.addAndGet(TimeUnit.MINUTES.toNanos(1));
+    assertThat(cache.get("magic-missile", "https://adventure.zone"), is(AUTH));
+    verify(delegate, times(2)).get("magic-missile", "https://adventure.zone");
+  }
+
+  @Test
+  public void testRemembersLists() throws Exception {
+    when(delegate.list("magic-missile")).thenReturn(ImmutableMap.of("adventure.zone", "taako"));
+
+    assertThat(cache.list("magic-missile"), is(ImmutableMap.of("adventure.zone", "taako")));
+    assertThat(cache.list("magic-missile"), is(ImmutableMap.of("adventure.zone", "taako")));
+    verify(delegate, times(1)).list("magic-missile");
+  }
+
+  @Test
+  public void testStoreAndEraseForgetCredentials() throws Exception {
+    when(delegate.get("magic-missile", "https://adventure.zone")).thenReturn(AUTH);
+
+    cache.get("magic-missile", "https://adventure.zone");
+    cache.store("magic-missile", AUTH);
+    cache.get("magic-missile", "https://adventure.zone");
+    cache.erase("magic-missile", "https://adventure.zone");
+    cache.get("magic-missile", "https://adventure.zone");
+
+    verify(delegate, times(3)).get("magic-missile", "https://adventure.zone");
+  }
+
+  @Test
+  public void testDoesNotRememberFailures() throws Exception {
+    when(delegate.get("magic-missile", "https://adventure.zone"))
+        .thenThrow(new IOException("helper not found"))
+        .thenReturn(AUTH);
+
+    try {
+      cache.get("magic-missile", "https://adventure.zone");
+    } catch (IOException expected) {
+      // The second lookup asks the helper again
+    }
+    assertThat(cache.get("magic-missile", "https://adventure.zone"), is(AUTH));
+
+    when(delegate.get("magic-missile", "https://beyond.zone"))
+        .thenThrow(new IOException("helper not found"));
+    thrown.expect(IOException.class);
+    thrown.expectMessage("helper not found");
+    cache.get("magic-missile", "https://beyond.zone");
+  }
+
+  @Test
+  public void testConcurrentLookupsShareOneExecution() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    when(delegate.get("magic-missile", "https://adventure.zone")).thenAnswer(invocation -> {
+      started.countDown();
+      release.await();
+      return AUTH;
+    });
+
+    final Future<DockerCredentialHelperAuth> first =
+        executor.submit(() -> cache.get("magic-missile", "https://adventure.zone"));
+    started.await();
+    final Future<DockerCredentialHelperAuth> second =
+        executor.submit(() -> cache.get("magic-missile", "https://adventure.zone"));
+    // Give the second lookup a moment to find the one in progress
+    Thread.sleep(100);
+    release.countDown();
+
+    assertThat(first.get(10, TimeUnit.SECONDS), is(AUTH));
+    assertThat(second.get(10, TimeUnit.SECONDS), is(AUTH));
+    verify(delegate, times(1)).get("magic-missile", "https://adventure.zone");
+  }
+}
@@ -0,0 +1,341 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.spotify.docker.client.DockerClient.ListContainersParam.allContainers;
+import static com.spotify.docker.client.DockerClient.ListContainersParam.filter;
+import static com.spotify.docker.client.DockerClient.ListContainersParam.withContainerSizes;
+import static com.spotify.docker.client.DockerClient.ListContainersParam.withLabel;
+import static com.spotify.docker.client.DockerClient.ListContainersParam.withStatusExited;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Strings;
+import com.spotify.docker.client.DockerClient.EventsParam;
+import com.spotify.docker.client.DockerClient.ListContainersParam;
+import com.spotify.docker.client.messages.Container;
+import com.spotify.docker.client.messages.ContainerInfo;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+public class CachingDockerClientTest {
+
+  private static final Container ONE = container("one", "running", 2, "app=web");
+  private static final Container TWO = container("two", "exited", 1, "app=batch");
+  private static final Container ONE_EXITED = container("one", "exited", 2, "app=web");
+
+  private final DockerClient delegate = mock(DockerClient.class);
+  private final List<PipedOutputStream> eventPipes = new CopyOnWriteArrayList<>();
+
+  // What the daemon answers to a full list, and to a list of specific IDs
+  private volatile List<Container> daemonContainers = Arrays.asList(ONE, TWO);
+  private final List<List<String>> listRequests = new CopyOnWriteArrayList<>();
+
+  private CachingDockerClient docker;
+
+  @Before
+  public void setup() throws Exception {
+    when(delegate.events(Matchers.<EventsParam>anyVararg())).thenAnswer(invocation -> events());
+    when(delegate.listContainers(Matchers.<ListContainersParam>anyVararg())).thenAnswer(
+        invocation -> list(invocation.getArguments()));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (docker != null) {
+      docker.close();
+    }
+    for (final PipedOutputStream pipe : eventPipes) {
+      pipe.close();
+    }
+  }
+
+  @Test
+  public void testListServedFromMemory() throws Exception {
+    connect();
+
+    assertThat(ids(docker.listContainers()), contains("one"));
+    assertThat(ids(docker.listContainers(allContainers())), contains("one", "two"));
+    assertThat(ids(docker.listContainers(withStatusExited())), contains("two"));
+    assertThat(ids(docker.listContainers(allContainers(), withLabel("app", "web"))),
+               contains("one"));
+    assertThat(ids(docker.listContainers(allContainers(), filter("name", "tw"))),
+               contains("two"));
+
+    assertThat(listRequests.size(), is(1));
+  }
+
+  @Test
+  public void testUnsupportedParamsGoToDaemon() throws Exception {
+    connect();
+
+    docker.listContainers(allContainers(), withContainerSizes(true));
+    docker.listContainers(filter("exited", "0"));
+
+    assertThat(listRequests.size(), is(2));
+  }
+
+  @Test
+  public void testEventRefreshesChangedContainer() throws Exception {
+    connect();
+    docker.listContainers();
+
+    daemonContainers = Arrays.asList(ONE_EXITED, TWO);
+    sendEvent("die", "one");
+    waitFor(() -> ids(docker.listContainers()).isEmpty());
+
+    assertThat(listRequests.size(), is(2));
+    assertThat(listRequests.get(1), contains("one"));
+    assertThat(ids(docker.listContainers(allContainers())), contains("one", "two"));
+    assertThat(listRequests.size(), is(2));
+  }
+
+  @Test
+  public void testDestroyedContainerIsRemoved() throws Exception {
+    connect();
+    docker.listContainers();
+
+    daemonContainers = Arrays.asList(TWO);
+    sendEvent("destroy", "one");
+    waitFor(() -> ids(docker.listContainers(allContainers())).size() == 1);
+
+    assertThat(ids(docker.listContainers(allContainers())), contains("two"));
+  }
+
+  @Test
+  public void testReadOnlyEventsAreIgnored() throws Exception {
+    connect();
+    docker.listContainers();
+
+    sendEvent("exec_start: sh", "one");
+    sendEvent("die", "two");
+    waitFor(() -> docker.listContainers().size() == 1 && listRequests.size() == 2);
+
+    assertThat(listRequests.get(1), contains("two"));
+  }
+
+  @Test
+  public void testInspectCachedUntilEvent() throws Exception {
+    final ContainerInfo first = mock(ContainerInfo.class);
+    final ContainerInfo second = mock(ContainerInfo.class);
+    when(delegate.inspectContainer("one")).thenReturn(first, second);
+    connect();
+
+    assertThat(docker.inspectContainer("one"), is(sameInstance(first)));
+    assertThat(docker.inspectContainer("one"), is(sameInstance(first)));
+    verify(delegate, times(1)).inspectContainer("one");
+
+    sendEvent("health_status: healthy", "one");
+    waitFor(() -> docker.inspectContainer("one") == second);
+    verify(delegate, times(2)).inspectContainer("one");
+  }
+
+  @Test
+  public void testInspectByNameInvalidatedByEventForId() throws Exception {
+    final String id = Strings.repeat("ab", 32);
+    final ContainerInfo running = mock(ContainerInfo.class);
+    when(running.id()).thenReturn(id);
+    final ContainerInfo dead = mock(ContainerInfo.class);
+    when(dead.id()).thenReturn(id);
+    when(delegate.inspectContainer("web")).thenReturn(running, dead);
+    when(delegate.inspectContainer("abab")).thenReturn(running);
+    connect();
+
+    assertThat(docker.inspectContainer("web"), is(sameInstance(running)));
+    assertThat(docker.inspectContainer("web"), is(sameInstance(running)));
+    assertThat(docker.inspectContainer("abab"), is(sameInstance(running)));
+    assertThat(docker.inspectContainer("abab"), is(sameInstance(running)));
+    verify(delegate, times(1)).inspectContainer("web");
+    verify(delegate, times(1)).inspectContainer("abab");
+
+    sendEvent("die", id);
+    waitFor(() -> docker.inspectContainer("web") == dead);
+    verify(delegate, times(2)).inspectContainer("web");
+  }
+
+  @Test
+  public void testChangesThroughClientAreSeenImmediately() throws Exception {
+    connect();
+    docker.listContainers();
+
+    daemonContainers = Arrays.asList(ONE_EXITED, TWO);
+    docker.stopContainer("one", 10);
+
+    assertThat(ids(docker.listContainers()), is(empty()));
+    assertThat(listRequests.get(1), contains("one"));
+  }
+
+  @Test
+  public void testMaxStaleness() throws Exception {
+    docker = CachingDockerClient.builder(delegate)
+        .maxStaleness(1, TimeUnit.NANOSECONDS)
+        .build();
+    waitFor(docker::isConnected);
+
+    docker.listContainers();
+    docker.listContainers();
+
+    assertThat(listRequests.size(), is(2));
+    assertThat(listRequests.get(1), is(nullValue()));
+  }
+
+  @Test
+  public void testResyncOnReconnect() throws Exception {
+    docker = CachingDockerClient.builder(delegate)
+        .reconnectDelay(10, TimeUnit.MILLISECONDS)
+        .build();
+    waitFor(docker::isConnected);
+    docker.listContainers();
+
+    // Lose the event stream; the hub reconnects and the cache reloads everything
+    daemonContainers = Arrays.asList(ONE_EXITED, TWO);
+    eventPipes.get(0).close();
+    waitFor(() -> eventPipes.size() == 2 && docker.isConnected());
+
+    assertThat(ids(docker.listContainers()), is(empty()));
+    assertThat(listRequests.get(listRequests.size() - 1), is(nullValue()));
+  }
+
+  @Test
+  public void testDisconnectedReadsGoToDaemon() throws Exception {
+    docker = CachingDockerClient.builder(delegate)
+        .reconnectDelay(1, TimeUnit.HOURS)
+        .build();
+    waitFor(docker::isConnected);
+    docker.listContainers();
+
+    eventPipes.get(0).close();
+    waitFor(() -> !docker.isConnected());
+
+    docker.listContainers();
+    docker.listContainers();
+    assertThat(listRequests.size(), is(3));
+  }
+
+  private void connect() throws Exception {
+    docker = CachingDockerClient.builder(delegate)
+        .reconnectDelay(1, TimeUnit.HOURS)
+        .build();
+    waitFor(docker::isConnected);
+  }
+
+  private EventStream events() throws IOException {
+    final PipedOutputStream out = new PipedOutputStream();
+    final PipedInputStream in = new PipedInputStream(out);
+    eventPipes.add(out);
+
+    final HttpEntity entity = mock(HttpEntity.class);
+    when(entity.getContent()).thenReturn(in);
+    final CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+    when(response.getEntity()).thenReturn(entity);
+    return new EventStream(response, ObjectMapperProvider.objectMapper());
+  }
+
+  private void sendEvent(final String action, final String id) throws IOException {
+    final String json = String.format(
+        "{\"Type\":\"container\",\"Action\":\"%s\",\"Actor\":{\"ID\":\"%s\"},"
+        + "\"time\":1500000000,\"timeNano\":%d}\n",
+        action, id, System.nanoTime());
+    final PipedOutputStream pipe = eventPipes.get(eventPipes.size() - 1);
+    pipe.write(json.getBytes(UTF_8));
+    pipe.flush();
+  }
+
+  /**
+   * Answers listContainers like the daemon would for the full list and the lookups by ID the
+   * cache makes, and records the IDs asked for, or null for the full list.
+   */
+  private List<Container> list(final Object[] args) {
+    final List<String> ids = new ArrayList<>();
+    boolean cacheRefresh = args.length > 0 && "all".equals(((ListContainersParam) args[0]).name());
+    for (int i = 1; i < args.length; i++) {
+      final ListContainersParam param = (ListContainersParam) args[i];
+      if ("id".equals(param.name())) {
+        ids.add(param.value());
+      } else {
+        cacheRefresh = false;
+      }
+    }
+    listRequests.add(cacheRefresh && !ids.isEmpty() ? ids : null);
+
+    final List<Container> containers = new ArrayList<>();
+    for (final Container container : daemonContainers) {
+      if (ids.isEmpty() || ids.contains(container.id())) {
+        containers.add(container);
+      }
+    }
+    return containers;
+  }
+
+  private static List<String> ids(final List<Container> containers) {
+    final List<String> ids = new ArrayList<>();
+    for (final Container container : containers) {
+      ids.add(container.id());
+    }
+    return ids;
+  }
+
+  private static void waitFor(final Callable<Boolean> condition) throws Exception {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.call()) {
+      assertTrue("timed out", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  private static Container container(final String id, final String state, final long created,
+                                     final String label) {
+    final String[] keyValue = label.split("=");
+    final String json = String.format(
+        "{\"Id\":\"%s\",\"Names\":[\"/%s\"],\"Image\":\"busybox\",\"ImageID\":\"sha256:1\","
+        + "\"Command\":\"sh\",\"Created\":%d,\"State\":\"%s\",\"Status\":\"\","
+        + "\"Ports\":[],\"Labels\":{\"%s\":\"%s\"}}",
+        id, id, created, state, keyValue[0], keyValue[1]);
+    try {
+      return ObjectMapperProvider.objectMapper().readValue(json, Container.class);
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long it takes to create the build context of a directory where most files are
+ * excluded by .dockerignore, as is the case for projects with .git, node_modules or target
+ * directories, with each {@link BuildContextCompression} and with a {@link BuildContextCache}.
+ * The included files add up to {@code mb} megabytes of source-like content, so that compression
+ * dominates for large values.
+ * This is not run as part of the test suite; run it with
+ * {@code java -cp ... com.spotify.docker.client.CompressedDirectoryBenchmark [files] [dir] [mb]}.
+ */
+public class CompressedDirectoryBenchmark {
+
+  private static final int FILES_PER_DIRECTORY = 100;
+  private static final int ITERATIONS = 5;
+
+  public static void main(final String[] args) throws Exception {
+    final int files = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+    final Path root = args.length > 1 && !args[1].isEmpty()
+                      ? Paths.get(args[1]) : Files.createTempDirectory("docker-client-benchmark");
+    final int megabytes = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+    if (!Files.exists(root.resolve(".dockerignore"))) {
+      System.out.printf("Creating %d files and %d MB of sources in %s%n", files, megabytes, root);
+      createTree(root, files);
+      createSources(root, megabytes);
+    }
+
+    for (final BuildContextCompression compression : BuildContextCompression.values()) {
+      for (int i = 0; i < ITERATIONS; i++) {
+        final long start = System.nanoTime();
+        try (CompressedDirectory dir = CompressedDirectory.create(root, compression)) {
+          final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+          System.out.printf("%-13s iteration %d: %d ms, %d bytes%n",
+                            compression, i, elapsed, Files.size(dir.file()));
+        }
+      }
+    }
+
+    // The first iteration fills the cache, the others find the directory unchanged
+    final Path cacheDirectory = Files.createTempDirectory("docker-client-benchmark-cache");
+    final BuildContextCache cache = new BuildContextCache(cacheDirectory);
+    for (int i = 0; i < ITERATIONS; i++) {
+      final long start = System.nanoTime();
+      final long size;
+      try (InputStream in = cache.open(root, BuildContextCompression.GZIP)) {
+        size = ByteStreams.exhaust(in);
+      }
+      final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      System.out.printf("%-13s iteration %d: %d ms, %d bytes%n", "CACHED", i, elapsed, size);
+    }
+    delete(cacheDirectory);
+
+    if (args.length <= 1) {
+      delete(root);
+    }
+  }
+
+  /**
+   * Creates a tree where all but a handful of the files are in ignored directories.
+   */
+  private static void createTree(final Path root, final int files) throws IOException {
+    Files.write(root.resolve(".dockerignore"),
+                ".git\nnode_modules\ntarget\n*.log\n!target/app.jar\n".getBytes(UTF_8));
+    Files.write(root.resolve("Dockerfile"), "FROM scratch\nCOPY . /\n".getBytes(UTF_8));
+    Files.createDirectories(root.resolve("src"));
+    Files.write(root.resolve("src/main.js"), "console.log('hi');\n".getBytes(UTF_8));
+    Files.createDirectories(root.resolve("target"));
+    Files.write(root.resolve("target/app.jar"), new byte[1024]);
+
+    final String[] ignored = {".git/objects", "node_modules", "target/classes"};
+    for (int i = 0; i < files; i++) {
+      final Path dir = root.resolve(ignored[i % ignored.length])
+          .resolve("d" + (i / ignored.length / FILES_PER_DIRECTORY));
+      if (i / ignored.length % FILES_PER_DIRECTORY == 0) {
+        Files.createDirectories(dir);
+      }
+      Files.write(dir.resolve("f" + i), new byte[16]);
+    }
+  }
+
+  /**
+   * Creates files of text that compresses about as well as source code does.
+   */
+  private static void createSources(final Path root, final int megabytes) throws IOException {
+    final String[] words = {"public", "static", "final", "class", "return", "if", "for", "int",
+                            "String", "new", "this", "void", "{", "}", "(", ")", ";", "\n"};
+    final Random random = new Random(0);
+    for (int i = 0; i < megabytes; i++) {
+      final StringBuilder content = new StringBuilder(1024 * 1024 + 16);
+      while (content.length() < 1024 * 1024) {
+        content.append(words[random.nextInt(words.length)]).append(' ');
+        if (random.nextInt(8) == 0) {
+          content.append("name").append(random.nextInt(10_000)).append(' ');
+        }
+      }
+      Files.write(root.resolve("src/source" + i + ".txt"), content.toString().getBytes(UTF_8));
+    }
+  }
+
+  private static void delete(final Path root) throws IOException {
+    Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+          throws IOException {
+        Files.delete(file);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult postVisitDirectory(final Path dir, final IOException exc)
+          throws IOException {
+        Files.delete(dir);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+}
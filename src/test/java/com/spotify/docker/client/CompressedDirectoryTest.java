@@ -20,21 +20,32 @@
 
 package com.spotify.docker.client;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 
 import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
@@ -64,6 +75,99 @@ public class CompressedDirectoryTest {
     }
   }
 
+  @Test
+  public void testStream() throws Exception {
+    final URL dockerDirectory = Resources.getResource("dockerDirectory");
+    try (InputStream in = CompressedDirectory.stream(Paths.get(dockerDirectory.toURI()));
+         GzipCompressorInputStream gzipIn = new GzipCompressorInputStream(in);
+         TarArchiveInputStream tarIn = new TarArchiveInputStream(gzipIn)) {
+
+      final List<String> names = new ArrayList<>();
+      TarArchiveEntry entry;
+      while ((entry = tarIn.getNextTarEntry()) != null) {
+        final String name = entry.getName();
+        names.add(name);
+      }
+      assertThat(names,
+                 containsInAnyOrder("Dockerfile", "bin/", "bin/date.sh",
+                                    "innerDir/", "innerDir/innerDockerfile"));
+    }
+  }
+
+  @Test
+  public void testFileParallelGzip() throws Exception {
+    final Path tempDir = Files.createTempDirectory("dockerDirectoryParallel");
+    tempDir.toFile().deleteOnExit();
+    final Path file = tempDir.resolve("large");
+    file.toFile().deleteOnExit();
+    // Large enough to be compressed as several gzip members
+    final byte[] bytes = new byte[3 * ParallelGzipOutputStream.DEFAULT_BLOCK_SIZE + 1000];
+    final Random random = new Random(0);
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) ('a' + random.nextInt(8));
+    }
+    Files.write(file, bytes);
+
+    try (CompressedDirectory dir =
+             CompressedDirectory.create(tempDir, BuildContextCompression.PARALLEL_GZIP);
+         BufferedInputStream fileIn = new BufferedInputStream(Files.newInputStream(dir.file()));
+         GzipCompressorInputStream gzipIn = new GzipCompressorInputStream(fileIn, true);
+         TarArchiveInputStream tarIn = new TarArchiveInputStream(gzipIn)) {
+
+      final TarArchiveEntry entry = tarIn.getNextTarEntry();
+      assertThat(entry.getName(), is("large"));
+      assertThat(ByteStreams.toByteArray(tarIn), is(bytes));
+      assertThat(tarIn.getNextTarEntry(), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testStreamUncompressed() throws Exception {
+    final URL dockerDirectory = Resources.getResource("dockerDirectory");
+    try (InputStream in = CompressedDirectory.stream(Paths.get(dockerDirectory.toURI()),
+                                                     BuildContextCompression.NONE);
+         TarArchiveInputStream tarIn = new TarArchiveInputStream(in)) {
+
+      final List<String> names = new ArrayList<>();
+      TarArchiveEntry entry;
+      while ((entry = tarIn.getNextTarEntry()) != null) {
+        names.add(entry.getName());
+      }
+      assertThat(names,
+                 containsInAnyOrder("Dockerfile", "bin/", "bin/date.sh",
+                                    "innerDir/", "innerDir/innerDockerfile"));
+    }
+  }
+
+  @Test
+  public void testStreamRethrowsArchiveFailure() throws Exception {
+    final Path missing = Files.createTempDirectory("dockerDirectoryMissing").resolve("missing");
+    try (InputStream in = CompressedDirectory.stream(missing)) {
+      ByteStreams.exhaust(in);
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertThat(e.getCause(), instanceOf(NoSuchFileException.class));
+    }
+  }
+
+  @Test
+  public void testStreamClosedEarly() throws Exception {
+    final Path tempDir = Files.createTempDirectory("dockerDirectoryLarge");
+    tempDir.toFile().deleteOnExit();
+    final Path file = tempDir.resolve("large");
+    file.toFile().deleteOnExit();
+    final byte[] bytes = new byte[1024 * 1024];
+    new Random(0).nextBytes(bytes);
+    for (int i = 0; i < 4; i++) {
+      Files.write(file, bytes, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    // closing before the archive is fully read must not hang the producer
+    try (InputStream in = CompressedDirectory.stream(tempDir)) {
+      assertThat(in.read(new byte[1024]), is(greaterThan(0)));
+    }
+  }
+
   @Test
   public void testFileWithIgnore() throws Exception {
     // note: Paths.get(someURL.toUri()) is the platform-neutral way to convert a URL to a Path
@@ -106,4 +210,70 @@ public class CompressedDirectoryTest {
     }
   }
 
+  @Test
+  public void testIgnoredDirectoryIsNotWalked() throws Exception {
+    final Path tempDir = Files.createTempDirectory("dockerDirectoryIgnoredTree");
+    Files.write(tempDir.resolve(".dockerignore"), "node_modules\n".getBytes(UTF_8));
+    Files.write(tempDir.resolve("Dockerfile"), "FROM scratch\n".getBytes(UTF_8));
+    final Path nodeModules = Files.createDirectories(tempDir.resolve("node_modules/a"));
+    Files.write(nodeModules.resolve("index.js"), new byte[0]);
+    // a symlink loop fails the walk if the ignored directory is descended into
+    Files.createSymbolicLink(nodeModules.resolve("loop"), tempDir.resolve("node_modules"));
+
+    assertThat(entryNames(tempDir), containsInAnyOrder(".dockerignore", "Dockerfile"));
+  }
+
+  @Test
+  public void testExceptionBelowIgnoredDirectory() throws Exception {
+    final Path tempDir = Files.createTempDirectory("dockerDirectoryIgnoredTreeException");
+    Files.write(tempDir.resolve(".dockerignore"),
+                "node_modules\n!node_modules/keep\n".getBytes(UTF_8));
+    final Path nodeModules = Files.createDirectories(tempDir.resolve("node_modules"));
+    Files.write(nodeModules.resolve("keep"), new byte[0]);
+    Files.write(nodeModules.resolve("other"), new byte[0]);
+
+    assertThat(entryNames(tempDir), containsInAnyOrder(".dockerignore", "node_modules/keep"));
+  }
+
+  @Test
+  public void testWildcardExcludeDropsContentsOfMatchingDirectory() throws Exception {
+    final Path tempDir = Files.createTempDirectory("dockerDirectoryIgnoredWildcard");
+    Files.write(tempDir.resolve(".dockerignore"), "build*\n".getBytes(UTF_8));
+    Files.createDirectories(tempDir.resolve("build_out"));
+    Files.write(tempDir.resolve("build_out/keep.txt"), new byte[0]);
+    Files.createDirectories(tempDir.resolve("src"));
+    Files.write(tempDir.resolve("src/build.txt"), new byte[0]);
+
+    // As with docker build, build* excludes everything below build_out, even though the
+    // pattern does not match build_out/keep.txt itself
+    assertThat(entryNames(tempDir),
+               containsInAnyOrder(".dockerignore", "src/", "src/build.txt"));
+  }
+
+  @Test
+  public void testLastMatchingPatternWins() throws Exception {
+    final Path tempDir = Files.createTempDirectory("dockerDirectoryPatternOrder");
+    Files.write(tempDir.resolve(".dockerignore"),
+                "*.txt\n!foo.txt\nbar\n!*.md\n".getBytes(UTF_8));
+    for (final String name : new String[] {"foo.txt", "bar.txt", "bar", "baz.md"}) {
+      Files.write(tempDir.resolve(name), new byte[0]);
+    }
+
+    assertThat(entryNames(tempDir), containsInAnyOrder(".dockerignore", "foo.txt", "baz.md"));
+  }
+
+  private static List<String> entryNames(final Path directory) throws Exception {
+    try (CompressedDirectory dir = CompressedDirectory.create(directory);
+         BufferedInputStream fileIn = new BufferedInputStream(Files.newInputStream(dir.file()));
+         GzipCompressorInputStream gzipIn = new GzipCompressorInputStream(fileIn);
+         TarArchiveInputStream tarIn = new TarArchiveInputStream(gzipIn)) {
+
+      final List<String> names = new ArrayList<>();
+      TarArchiveEntry entry;
+      while ((entry = tarIn.getNextTarEntry()) != null) {
+        names.add(entry.getName());
+      }
+      return names;
+    }
+  }
 }
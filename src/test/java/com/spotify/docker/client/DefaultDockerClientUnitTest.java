@@ -22,24 +22,31 @@ package com.spotify.docker.client;
 
 import static com.spotify.docker.FixtureUtil.fixture;
 import static com.spotify.hamcrest.jackson.JsonMatchers.jsonArray;
+import static com.spotify.hamcrest.jackson.JsonMatchers.jsonBoolean;
 import static com.spotify.hamcrest.jackson.JsonMatchers.jsonObject;
 import static com.spotify.hamcrest.jackson.JsonMatchers.jsonText;
 import static com.spotify.hamcrest.pojo.IsPojo.pojo;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.singletonList;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isEmptyOrNullString;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.hamcrest.Matchers.startsWith;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -47,22 +54,35 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.io.BaseEncoding;
 import com.google.common.io.Resources;
+import com.spotify.docker.client.DockerClient.ExecCreateParam;
+import com.spotify.docker.client.DockerClient.LogsParam;
 import com.spotify.docker.client.DockerClient.Signal;
 import com.spotify.docker.client.auth.RegistryAuthSupplier;
 import com.spotify.docker.client.exceptions.ConflictException;
+import com.spotify.docker.client.exceptions.ContainerNotFoundException;
 import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.exceptions.DockerRequestException;
+import com.spotify.docker.client.exceptions.ExecCreateConflictException;
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
 import com.spotify.docker.client.exceptions.NodeNotFoundException;
 import com.spotify.docker.client.exceptions.NonSwarmNodeException;
 import com.spotify.docker.client.exceptions.NotFoundException;
+import com.spotify.docker.client.exceptions.UnsupportedApiVersionException;
 import com.spotify.docker.client.messages.ContainerConfig;
+import com.spotify.docker.client.messages.ContainerExit;
+import com.spotify.docker.client.messages.ContainerInfo;
 import com.spotify.docker.client.messages.Distribution;
+import com.spotify.docker.client.messages.ExecCreation;
+import com.spotify.docker.client.messages.ExecResult;
 import com.spotify.docker.client.messages.HostConfig;
 import com.spotify.docker.client.messages.HostConfig.Bind;
+import com.spotify.docker.client.messages.ProgressMessage;
 import com.spotify.docker.client.messages.RegistryAuth;
 import com.spotify.docker.client.messages.RegistryConfigs;
 import com.spotify.docker.client.messages.ServiceCreateResponse;
@@ -88,22 +108,41 @@ import com.spotify.docker.client.messages.swarm.SwarmJoin;
 import com.spotify.docker.client.messages.swarm.Task;
 import com.spotify.docker.client.messages.swarm.TaskSpec;
 import com.spotify.docker.client.messages.swarm.Version;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Date;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
 import okhttp3.mockwebserver.RecordedRequest;
 import okio.Buffer;
 
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.glassfish.jersey.client.ClientProperties;
 import org.glassfish.jersey.client.RequestEntityProcessing;
 import org.glassfish.jersey.internal.util.Base64;
 import org.junit.After;
@@ -418,6 +457,111 @@ public class DefaultDockerClientUnitTest {
     assertThat(headerJsonNode, is(toJson(registryConfigs.configs())));
   }
 
+  @Test
+  public void testBuildWithStreamedContext() throws Exception {
+    final DefaultDockerClient client = builder.streamBuildContext(true).build();
+
+    server.enqueue(new MockResponse()
+            .setResponseCode(200)
+            .addHeader("Content-Type", "application/json")
+            .setBody(
+                fixture("fixtures/1.22/build.json")
+            )
+    );
+
+    final Path path = Paths.get(Resources.getResource("dockerDirectory").toURI());
+
+    assertThat(client.build(path), is(notNullValue()));
+
+    final RecordedRequest buildRequest = takeRequestImmediately();
+    assertThat(buildRequest.getMethod(), is("POST"));
+    assertThat(buildRequest.getPath(), is("/build"));
+    assertThat(buildRequest.getHeader("Transfer-Encoding"), is("chunked"));
+
+    final List<String> names = new ArrayList<>();
+    try (final TarArchiveInputStream tarIn = new TarArchiveInputStream(
+        new GzipCompressorInputStream(buildRequest.getBody().inputStream()))) {
+      TarArchiveEntry entry;
+      while ((entry = tarIn.getNextTarEntry()) != null) {
+        names.add(entry.getName());
+      }
+    }
+    assertThat(names, containsInAnyOrder("Dockerfile", "bin/", "bin/date.sh",
+                                         "innerDir/", "innerDir/innerDockerfile"));
+  }
+
+  @Test
+  public void testBuildWithUncompressedContext() throws Exception {
+    final DefaultDockerClient client =
+        builder.buildContextCompression(BuildContextCompression.NONE).build();
+
+    server.enqueue(new MockResponse()
+            .setResponseCode(200)
+            .addHeader("Content-Type", "application/json")
+            .setBody(
+                fixture("fixtures/1.22/build.json")
+            )
+    );
+
+    final Path path = Paths.get(Resources.getResource("dockerDirectory").toURI());
+
+    assertThat(client.build(path), is(notNullValue()));
+
+    final RecordedRequest buildRequest = takeRequestImmediately();
+    final List<String> names = new ArrayList<>();
+    try (final TarArchiveInputStream tarIn =
+             new TarArchiveInputStream(buildRequest.getBody().inputStream())) {
+      TarArchiveEntry entry;
+      while ((entry = tarIn.getNextTarEntry()) != null) {
+        names.add(entry.getName());
+      }
+    }
+    assertThat(names, containsInAnyOrder("Dockerfile", "bin/", "bin/date.sh",
+                                         "innerDir/", "innerDir/innerDockerfile"));
+  }
+
+  @Test
+  public void testBuildAndLoadWithStreamingProgressHandler() throws Exception {
+    final DefaultDockerClient client = new DefaultDockerClient(builder);
+    final List<String> statuses = new ArrayList<>();
+    final StreamingProgressHandler handler = new StreamingProgressHandler() {
+      @Override
+      public Set<Field> fields() {
+        return EnumSet.of(Field.STATUS);
+      }
+
+      @Override
+      public void onProgress(final ProgressEvent event) {
+        statuses.add(event.status());
+      }
+
+      @Override
+      public void progress(final ProgressMessage message) {
+        fail("expected the progress to be streamed");
+      }
+    };
+
+    enqueueProgress("{\"status\":\"Step 1/1\"}",
+                    "{\"stream\":\"Successfully built randomimageid\\n\"}");
+    enqueueProgress("{\"aux\":{\"ID\":\"sha256:quietimageid\"}}");
+    enqueueProgress("{\"status\":\"Loading layer\"}",
+                    "{\"stream\":\"Loaded image: busybox:latest\\n\"}");
+
+    final Path path = Paths.get(Resources.getResource("dockerDirectory").toURI());
+    assertThat(client.build(path, handler), is("randomimageid"));
+    assertThat(client.build(path, handler), is("sha256:quietimageid"));
+    assertThat(client.load(tempFile(new byte[100]), handler), contains("busybox:latest"));
+
+    assertThat(statuses, contains("Step 1/1", null, null, "Loading layer", null));
+  }
+
+  private void enqueueProgress(final String... messages) {
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody(String.join("\r\n", messages)));
+  }
+
   @Test
   public void testNanoCpus() throws Exception {
     final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
@@ -752,7 +896,7 @@ public class DefaultDockerClientUnitTest {
     final ServiceCreateResponse response = dockerClient.createService(spec);
     assertThat(response.id(), equalTo("ak7w3gjqoa3kuz8xcpnyy0pvl"));
 
-    enqueueServerApiVersion("1.30");
+    // the server version is cached after the first call
     enqueueServerApiResponse(200, "fixtures/1.30/inspectCreateResponseWithPlacementPrefs.json");
 
     final Service service = dockerClient.inspectService("ak7w3gjqoa3kuz8xcpnyy0pvl");
@@ -799,7 +943,6 @@ public class DefaultDockerClientUnitTest {
         .taskTemplate(taskSpec)
         .build();
 
-    enqueueServerApiVersion("1.30");
     enqueueServerApiResponse(201, "fixtures/1.30/createServiceResponse.json");
 
     final ServiceCreateResponse response = dockerClient.createService(spec);
@@ -1316,11 +1459,10 @@ public class DefaultDockerClientUnitTest {
             .where("id", is("1yljwbmlr8er2waf8orvqpwms"))
     ));
 
-    enqueueServerApiVersion("1.24");
+    // the server version is cached, so later calls don't ask for it again
     enqueueServerApiResponse(200, "fixtures/1.24/tasks.json");
     final String taskId = "task-1";
     dockerClient.listTasks(Task.find().taskId(taskId).build());
-    takeRequestImmediately();
     final RecordedRequest recordedRequest2 = takeRequestImmediately();
     final HttpUrl requestUrl2 = recordedRequest2.getRequestUrl();
     assertThat(requestUrl2.querySize(), is(1));
@@ -1330,11 +1472,9 @@ public class DefaultDockerClientUnitTest {
         .where("id", is(jsonArray(
             contains(jsonText(taskId)))))));
 
-    enqueueServerApiVersion("1.24");
     enqueueServerApiResponse(200, "fixtures/1.24/tasks.json");
     final String serviceName = "service-1";
     dockerClient.listTasks(Task.find().serviceName(serviceName).build());
-    takeRequestImmediately();
     final RecordedRequest recordedRequest3 = takeRequestImmediately();
     final HttpUrl requestUrl3 = recordedRequest3.getRequestUrl();
     assertThat(requestUrl3.querySize(), is(1));
@@ -1345,6 +1485,723 @@ public class DefaultDockerClientUnitTest {
             contains(jsonText(serviceName)))))));
   }
 
+  @Test
+  public void testStatsStream() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody(fixture("fixtures/1.30/containerStats.json")
+                 + fixture("fixtures/1.30/containerStats.json"))
+    );
+
+    try (final ContainerStatsStream stream = dockerClient.statsStream("abc123")) {
+      assertThat(stream.hasNext(), is(true));
+      assertThat(stream.next().read(), notNullValue());
+      assertThat(stream.hasNext(), is(true));
+      assertThat(stream.next().read(), notNullValue());
+      assertThat(stream.hasNext(), is(false));
+    }
+
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getMethod(), is("GET"));
+    assertThat(recordedRequest.getRequestUrl().encodedPath(), is("/containers/abc123/stats"));
+    assertThat(recordedRequest.getRequestUrl().queryParameter("stream"), is("1"));
+  }
+
+  @Test(expected = ContainerNotFoundException.class)
+  public void testStatsStreamContainerNotFound() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+
+    enqueueServerApiError(404, "No such container: abc123");
+
+    dockerClient.statsStream("abc123");
+  }
+
+  @Test
+  public void testAsyncInspectContainer() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    enqueueServerApiResponse(200, "fixtures/1.24/containerInfo.json");
+
+    final ContainerInfo containerInfo = dockerClient.inspectContainer("abc123").get();
+    assertThat(containerInfo, notNullValue());
+
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getMethod(), is("GET"));
+    assertThat(recordedRequest.getPath(), is("/containers/abc123/json"));
+  }
+
+  @Test
+  public void testAsyncInspectContainerNotFound() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    enqueueServerApiError(404, "No such container: abc123");
+
+    try {
+      dockerClient.inspectContainer("abc123").get();
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(ContainerNotFoundException.class));
+    }
+  }
+
+  @Test
+  public void testAsyncStopStoppedContainer() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    enqueueServerApiEmptyResponse(304);
+
+    dockerClient.stopContainer("abc123", 5).get();
+
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getMethod(), is("POST"));
+    assertThat(recordedRequest.getPath(), is("/containers/abc123/stop?t=5"));
+  }
+
+  @Test
+  public void testAsyncKillContainerWithSignal() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    server.enqueue(new MockResponse().setResponseCode(204));
+
+    dockerClient.killContainer("1234", Signal.SIGHUP).get();
+
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getMethod(), is("POST"));
+    assertThat(recordedRequest.getPath(), is("/containers/1234/kill?signal=SIGHUP"));
+  }
+
+  @Test
+  public void testAsyncThreadsAreNotCappedByDefault() throws Exception {
+    final DefaultDockerClient dockerClient = builder.connectionPoolSize(7).build();
+    assertThat(dockerClient.getClient().getConfiguration()
+                   .getProperty(ClientProperties.ASYNC_THREADPOOL_SIZE),
+               nullValue());
+
+    final DefaultDockerClient bounded = builder.asyncThreads(3).build();
+    assertThat(bounded.getClient().getConfiguration()
+                   .getProperty(ClientProperties.ASYNC_THREADPOOL_SIZE),
+               is((Object) 3));
+
+    final DefaultDockerClient unbounded = builder.asyncThreads(0).build();
+    assertThat(unbounded.getClient().getConfiguration()
+                   .getProperty(ClientProperties.ASYNC_THREADPOOL_SIZE),
+               nullValue());
+  }
+
+  @Test
+  public void testAsyncListTasksWithCriteria() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    enqueueServerApiVersion("1.24");
+    enqueueServerApiResponse(200, "fixtures/1.24/tasks.json");
+
+    final List<Task> tasks =
+        dockerClient.listTasks(Task.Criteria.builder().serviceName("web").build()).get();
+    assertThat(tasks, not(empty()));
+
+    takeRequestImmediately();
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getMethod(), is("GET"));
+    assertThat(recordedRequest.getRequestUrl().queryParameter("filters"),
+               is("{\"service\":[\"web\"]}"));
+  }
+
+  @Test
+  public void testAsyncCreateServiceSendsRegistryAuth() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    enqueueServerApiVersion("1.25");
+    enqueueServerApiResponse(201, "fixtures/1.25/createServiceResponse.json");
+
+    final ServiceSpec spec = ServiceSpec.builder()
+        .name("test")
+        .taskTemplate(TaskSpec.builder()
+            .containerSpec(ContainerSpec.builder().image("busybox").build())
+            .build())
+        .build();
+
+    final ServiceCreateResponse response = dockerClient.createService(spec).get();
+    assertThat(response.id(), notNullValue());
+
+    takeRequestImmediately();
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getPath(), is("/services/create"));
+    assertThat(recordedRequest.getHeader("X-Registry-Auth"), notNullValue());
+  }
+
+  @Test
+  public void testAsyncInspectNodeNotInSwarm() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    enqueueServerApiVersion("1.28");
+    enqueueServerApiError(503, "This node is not a swarm manager.");
+
+    try {
+      dockerClient.inspectNode("24ifsmvkjbyhk").get();
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(NonSwarmNodeException.class));
+    }
+  }
+
+  @Test
+  public void testAsyncInspectSwarmRequiresApiVersion() throws Exception {
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+
+    enqueueServerApiVersion("1.23");
+
+    try {
+      dockerClient.inspectSwarm().get();
+      fail("expected ExecutionException");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(UnsupportedApiVersionException.class));
+    }
+    assertThat(server.getRequestCount(), is(1));
+  }
+
+  @Test
+  public void testServerApiVersionIsCached() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+
+    enqueueServerApiVersion("1.30");
+    for (int i = 0; i < 3; i++) {
+      enqueueServerApiResponse(200, "fixtures/1.24/tasks.json");
+      dockerClient.listTasks();
+    }
+    enqueueServerApiResponse(200, "fixtures/1.30/listConfigs.json");
+    dockerClient.listConfigs();
+
+    assertThat(server.getRequestCount(), is(5));
+    assertThat(countVersionRequests(5), is(1));
+
+    enqueueServerApiVersion("1.32");
+    assertThat(dockerClient.refreshServerApiVersion(), is("1.32"));
+    assertThat(dockerClient.serverApiVersion(), is("1.32"));
+    assertThat(countVersionRequests(1), is(1));
+  }
+
+  @Test
+  public void testServerApiVersionInvalidatedOnReconnect() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+
+    enqueueServerApiVersion("1.24");
+    assertThat(dockerClient.serverApiVersion(), is("1.24"));
+
+    // the daemon goes away and a newer one comes up at the same address
+    final int port = server.getPort();
+    server.shutdown();
+    try {
+      dockerClient.listTasks();
+      fail("expected DockerException");
+    } catch (DockerException expected) {
+      // connection refused
+    }
+
+    final MockWebServer newServer = new MockWebServer();
+    newServer.start(port);
+    try {
+      newServer.enqueue(new MockResponse()
+          .setResponseCode(200)
+          .addHeader("Content-Type", "application/json")
+          .setBody(serverApiVersion("1.30").toString()));
+      assertThat(dockerClient.serverApiVersion(), is("1.30"));
+      assertThat(newServer.takeRequest(1, TimeUnit.SECONDS).getPath(), is("/version"));
+    } finally {
+      newServer.shutdown();
+    }
+  }
+
+  @Test
+  public void testAsyncUpdateContainerUsesCachedServerApiVersion() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+
+    enqueueServerApiVersion("1.24");
+    dockerClient.serverApiVersion();
+    takeRequestImmediately();
+
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody(createObjectNode().toString()));
+    dockerClient.async().updateContainer("abc123", HostConfig.builder().build()).get();
+
+    assertThat(server.getRequestCount(), is(2));
+    assertThat(takeRequestImmediately().getPath(), is("/containers/abc123/update"));
+  }
+
+  @Test
+  public void testAsyncWaitContainers() throws Exception {
+    final String runningId = "0123456789abcdef";
+    final ObjectNode exited = containerInfoWithState(false, "exited", 3);
+    final ObjectNode running = containerInfoWithState(true, "running", 0);
+    final String die = createObjectNode()
+        .put("Type", "container")
+        .put("Action", "die")
+        .put("time", 1500000000)
+        .set("Actor", createObjectNode()
+            .put("ID", runningId + "0000")
+            .set("Attributes", createObjectNode().put("exitCode", "7").put("name", "two")))
+        .toString();
+
+    final List<String> paths = new CopyOnWriteArrayList<>();
+    server.setDispatcher(new Dispatcher() {
+      @Override
+      public MockResponse dispatch(final RecordedRequest request) {
+        paths.add(request.getPath());
+        final MockResponse response = new MockResponse()
+            .addHeader("Content-Type", "application/json");
+        if (request.getPath().startsWith("/events")) {
+          // Sent after the containers have been inspected
+          return response.setBody(die).setBodyDelay(500, TimeUnit.MILLISECONDS);
+        } else if (request.getPath().equals("/containers/one/json")) {
+          return response.setBody(exited.toString());
+        } else if (request.getPath().equals("/containers/" + runningId + "/json")) {
+          return response.setBody(running.toString());
+        }
+        return response.setResponseCode(404);
+      }
+    });
+
+    final AsyncDockerClient dockerClient = new DefaultDockerClient(builder).async();
+    try {
+      final Map<String, CompletableFuture<ContainerExit>> futures =
+          dockerClient.waitContainers(Arrays.asList("one", runningId, "missing"));
+
+      assertThat(futures.keySet(), contains("one", runningId, "missing"));
+      assertThat(futures.get("one").get(5, TimeUnit.SECONDS).statusCode(), is(3L));
+      assertThat(futures.get(runningId).get(5, TimeUnit.SECONDS).statusCode(), is(7L));
+      try {
+        futures.get("missing").get(5, TimeUnit.SECONDS);
+        fail("expected ContainerNotFoundException");
+      } catch (ExecutionException e) {
+        assertThat(e.getCause(), instanceOf(ContainerNotFoundException.class));
+      }
+    } finally {
+      dockerClient.close();
+    }
+
+    for (final String path : paths) {
+      assertThat(path, not(containsString("/wait")));
+    }
+  }
+
+  @Test
+  public void testProgressReadOnSharedThread() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder.tailThreads(1));
+    final List<String> threads = new CopyOnWriteArrayList<>();
+    final ProgressHandler handler = message -> threads.add(Thread.currentThread().getName());
+
+    enqueuePullProgress();
+    enqueuePullProgress();
+    dockerClient.pull("busybox:latest", handler);
+    dockerClient.pull("busybox:latest", handler);
+    dockerClient.close();
+
+    assertThat(threads, hasSize(2));
+    assertThat(threads.get(0), startsWith("docker-client-tail-"));
+    assertThat(threads.get(1), is(threads.get(0)));
+  }
+
+  @Test
+  public void testFileProgressReadOnSharedThread() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder.tailThreads(1));
+    final List<String> threads = new CopyOnWriteArrayList<>();
+    final ProgressHandler handler = message -> threads.add(Thread.currentThread().getName());
+
+    enqueuePullProgress();
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody("{\"stream\":\"Loaded image: busybox:latest\\n\"}"));
+    dockerClient.pull("busybox:latest", handler);
+    assertThat(dockerClient.load(tempFile(new byte[100]), handler), contains("busybox:latest"));
+    dockerClient.close();
+
+    assertThat(threads, hasSize(2));
+    assertThat(threads.get(0), startsWith("docker-client-tail-"));
+    assertThat(threads.get(1), is(threads.get(0)));
+    assertThat(dockerClient.activeTails(), is(0));
+  }
+
+  @Test
+  public void testProgressReadInline() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder.tailThreads(0));
+    final List<Thread> threads = new CopyOnWriteArrayList<>();
+
+    enqueuePullProgress();
+    dockerClient.pull("busybox:latest", message -> threads.add(Thread.currentThread()));
+    dockerClient.close();
+
+    assertThat(threads, contains(Thread.currentThread()));
+    assertThat(dockerClient.activeTails(), is(0));
+  }
+
+  @Test
+  public void testActiveAndQueuedTails() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder.tailThreads(1));
+    final CountDownLatch release = new CountDownLatch(1);
+    final ProgressHandler blocking = message -> {
+      try {
+        release.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    };
+
+    enqueuePullProgress();
+    enqueuePullProgress();
+    final ExecutorService callers = Executors.newFixedThreadPool(2);
+    try {
+      final Future<?> first = callers.submit(() -> {
+        dockerClient.pull("busybox:latest", blocking);
+        return null;
+      });
+      final Future<?> second = callers.submit(() -> {
+        dockerClient.pull("busybox:latest", blocking);
+        return null;
+      });
+
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (dockerClient.activeTails() != 1 || dockerClient.queuedTails() != 1) {
+        assertThat("timed out", System.nanoTime() < deadline, is(true));
+        Thread.sleep(10);
+      }
+
+      release.countDown();
+      first.get(5, TimeUnit.SECONDS);
+      second.get(5, TimeUnit.SECONDS);
+      assertThat(dockerClient.activeTails(), is(0));
+      assertThat(dockerClient.queuedTails(), is(0));
+    } finally {
+      callers.shutdownNow();
+      dockerClient.close();
+    }
+  }
+
+  private void enqueuePullProgress() {
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody("{\"status\":\"Pulling from library/busybox\",\"id\":\"latest\"}\n"));
+  }
+
+  private static ObjectNode containerInfoWithState(final boolean running, final String status,
+                                                   final long exitCode) throws IOException {
+    final ObjectNode info = (ObjectNode) toJson(fixture("fixtures/1.24/containerInfo.json"));
+    ((ObjectNode) info.get("State"))
+        .put("Running", running)
+        .put("Status", status)
+        .put("ExitCode", exitCode);
+    return info;
+  }
+
+  @Test
+  public void testExecCreateWithoutPreflightCheck() throws Exception {
+    final DefaultDockerClient dockerClient =
+        new DefaultDockerClient(builder.execPreflightCheck(false));
+
+    enqueueServerApiResponse(201, createObjectNode().put("Id", "exec1"));
+
+    final ExecCreation execCreation =
+        dockerClient.execCreate("abc123", new String[] {"ls"}, ExecCreateParam.attachStdout());
+    assertThat(execCreation.id(), is("exec1"));
+
+    assertThat(server.getRequestCount(), is(1));
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getMethod(), is("POST"));
+    assertThat(recordedRequest.getPath(), is("/containers/abc123/exec"));
+  }
+
+  @Test
+  public void testExecCreateWithoutPreflightCheckNotRunning() throws Exception {
+    final DefaultDockerClient dockerClient =
+        new DefaultDockerClient(builder.execPreflightCheck(false));
+
+    enqueueServerApiError(409, "Container abc123 is not running");
+
+    thrown.expect(ExecCreateConflictException.class);
+    dockerClient.execCreate("abc123", new String[] {"ls"});
+  }
+
+  @Test
+  public void testExecRun() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+
+    enqueueServerApiResponse(201, createObjectNode().put("Id", "exec1"));
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/vnd.docker.raw-stream")
+        .setBody(new Buffer()
+            .writeByte(1).writeByte(0).writeByte(0).writeByte(0)
+            .writeInt(5)
+            .writeUtf8("hello")));
+    final ObjectNode execState = createObjectNode()
+        .put("ID", "exec1")
+        .put("Running", false)
+        .put("ExitCode", 3)
+        .put("OpenStdin", false)
+        .put("OpenStdout", true)
+        .put("OpenStderr", true);
+    execState.putObject("ProcessConfig")
+        .put("privileged", false)
+        .put("tty", false)
+        .put("entrypoint", "ls")
+        .putArray("arguments");
+    enqueueServerApiResponse(200, execState);
+
+    final ExecResult result = dockerClient.execRun("abc123", new String[] {"ls"});
+    assertThat(result.output(), is("hello"));
+    assertThat(result.exitCode(), is(3L));
+
+    final RecordedRequest createRequest = takeRequestImmediately();
+    assertThat(createRequest.getPath(), is("/containers/abc123/exec"));
+    assertThat(toJson(createRequest.getBody()), is(jsonObject()
+        .where("AttachStdout", is(jsonBoolean(true)))
+        .where("AttachStderr", is(jsonBoolean(true)))
+        .where("Cmd", is(jsonArray(contains(jsonText("ls")))))));
+    assertThat(takeRequestImmediately().getPath(), is("/exec/exec1/start"));
+    assertThat(takeRequestImmediately().getPath(), is("/exec/exec1/json"));
+  }
+
+  @Test
+  public void testLoadFromPath() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+    final byte[] tarball = new byte[100_000];
+    new Random(0).nextBytes(tarball);
+    final Path file = tempFile(tarball);
+
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody("{\"stream\":\"Loaded image: busybox:latest\\n\"}"));
+
+    assertThat(dockerClient.load(file), contains("busybox:latest"));
+
+    final RecordedRequest request = takeRequestImmediately();
+    assertThat(request.getMethod(), is("POST"));
+    assertThat(request.getPath(), is("/images/load?quiet=false"));
+    assertThat(request.getHeader("Content-Length"), is(String.valueOf(tarball.length)));
+    assertThat(request.getHeader("Transfer-Encoding"), nullValue());
+    assertThat(request.getBody().readByteArray(), is(tarball));
+  }
+
+  @Test
+  public void testCreateFromPath() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+    final Path file = tempFile(new byte[1000]);
+    final String imageId = Strings.repeat("a", 64);
+
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody("{\"status\":\"" + imageId + "\"}"));
+    server.enqueue(new MockResponse().setResponseCode(201));
+
+    dockerClient.create("busybox:file", file);
+
+    final RecordedRequest createRequest = takeRequestImmediately();
+    assertThat(createRequest.getPath(), is("/images/create?fromSrc=-&tag=busybox%3Afile"));
+    assertThat(createRequest.getHeader("Content-Length"), is("1000"));
+    final RecordedRequest tagRequest = takeRequestImmediately();
+    assertThat(tagRequest.getPath(), startsWith("/images/" + imageId + "/tag?"));
+  }
+
+  @Test
+  public void testCopyArchiveToContainer() throws Exception {
+    builder.header("string", "2");
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+    final Path file = tempFile(new byte[2048]);
+
+    server.enqueue(new MockResponse().setResponseCode(200));
+    dockerClient.copyArchiveToContainer(file, "abc123", "/tmp");
+
+    final RecordedRequest request = takeRequestImmediately();
+    assertThat(request.getMethod(), is("PUT"));
+    assertThat(request.getPath(),
+               is("/containers/abc123/archive?noOverwriteDirNonDir=true&path=%2Ftmp"));
+    assertThat(request.getHeader("Content-Type"), is("application/tar"));
+    assertThat(request.getHeader("Content-Length"), is("2048"));
+    assertThat(request.getHeader("string"), is("2"));
+
+    server.enqueue(new MockResponse().setResponseCode(404));
+    thrown.expect(NotFoundException.class);
+    dockerClient.copyArchiveToContainer(file, "abc123", "/missing");
+  }
+
+  @Test
+  public void testArchiveContainerTo() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder);
+    final ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    try (final TarArchiveOutputStream tar = new TarArchiveOutputStream(archive)) {
+      final byte[] content = "hello".getBytes(UTF_8);
+      final TarArchiveEntry entry = new TarArchiveEntry("share/hello.txt");
+      entry.setSize(content.length);
+      tar.putArchiveEntry(entry);
+      tar.write(content);
+      tar.closeArchiveEntry();
+    }
+    final Path destination = Files.createTempDirectory("docker-client-");
+
+    enqueueServerApiVersion("1.28");
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/x-tar")
+        .setBody(new Buffer().write(archive.toByteArray())));
+
+    final ArchiveExtraction extraction =
+        dockerClient.archiveContainerTo("abc123", "/usr/share", destination);
+
+    takeRequestImmediately();
+    final RecordedRequest request = takeRequestImmediately();
+    assertThat(request.getMethod(), is("GET"));
+    assertThat(request.getPath(), is("/containers/abc123/archive?path=%2Fusr%2Fshare"));
+    assertThat(extraction.files(), is(1L));
+    assertThat(extraction.bytes(), is(5L));
+    assertThat(new String(Files.readAllBytes(destination.resolve("share/hello.txt")), UTF_8),
+               is("hello"));
+  }
+
+  private static Path tempFile(final byte[] content) throws IOException {
+    final Path file = Files.createTempFile("docker-client-", ".tar");
+    file.toFile().deleteOnExit();
+    return Files.write(file, content);
+  }
+
+  @Test
+  public void testLogsWithReusedBuffers() throws Exception {
+    final DefaultDockerClient dockerClient =
+        new DefaultDockerClient(builder.reuseLogBuffers(true));
+
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/vnd.docker.raw-stream")
+        .setBody(new Buffer()
+            .writeByte(1).writeByte(0).writeByte(0).writeByte(0)
+            .writeInt(6)
+            .writeUtf8("hello\n")
+            .writeByte(2).writeByte(0).writeByte(0).writeByte(0)
+            .writeInt(5)
+            .writeUtf8("oops\n")));
+
+    try (final LogStream stream = dockerClient.logs("abc123", LogsParam.stdout(),
+                                                    LogsParam.stderr())) {
+      final LogMessage first = stream.next();
+      final LogMessage copy = first.copy();
+      final LogMessage second = stream.next();
+
+      assertThat(second, is(sameInstance(first)));
+      assertThat(second.stream(), is(LogMessage.Stream.STDERR));
+      assertThat(copy.stream(), is(LogMessage.Stream.STDOUT));
+      assertThat(UTF_8.decode(copy.content()).toString(), is("hello\n"));
+      assertThat(stream.hasNext(), is(false));
+    }
+  }
+
+  @Test
+  public void testDirectEngineInspectContainer() throws Exception {
+    final DefaultDockerClient dockerClient = new DefaultDockerClient(builder
+        .apiVersion("v1.24")
+        .header("X-Test", "direct")
+        .httpEngine(HttpEngine.DIRECT));
+
+    enqueueServerApiResponse(200, "fixtures/1.24/containerInfo.json");
+
+    final ContainerInfo containerInfo = dockerClient.inspectContainer("abc123");
+    assertThat(containerInfo.id(), is(toJson(fixture("fixtures/1.24/containerInfo.json"))
+        .get("Id").asText()));
+
+    final RecordedRequest recordedRequest = takeRequestImmediately();
+    assertThat(recordedRequest.getMethod(), is("GET"));
+    assertThat(recordedRequest.getPath(), is("/v1.24/containers/abc123/json"));
+    assertThat(recordedRequest.getHeader("Accept"), is("application/json"));
+    assertThat(recordedRequest.getHeader("X-Test"), is("direct"));
+  }
+
+  @Test
+  public void testDirectEngineEncodesPathsLikeJersey() throws Exception {
+    final String image = "registry.example.com:5000/foo/bar baz:latest";
+    final DefaultDockerClient jerseyClient = new DefaultDockerClient(builder);
+    final DefaultDockerClient directClient =
+        new DefaultDockerClient(builder.httpEngine(HttpEngine.DIRECT));
+
+    enqueueServerApiResponse(200, "fixtures/1.24/imageInfo.json");
+    enqueueServerApiResponse(200, "fixtures/1.24/imageInfo.json");
+
+    assertThat(directClient.inspectImage(image), is(jerseyClient.inspectImage(image)));
+    final String jerseyPath = takeRequestImmediately().getPath();
+    assertThat(takeRequestImmediately().getPath(), is(jerseyPath));
+    assertThat(jerseyPath, is("/images/registry.example.com:5000/foo/bar%20baz:latest/json"));
+  }
+
+  @Test
+  public void testDirectEngineContainerActions() throws Exception {
+    final DefaultDockerClient dockerClient =
+        new DefaultDockerClient(builder.httpEngine(HttpEngine.DIRECT));
+
+    server.enqueue(new MockResponse().setResponseCode(200).setBody("OK"));
+    server.enqueue(new MockResponse().setResponseCode(204));
+    enqueueServerApiEmptyResponse(304);
+
+    assertThat(dockerClient.ping(), is("OK"));
+    dockerClient.startContainer("abc123");
+    dockerClient.stopContainer("abc123", 5);
+
+    assertThat(takeRequestImmediately().getPath(), is("/_ping"));
+    final RecordedRequest start = takeRequestImmediately();
+    assertThat(start.getMethod(), is("POST"));
+    assertThat(start.getPath(), is("/containers/abc123/start"));
+    final RecordedRequest stop = takeRequestImmediately();
+    assertThat(stop.getMethod(), is("POST"));
+    assertThat(stop.getPath(), is("/containers/abc123/stop?t=5"));
+  }
+
+  @Test
+  public void testDirectEngineErrors() throws Exception {
+    final DefaultDockerClient dockerClient =
+        new DefaultDockerClient(builder.httpEngine(HttpEngine.DIRECT));
+
+    enqueueServerApiError(404, "No such container: abc123");
+    try {
+      dockerClient.inspectContainer("abc123");
+      fail("expected ContainerNotFoundException");
+    } catch (ContainerNotFoundException expected) {
+      assertThat(expected.getCause(), instanceOf(DockerRequestException.class));
+      assertThat(((DockerRequestException) expected.getCause()).getResponseBody(),
+          containsString("No such container: abc123"));
+    }
+
+    enqueueServerApiError(404, "No such image: foo");
+    try {
+      dockerClient.inspectImage("foo");
+      fail("expected ImageNotFoundException");
+    } catch (ImageNotFoundException expected) {
+      // the image is missing
+    }
+
+    dockerClient.cacheServerApiVersion("1.30");
+    server.shutdown();
+    try {
+      dockerClient.startContainer("abc123");
+      fail("expected DockerException");
+    } catch (DockerException expected) {
+      // connection refused
+    }
+    assertThat(dockerClient.cachedServerApiVersion(), is(nullValue()));
+  }
+
+  private int countVersionRequests(final int requests) throws InterruptedException {
+    int count = 0;
+    for (int i = 0; i < requests; i++) {
+      if ("/version".equals(takeRequestImmediately().getPath())) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   private void enqueueServerApiResponse(final int statusCode, final String fileName)
       throws IOException {
     server.enqueue(new MockResponse()
@@ -1367,15 +2224,17 @@ public class DefaultDockerClientUnitTest {
   }
 
   private void enqueueServerApiVersion(final String apiVersion) {
-    enqueueServerApiResponse(200,
-        createObjectNode()
-            .put("ApiVersion", apiVersion)
-            .put("Arch", "foobar")
-            .put("GitCommit", "foobar")
-            .put("GoVersion", "foobar")
-            .put("KernelVersion", "foobar")
-            .put("Os", "foobar")
-            .put("Version", "1.20")
-    );
+    enqueueServerApiResponse(200, serverApiVersion(apiVersion));
+  }
+
+  private ObjectNode serverApiVersion(final String apiVersion) {
+    return createObjectNode()
+        .put("ApiVersion", apiVersion)
+        .put("Arch", "foobar")
+        .put("GitCommit", "foobar")
+        .put("GoVersion", "foobar")
+        .put("KernelVersion", "foobar")
+        .put("Os", "foobar")
+        .put("Version", "1.20");
   }
 }
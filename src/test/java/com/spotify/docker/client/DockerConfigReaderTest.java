@@ -37,12 +37,15 @@
 
 package com.spotify.docker.client;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.allOf;
 import static org.hamcrest.Matchers.hasEntry;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.common.io.Resources;
@@ -54,8 +57,12 @@ import com.spotify.docker.client.messages.RegistryConfigs;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.RandomStringUtils;
 import org.hamcrest.CustomTypeSafeMatcher;
 import org.hamcrest.Matcher;
@@ -64,6 +71,8 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.stubbing.Answer;
 
 @SuppressWarnings("deprecated")
 public class DockerConfigReaderTest {
@@ -91,6 +100,9 @@ public class DockerConfigReaderTest {
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder tempFolder = new TemporaryFolder();
+
   private final DockerConfigReader reader = new DockerConfigReader();
 
   private CredentialHelperDelegate credentialHelperDelegate;
@@ -329,6 +341,97 @@ public class DockerConfigReaderTest {
     assertThat(reader.authForAllRegistries(path), is(registryConfigs));
   }
 
+  @Test
+  public void testAuthForAllRegistries_AsksCredentialHelpersInParallel() throws Exception {
+    final Path path = getTestFilePath("dockerConfig/credHelpers.json");
+
+    // Each helper only answers once all three of them have been started
+    final CyclicBarrier barrier = new CyclicBarrier(3);
+    final DockerCredentialHelperAuth testAuth =
+        DockerCredentialHelperAuth.create("taako", "lupe", "https://adventure.zone");
+    when(credentialHelperDelegate.get("a-cred-helper", "https://foo.io"))
+        .thenAnswer(afterBarrier(barrier, null));
+    when(credentialHelperDelegate.get("magic-missile", "https://adventure.zone"))
+        .thenAnswer(afterBarrier(barrier, testAuth));
+    when(credentialHelperDelegate.get("elusive-helper", "https://beyond.zone"))
+        .thenAnswer(afterBarrier(barrier, null));
+
+    final RegistryConfigs expected = RegistryConfigs.builder()
+        .addConfig("https://adventure.zone", testAuth.toRegistryAuth())
+        .build();
+    assertThat(reader.authForAllRegistries(path), is(expected));
+  }
+
+  private static Answer<DockerCredentialHelperAuth> afterBarrier(
+      final CyclicBarrier barrier, final DockerCredentialHelperAuth auth) {
+    return invocation -> {
+      barrier.await(10, TimeUnit.SECONDS);
+      return auth;
+    };
+  }
+
+  @Test
+  public void testReusesConfigUntilItChanges() throws Exception {
+    final Path path = tempFolder.newFile("config.json").toPath();
+    final long now = System.currentTimeMillis();
+    final FileTime tenMinutesAgo = FileTime.fromMillis(now - TimeUnit.MINUTES.toMillis(10));
+    final FileTime fiveMinutesAgo = FileTime.fromMillis(now - TimeUnit.MINUTES.toMillis(5));
+
+    writeConfig(path, "{\"auths\": {\"a.example.com\": {\"email\": \"one@a.com\"}}}",
+        tenMinutesAgo);
+    assertThat(reader.authForRegistry(path, "a.example.com").email(), is("one@a.com"));
+
+    // Same size and modification time, so the parsed file is reused
+    writeConfig(path, "{\"auths\": {\"a.example.com\": {\"email\": \"two@a.com\"}}}",
+        tenMinutesAgo);
+    assertThat(reader.authForRegistry(path, "a.example.com").email(), is("one@a.com"));
+
+    writeConfig(path, "{\"auths\": {\"a.example.com\": {\"email\": \"two@a.com\"}}}",
+        fiveMinutesAgo);
+    assertThat(reader.authForRegistry(path, "a.example.com").email(), is("two@a.com"));
+
+    writeConfig(path, "{\"auths\": {\"a.example.com\": {\"email\": \"three@a.com\"}}}",
+        fiveMinutesAgo);
+    assertThat(reader.authForRegistry(path, "a.example.com").email(), is("three@a.com"));
+    assertThat(reader.authForAllRegistries(path).configs().get("a.example.com").email(),
+        is("three@a.com"));
+  }
+
+  @Test
+  public void testRereadsRecentlyModifiedConfig() throws Exception {
+    final Path path = tempFolder.newFile("config.json").toPath();
+
+    final FileTime modified = FileTime.fromMillis(System.currentTimeMillis());
+    writeConfig(path, "{\"auths\": {\"a.example.com\": {\"email\": \"one@a.com\"}}}",
+        modified);
+    assertThat(reader.authForRegistry(path, "a.example.com").email(), is("one@a.com"));
+
+    writeConfig(path, "{\"auths\": {\"a.example.com\": {\"email\": \"two@a.com\"}}}",
+        modified);
+    assertThat(reader.authForRegistry(path, "a.example.com").email(), is("two@a.com"));
+  }
+
+  @Test
+  public void testAlwaysAsksCredentialHelper() throws Exception {
+    final Path path = tempFolder.newFile("config.json").toPath();
+    writeConfig(path, "{\"credsStore\": \"magic-missile\"}",
+        FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(10)));
+    final DockerCredentialHelperAuth auth =
+        DockerCredentialHelperAuth.create("cyberman", "sw4gy0lo", "a.example.com");
+    when(credentialHelperDelegate.get("magic-missile", "a.example.com")).thenReturn(auth);
+
+    assertThat(reader.authForRegistry(path, "a.example.com"), is(auth.toRegistryAuth()));
+    assertThat(reader.authForRegistry(path, "a.example.com"), is(auth.toRegistryAuth()));
+    verify(credentialHelperDelegate, times(2)).get("magic-missile", "a.example.com");
+  }
+
+  private static void writeConfig(final Path path, final String config, final FileTime modified)
+      throws IOException {
+    Files.write(path, config.getBytes(UTF_8));
+    Files.setLastModifiedTime(path, modified);
+  }
+
+
   @Test
   public void testConfigFromEnv() throws IOException {
     DockerHost.SystemDelegate systemDelegate = mock(DockerHost.SystemDelegate.class);
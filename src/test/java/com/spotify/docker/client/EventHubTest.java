@@ -0,0 +1,188 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+import com.spotify.docker.client.EventHub.OverflowPolicy;
+import com.spotify.docker.client.EventHub.Subscription;
+import com.spotify.docker.client.messages.Event;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class EventHubTest {
+
+  private final MockWebServer server = new MockWebServer();
+
+  private DefaultDockerClient docker;
+
+  @Before
+  public void setup() throws Exception {
+    server.start();
+    docker = DefaultDockerClient.builder().uri(server.url("/").uri()).build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    docker.close();
+    server.shutdown();
+  }
+
+  @Test
+  public void testFanOut() throws Exception {
+    enqueueEvents(event("container", "start", "c1", 1),
+                  event("image", "pull", "busybox", 2),
+                  event("container", "die", "c1", 3));
+
+    final EventHub hub = EventHub.builder(docker)
+        .reconnectDelay(1, TimeUnit.HOURS)
+        .build();
+    try (final Subscription containers =
+             hub.subscribe(event -> event.type() == Event.Type.CONTAINER);
+         final Subscription dies = hub.subscribe(event -> "die".equals(event.action()))) {
+
+      assertThat(actions(containers, 2), contains("start", "die"));
+      assertThat(actions(dies, 1), contains("die"));
+    } finally {
+      hub.close();
+    }
+
+    assertThat(server.getRequestCount(), is(1));
+  }
+
+  @Test
+  public void testReconnectSkipsSeenEvents() throws Exception {
+    enqueueEvents(event("container", "start", "c1", 1));
+    // the daemon replays the events of the second the hub asked for
+    enqueueEvents(event("container", "start", "c1", 1),
+                  event("container", "die", "c1", 2));
+
+    final EventHub hub = EventHub.builder(docker)
+        .filters(DockerClient.EventsParam.type(Event.Type.CONTAINER))
+        .reconnectDelay(10, TimeUnit.MILLISECONDS)
+        .build();
+    try (final Subscription subscription = hub.subscribe(event -> true)) {
+      assertThat(actions(subscription, 2), contains("start", "die"));
+    } finally {
+      hub.close();
+    }
+
+    final RecordedRequest first = server.takeRequest();
+    assertThat(first.getRequestUrl().queryParameter("since"), is(nullValue()));
+    final RecordedRequest second = server.takeRequest();
+    assertThat(second.getRequestUrl().queryParameter("since"), is("1500000000"));
+    assertThat(second.getRequestUrl().queryParameter("filters"), is("{\"type\":[\"container\"]}"));
+  }
+
+  @Test
+  public void testDropOldest() throws Exception {
+    final Subscription subscription =
+        new Subscription(null, event -> true, 2, OverflowPolicy.DROP_OLDEST);
+    offer(subscription, "a", "b", "c");
+    subscription.close();
+
+    assertThat(actions(subscription, 2), contains("b", "c"));
+    assertThat(subscription.dropped(), is(1L));
+    assertThat(subscription.hasNext(), is(false));
+  }
+
+  @Test
+  public void testDropNewest() throws Exception {
+    final Subscription subscription =
+        new Subscription(null, event -> true, 2, OverflowPolicy.DROP_NEWEST);
+    offer(subscription, "a", "b", "c");
+    subscription.close();
+
+    assertThat(actions(subscription, 2), contains("a", "b"));
+    assertThat(subscription.dropped(), is(1L));
+    assertThat(subscription.overflowed(), is(false));
+  }
+
+  @Test
+  public void testCloseOnOverflow() throws Exception {
+    final Subscription subscription =
+        new Subscription(null, event -> true, 2, OverflowPolicy.CLOSE);
+    offer(subscription, "a", "b", "c", "d");
+
+    assertThat(subscription.isClosed(), is(true));
+    assertThat(subscription.overflowed(), is(true));
+    assertThat(actions(subscription, 2), contains("a", "b"));
+    assertThat(subscription.hasNext(), is(false));
+  }
+
+  @Test
+  public void testPollTimesOut() throws Exception {
+    final Subscription subscription =
+        new Subscription(null, event -> true, 2, OverflowPolicy.CLOSE);
+    assertThat(subscription.poll(10, TimeUnit.MILLISECONDS), is(nullValue()));
+  }
+
+  private static void offer(final Subscription subscription, final String... actions)
+      throws IOException {
+    int second = 0;
+    for (final String action : actions) {
+      subscription.offer(parse(event("container", action, "c1", second++)));
+    }
+  }
+
+  private static List<String> actions(final Subscription subscription, final int count)
+      throws InterruptedException {
+    final List<String> actions = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      final Event event = subscription.poll(5, TimeUnit.SECONDS);
+      if (event == null) {
+        break;
+      }
+      actions.add(event.action());
+    }
+    return actions;
+  }
+
+  private void enqueueEvents(final String... events) {
+    server.enqueue(new MockResponse()
+        .setResponseCode(200)
+        .addHeader("Content-Type", "application/json")
+        .setBody(String.join("\n", events) + "\n"));
+  }
+
+  private static Event parse(final String json) throws IOException {
+    return ObjectMapperProvider.objectMapper().readValue(json, Event.class);
+  }
+
+  private static String event(final String type, final String action, final String id,
+                              final int offsetNanos) {
+    return String.format(
+        "{\"Type\":\"%s\",\"Action\":\"%s\",\"Actor\":{\"ID\":\"%s\",\"Attributes\":{}},"
+        + "\"time\":1500000000,\"timeNano\":%d}",
+        type, action, id, 1500000000000000000L + offsetNanos);
+  }
+}
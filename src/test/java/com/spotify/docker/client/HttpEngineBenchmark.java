@@ -0,0 +1,173 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.spotify.docker.FixtureUtil.fixture;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Compares the latency of {@code ping}, {@code inspectContainer} and {@code startContainer}
+ * sent through Jersey and through {@link HttpEngine#DIRECT}, against a local server that answers
+ * every request with a canned response. The server's own cost is the same for both engines, so
+ * the difference is the client overhead. This is not run as part of the test suite; run it with
+ * {@code java -cp ... com.spotify.docker.client.HttpEngineBenchmark [iterations]}.
+ *
+ * <p>The server writes each response in one segment with TCP_NODELAY, like Docker does.
+ * MockWebServer writes the headers and the body separately, which on a reused connection waits
+ * for a delayed ACK and hides the difference between the engines.</p>
+ */
+public class HttpEngineBenchmark {
+
+  // Keeps the JIT from dropping the responses
+  private static volatile int sink;
+
+  private interface Call {
+
+    int call(DefaultDockerClient client) throws Exception;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    final byte[] containerInfo = response("200 OK", "application/json",
+                                          fixture("fixtures/1.24/containerInfo.json"));
+    final byte[] started = response("204 No Content", null, "");
+    final byte[] pong = response("200 OK", "text/plain", "OK");
+
+    try (final ServerSocket server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+      final Thread acceptor = new Thread(() -> {
+        while (!server.isClosed()) {
+          try {
+            final Socket socket = server.accept();
+            final Thread connection =
+                new Thread(() -> serve(socket, containerInfo, started, pong));
+            connection.setDaemon(true);
+            connection.start();
+          } catch (IOException e) {
+            return;
+          }
+        }
+      });
+      acceptor.setDaemon(true);
+      acceptor.start();
+
+      final Map<HttpEngine, DefaultDockerClient> clients = new EnumMap<>(HttpEngine.class);
+      for (final HttpEngine engine : HttpEngine.values()) {
+        clients.put(engine, DefaultDockerClient.builder()
+            .uri("http://127.0.0.1:" + server.getLocalPort())
+            .apiVersion("v1.24")
+            .httpEngine(engine)
+            .build());
+      }
+
+      try {
+        System.out.printf("%d iterations%n", iterations);
+        run("ping", clients, iterations, client -> client.ping().length());
+        run("inspectContainer", clients, iterations,
+            client -> client.inspectContainer("abc123").id().length());
+        run("startContainer", clients, iterations, client -> {
+          client.startContainer("abc123");
+          return 1;
+        });
+      } finally {
+        for (final DefaultDockerClient client : clients.values()) {
+          client.close();
+        }
+      }
+    }
+  }
+
+  private static void run(final String name, final Map<HttpEngine, DefaultDockerClient> clients,
+                          final int iterations, final Call call) throws Exception {
+    for (final Map.Entry<HttpEngine, DefaultDockerClient> entry : clients.entrySet()) {
+      int total = 0;
+      for (int i = 0; i < iterations; i++) {
+        total += call.call(entry.getValue());
+      }
+      final long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        total += call.call(entry.getValue());
+      }
+      final long elapsed = System.nanoTime() - start;
+      sink = total;
+      System.out.printf("%-17s %-7s %8.1f us/op%n", name, entry.getKey(),
+                        elapsed / 1000.0 / iterations);
+    }
+  }
+
+  private static byte[] response(final String status, final String contentType,
+                                 final String body) {
+    final byte[] content = body.getBytes(UTF_8);
+    final StringBuilder head = new StringBuilder("HTTP/1.1 ").append(status).append("\r\n");
+    if (contentType != null) {
+      head.append("Content-Type: ").append(contentType).append("\r\n");
+    }
+    head.append("Content-Length: ").append(content.length).append("\r\n\r\n");
+    final byte[] headBytes = head.toString().getBytes(US_ASCII);
+    final byte[] response = new byte[headBytes.length + content.length];
+    System.arraycopy(headBytes, 0, response, 0, headBytes.length);
+    System.arraycopy(content, 0, response, headBytes.length, content.length);
+    return response;
+  }
+
+  /**
+   * Answers the requests on a kept-alive connection. None of the benchmarked requests has a
+   * body, so a request ends at the first empty line.
+   */
+  private static void serve(final Socket socket, final byte[] containerInfo, final byte[] started,
+                            final byte[] pong) {
+    try (final Socket closed = socket;
+         final BufferedReader reader =
+             new BufferedReader(new InputStreamReader(socket.getInputStream(), US_ASCII))) {
+      socket.setTcpNoDelay(true);
+      final OutputStream out = socket.getOutputStream();
+      String requestLine = reader.readLine();
+      while (requestLine != null) {
+        String header = reader.readLine();
+        while (header != null && !header.isEmpty()) {
+          header = reader.readLine();
+        }
+        final String path = requestLine.split(" ")[1];
+        if (path.endsWith("/json")) {
+          out.write(containerInfo);
+        } else if (path.endsWith("/start")) {
+          out.write(started);
+        } else {
+          out.write(pong);
+        }
+        out.flush();
+        requestLine = reader.readLine();
+      }
+    } catch (IOException e) {
+      // the client went away
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.spotify.docker.client.exceptions.ImageNotFoundException;
+import com.spotify.docker.client.messages.ImageInfo;
+import com.spotify.docker.client.messages.ProgressMessage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class ImagePullerTest {
+
+  private final DockerClient docker = mock(DockerClient.class);
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<String> pulled = new CopyOnWriteArrayList<>();
+  private final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+  private final AtomicInteger maxRunning = new AtomicInteger();
+
+  private ImagePuller puller;
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    if (puller != null) {
+      puller.close();
+    }
+  }
+
+  @Test
+  public void testConcurrentPullsOfAnImageAreShared() throws Exception {
+    blockPulls();
+    puller = ImagePuller.builder(docker).build();
+    final List<String> first = new CopyOnWriteArrayList<>();
+    final List<String> second = new CopyOnWriteArrayList<>();
+
+    final CompletableFuture<Void> one =
+        puller.pullAsync("busybox:latest", message -> first.add(message.status()));
+    final CompletableFuture<Void> two = puller.pullAsync(
+        "docker.io/library/busybox:latest", message -> second.add(message.status()));
+    assertThat(puller.pullsInProgress(), is(1));
+
+    release.countDown();
+    one.get(5, TimeUnit.SECONDS);
+    two.get(5, TimeUnit.SECONDS);
+
+    assertThat(pulled, contains("busybox:latest"));
+    assertThat(first, contains("Pulled busybox:latest"));
+    assertThat(second, contains("Pulled busybox:latest"));
+    assertThat(puller.pullsInProgress(), is(0));
+  }
+
+  @Test
+  public void testPullsPerRegistry() throws Exception {
+    blockPulls();
+    puller = ImagePuller.builder(docker).pullsPerRegistry(1).build();
+
+    final Map<String, CompletableFuture<Void>> futures = puller.pullAll(
+        Arrays.asList("busybox", "alpine", "quay.io/org/tool", "busybox"), null);
+    assertThat(futures.keySet(), contains("busybox", "alpine", "quay.io/org/tool"));
+
+    waitFor(() -> pulled.size() == 2);
+    assertThat(pulled, containsInAnyOrder("busybox", "quay.io/org/tool"));
+
+    release.countDown();
+    for (final CompletableFuture<Void> future : futures.values()) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    assertThat(pulled, containsInAnyOrder("busybox", "quay.io/org/tool", "alpine"));
+    assertThat(maxRunning.get(), is(1));
+  }
+
+  @Test
+  public void testDockerHubNamesShareARegistry() throws Exception {
+    blockPulls();
+    puller = ImagePuller.builder(docker).pullsPerRegistry(1).build();
+
+    final Map<String, CompletableFuture<Void>> futures = puller.pullAll(
+        Arrays.asList("busybox", "index.docker.io/library/alpine", "docker.io/library/debian"),
+        null);
+
+    waitFor(() -> pulled.size() == 1);
+    Thread.sleep(100);
+    assertThat(pulled.size(), is(1));
+
+    release.countDown();
+    for (final CompletableFuture<Void> future : futures.values()) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+    assertThat(pulled.size(), is(3));
+  }
+
+  @Test
+  public void testSkipPresent() throws Exception {
+    blockPulls();
+    release.countDown();
+    when(docker.inspectImage("busybox:latest")).thenReturn(mock(ImageInfo.class));
+    when(docker.inspectImage("alpine:latest")).thenThrow(new ImageNotFoundException("alpine"));
+    puller = ImagePuller.builder(docker).skipPresent(true).build();
+
+    final Map<String, CompletableFuture<Void>> futures =
+        puller.pullAll(Arrays.asList("busybox:latest", "alpine:latest"), null);
+    for (final CompletableFuture<Void> future : futures.values()) {
+      future.get(5, TimeUnit.SECONDS);
+    }
+
+    assertThat(pulled, contains("alpine:latest"));
+  }
+
+  @Test
+  public void testFailedPull() throws Exception {
+    doAnswer(invocation -> {
+      throw new ImageNotFoundException("missing");
+    }).when(docker).pull(anyString(), any(ProgressHandler.class));
+    puller = ImagePuller.builder(docker).build();
+
+    try {
+      puller.pullAsync("missing:latest").get(5, TimeUnit.SECONDS);
+      fail("expected ImageNotFoundException");
+    } catch (ExecutionException e) {
+      assertThat(e.getCause(), instanceOf(ImageNotFoundException.class));
+    }
+    assertThat(puller.pullsInProgress(), is(0));
+  }
+
+  @Test
+  public void testCloseFailsPendingPulls() throws Exception {
+    blockPulls();
+    puller = ImagePuller.builder(docker).pullsPerRegistry(1).build();
+    final CompletableFuture<Void> running = puller.pullAsync("busybox");
+    final CompletableFuture<Void> queued = puller.pullAsync("alpine");
+    waitFor(() -> pulled.size() == 1);
+
+    puller.close();
+
+    for (final CompletableFuture<Void> future : Arrays.asList(running, queued)) {
+      try {
+        future.get(5, TimeUnit.SECONDS);
+        fail("expected the pull to fail");
+      } catch (ExecutionException expected) {
+        // expected
+      }
+    }
+  }
+
+  /**
+   * Makes pulls send one progress message and then wait for {@link #release}. Counts the pulls
+   * running at once per registry in {@link #maxRunning}.
+   */
+  private void blockPulls() throws Exception {
+    doAnswer(invocation -> {
+      final String image = (String) invocation.getArguments()[0];
+      final ProgressHandler handler = (ProgressHandler) invocation.getArguments()[1];
+      final AtomicInteger count = running.computeIfAbsent(
+          new ImageRef(image).getRegistryName(), registry -> new AtomicInteger());
+      maxRunning.accumulateAndGet(count.incrementAndGet(), Math::max);
+      try {
+        pulled.add(image);
+        release.await();
+        handler.progress(ProgressMessage.builder().status("Pulled " + image).build());
+      } finally {
+        count.decrementAndGet();
+      }
+      return null;
+    }).when(docker).pull(anyString(), any(ProgressHandler.class));
+  }
+
+  private static void waitFor(final Callable<Boolean> condition) throws Exception {
+    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.call()) {
+      assertTrue("timed out", System.nanoTime() < deadline);
+      Thread.sleep(10);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.spotify.docker.client.LogMessage.Stream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput and allocation rate of {@link LogReader} with and without buffer reuse
+ * on a stream of log frames of typical sizes. This is not run as part of the test suite; run it
+ * with {@code java -cp ... com.spotify.docker.client.LogReaderBenchmark [frames]}.
+ */
+public class LogReaderBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 5;
+  private static final int ITERATIONS = 10;
+
+  public static void main(final String[] args) throws Exception {
+    final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    final byte[] stream = createStream(frames);
+    System.out.printf("%d frames, %d bytes%n", frames, stream.length);
+
+    for (final boolean reuseBuffers : new boolean[] {false, true}) {
+      for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+        read(stream, reuseBuffers);
+      }
+
+      long bytes = 0;
+      final long allocatedBefore = allocatedBytes();
+      final long start = System.nanoTime();
+      for (int i = 0; i < ITERATIONS; i++) {
+        bytes += read(stream, reuseBuffers);
+      }
+      final long elapsed = System.nanoTime() - start;
+      final long allocated = allocatedBytes() - allocatedBefore;
+
+      System.out.printf("reuseBuffers=%-5s %8.1f MB/s %10.1f bytes allocated/frame%n",
+                        reuseBuffers,
+                        bytes / 1e6 / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)),
+                        allocated / (double) (frames * (long) ITERATIONS));
+    }
+  }
+
+  private static long read(final byte[] stream, final boolean reuseBuffers) throws IOException {
+    long bytes = 0;
+    final LogReader reader = new LogReader(new ByteArrayInputStream(stream), reuseBuffers);
+    LogMessage message;
+    while ((message = reader.nextMessage()) != null) {
+      bytes += message.content.remaining();
+    }
+    return bytes;
+  }
+
+  private static byte[] createStream(final int frames) throws IOException {
+    final Random random = new Random(0);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final byte[] content = new byte[16 * 1024];
+    for (int i = 0; i < frames; i++) {
+      // mostly short lines with the odd large frame
+      final int size = random.nextInt(10) == 0 ? random.nextInt(content.length) : 40 + i % 160;
+      out.write(ByteBuffer.allocate(LogReader.HEADER_SIZE)
+                    .put((byte) (i % 2 == 0 ? Stream.STDOUT.id() : Stream.STDERR.id()))
+                    .putInt(LogReader.FRAME_SIZE_OFFSET, size)
+                    .array());
+      out.write(content, 0, size);
+    }
+    return out.toByteArray();
+  }
+
+  @SuppressWarnings("restriction")
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,105 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.google.common.base.Strings;
+import com.spotify.docker.client.LogMessage.Stream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+public class LogReaderTest {
+
+  @Test
+  public void testReadFrames() throws Exception {
+    for (final boolean reuseBuffers : new boolean[] {false, true}) {
+      final LogReader reader = new LogReader(frames(), reuseBuffers);
+
+      assertMessage(reader.nextMessage(), Stream.STDOUT, "hello\n");
+      assertMessage(reader.nextMessage(), Stream.STDERR, "oops\n");
+      assertMessage(reader.nextMessage(), Stream.STDOUT, "");
+      assertMessage(reader.nextMessage(), Stream.STDOUT, Strings.repeat("x", 20000));
+      assertThat(reader.nextMessage(), is(nullValue()));
+    }
+  }
+
+  @Test
+  public void testReusedMessage() throws Exception {
+    final LogReader reader = new LogReader(frames(), true);
+
+    final LogMessage first = reader.nextMessage();
+    final LogMessage copy = first.copy();
+    final LogMessage second = reader.nextMessage();
+
+    assertThat(second, is(sameInstance(first)));
+    assertThat(copy, is(not(sameInstance(first))));
+    assertMessage(copy, Stream.STDOUT, "hello\n");
+    assertMessage(second, Stream.STDERR, "oops\n");
+  }
+
+  @Test
+  public void testReadRawStream() throws Exception {
+    for (final boolean reuseBuffers : new boolean[] {false, true}) {
+      final InputStream stream =
+          new BufferedInputStream(new ByteArrayInputStream("tty output".getBytes(UTF_8)));
+      final LogReader reader = new LogReader(stream, reuseBuffers);
+
+      assertMessage(reader.nextMessage(), Stream.STDOUT, "tty output");
+      assertThat(reader.nextMessage(), is(nullValue()));
+    }
+  }
+
+  private static InputStream frames() throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    frame(out, Stream.STDOUT, "hello\n");
+    frame(out, Stream.STDERR, "oops\n");
+    frame(out, Stream.STDOUT, "");
+    frame(out, Stream.STDOUT, Strings.repeat("x", 20000));
+    return new BufferedInputStream(new ByteArrayInputStream(out.toByteArray()));
+  }
+
+  private static void frame(final ByteArrayOutputStream out, final Stream stream,
+                            final String content) throws IOException {
+    final byte[] bytes = content.getBytes(UTF_8);
+    out.write(ByteBuffer.allocate(LogReader.HEADER_SIZE)
+                  .put((byte) stream.id())
+                  .putInt(LogReader.FRAME_SIZE_OFFSET, bytes.length)
+                  .array());
+    out.write(bytes);
+  }
+
+  private static void assertMessage(final LogMessage message, final Stream stream,
+                                    final String content) {
+    assertThat(message.stream(), is(stream));
+    assertThat(UTF_8.decode(message.content()).toString(), is(content));
+  }
+}
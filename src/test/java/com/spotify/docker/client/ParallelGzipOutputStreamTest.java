@@ -0,0 +1,131 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import org.junit.After;
+import org.junit.Test;
+
+public class ParallelGzipOutputStreamTest {
+
+  private static final int BLOCK_SIZE = 1000;
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void tearDown() {
+    pool.shutdownNow();
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    for (final int size : new int[] {0, 1, BLOCK_SIZE - 1, BLOCK_SIZE, 37 * BLOCK_SIZE + 123}) {
+      final byte[] data = data(size);
+      assertThat("size " + size, gunzip(gzip(data, 7)), is(data));
+    }
+  }
+
+  @Test
+  public void testSingleByteWrites() throws Exception {
+    final byte[] data = data(3 * BLOCK_SIZE + 5);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream gzip = new ParallelGzipOutputStream(out, pool, BLOCK_SIZE)) {
+      for (final byte value : data) {
+        gzip.write(value);
+      }
+    }
+    assertThat(gunzip(out.toByteArray()), is(data));
+  }
+
+  @Test
+  public void testWritesOneMemberPerBlock() throws Exception {
+    final byte[] compressed = gzip(data(5 * BLOCK_SIZE), BLOCK_SIZE);
+
+    int members = 0;
+    for (int i = 0; i + 2 < compressed.length; i++) {
+      // Each member starts with the gzip magic and the deflate method
+      if (compressed[i] == (byte) 0x1f && compressed[i + 1] == (byte) 0x8b
+          && compressed[i + 2] == 8) {
+        members++;
+      }
+    }
+    assertThat(members, is(5));
+  }
+
+  @Test
+  public void testPropagatesWriteFailure() throws Exception {
+    final OutputStream failing = new OutputStream() {
+      @Override
+      public void write(final int value) throws IOException {
+        throw new IOException("disk full");
+      }
+
+      @Override
+      public void write(final byte[] buf, final int off, final int len) throws IOException {
+        throw new IOException("disk full");
+      }
+    };
+    try {
+      try (OutputStream gzip = new ParallelGzipOutputStream(failing, pool, BLOCK_SIZE)) {
+        gzip.write(data(10 * BLOCK_SIZE));
+      }
+      fail("expected IOException");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), is("disk full"));
+    }
+  }
+
+  private byte[] gzip(final byte[] data, final int chunk) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (OutputStream gzip = new ParallelGzipOutputStream(out, pool, BLOCK_SIZE)) {
+      for (int off = 0; off < data.length; off += chunk) {
+        gzip.write(data, off, Math.min(chunk, data.length - off));
+      }
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] gunzip(final byte[] compressed) throws IOException {
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+
+  private static byte[] data(final int size) {
+    final Random random = new Random(size);
+    final byte[] data = new byte[size];
+    for (int i = 0; i < size; i++) {
+      data[i] = (byte) ('a' + random.nextInt(4));
+    }
+    return data;
+  }
+}
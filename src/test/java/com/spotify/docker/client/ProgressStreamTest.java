@@ -0,0 +1,165 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static com.spotify.docker.client.ObjectMapperProvider.objectMapper;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import com.spotify.docker.client.StreamingProgressHandler.Field;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.ProgressDetail;
+import com.spotify.docker.client.messages.ProgressMessage;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.junit.Test;
+
+public class ProgressStreamTest {
+
+  private static final URI URI = java.net.URI.create("http://localhost/images/create");
+
+  private static final String[] MESSAGES = {
+      "{\"status\":\"Pulling from library/busybox\",\"id\":\"latest\"}",
+      "{\"status\":\"Downloading\",\"progressDetail\":{\"current\":1024,\"total\":4096},"
+      + "\"progress\":\"[====>    ] 1.024kB/4.096kB\",\"id\":\"8ddc19f16526\"}",
+      "{\"status\":\"Pull complete\",\"progressDetail\":{},\"id\":\"8ddc19f16526\"}",
+      "{\"stream\":\"Step 1/2 : FROM busybox\\n\"}",
+      "{\"aux\":{\"ID\":\"sha256:2d6e00052167\"}}",
+      "{\"errorDetail\":{\"code\":1,\"message\":\"failed\"},\"error\":\"failed\"}",
+      "{\"status\":\"Extracting\",\"progressDetail\":{\"current\":12,\"start\":1480000000}}",
+  };
+
+  @Test
+  public void testMessagesMatchDataBinding() throws Exception {
+    final List<ProgressMessage> messages = new ArrayList<>();
+    stream().tail(messages::add, "POST", URI);
+
+    final List<ProgressMessage> expected = new ArrayList<>();
+    for (final String message : MESSAGES) {
+      expected.add(objectMapper().readValue(message, ProgressMessage.class));
+    }
+    assertThat(messages, is(expected));
+  }
+
+  @Test
+  public void testStreamingReadsOnlyRequestedFields() throws Exception {
+    final List<String> read = new ArrayList<>();
+    stream().tail(handler(EnumSet.of(Field.ID, Field.CURRENT, Field.AUX_ID), event -> {
+      assertThat(event.status(), is(nullValue()));
+      assertThat(event.progress(), is(nullValue()));
+      assertThat(event.error(), is(nullValue()));
+      assertThat(event.total(), is(ProgressEvent.UNKNOWN));
+      read.add(event.id() + "/" + event.current() + "/" + event.auxId());
+    }), "POST", URI);
+
+    assertThat(read, contains(
+        "latest/-1/null",
+        "8ddc19f16526/1024/null",
+        "8ddc19f16526/-1/null",
+        "null/-1/null",
+        "null/-1/sha256:2d6e00052167",
+        "null/-1/null",
+        "null/12/null"));
+  }
+
+  @Test
+  public void testStreamingEventIsReset() throws Exception {
+    final List<ProgressMessage> messages = new ArrayList<>();
+    stream().tail(handler(EnumSet.allOf(Field.class), event -> messages.add(event.toMessage())),
+                  "POST", URI);
+
+    assertThat(messages.get(1).progressDetail(), is(ProgressDetail.create(1024L, null, 4096L)));
+    assertThat(messages.get(2).progressDetail(), is(ProgressDetail.create(null, null, null)));
+    assertThat(messages.get(3).id(), is(nullValue()));
+    assertThat(messages.get(3).progressDetail(), is(nullValue()));
+    assertThat(messages.get(5).error(), is("failed"));
+  }
+
+  @Test
+  public void testStreamingHandlerAcceptsMessages() throws Exception {
+    final List<String> read = new ArrayList<>();
+    final StreamingProgressHandler handler =
+        handler(EnumSet.of(Field.ID), event -> read.add(event.status() + " " + event.total()));
+
+    handler.progress(ProgressMessage.builder()
+                         .status("Downloading")
+                         .progressDetail(ProgressDetail.create(1L, null, 10L))
+                         .build());
+
+    assertThat(read, contains("Downloading 10"));
+  }
+
+  @Test
+  public void testSkipsValuesOfUnexpectedTypes() throws Exception {
+    final ProgressStream stream = new ProgressStream(new ByteArrayInputStream(
+        ("\"garbage\" {\"id\":{\"nested\":[1,2]},\"status\":7,"
+         + "\"progressDetail\":{\"current\":\"x\",\"total\":null}}").getBytes(UTF_8)));
+
+    final List<ProgressEvent> events = new ArrayList<>();
+    stream.tail(handler(EnumSet.allOf(Field.class), events::add), "POST", URI);
+
+    assertThat(events.size(), is(1));
+    assertThat(events.get(0).id(), is(nullValue()));
+    assertThat(events.get(0).status(), is("7"));
+    assertThat(events.get(0).current(), is(ProgressEvent.UNKNOWN));
+    assertThat(events.get(0).total(), is(ProgressEvent.UNKNOWN));
+  }
+
+  @Test
+  public void testStopsWhenInterrupted() throws Exception {
+    Thread.currentThread().interrupt();
+    try {
+      stream().tail(handler(EnumSet.of(Field.ID), event -> { }), "POST", URI);
+      fail("expected InterruptedException");
+    } catch (InterruptedException expected) {
+      assertThat(Thread.currentThread().isInterrupted(), is(false));
+    }
+  }
+
+  private static ProgressStream stream() throws Exception {
+    return new ProgressStream(new ByteArrayInputStream(String.join("\r\n", MESSAGES)
+                                                           .getBytes(UTF_8)));
+  }
+
+  private static StreamingProgressHandler handler(final Set<Field> fields,
+                                                  final Consumer<ProgressEvent> consumer) {
+    return new StreamingProgressHandler() {
+      @Override
+      public Set<Field> fields() {
+        return fields;
+      }
+
+      @Override
+      public void onProgress(final ProgressEvent event) throws DockerException {
+        consumer.accept(event);
+      }
+    };
+  }
+}
@@ -0,0 +1,93 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RegistryConfigs;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Compares encoding the X-Registry-Config header of a build for every request with looking it up
+ * in {@link RegistryAuthHeaders}, for the same RegistryConfigs instance and for an equal copy.
+ * This is not run as part of the test suite; run it with
+ * {@code java -cp ... com.spotify.docker.client.RegistryAuthHeadersBenchmark [registries]}.
+ */
+public class RegistryAuthHeadersBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 200_000;
+  private static final int ITERATIONS = 1_000_000;
+
+  private static final ObjectMapper MAPPER = ObjectMapperProvider.objectMapper();
+
+  // Keeps the JIT from dropping the encoding
+  private static volatile long sink;
+
+  private interface Encoder {
+
+    String encode() throws Exception;
+  }
+
+  public static void main(final String[] args) throws Exception {
+    final int registries = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+    final RegistryConfigs configs = configs(registries);
+    final RegistryConfigs copy = RegistryConfigs.create(new LinkedHashMap<>(configs.configs()));
+    final RegistryAuthHeaders headers = new RegistryAuthHeaders(MAPPER);
+    System.out.printf("%d registries%n", registries);
+
+    run("uncached", () -> Base64.encodeBase64String(
+        MAPPER.writeValueAsString(configs.configs()).getBytes(StandardCharsets.UTF_8)));
+    run("cached, same instance", () -> headers.configHeader(configs, null));
+    run("cached, equal copy", () -> headers.configHeader(copy, null));
+  }
+
+  private static void run(final String name, final Encoder encoder) throws Exception {
+    long length = 0;
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      length += encoder.encode().length();
+    }
+    final long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      length += encoder.encode().length();
+    }
+    final long elapsed = System.nanoTime() - start;
+    sink = length;
+    System.out.printf("%-22s %10.1f ns/op%n", name, elapsed / (double) ITERATIONS);
+  }
+
+  private static RegistryConfigs configs(final int registries) {
+    final Map<String, RegistryAuth> configs = new LinkedHashMap<>();
+    for (int i = 0; i < registries; i++) {
+      final String server = "registry" + i + ".example.com";
+      configs.put(server, RegistryAuth.builder()
+          .serverAddress(server)
+          .username("user" + i)
+          .password("password-" + TimeUnit.DAYS.toMillis(i))
+          .email("user" + i + "@example.com")
+          .build());
+    }
+    return RegistryConfigs.create(configs);
+  }
+}
@@ -0,0 +1,97 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RegistryConfigs;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+public class RegistryAuthHeadersTest {
+
+  private final ObjectMapper objectMapper = ObjectMapperProvider.objectMapper();
+  private final RegistryAuthHeaders headers = new RegistryAuthHeaders(objectMapper);
+
+  @Test
+  public void testAuthHeader() throws Exception {
+    final RegistryAuth auth = auth("gcr.io", "token1");
+
+    final String header = headers.authHeader(auth);
+    assertThat(header, is(Base64.encodeBase64String(objectMapper.writeValueAsBytes(auth))));
+
+    assertThat(headers.authHeader(auth), is(sameInstance(header)));
+    assertThat(headers.authHeader(auth("gcr.io", "token1")), is(sameInstance(header)));
+  }
+
+  @Test
+  public void testAuthHeaderAfterRotation() throws Exception {
+    final String header = headers.authHeader(auth("gcr.io", "token1"));
+    final String rotated = headers.authHeader(auth("gcr.io", "token2"));
+
+    assertThat(rotated, is(not(header)));
+    assertThat(decode(rotated).get("password").asText(), is("token2"));
+    assertThat(headers.authHeader(auth("gcr.io", "token2")), is(sameInstance(rotated)));
+  }
+
+  @Test
+  public void testConfigHeader() throws Exception {
+    final RegistryConfigs configs = RegistryConfigs.create(ImmutableMap.of(
+        "gcr.io", auth("gcr.io", "token1"),
+        "quay.io", auth("quay.io", "secret")));
+
+    final String header = headers.configHeader(configs, null);
+    assertThat(decode(header).get("gcr.io").get("password").asText(), is("token1"));
+    assertThat(decode(header).get("quay.io").get("password").asText(), is("secret"));
+    assertThat(headers.configHeader(configs, null), is(sameInstance(header)));
+    assertThat(headers.configHeader(RegistryConfigs.create(configs.configs()), null),
+               is(sameInstance(header)));
+
+    final String wrapped = headers.configHeader(configs, "auths");
+    assertThat(decode(wrapped).get("auths").get("quay.io").get("password").asText(),
+               is("secret"));
+
+    final String rotated = headers.configHeader(RegistryConfigs.create(ImmutableMap.of(
+        "gcr.io", auth("gcr.io", "token2"),
+        "quay.io", auth("quay.io", "secret"))), null);
+    assertThat(decode(rotated).get("gcr.io").get("password").asText(), is("token2"));
+  }
+
+  private static RegistryAuth auth(final String serverAddress, final String password) {
+    return RegistryAuth.builder()
+        .serverAddress(serverAddress)
+        .username("oauth2accesstoken")
+        .password(password)
+        .build();
+  }
+
+  private JsonNode decode(final String header) throws Exception {
+    return objectMapper.readTree(new String(Base64.decodeBase64(header), UTF_8));
+  }
+}
@@ -0,0 +1,208 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+public class TarExtractorTest {
+
+  private static final Date MODIFIED = new Date(TimeUnit.DAYS.toMillis(10000));
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private Path destination;
+  private ByteArrayOutputStream archive;
+  private TarArchiveOutputStream tar;
+
+  @Before
+  public void setUp() throws Exception {
+    destination = folder.getRoot().toPath().resolve("out");
+    archive = new ByteArrayOutputStream();
+    tar = new TarArchiveOutputStream(archive);
+    tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+  }
+
+  @Test
+  public void testExtractsFilesDirectoriesAndLinks() throws Exception {
+    directory("app/");
+    file("app/run.sh", 0755, "#!/bin/sh\n".getBytes(UTF_8));
+    file("app/empty", 0644, new byte[0]);
+    final byte[] big = new byte[3 * 1024 * 1024 + 17];
+    new Random(1).nextBytes(big);
+    file("app/lib/big.bin", 0600, big);
+    link("app/current", "lib", TarArchiveEntry.LF_SYMLINK);
+    link("app/same.bin", "app/lib/big.bin", TarArchiveEntry.LF_LINK);
+
+    final ArchiveExtraction extraction = extract(2);
+
+    assertThat(extraction.files(), is(3L));
+    assertThat(extraction.directories(), is(1L));
+    assertThat(extraction.links(), is(2L));
+    assertThat(extraction.bytes(), is(big.length + 10L));
+    assertThat(extraction.toString(), containsString("3 files, 1 directories, 2 links"));
+
+    final Path app = destination.resolve("app");
+    assertThat(new String(Files.readAllBytes(app.resolve("run.sh")), UTF_8), is("#!/bin/sh\n"));
+    assertThat(Files.size(app.resolve("empty")), is(0L));
+    assertThat(Files.readAllBytes(app.resolve("lib/big.bin")), is(big));
+    assertThat(Files.readSymbolicLink(app.resolve("current")), is(Paths.get("lib")));
+    assertThat(Files.readAllBytes(app.resolve("same.bin")), is(big));
+
+    assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(app.resolve("run.sh"))),
+               is("rwxr-xr-x"));
+    assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(app)),
+               is("rwxr-x---"));
+    assertThat(Files.getLastModifiedTime(app.resolve("run.sh")).toMillis(),
+               is(MODIFIED.getTime()));
+    assertThat(Files.getLastModifiedTime(app).toMillis(), is(MODIFIED.getTime()));
+  }
+
+  @Test
+  public void testOverwritesExistingFiles() throws Exception {
+    Files.createDirectories(destination);
+    Files.write(destination.resolve("file"), "a much longer old content".getBytes(UTF_8));
+    file("file", 0644, "new".getBytes(UTF_8));
+
+    extract(1);
+
+    assertThat(new String(Files.readAllBytes(destination.resolve("file")), UTF_8), is("new"));
+  }
+
+  @Test
+  public void testLaterEntriesOfTheSameNameWin() throws Exception {
+    final byte[] big = new byte[4 * 1024 * 1024];
+    new Random(2).nextBytes(big);
+    file("file", 0644, big);
+    file("file", 0600, "new".getBytes(UTF_8));
+    file("replaced", 0644, big);
+    link("replaced", "file", TarArchiveEntry.LF_SYMLINK);
+    link("relinked", "file", TarArchiveEntry.LF_SYMLINK);
+    file("relinked", 0644, "file again".getBytes(UTF_8));
+
+    final ArchiveExtraction extraction = extract(4);
+
+    assertThat(extraction.files(), is(2L));
+    assertThat(new String(Files.readAllBytes(destination.resolve("file")), UTF_8), is("new"));
+    assertThat(PosixFilePermissions.toString(
+        Files.getPosixFilePermissions(destination.resolve("file"))), is("rw-------"));
+    assertThat(Files.readSymbolicLink(destination.resolve("replaced")), is(Paths.get("file")));
+    assertTrue(Files.isRegularFile(destination.resolve("relinked"), LinkOption.NOFOLLOW_LINKS));
+    assertThat(new String(Files.readAllBytes(destination.resolve("relinked")), UTF_8),
+               is("file again"));
+  }
+
+  @Test
+  public void testRejectsEntriesOutsideOfDestination() throws Exception {
+    file("../escaped", 0644, "x".getBytes(UTF_8));
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("outside of");
+    try {
+      extract(1);
+    } finally {
+      assertTrue(Files.notExists(folder.getRoot().toPath().resolve("escaped")));
+    }
+  }
+
+  @Test
+  public void testRejectsEntriesBelowSymbolicLinks() throws Exception {
+    final Path outside = folder.newFolder("outside").toPath();
+    link("link", outside.toString(), TarArchiveEntry.LF_SYMLINK);
+    file("link/escaped", 0644, "x".getBytes(UTF_8));
+
+    thrown.expect(IOException.class);
+    thrown.expectMessage("below the symbolic link");
+    try {
+      extract(1);
+    } finally {
+      assertTrue(Files.notExists(outside.resolve("escaped")));
+    }
+  }
+
+  @Test
+  public void testFailsWhenFileCannotBeWritten() throws Exception {
+    Files.createDirectories(destination.resolve("file"));
+    for (int i = 0; i < 20; i++) {
+      file("file", 0644, new byte[300 * 1024]);
+    }
+
+    thrown.expect(IOException.class);
+    extract(1);
+  }
+
+  private ArchiveExtraction extract(final int threads) throws Exception {
+    tar.close();
+    return TarExtractor.extract(new ByteArrayInputStream(archive.toByteArray()), destination,
+                                threads);
+  }
+
+  private void directory(final String name) throws IOException {
+    final TarArchiveEntry entry = new TarArchiveEntry(name);
+    entry.setMode(TarArchiveEntry.DEFAULT_DIR_MODE & ~0777 | 0750);
+    entry.setModTime(MODIFIED);
+    tar.putArchiveEntry(entry);
+    tar.closeArchiveEntry();
+  }
+
+  private void file(final String name, final int mode, final byte[] content) throws IOException {
+    final TarArchiveEntry entry = new TarArchiveEntry(name);
+    entry.setMode(TarArchiveEntry.DEFAULT_FILE_MODE & ~0777 | mode);
+    entry.setModTime(MODIFIED);
+    entry.setSize(content.length);
+    tar.putArchiveEntry(entry);
+    tar.write(content);
+    tar.closeArchiveEntry();
+  }
+
+  private void link(final String name, final String target, final byte type) throws IOException {
+    final TarArchiveEntry entry = new TarArchiveEntry(name, type);
+    entry.setLinkName(target);
+    tar.putArchiveEntry(entry);
+    tar.closeArchiveEntry();
+  }
+}
@@ -22,16 +22,26 @@ package com.spotify.docker.client;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import javax.net.ssl.SSLSocket;
+import jnr.unixsocket.UnixServerSocketChannel;
 import jnr.unixsocket.UnixSocket;
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
 import org.apache.http.HttpHost;
 import org.apache.http.protocol.HttpContext;
 import org.hamcrest.core.IsInstanceOf;
@@ -39,12 +49,16 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
 public class UnixConnectionSocketFactoryTest {
 
   @Rule
   public ExpectedException exception = ExpectedException.none();
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private UnixConnectionSocketFactory sut;
 
   @Before
@@ -79,4 +93,87 @@ public class UnixConnectionSocketFactoryTest {
         mock(InetSocketAddress.class), mock(InetSocketAddress.class), mock(HttpContext.class));
   }
 
+  @Test
+  public void testJnrSocketsWithoutJdkSupport() throws Exception {
+    assumeFalse("this JDK has unix domain socket channels", JdkUnixSocket.isSupported());
+
+    assertThat(sut.createSocket(mock(HttpContext.class)),
+        IsInstanceOf.instanceOf(UnixSocket.class));
+
+    exception.expect(IllegalArgumentException.class);
+    new UnixConnectionSocketFactory(new URI("unix://localhost"), true);
+  }
+
+  @Test
+  public void testJdkSocket() throws Exception {
+    assumeTrue("unix domain socket channels need Java 16", JdkUnixSocket.isSupported());
+
+    final File socketFile = new File(folder.getRoot(), "docker.sock");
+    try (final UnixServerSocketChannel server = UnixServerSocketChannel.open()) {
+      server.socket().bind(new UnixSocketAddress(socketFile));
+      final UnixConnectionSocketFactory factory =
+          new UnixConnectionSocketFactory(new URI("unix://" + socketFile.getAbsolutePath()), true);
+
+      try (final Socket socket = factory.connectSocket(1000,
+               factory.createSocket(mock(HttpContext.class)), HttpHost.create("http://foo.com"),
+               mock(InetSocketAddress.class), mock(InetSocketAddress.class),
+               mock(HttpContext.class));
+           final UnixSocketChannel accepted = server.accept()) {
+        assertThat(socket, IsInstanceOf.instanceOf(JdkUnixSocket.class));
+
+        socket.getOutputStream().write(new byte[] {1, 2, 3});
+        final ByteBuffer received = ByteBuffer.allocate(3);
+        while (received.hasRemaining()) {
+          accepted.read(received);
+        }
+        received.flip();
+        accepted.write(received);
+
+        socket.setSoTimeout(1000);
+        final InputStream input = socket.getInputStream();
+        assertThat(input.read(), equalTo(1));
+        assertThat(input.read(), equalTo(2));
+        assertThat(input.read(), equalTo(3));
+
+        socket.setSoTimeout(10);
+        exception.expect(SocketTimeoutException.class);
+        input.read();
+      }
+    }
+  }
+
+  @Test
+  public void testJnrSocketsOnRequest() throws Exception {
+    final UnixConnectionSocketFactory factory =
+        new UnixConnectionSocketFactory(new URI("unix://localhost"), false);
+    assertThat(factory.createSocket(mock(HttpContext.class)),
+        IsInstanceOf.instanceOf(UnixSocket.class));
+
+    System.setProperty(UnixConnectionSocketFactory.JDK_SOCKETS_PROPERTY, "false");
+    try {
+      assertThat(new UnixConnectionSocketFactory(new URI("unix://localhost"))
+              .createSocket(mock(HttpContext.class)),
+          IsInstanceOf.instanceOf(UnixSocket.class));
+    } finally {
+      System.clearProperty(UnixConnectionSocketFactory.JDK_SOCKETS_PROPERTY);
+    }
+  }
+
+  @Test
+  public void testJdkSocketOptions() throws Exception {
+    assumeTrue("unix domain socket channels need Java 16", JdkUnixSocket.isSupported());
+
+    final Socket socket = new UnixConnectionSocketFactory(new URI("unix://localhost"), true)
+        .createSocket(mock(HttpContext.class));
+    socket.setSendBufferSize(16384);
+    socket.setReceiveBufferSize(16384);
+    assertThat(socket.getSendBufferSize() > 0, equalTo(true));
+    assertThat(socket.getReceiveBufferSize() > 0, equalTo(true));
+    assertThat(socket.getTrafficClass(), equalTo(0));
+    assertThat(socket.getReuseAddress(), equalTo(false));
+
+    socket.close();
+    exception.expect(SocketException.class);
+    socket.getSendBufferSize();
+  }
 }
@@ -0,0 +1,258 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import jnr.unixsocket.UnixServerSocketChannel;
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Compares the jnr-unixsocket and the JDK transports of {@link UnixConnectionSocketFactory}:
+ * the round-trip latency of a ping, and the throughput of streaming logs and a container export.
+ * The transports talk to a local stand-in server on a unix socket that answers with canned
+ * responses. The JDK transport needs Java 16 or later and is skipped on older versions. This is
+ * not run as part of the test suite; run it with
+ * {@code java -cp ... com.spotify.docker.client.UnixSocketBenchmark [iterations] [megabytes]}.
+ */
+public class UnixSocketBenchmark {
+
+  private static final int WARMUP_ITERATIONS = 3;
+  private static final int STREAM_ITERATIONS = 5;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Keeps the JIT from dropping the responses
+  private static volatile long sink;
+
+  public static void main(final String[] args) throws Exception {
+    final int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+    final int megabytes = args.length > 1 ? Integer.parseInt(args[1]) : 256;
+
+    final byte[] pong = response("text/plain", "OK".getBytes(US_ASCII));
+    final byte[] logs = response("application/vnd.docker.raw-stream", logFrames(megabytes));
+    final byte[] export = response("application/x-tar", randomBytes(megabytes));
+
+    final Path directory = Files.createTempDirectory("unix-socket-benchmark");
+    final File socketFile = directory.resolve("docker.sock").toFile();
+    final UnixServerSocketChannel server = UnixServerSocketChannel.open();
+    server.socket().bind(new UnixSocketAddress(socketFile));
+    final Thread acceptor = new Thread(() -> {
+      while (server.isOpen()) {
+        try {
+          final UnixSocketChannel channel = server.accept();
+          final Thread connection = new Thread(() -> serve(channel, pong, logs, export));
+          connection.setDaemon(true);
+          connection.start();
+        } catch (IOException e) {
+          return;
+        }
+      }
+    });
+    acceptor.setDaemon(true);
+    acceptor.start();
+
+    try {
+      System.out.printf("%d round trips, %d MB streams%n", iterations, megabytes);
+      final URI uri = URI.create("unix://" + socketFile.getAbsolutePath());
+      run("jnr", new UnixConnectionSocketFactory(uri, false), iterations);
+      if (JdkUnixSocket.isSupported()) {
+        run("jdk", new UnixConnectionSocketFactory(uri, true), iterations);
+      } else {
+        System.out.println("jdk   skipped, unix domain socket channels need Java 16 or later");
+      }
+    } finally {
+      server.close();
+      Files.deleteIfExists(socketFile.toPath());
+      Files.delete(directory);
+    }
+  }
+
+  private static void run(final String transport, final UnixConnectionSocketFactory factory,
+                          final int iterations) throws Exception {
+    final PoolingHttpClientConnectionManager connectionManager =
+        new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
+            .register("unix", factory)
+            .build());
+    try (final CloseableHttpClient client = HttpClients.custom()
+        .setConnectionManager(connectionManager)
+        .build()) {
+      final HttpGet ping = new HttpGet("unix://localhost:80/_ping");
+      long total = 0;
+      for (int i = 0; i < iterations; i++) {
+        total += roundTrip(client, ping);
+      }
+      final long start = System.nanoTime();
+      for (int i = 0; i < iterations; i++) {
+        total += roundTrip(client, ping);
+      }
+      final long elapsed = System.nanoTime() - start;
+      System.out.printf("%-5s ping   %10.1f us/op%n", transport, elapsed / 1000.0 / iterations);
+
+      stream(transport, "logs", client, "unix://localhost:80/containers/abc123/logs", true);
+      stream(transport, "export", client, "unix://localhost:80/containers/abc123/export", false);
+      sink = total;
+    }
+  }
+
+  private static int roundTrip(final CloseableHttpClient client, final HttpGet ping)
+      throws IOException {
+    try (final CloseableHttpResponse response = client.execute(ping)) {
+      return EntityUtils.toString(response.getEntity()).length();
+    }
+  }
+
+  private static void stream(final String transport, final String name,
+                             final CloseableHttpClient client, final String uri,
+                             final boolean frames) throws IOException {
+    final HttpGet request = new HttpGet(uri);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      read(client, request, frames);
+    }
+    long bytes = 0;
+    final long start = System.nanoTime();
+    for (int i = 0; i < STREAM_ITERATIONS; i++) {
+      bytes += read(client, request, frames);
+    }
+    final long elapsed = System.nanoTime() - start;
+    System.out.printf("%-5s %-6s %10.1f MB/s%n", transport, name,
+                      bytes / 1e6 / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)));
+  }
+
+  private static long read(final CloseableHttpClient client, final HttpGet request,
+                           final boolean frames) throws IOException {
+    long bytes = 0;
+    try (final CloseableHttpResponse response = client.execute(request);
+         final InputStream stream = response.getEntity().getContent()) {
+      if (frames) {
+        final LogReader reader = new LogReader(stream, true);
+        LogMessage message = reader.nextMessage();
+        while (message != null) {
+          bytes += message.content().remaining();
+          message = reader.nextMessage();
+        }
+      } else {
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int read = stream.read(buffer);
+        while (read >= 0) {
+          bytes += read;
+          read = stream.read(buffer);
+        }
+      }
+    }
+    return bytes;
+  }
+
+  private static byte[] response(final String contentType, final byte[] body) {
+    final byte[] head = ("HTTP/1.1 200 OK\r\n"
+                         + "Content-Type: " + contentType + "\r\n"
+                         + "Content-Length: " + body.length + "\r\n\r\n").getBytes(US_ASCII);
+    final byte[] response = new byte[head.length + body.length];
+    System.arraycopy(head, 0, response, 0, head.length);
+    System.arraycopy(body, 0, response, head.length, body.length);
+    return response;
+  }
+
+  /**
+   * Returns stdout frames of lines between 40 and 200 bytes.
+   */
+  private static byte[] logFrames(final int megabytes) {
+    final Random random = new Random(0);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final ByteBuffer header = ByteBuffer.allocate(8);
+    while (out.size() < megabytes * 1024 * 1024) {
+      final byte[] line = new byte[40 + random.nextInt(160)];
+      for (int i = 0; i < line.length - 1; i++) {
+        line[i] = (byte) ('a' + random.nextInt(26));
+      }
+      line[line.length - 1] = '\n';
+      header.clear();
+      header.put((byte) 1).put((byte) 0).put((byte) 0).put((byte) 0).putInt(line.length);
+      out.write(header.array(), 0, 8);
+      out.write(line, 0, line.length);
+    }
+    return out.toByteArray();
+  }
+
+  private static byte[] randomBytes(final int megabytes) {
+    final byte[] bytes = new byte[megabytes * 1024 * 1024];
+    new Random(0).nextBytes(bytes);
+    return bytes;
+  }
+
+  /**
+   * Answers the requests on a kept-alive connection. None of the benchmarked requests has a
+   * body, so a request ends at the first empty line.
+   */
+  private static void serve(final UnixSocketChannel channel, final byte[] pong, final byte[] logs,
+                            final byte[] export) {
+    try (final UnixSocketChannel closed = channel;
+         final BufferedReader reader = new BufferedReader(
+             new InputStreamReader(Channels.newInputStream(channel), US_ASCII))) {
+      final OutputStream out = Channels.newOutputStream(channel);
+      String requestLine = reader.readLine();
+      while (requestLine != null) {
+        String header = reader.readLine();
+        while (header != null && !header.isEmpty()) {
+          header = reader.readLine();
+        }
+        final String path = requestLine.split(" ")[1];
+        final byte[] response;
+        if (path.endsWith("/logs")) {
+          response = logs;
+        } else if (path.endsWith("/export")) {
+          response = export;
+        } else {
+          response = pong;
+        }
+        for (int offset = 0; offset < response.length; offset += BUFFER_SIZE) {
+          out.write(response, offset, Math.min(BUFFER_SIZE, response.length - offset));
+        }
+        out.flush();
+        requestLine = reader.readLine();
+      }
+    } catch (IOException e) {
+      // the client went away
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*-
+ * -\-\-
+ * docker-client
+ * --
+ * Copyright (C) 2016 Spotify AB
+ * --
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * -/-/-
+ */
+
+package com.spotify.docker.client.auth;
+
+import static org.hamcrest.Matchers.allOf;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.spotify.docker.client.exceptions.DockerException;
+import com.spotify.docker.client.messages.RegistryAuth;
+import com.spotify.docker.client.messages.RegistryConfigs;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class RoutingRegistryAuthSupplierTest {
+
+  @Rule
+  public final ExpectedException thrown = ExpectedException.none();
+
+  private final RegistryAuthSupplier supplier1 = mock(RegistryAuthSupplier.class);
+  private final RegistryAuthSupplier supplier2 = mock(RegistryAuthSupplier.class);
+
+  private final ExecutorService executor = Executors.newCachedThreadPool();
+
+  private final RoutingRegistryAuthSupplier routingSupplier = new RoutingRegistryAuthSupplier(
+      ImmutableList.of(supplier1, supplier2), executor, 10, TimeUnit.SECONDS);
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testAuthForRemembersSupplier() throws Exception {
+    final RegistryAuth auth = RegistryAuth.builder()
+        .email("foo@biz.com")
+        .build();
+    when(supplier2.authFor("gcr.io/foo/bar:1")).thenReturn(auth);
+    when(supplier2.authFor("gcr.io/foo/baz:2")).thenReturn(auth);
+
+    assertThat(routingSupplier.authFor("gcr.io/foo/bar:1"), is(auth));
+    assertThat(routingSupplier.routeFor("gcr.io"), is(supplier2));
+
+    assertThat(routingSupplier.authFor("gcr.io/foo/baz:2"), is(auth));
+    verify(supplier1, never()).authFor("gcr.io/foo/baz:2");
+  }
+
+  @Test
+  public void testAuthForProbesAgainWhenSupplierStopsAnswering() throws Exception {
+    final RegistryAuth auth1 = RegistryAuth.builder()
+        .email("a@b.com")
+        .build();
+    final RegistryAuth auth2 = RegistryAuth.builder()
+        .email("foo@biz.com")
+        .build();
+    when(supplier2.authFor("quay.io/foo/bar:1")).thenReturn(auth2).thenReturn(null);
+
+    assertThat(routingSupplier.authFor("quay.io/foo/bar:1"), is(auth2));
+
+    when(supplier1.authFor("quay.io/foo/bar:1")).thenReturn(auth1);
+    assertThat(routingSupplier.authFor("quay.io/foo/bar:1"), is(auth1));
+    assertThat(routingSupplier.routeFor("quay.io"), is(supplier1));
+    verify(supplier2, times(2)).authFor("quay.io/foo/bar:1");
+
+    assertThat(routingSupplier.authFor("registry.example.com/missing"), is(nullValue()));
+    assertThat(routingSupplier.routeFor("registry.example.com"), is(nullValue()));
+  }
+
+  @Test
+  public void testAuthForBuildAsksSuppliersInParallel() throws Exception {
+    final RegistryAuth auth1 = RegistryAuth.builder()
+        .username("1")
+        .serverAddress("a")
+        .build();
+    final RegistryAuth auth2 = RegistryAuth.builder()
+        .username("2")
+        .serverAddress("b")
+        .build();
+    final RegistryAuth auth3 = RegistryAuth.builder()
+        .username("3")
+        .serverAddress("b")
+        .build();
+
+    // neither supplier answers before the other one has been asked
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    when(supplier1.authForBuild()).thenAnswer(invocation -> {
+      barrier.await(10, TimeUnit.SECONDS);
+      return RegistryConfigs.create(ImmutableMap.of("a", auth1, "b", auth2));
+    });
+    when(supplier2.authForBuild()).thenAnswer(invocation -> {
+      barrier.await(10, TimeUnit.SECONDS);
+      return RegistryConfigs.create(ImmutableMap.of("b", auth3));
+    });
+
+    // supplier1 has priority for server b
+    assertThat(routingSupplier.authForBuild().configs(), allOf(
+        hasEntry("a", auth1),
+        hasEntry("b", auth2)
+    ));
+  }
+
+  @Test
+  public void testAuthForBuildLeavesOutSlowSuppliers() throws Exception {
+    final RoutingRegistryAuthSupplier routingSupplier = new RoutingRegistryAuthSupplier(
+        ImmutableList.of(supplier1, supplier2), executor, 100, TimeUnit.MILLISECONDS);
+    final RegistryAuth auth = RegistryAuth.builder()
+        .username("2")
+        .serverAddress("b")
+        .build();
+    final CountDownLatch never = new CountDownLatch(1);
+    when(supplier1.authForBuild()).thenAnswer(invocation -> {
+      never.await();
+      return null;
+    });
+    when(supplier2.authForBuild()).thenReturn(RegistryConfigs.create(ImmutableMap.of("b", auth)));
+
+    assertThat(routingSupplier.authForBuild().configs(), is(ImmutableMap.of("b", auth)));
+  }
+
+  @Test
+  public void testAuthForBuildPropagatesFailures() throws Exception {
+    final DockerException failure = new DockerException("failure!!");
+    when(supplier1.authForBuild()).thenReturn(null);
+    when(supplier2.authForBuild()).thenThrow(failure);
+
+    thrown.expect(is(failure));
+    routingSupplier.authForBuild();
+  }
+}
@@ -27,6 +27,10 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -41,6 +45,10 @@ import com.spotify.docker.client.messages.RegistryConfigs;
 
 import java.io.IOException;
 import java.time.Clock;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 import org.hamcrest.FeatureMatcher;
@@ -49,6 +57,7 @@ import org.joda.time.DateTime;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
 
 public class ContainerRegistryAuthSupplierTest {
 
@@ -265,4 +274,105 @@ public class ContainerRegistryAuthSupplierTest {
 
     verify(refresher, never()).refresh(credentials);
   }
+
+  @Test
+  public void testRefreshAhead_RefreshesInBackground() throws Exception {
+    final DateTime now = new DateTime(2017, 5, 23, 15, 0);
+    final AccessToken first = new AccessToken("first", now.plusMinutes(60).toDate());
+    final AccessToken second = new AccessToken("second", now.plusMinutes(120).toDate());
+    final FakeCredentials credentials = new FakeCredentials(first, second);
+    final ScheduledExecutorService executor = mockExecutor();
+    final ContainerRegistryAuthSupplier supplier = new ContainerRegistryAuthSupplier(
+        credentials, clock, TimeUnit.SECONDS.toMillis(minimumExpirationSecs),
+        FakeCredentials::refresh, TimeUnit.MINUTES.toMillis(5), executor);
+
+    when(clock.millis()).thenReturn(now.getMillis());
+    assertThat(supplier.authFor("gcr.io/foobar/barfoo:latest"), matchesAccessToken(first));
+    assertThat(supplier.authFor("gcr.io/foobar/barfoo:latest"), matchesAccessToken(first));
+    assertThat(credentials.refreshes, is(0));
+
+    // scheduled once, five minutes before the token expires
+    final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).schedule(refresh.capture(), eq(TimeUnit.MINUTES.toMillis(55)),
+        eq(TimeUnit.MILLISECONDS));
+
+    when(clock.millis()).thenReturn(now.plusMinutes(55).getMillis());
+    refresh.getValue().run();
+    assertThat(credentials.refreshes, is(1));
+    verify(executor).schedule(any(Runnable.class), eq(TimeUnit.MINUTES.toMillis(60)),
+        eq(TimeUnit.MILLISECONDS));
+
+    assertThat(supplier.authFor("gcr.io/foobar/barfoo:latest"), matchesAccessToken(second));
+    assertThat(credentials.refreshes, is(1));
+
+    supplier.close();
+    verify(executor).shutdownNow();
+  }
+
+  @Test
+  public void testRefreshAhead_RefreshesSynchronouslyOnceExpired() throws Exception {
+    final DateTime now = new DateTime(2017, 5, 23, 15, 0);
+    final AccessToken first = new AccessToken("first", now.plusMinutes(1).toDate());
+    final AccessToken second = new AccessToken("second", now.plusMinutes(61).toDate());
+    final FakeCredentials credentials = new FakeCredentials(first, second);
+    final ScheduledExecutorService executor = mockExecutor();
+    final ContainerRegistryAuthSupplier supplier = new ContainerRegistryAuthSupplier(
+        credentials, clock, TimeUnit.SECONDS.toMillis(minimumExpirationSecs),
+        FakeCredentials::refresh, TimeUnit.MINUTES.toMillis(5), executor);
+
+    when(clock.millis()).thenReturn(now.getMillis());
+    assertThat(supplier.authFor("gcr.io/foobar/barfoo:latest"), matchesAccessToken(first));
+
+    // the background refresh is due right away, and fails
+    final ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).schedule(refresh.capture(), eq(0L), eq(TimeUnit.MILLISECONDS));
+    credentials.failNextRefresh = true;
+    refresh.getValue().run();
+    verify(executor).schedule(any(Runnable.class), eq(TimeUnit.SECONDS.toMillis(10)),
+        eq(TimeUnit.MILLISECONDS));
+
+    // still usable, so the caller does not wait for a refresh
+    assertThat(supplier.authFor("gcr.io/foobar/barfoo:latest"), matchesAccessToken(first));
+    assertThat(credentials.refreshes, is(1));
+
+    when(clock.millis()).thenReturn(now.plusMinutes(1).getMillis());
+    assertThat(supplier.authFor("gcr.io/foobar/barfoo:latest"), matchesAccessToken(second));
+    assertThat(credentials.refreshes, is(2));
+  }
+
+  private static ScheduledExecutorService mockExecutor() {
+    final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    doReturn(mock(ScheduledFuture.class)).when(executor)
+        .schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    return executor;
+  }
+
+  /**
+   * GoogleCredentials that hand out the given access tokens one refresh after another.
+   */
+  private static class FakeCredentials extends GoogleCredentials {
+
+    private final Iterator<AccessToken> accessTokens;
+    private int refreshes;
+    private boolean failNextRefresh;
+
+    private FakeCredentials(final AccessToken accessToken, final AccessToken... refreshed) {
+      super(accessToken);
+      this.accessTokens = Arrays.asList(refreshed).iterator();
+    }
+
+    @Override
+    public AccessToken refreshAccessToken() throws IOException {
+      refreshes++;
+      if (failNextRefresh) {
+        failNextRefresh = false;
+        throw new IOException("failure!!");
+      }
+      return accessTokens.next();
+    }
+
+    private static void refresh(final GoogleCredentials credentials) throws IOException {
+      credentials.refresh();
+    }
+  }
 }
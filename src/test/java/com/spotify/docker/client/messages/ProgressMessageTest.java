@@ -58,4 +58,14 @@ public class ProgressMessageTest {
     final String status = "some-image-tag: digest: " + digest + " size: 1234";
     assertEquals(digest, readMessage(status).digest());
   }
+
+  @Test
+  public void testBuildImageId() throws Exception {
+    assertEquals("2d6e00052167",
+                 ProgressMessage.builder().stream("Successfully built 2d6e00052167\n").build()
+                     .buildImageId());
+    assertEquals("2d6e00052167", ProgressMessage.buildImageId("Successfully built 2d6e00052167"));
+    assertNull(ProgressMessage.buildImageId("Step 1/2 : FROM busybox\n"));
+    assertNull(ProgressMessage.buildImageId(null));
+  }
 }